@@ -0,0 +1,40 @@
+package com.pstag.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler, so that every result
+ * comes with gc.alloc.rate.norm, the bytes allocated per operation, which is
+ * stable between runs where the time is not.
+ *
+ * The results are written as JSON to target/jmh-[label].json, the label
+ * being the benchmarks.label system property, for example the abbreviated
+ * commit, so that two commits can be compared file to file. Any JMH option
+ * can still be given on the command line, such as a benchmark regex or -f 1.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-" + System.getProperty("benchmarks.label", "local") + ".json");
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,172 @@
+package com.pstag.benchmarks;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.JDBCType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringJoiner;
+
+import com.pstag.entities.CarEntity;
+
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.pgclient.impl.RowImpl;
+import io.vertx.sqlclient.desc.ColumnDescriptor;
+import io.vertx.sqlclient.impl.RowDesc;
+
+/**
+ * Data shared by the benchmarks. Everything is generated from a fixed seed,
+ * so that every run, on every commit, measures the same input.
+ */
+final class Fixtures {
+
+    private static final long SEED = 42;
+
+    private static final String[][] MODELS = {
+            { "Toyota", "Corolla", "Camry", "RAV4" },
+            { "Honda", "Civic", "Accord", "Fit" },
+            { "Ford", "Mustang", "F-150", "Focus" },
+            { "Jaguar", "XK-Series", "XF", "F-Pace" },
+            { "BMW", "3 Series", "5 Series", "X5" },
+    };
+
+    private static final String[] FUEL_TYPES = { "gas", "diesel", "electric", "hybrid" };
+
+    private static final String[] TRANSMISSIONS = { "6-speed shiftable automatic",
+            "continuously variable-speed automatic", "6-speed manual" };
+
+    private static final String[] BODY_TYPES = { "Sedan", "Hatchback", "SUV", "Convertible", "Pickup" };
+
+    private static final String[] COLORS = { "Black", "White", "Gray", "Silver", "Blue", "Red", "Green" };
+
+    private static final String[] COLUMNS = { "id", "make", "model", "trim_year", "trim_name",
+            "trim_description", "fuel_type", "transmission", "body_type", "color", "length", "weight", "velocity",
+            "image_url" };
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns cars shaped like the rows of the catalog, with three to six
+     * colors and as many image URLs.
+     */
+    static List<CarEntity> cars(int count) {
+        Random random = new Random(SEED);
+        List<CarEntity> cars = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] models = MODELS[random.nextInt(MODELS.length)];
+            int colorCount = 3 + random.nextInt(4);
+            List<String> colors = new ArrayList<>(colorCount);
+            List<String> urls = new ArrayList<>(colorCount);
+            for (int c = 0; c < colorCount; c++) {
+                colors.add(COLORS[(i + c) % COLORS.length]);
+                urls.add("https://encrypted-tbn0.gstatic.com/images?q=tbn:" + Long.toHexString(random.nextLong())
+                        + Long.toHexString(random.nextLong()) + "&s");
+            }
+            int year = 1990 + random.nextInt(35);
+            cars.add(new CarEntity((long) i + 1, models[0], models[1 + random.nextInt(3)], year, "LX",
+                    "LX 4dr Hatchback (1.5L 4cyl CVT)", FUEL_TYPES[random.nextInt(FUEL_TYPES.length)],
+                    TRANSMISSIONS[random.nextInt(TRANSMISSIONS.length)],
+                    BODY_TYPES[random.nextInt(BODY_TYPES.length)], colors, 150 + random.nextInt(60) + 0.5,
+                    2400 + random.nextInt(2000), 150 + random.nextInt(100), urls, null));
+        }
+        return cars;
+    }
+
+    /**
+     * Returns the cars as the rows the PostgreSQL client hands to
+     * CarRepository.from, without a database.
+     */
+    static List<Row> rows(List<CarEntity> cars) {
+        ColumnDescriptor[] descriptors = new ColumnDescriptor[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            descriptors[i] = column(COLUMNS[i]);
+        }
+        RowDesc desc = new RowDesc(descriptors) {
+        };
+
+        List<Row> rows = new ArrayList<>(cars.size());
+        for (CarEntity car : cars) {
+            RowImpl row = new RowImpl(desc);
+            row.addValue(car.id());
+            row.addValue(car.make());
+            row.addValue(car.model());
+            row.addValue(car.trimYear());
+            row.addValue(car.trimName());
+            row.addValue(car.trimDescription());
+            row.addValue(car.fuelType());
+            row.addValue(car.transmission());
+            row.addValue(car.bodyType());
+            row.addValue(car.color().toArray(new String[0]));
+            row.addValue(car.length());
+            row.addValue(car.weight());
+            row.addValue(car.velocity());
+            row.addValue(car.imageUrl().toArray(new String[0]));
+            rows.add(Row.newInstance(row));
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the query string of a list request, URL-encoded as it reaches
+     * the controller.
+     *
+     * @param request "none" for the first page without criteria, "filters" for
+     *                the filters of the side panel, "full" for filters, a
+     *                search and two sorts
+     */
+    static String listRequest(String request) {
+        StringJoiner parameters = new StringJoiner("&");
+        parameters.add("limit=10");
+        parameters.add("offset=20");
+        if (request.equals("none")) {
+            return parameters.toString();
+        }
+        parameters.add(parameter("filter[make]", "in(Toyota,Honda,Ford)"));
+        parameters.add(parameter("filter[trimYear]", "between(2010,2020)"));
+        parameters.add(parameter("filter[bodyType]", "Sedan"));
+        parameters.add(parameter("filter[color]", "Red,Blue"));
+        if (request.equals("full")) {
+            parameters.add(parameter("search", search(request)));
+            parameters.add(parameter("sort[velocity]", "desc"));
+            parameters.add(parameter("sort[trimYear]", "asc"));
+        }
+        return parameters.toString();
+    }
+
+    /**
+     * Returns the search of a list request, null when it has none.
+     */
+    static String search(String request) {
+        return request.equals("full") ? "corolla hybrid" : null;
+    }
+
+    private static String parameter(String name, String value) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static ColumnDescriptor column(String name) {
+        return new ColumnDescriptor() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public boolean isArray() {
+                return name.equals("color") || name.equals("image_url");
+            }
+
+            @Override
+            public String typeName() {
+                return null;
+            }
+
+            @Override
+            public JDBCType jdbcType() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package com.pstag.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.utils.QueryParameters;
+import com.pstag.utils.SqlQueryBuilder;
+import com.pstag.utils.SqlQueryBuilder.Query;
+
+/**
+ * What GET /api/cars does before the database is involved: parsing the
+ * filter[...] and sort[...] parameters, applying them to the query and
+ * building the count and page statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class QueryBenchmark {
+
+    @Param({ "none", "filters", "full" })
+    String request;
+
+    String rawQuery;
+
+    Map<String, String> filters;
+
+    Map<String, String> sorts;
+
+    String search;
+
+    @Setup
+    public void setUp() {
+        rawQuery = Fixtures.listRequest(request);
+        filters = QueryParameters.bracketed(rawQuery, "filter");
+        sorts = QueryParameters.bracketed(rawQuery, "sort");
+        search = Fixtures.search(request);
+    }
+
+    @Benchmark
+    public void parseParameters(Blackhole blackhole) {
+        blackhole.consume(QueryParameters.bracketed(rawQuery, "filter"));
+        blackhole.consume(QueryParameters.bracketed(rawQuery, "sort"));
+    }
+
+    @Benchmark
+    public void buildQueries(Blackhole blackhole) {
+        SqlQueryBuilder queryBuilder = CarRepository.listQuery(filters, search, sorts);
+        Query count = queryBuilder.count();
+        queryBuilder.limit(10);
+        queryBuilder.offset(20);
+        Query page = queryBuilder.build();
+
+        blackhole.consume(count.getSql());
+        blackhole.consume(count.getParameters());
+        blackhole.consume(page.getSql());
+        blackhole.consume(page.getParameters());
+    }
+
+    @Benchmark
+    public void parseFilterValues(Blackhole blackhole) {
+        blackhole.consume(CarEntity.parse("trim_year", "2015"));
+        blackhole.consume(CarEntity.parse("velocity", "180.5"));
+        blackhole.consume(CarEntity.parse("color", "Red,Blue,Silver"));
+        blackhole.consume(CarEntity.parse("make", "Toyota"));
+        blackhole.consume(CarEntity.parse("make", new String[] { "Toyota", "Honda", "Ford" }));
+        blackhole.consume(CarEntity.parse("trim_year", new String[] { "2010", "2015", "2020" }));
+    }
+}
@@ -0,0 +1,101 @@
+package com.pstag.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.CarService;
+import com.pstag.utils.CarFields;
+import com.pstag.utils.TotalRowsAndData;
+
+import io.vertx.mutiny.sqlclient.Row;
+
+/**
+ * What happens to a page of cars once the database answered: mapping the
+ * rows to CarEntity and writing the response, as JSON for GET /api/cars and
+ * as XML for GET /api/cars/xml, which exports every matching car. The grid
+ * variants decode and write only the fields of fields=make,model,trimYear,velocity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ResponseBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int size;
+
+    List<Row> rows;
+
+    TotalRowsAndData<CarEntity> page;
+
+    TotalRowsAndData<Map<String, Object>> gridPage;
+
+    Set<String> gridColumns;
+
+    ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        List<CarEntity> cars = Fixtures.cars(size);
+        rows = Fixtures.rows(cars);
+        page = new TotalRowsAndData<>(15_000, cars);
+        gridColumns = CarFields.parse("make,model,trimYear,velocity");
+        gridPage = new TotalRowsAndData<>(15_000,
+                cars.stream().map(car -> CarFields.project(car, gridColumns)).toList());
+        objectMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public List<CarEntity> mapRows() {
+        List<CarEntity> cars = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            cars.add(CarRepository.from(row));
+        }
+        return cars;
+    }
+
+    @Benchmark
+    public List<CarEntity> mapGridRows() {
+        List<CarEntity> cars = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            cars.add(CarRepository.from(row, gridColumns));
+        }
+        return cars;
+    }
+
+    @Benchmark
+    public byte[] serializeJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public byte[] serializeGridJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(gridPage);
+    }
+
+    @Benchmark
+    public String convertToXml() {
+        return CarService.convertToXml(page.getData());
+    }
+}
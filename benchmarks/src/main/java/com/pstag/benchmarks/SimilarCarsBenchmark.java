@@ -0,0 +1,78 @@
+package com.pstag.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.utils.CatalogNeighbors;
+import com.pstag.utils.CatalogSnapshot;
+
+/**
+ * GET /api/cars/{id}/similar without the read of the cars: the k nearest
+ * cars found with the k-d trees of CatalogNeighbors, against a scan of the
+ * whole catalog, and the cost of building the trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class SimilarCarsBenchmark {
+
+    @Param({ "10000", "100000" })
+    int cars;
+
+    @Param({ "10" })
+    int k;
+
+    CatalogSnapshot catalog;
+
+    CatalogNeighbors neighbors;
+
+    int next;
+
+    @Setup
+    public void setUp() {
+        CatalogSnapshot.Builder builder = CatalogSnapshot.builder();
+        for (CarEntity car : Fixtures.cars(cars)) {
+            builder.add(car.id(), car.trimYear(), car.make(), car.model(), car.fuelType(), car.transmission(),
+                    car.bodyType(), car.length(), car.weight(), car.velocity(), car.color(), 0);
+        }
+        catalog = builder.build();
+        neighbors = CatalogNeighbors.build(catalog, 4, 1);
+    }
+
+    @Benchmark
+    public List<CatalogNeighbors.Neighbor> trees() {
+        return neighbors.nearest(nextId(), k).orElseThrow();
+    }
+
+    @Benchmark
+    public List<CatalogNeighbors.Neighbor> scan() {
+        return neighbors.scan(nextId(), k).orElseThrow();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CatalogNeighbors build() {
+        return CatalogNeighbors.build(catalog, 4, 1);
+    }
+
+    private long nextId() {
+        next = (next + 7919) % catalog.size();
+        return catalog.id(next);
+    }
+}
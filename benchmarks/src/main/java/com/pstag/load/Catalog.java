@@ -0,0 +1,115 @@
+package com.pstag.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The values the requests are drawn from, read from the running application
+ * so that filters, searches and ids match real rows: the facets of
+ * /api/cars/ui-params, the number of cars, and a sample of ids whose image
+ * URLs are already stored, so that image requests never reach the image
+ * search.
+ */
+final class Catalog {
+
+    private static final int SAMPLE_PAGES = 10;
+
+    private static final int PAGE_SIZE = 100;
+
+    final List<String> makers;
+
+    final Map<String, List<String>> modelsByMaker;
+
+    final List<String> bodyTypes;
+
+    final List<String> fuelTypes;
+
+    final List<String> transmissions;
+
+    final List<String> colors;
+
+    final int totalRows;
+
+    final List<Long> idsWithImages;
+
+    private Catalog(List<String> makers, Map<String, List<String>> modelsByMaker, List<String> bodyTypes,
+            List<String> fuelTypes, List<String> transmissions, List<String> colors, int totalRows,
+            List<Long> idsWithImages) {
+        this.makers = makers;
+        this.modelsByMaker = modelsByMaker;
+        this.bodyTypes = bodyTypes;
+        this.fuelTypes = fuelTypes;
+        this.transmissions = transmissions;
+        this.colors = colors;
+        this.totalRows = totalRows;
+        this.idsWithImages = idsWithImages;
+    }
+
+    /**
+     * Reads the catalog from the application. The pages sampled for ids are
+     * chosen with the given seed, so the same catalog gives the same ids.
+     */
+    static Catalog load(HttpClient client, ObjectMapper mapper, String baseUrl, long seed)
+            throws IOException, InterruptedException {
+        JsonNode params = get(client, mapper, baseUrl + "/api/cars/ui-params").path("data");
+
+        Map<String, List<String>> modelsByMaker = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> makers = params.path("makersAndModels").fields();
+        while (makers.hasNext()) {
+            Map.Entry<String, JsonNode> maker = makers.next();
+            modelsByMaker.put(maker.getKey(), strings(maker.getValue()));
+        }
+
+        int totalRows = get(client, mapper, baseUrl + "/api/cars?limit=1").path("totalRows").asInt();
+
+        Random random = new Random(seed);
+        List<Long> idsWithImages = new ArrayList<>();
+        int pages = Math.max(1, totalRows / PAGE_SIZE);
+        for (int i = 0; i < SAMPLE_PAGES; i++) {
+            int offset = random.nextInt(pages) * PAGE_SIZE;
+            JsonNode cars = get(client, mapper,
+                    baseUrl + "/api/cars?sort%5Bid%5D=asc&limit=" + PAGE_SIZE + "&offset=" + offset).path("data");
+            for (JsonNode car : cars) {
+                if (car.path("imageUrl").size() > 0) {
+                    idsWithImages.add(car.path("id").asLong());
+                }
+            }
+        }
+
+        return new Catalog(strings(params.path("makers")), modelsByMaker, strings(params.path("bodyTypes")),
+                strings(params.path("fuelTypes")), strings(params.path("transmissions")),
+                strings(params.path("colors")), totalRows, idsWithImages);
+    }
+
+    private static JsonNode get(HttpClient client, ObjectMapper mapper, String url)
+            throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException(url + " answered " + response.statusCode());
+        }
+        return mapper.readTree(response.body());
+    }
+
+    private static List<String> strings(JsonNode array) {
+        List<String> values = new ArrayList<>();
+        for (JsonNode value : array) {
+            if (!value.isNull() && !value.asText().isBlank()) {
+                values.add(value.asText());
+            }
+        }
+        return values;
+    }
+}
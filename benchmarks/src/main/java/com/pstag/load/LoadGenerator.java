@@ -0,0 +1,246 @@
+package com.pstag.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Open-model load generator for a running application.
+ *
+ * Requests are sent at a constant rate, whatever the latency of the previous
+ * ones, and each latency is measured from the moment its request was due,
+ * not from the moment it was sent, so that a stalled server is not hidden by
+ * a stalled generator (coordinated omission). When --max-in-flight requests
+ * are already waiting, the next one is not sent and counted as "saturated".
+ *
+ * The first --warmup seconds are not recorded. At the end, the latencies of
+ * each kind of request are written to [output].hlog, as an HdrHistogram log
+ * that HistogramLogProcessor or HdrHistogram's plotter can read, and a
+ * summary with throughput, percentiles and errors to [output].json.
+ *
+ * Options, all written as --name=value:
+ * - url: the application, http://localhost:8080 by default;
+ * - rate: requests per second, 50 by default;
+ * - duration: seconds recorded after the warm-up, 60 by default;
+ * - warmup: seconds not recorded, 10 by default;
+ * - mix: the weights of the kinds of requests, see RequestMix;
+ * - seed: the seed of the catalog sample and of the requests, 42 by default;
+ * - max-in-flight: 256 by default;
+ * - timeout-ms: the timeout of a request, 10000 by default;
+ * - output: the path of the results without extension, target/load-local by
+ * default.
+ */
+public class LoadGenerator {
+
+    private static final String ALL = "all";
+
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, LongAdder>> errors = new ConcurrentHashMap<>();
+
+    private volatile boolean recording;
+
+    private long recordingStart;
+
+    private long recordingEnd;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("url", "http://localhost:8080");
+        options.put("rate", "50");
+        options.put("duration", "60");
+        options.put("warmup", "10");
+        options.put("mix", RequestMix.DEFAULT);
+        options.put("seed", "42");
+        options.put("max-in-flight", "256");
+        options.put("timeout-ms", "10000");
+        options.put("output", "target/load-local");
+        for (String arg : args) {
+            String[] parts = arg.replaceFirst("^--", "").split("=", 2);
+            if (parts.length != 2 || !options.containsKey(parts[0])) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected one of --"
+                        + String.join("=, --", options.keySet()) + "=");
+            }
+            options.put(parts[0], parts[1]);
+        }
+
+        new LoadGenerator().run(options);
+    }
+
+    private void run(Map<String, String> options) throws IOException, InterruptedException {
+        String url = options.get("url").replaceAll("/$", "");
+        double rate = Double.parseDouble(options.get("rate"));
+        long seed = Long.parseLong(options.get("seed"));
+        Duration timeout = Duration.ofMillis(Long.parseLong(options.get("timeout-ms")));
+        Semaphore inFlight = new Semaphore(Integer.parseInt(options.get("max-in-flight")));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(timeout).build();
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        Catalog catalog = Catalog.load(client, mapper, url, seed);
+        RequestMix mix = new RequestMix(url, catalog, RequestMix.parse(options.get("mix")), seed);
+        System.out.printf("Catalog: %d cars, %d makers, %d ids with images%n", catalog.totalRows,
+                catalog.makers.size(), catalog.idsWithImages.size());
+
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        long start = System.nanoTime();
+        long recordFrom = start + warmupNanos;
+        long end = recordFrom + durationNanos;
+
+        for (long i = 0;; i++) {
+            long due = start + i * intervalNanos;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!recording && due >= recordFrom) {
+                recordingStart = System.currentTimeMillis();
+                recording = true;
+                System.out.println("Warm-up done, recording");
+            }
+
+            RequestMix.Request request = mix.next();
+            if (!inFlight.tryAcquire()) {
+                error(request.kind(), "saturated");
+                continue;
+            }
+            client.sendAsync(HttpRequest.newBuilder(request.uri()).timeout(timeout).build(),
+                    HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        inFlight.release();
+                        long latency = System.nanoTime() - due;
+                        if (failure != null) {
+                            error(request.kind(), failure.getClass().getSimpleName());
+                        } else if (response.statusCode() >= 400) {
+                            error(request.kind(), "status-" + response.statusCode());
+                        } else {
+                            record(request.kind(), latency);
+                        }
+                    });
+        }
+
+        // Let the last requests finish before reading the histograms
+        int permits = Integer.parseInt(options.get("max-in-flight"));
+        inFlight.tryAcquire(permits, timeout.toMillis() + 1000, TimeUnit.MILLISECONDS);
+        recording = false;
+        recordingEnd = System.currentTimeMillis();
+
+        write(options, mapper, durationNanos);
+    }
+
+    private void record(String kind, long latencyNanos) {
+        if (!recording) {
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        histograms.computeIfAbsent(kind, LoadGenerator::histogram).recordValue(micros);
+        histograms.computeIfAbsent(ALL, LoadGenerator::histogram).recordValue(micros);
+    }
+
+    private void error(String kind, String reason) {
+        if (!recording) {
+            return;
+        }
+        errors.computeIfAbsent(kind, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(reason, r -> new LongAdder()).increment();
+        errors.computeIfAbsent(ALL, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    private static Histogram histogram(String kind) {
+        Histogram histogram = new ConcurrentHistogram(3);
+        histogram.setTag(kind);
+        return histogram;
+    }
+
+    private void write(Map<String, String> options, ObjectMapper mapper, long durationNanos) throws IOException {
+        Path output = Path.of(options.get("output"));
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+
+        Map<String, Object> endpoints = new TreeMap<>();
+        try (PrintStream log = new PrintStream(Files.newOutputStream(Path.of(output + ".hlog")))) {
+            HistogramLogWriter writer = new HistogramLogWriter(log);
+            writer.outputComment("cars-website load test " + options);
+            writer.outputLogFormatVersion();
+            writer.outputLegend();
+            for (String kind : new TreeMap<>(histograms).keySet()) {
+                Histogram histogram = histograms.get(kind);
+                histogram.setStartTimeStamp(recordingStart);
+                histogram.setEndTimeStamp(recordingEnd);
+                writer.outputIntervalHistogram(histogram);
+                endpoints.put(kind, summary(histogram, errors.getOrDefault(kind, Map.of()), durationNanos));
+            }
+        }
+        for (String kind : errors.keySet()) {
+            endpoints.computeIfAbsent(kind, k -> summary(null, errors.get(k), durationNanos));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        report.put("latencyUnit", "ms");
+        report.put("endpoints", endpoints);
+        mapper.writeValue(Path.of(output + ".json").toFile(), report);
+
+        System.out.printf("%-12s %9s %8s %9s %9s %9s %9s %9s %7s%n", "kind", "count", "req/s", "p50", "p90",
+                "p99", "p99.9", "max", "errors");
+        endpoints.forEach((kind, value) -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> summary = (Map<String, Object>) value;
+            System.out.printf("%-12s %9d %8.1f %9.2f %9.2f %9.2f %9.2f %9.2f %7d%n", kind, summary.get("count"),
+                    summary.get("throughput"), summary.get("p50"), summary.get("p90"), summary.get("p99"),
+                    summary.get("p999"), summary.get("max"), summary.get("errorCount"));
+        });
+        System.out.println("Results written to " + output + ".json and " + output + ".hlog");
+    }
+
+    private static Map<String, Object> summary(Histogram histogram, Map<String, LongAdder> errors,
+            long durationNanos) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long count = histogram != null ? histogram.getTotalCount() : 0;
+        summary.put("count", count);
+        summary.put("throughput", count / (durationNanos / 1e9));
+        summary.put("mean", histogram != null ? histogram.getMean() / 1000.0 : 0.0);
+        summary.put("p50", millis(histogram, 50));
+        summary.put("p90", millis(histogram, 90));
+        summary.put("p99", millis(histogram, 99));
+        summary.put("p999", millis(histogram, 99.9));
+        summary.put("max", histogram != null ? histogram.getMaxValue() / 1000.0 : 0.0);
+
+        Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((reason, adder) -> errorCounts.put(reason, adder.sum()));
+        summary.put("errorCount", errorCounts.values().stream().mapToLong(Long::longValue).sum());
+        summary.put("errors", errorCounts);
+        return summary;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram != null ? histogram.getValueAtPercentile(percentile) / 1000.0 : 0.0;
+    }
+}
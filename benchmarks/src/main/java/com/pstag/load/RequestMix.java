@@ -0,0 +1,177 @@
+package com.pstag.load;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Draws the requests of a load test from a weighted mix of kinds:
+ * - filter: one to three filters of the side panel on /api/cars;
+ * - sort: a make and a sort on a numeric column;
+ * - search: a search on a real make and model;
+ * - deep-offset: a page in the second half of the catalog;
+ * - ui-params: /api/cars/ui-params;
+ * - xml: the export of one make on /api/cars/xml;
+ * - image: /api/cars/image/{id} of a car whose image URLs are stored.
+ *
+ * With the same catalog and seed, the same sequence of requests is drawn.
+ */
+final class RequestMix {
+
+    static final String DEFAULT = "filter=35,sort=20,search=15,deep-offset=10,ui-params=10,xml=2,image=8";
+
+    private static final String[] SORT_COLUMNS = { "velocity", "trimYear", "weight", "length" };
+
+    record Request(String kind, URI uri) {
+    }
+
+    private final String baseUrl;
+
+    private final Catalog catalog;
+
+    private final Random random;
+
+    private final String[] kinds;
+
+    private final int[] cumulativeWeights;
+
+    RequestMix(String baseUrl, Catalog catalog, Map<String, Integer> weights, long seed) {
+        this.baseUrl = baseUrl;
+        this.catalog = catalog;
+        this.random = new Random(seed);
+
+        List<String> enabled = new ArrayList<>();
+        List<Integer> cumulative = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            if (weight.getValue() <= 0 || (weight.getKey().equals("image") && catalog.idsWithImages.isEmpty())) {
+                continue;
+            }
+            total += weight.getValue();
+            enabled.add(weight.getKey());
+            cumulative.add(total);
+        }
+        if (enabled.isEmpty()) {
+            throw new IllegalArgumentException("The request mix has no positive weight");
+        }
+        kinds = enabled.toArray(new String[0]);
+        cumulativeWeights = cumulative.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Parses a mix written as kind=weight pairs separated by commas.
+     */
+    static Map<String, Integer> parse(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String pair : mix.split(",")) {
+            String[] parts = pair.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry: " + pair);
+            }
+            weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    Request next() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = 0;
+        while (pick >= cumulativeWeights[index]) {
+            index++;
+        }
+        String kind = kinds[index];
+
+        Map<String, String> query = new LinkedHashMap<>();
+        String path = "/api/cars";
+        switch (kind) {
+            case "filter":
+                addFilters(query);
+                break;
+            case "sort":
+                query.put("filter[make]", pick(catalog.makers));
+                query.put("sort[" + SORT_COLUMNS[random.nextInt(SORT_COLUMNS.length)] + "]",
+                        random.nextBoolean() ? "asc" : "desc");
+                break;
+            case "search":
+                String maker = pick(catalog.makers);
+                List<String> models = catalog.modelsByMaker.getOrDefault(maker, List.of());
+                query.put("search", models.isEmpty() || random.nextBoolean() ? maker : maker + " " + pick(models));
+                break;
+            case "deep-offset":
+                int half = catalog.totalRows / 2;
+                query.put("offset", Integer.toString(half + random.nextInt(Math.max(1, half - 10))));
+                if (random.nextBoolean()) {
+                    query.put("sort[velocity]", "desc");
+                }
+                break;
+            case "ui-params":
+                path = "/api/cars/ui-params";
+                break;
+            case "xml":
+                path = "/api/cars/xml";
+                query.put("filter[make]", pick(catalog.makers));
+                break;
+            case "image":
+                path = "/api/cars/image/" + pick(catalog.idsWithImages);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown request kind: " + kind);
+        }
+        if (path.equals("/api/cars")) {
+            query.put("limit", "10");
+        }
+        return new Request(kind, URI.create(baseUrl + path + encode(query)));
+    }
+
+    private void addFilters(Map<String, String> query) {
+        String maker = pick(catalog.makers);
+        query.put("filter[make]", maker);
+        int count = random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    List<String> models = catalog.modelsByMaker.getOrDefault(maker, List.of());
+                    if (!models.isEmpty()) {
+                        query.put("filter[model]", pick(models));
+                    }
+                    break;
+                case 1:
+                    int from = 1990 + random.nextInt(30);
+                    query.put("filter[trimYear]", "between(" + from + "," + (from + 1 + random.nextInt(5)) + ")");
+                    break;
+                case 2:
+                    query.put("filter[bodyType]", pick(catalog.bodyTypes));
+                    break;
+                case 3:
+                    query.put("filter[fuelType]", pick(catalog.fuelTypes));
+                    break;
+                default:
+                    query.put("filter[transmission]", pick(catalog.transmissions));
+                    break;
+            }
+        }
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static String encode(Map<String, String> query) {
+        if (query.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> entry : query.entrySet()) {
+            builder.append(builder.length() == 0 ? '?' : '&')
+                    .append(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,194 @@
+package com.pstag.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Uploads a CSV or NDJSON file of cars to /api/cars/ingest of a running
+ * application. The file is read from disk, or from the standard input when
+ * its name is "-", and sent in uploads of at most --chunk-size bytes, cut
+ * between two cars, so that any file fits the max-body-size of the
+ * application and only one upload is held in memory. Each CSV upload starts
+ * with the header line of the file. It only depends on the JDK, to be run
+ * straight from the application jar:
+ *
+ * java -cp target/quarkus-app/app/cars-website-1.0.jar com.pstag.cli.IngestClient
+ * [--url=http://localhost:8080] [--format=csv|ndjson] [--token=...] [--chunk-size=bytes] file
+ *
+ * The format defaults to the extension of the file, .csv or .ndjson/.jsonl,
+ * the token, the ingest.token of the application, to the QUARKUS_INGEST_TOKEN
+ * environment variable, and the chunk size to 8 MiB, below the 10M default of
+ * quarkus.http.limits.max-body-size.
+ *
+ * Each upload is ingested in a transaction of its own: when one is rejected,
+ * the uploads before it stay committed and the client stops, printing the
+ * number of the first car that was not ingested. Since known cars are
+ * updated rather than inserted again, the whole file can be sent again once
+ * it is fixed.
+ *
+ * The process exits with 0 when the cars were ingested, 1 when the server
+ * rejected an upload and 2 on a usage error.
+ */
+public class IngestClient {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = "http://localhost:8080";
+        String format = null;
+        String token = System.getenv("QUARKUS_INGEST_TOKEN");
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        String file = null;
+        for (String arg : args) {
+            if (arg.startsWith("--url=")) {
+                url = arg.substring("--url=".length()).replaceAll("/$", "");
+            } else if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else if (arg.startsWith("--token=")) {
+                token = arg.substring("--token=".length());
+            } else if (arg.startsWith("--chunk-size=")) {
+                try {
+                    chunkSize = Integer.parseInt(arg.substring("--chunk-size=".length()));
+                } catch (NumberFormatException e) {
+                    usage("Invalid chunk size " + arg);
+                }
+            } else if (file == null && (!arg.startsWith("--") || arg.equals("-"))) {
+                file = arg;
+            } else {
+                usage("Unknown argument " + arg);
+            }
+        }
+        if (file == null) {
+            usage("Missing file");
+        }
+        if (token == null || token.isEmpty()) {
+            usage("Missing token, use --token= or QUARKUS_INGEST_TOKEN");
+        }
+        if (format == null) {
+            format = file.endsWith(".csv") ? "csv" : file.endsWith(".ndjson") || file.endsWith(".jsonl") ? "ndjson"
+                    : null;
+        }
+        if (!"csv".equals(format) && !"ndjson".equals(format)) {
+            usage("Unknown format, use --format=csv or --format=ndjson");
+        }
+        if (chunkSize < 1) {
+            usage("The chunk size must be positive");
+        }
+
+        String source = file;
+        boolean csv = format.equals("csv");
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        long start = System.nanoTime();
+        int chunks = 0;
+        long cars = 0;
+        try (InputStream input = source.equals("-") ? System.in : Files.newInputStream(Path.of(source))) {
+            Records records = new Records(new BufferedInputStream(input), csv);
+            byte[] header = csv ? records.next() : new byte[0];
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            byte[] record = records.next();
+            while (record != null) {
+                chunk.reset();
+                chunk.write(header);
+                long first = cars + 1;
+                // A car larger than the chunk is sent on its own
+                while (record != null && (cars < first || chunk.size() + record.length <= chunkSize)) {
+                    chunk.write(record);
+                    cars++;
+                    record = records.next();
+                }
+                chunks++;
+
+                HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/api/cars/ingest"))
+                        .header("Content-Type", csv ? "text/csv" : "application/x-ndjson")
+                        .header("Authorization", "Bearer " + token)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(chunk.toByteArray()))
+                        .build();
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                System.out.println(response.body());
+                System.err.printf("Upload %d, cars %d to %d, %d bytes: %d%n", chunks, first, cars, chunk.size(),
+                        response.statusCode());
+                if (response.statusCode() != 200) {
+                    System.err.printf("Stopped at car %d of %s, the cars before it are ingested%n", first,
+                            source.equals("-") ? "stdin" : source);
+                    System.exit(1);
+                }
+            }
+        }
+        System.err.printf("%d cars of %s in %d uploads in %.1f s%n", cars, source.equals("-") ? "stdin" : source,
+                chunks, (System.nanoTime() - start) / 1e9);
+        System.exit(0);
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println(
+                "Usage: IngestClient [--url=http://localhost:8080] [--format=csv|ndjson] [--token=...] "
+                        + "[--chunk-size=bytes] file|-");
+        System.exit(2);
+    }
+
+    /**
+     * Reads a file one car at a time, each car with its line break. A CSV car
+     * ends at a line break outside double quotes, so that a quoted field may
+     * span several lines; an NDJSON car ends at any line break. Blank lines
+     * are skipped. Line breaks and quotes are single bytes in UTF-8, which no
+     * other character contains.
+     */
+    private static final class Records {
+
+        private final InputStream input;
+
+        private final boolean csv;
+
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+        Records(InputStream input, boolean csv) {
+            this.input = input;
+            this.csv = csv;
+        }
+
+        /**
+         * @return the next car, or null at the end of the file
+         */
+        byte[] next() throws IOException {
+            while (true) {
+                record.reset();
+                boolean quoted = false;
+                boolean blank = true;
+                int b;
+                while ((b = input.read()) != -1) {
+                    record.write(b);
+                    if (b == '"' && csv) {
+                        quoted = !quoted;
+                        blank = false;
+                    } else if (b == '\n' && !quoted) {
+                        break;
+                    } else if (b != '\r' && b != ' ' && b != '\t') {
+                        blank = false;
+                    }
+                }
+                if (b == -1 && record.size() == 0) {
+                    return null;
+                }
+                if (!blank) {
+                    if (b == -1) {
+                        record.write('\n');
+                    }
+                    return record.toByteArray();
+                }
+                if (b == -1) {
+                    return null;
+                }
+            }
+        }
+    }
+}
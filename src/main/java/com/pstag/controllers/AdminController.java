@@ -0,0 +1,94 @@
+package com.pstag.controllers;
+
+import java.util.List;
+
+import com.pstag.entities.BlockedThreadSample;
+import com.pstag.entities.IndexAdvice;
+import com.pstag.entities.QueryLogEntry;
+import com.pstag.entities.QueryPlan;
+import com.pstag.services.EventLoopBlockingDetector;
+import com.pstag.services.IndexAdvisor;
+import com.pstag.services.QueryLog;
+import com.pstag.services.VirtualThreadPinningDetector;
+import com.pstag.utils.GenericResponse;
+
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+@Path("/api/admin")
+public class AdminController {
+    private final EventLoopBlockingDetector eventLoopBlockingDetector;
+
+    private final VirtualThreadPinningDetector virtualThreadPinningDetector;
+
+    private final QueryLog queryLog;
+
+    private final IndexAdvisor indexAdvisor;
+
+    @Inject
+    public AdminController(EventLoopBlockingDetector eventLoopBlockingDetector,
+            VirtualThreadPinningDetector virtualThreadPinningDetector, QueryLog queryLog,
+            IndexAdvisor indexAdvisor) {
+        this.eventLoopBlockingDetector = eventLoopBlockingDetector;
+        this.virtualThreadPinningDetector = virtualThreadPinningDetector;
+        this.queryLog = queryLog;
+        this.indexAdvisor = indexAdvisor;
+    }
+
+    @GET
+    @Path("/event-loop/blocked")
+    public GenericResponse<List<BlockedThreadSample>> getBlockedEventLoops() {
+        return new GenericResponse<>(eventLoopBlockingDetector.getSamples(),
+                "Blocked event loop samples fetched successfully");
+    }
+
+    @GET
+    @Path("/virtual-threads/pinned")
+    public GenericResponse<List<BlockedThreadSample>> getPinnedVirtualThreads() {
+        return new GenericResponse<>(virtualThreadPinningDetector.getSamples(),
+                "Pinned virtual thread samples fetched successfully");
+    }
+
+    @GET
+    @Path("/queries")
+    public GenericResponse<List<QueryLogEntry>> getQueries() {
+        return new GenericResponse<>(queryLog.getEntries(), "Query log fetched successfully");
+    }
+
+    @GET
+    @Path("/queries/plans")
+    public GenericResponse<List<QueryPlan>> getQueryPlans() {
+        return new GenericResponse<>(queryLog.getPlans(), "Slow query plans fetched successfully");
+    }
+
+    @GET
+    @Path("/indexes/advice")
+    public Uni<GenericResponse<List<IndexAdvice>>> getIndexAdvice() {
+        return indexAdvisor.getAdvice()
+                .onItem().transform(advice -> new GenericResponse<>(advice, "Index advice fetched successfully"));
+    }
+
+    /**
+     * Creates a proposed index. The endpoint runs DDL and has no
+     * authentication, so it answers 403 unless index-advisor.create.enabled
+     * is set, for a deployment where /api/admin is not reachable from outside.
+     */
+    @POST
+    @Path("/indexes/{name}")
+    public Uni<Response> createIndex(@PathParam("name") String name) {
+        if (!indexAdvisor.isCreateEnabled()) {
+            return Uni.createFrom().item(Response.status(Status.FORBIDDEN)
+                    .entity(new GenericResponse<>(null, "Index creation is disabled")).build());
+        }
+        return indexAdvisor.createIndex(name)
+                .onItem().transform(advice -> Response.ok(advice.isEmpty()
+                        ? new GenericResponse<>(advice, "Index not proposed")
+                        : new GenericResponse<>(advice, "Index creation started")).build());
+    }
+}
@@ -1,15 +1,28 @@
 package com.pstag.controllers;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
-import java.util.stream.Collectors;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
-import com.pstag.entities.CarEntity;
+import com.pstag.entities.EnrichmentJob;
+import com.pstag.services.BlockingExecutor;
+import com.pstag.services.CarIngestService;
 import com.pstag.services.CarService;
+import com.pstag.services.CatalogCache;
+import com.pstag.services.DatabaseRouter;
+import com.pstag.services.EnrichmentJobService;
+import com.pstag.services.SimilarCarService;
+import com.pstag.utils.CarFields;
+import com.pstag.utils.CarRecordReader;
 import com.pstag.utils.GenericResponse;
+import com.pstag.utils.QueryParameters;
 import com.pstag.utils.TotalRowsAndData;
 
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
@@ -21,83 +34,216 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.UriInfo;
+import io.smallrye.common.annotation.Blocking;
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.pgclient.PgPool;
 
 import jakarta.inject.Inject;
 
 @Path("/api/cars")
 public class CarController {
-    private final PgPool client;
+    private final DatabaseRouter router;
 
     private final CarService service;
 
+    private final EnrichmentJobService enrichmentJobService;
+
+    private final BlockingExecutor blockingExecutor;
+
+    private final CarIngestService ingestService;
+
+    private final CatalogCache catalogCache;
+
+    private final SimilarCarService similarCarService;
+
     @Inject
-    public CarController(PgPool client, CarService service) {
-        this.client = client;
+    public CarController(DatabaseRouter router, CarService service, EnrichmentJobService enrichmentJobService,
+            BlockingExecutor blockingExecutor, CarIngestService ingestService, CatalogCache catalogCache,
+            SimilarCarService similarCarService) {
+        this.router = router;
         this.service = service;
+        this.enrichmentJobService = enrichmentJobService;
+        this.blockingExecutor = blockingExecutor;
+        this.ingestService = ingestService;
+        this.catalogCache = catalogCache;
+        this.similarCarService = similarCarService;
     }
 
+    /**
+     * Lists the cars matching the filters and search. With fields=, only the
+     * given fields of the cars are read and written, such as
+     * fields=make,model,velocity for a grid; the id is always included.
+     * Malformed filters, such as a BETWEEN on a text column, answer 400.
+     * A search paged from the in-memory catalog (see CarService.findAll) has
+     * a totalRows, and a choice of cars, up to catalog.top-k.max-staleness-ms
+     * old; the cars themselves are read from the database.
+     */
     @GET
-    public Uni<TotalRowsAndData<CarEntity>> get(
+    public Uni<Response> get(
             @Context UriInfo uriInfo,
             @QueryParam("search") String search,
             @QueryParam("limit") @DefaultValue("10") int limit,
-            @QueryParam("offset") @DefaultValue("0") int offset) {
-        Map<String, String> filters = uriInfo.getQueryParameters().entrySet().stream()
-                .filter(entry -> entry.getKey().startsWith("filter["))
-                .collect(Collectors.toMap(
-                        entry -> entry.getKey().substring(7, entry.getKey().length() - 1),
-                        entry -> entry.getValue().get(0)));
-        Map<String, String> sorts = uriInfo.getQueryParameters().entrySet().stream()
-                .filter(entry -> entry.getKey().startsWith("sort["))
-                .collect(Collectors.toMap(
-                        entry -> entry.getKey().substring(5, entry.getKey().length() - 1),
-                        entry -> entry.getValue().get(0)));
-
-        return service.findAll(client, filters, search, sorts, limit, offset);
+            @QueryParam("offset") @DefaultValue("0") int offset,
+            @QueryParam("fields") String fields) {
+        Map<String, String> filters = QueryParameters.bracketed(uriInfo.getRequestUri().getRawQuery(), "filter");
+        Map<String, String> sorts = QueryParameters.bracketed(uriInfo.getRequestUri().getRawQuery(), "sort");
+        Set<String> columns = CarFields.parse(fields);
+
+        return Uni.createFrom().deferred(() -> router.read(DatabaseRouter.CATALOG,
+                pool -> service.findAll(pool, filters, search, sorts, limit, offset, columns)))
+                .onItem().transform(page -> Response.ok(columns == null ? page
+                        : new TotalRowsAndData<>(page.getTotalRows(), page.getData().stream()
+                                .map(car -> CarFields.project(car, columns)).toList()))
+                        .build())
+                .onFailure(IllegalArgumentException.class)
+                .recoverWithItem(e -> Response.status(Status.BAD_REQUEST)
+                        .entity(new GenericResponse<>(null, e.getMessage())).build());
     }
 
     @GET
     @Path("/xml")
     @Produces("application/xml")
-    public Response getXml(@Context UriInfo uriInfo,
-            @QueryParam("search") String search) {
-        Map<String, String> filters = uriInfo.getQueryParameters().entrySet().stream()
-                .filter(entry -> entry.getKey().startsWith("filter["))
-                .collect(Collectors.toMap(
-                        entry -> entry.getKey().substring(7, entry.getKey().length() - 1),
-                        entry -> entry.getValue().get(0)));
-        Map<String, String> sorts = uriInfo.getQueryParameters().entrySet().stream()
-                .filter(entry -> entry.getKey().startsWith("sort["))
-                .collect(Collectors.toMap(
-                        entry -> entry.getKey().substring(5, entry.getKey().length() - 1),
-                        entry -> entry.getValue().get(0)));
-        String xml = service.getXml(client, filters, sorts, search);
-        return Response.ok(xml).header("Content-Disposition", "attachment; filename=\"cars.xml\"").build();
+    public Uni<Response> getXml(@Context UriInfo uriInfo,
+            @QueryParam("search") String search,
+            @QueryParam("fields") String fields) {
+        Map<String, String> filters = QueryParameters.bracketed(uriInfo.getRequestUri().getRawQuery(), "filter");
+        Map<String, String> sorts = QueryParameters.bracketed(uriInfo.getRequestUri().getRawQuery(), "sort");
+        Set<String> columns = CarFields.parse(fields);
+        // The export is blocking: it holds a permit of the executor, and is retried on the primary within it
+        return blockingExecutor.submit("xml", () -> router.read(DatabaseRouter.CATALOG,
+                pool -> Uni.createFrom().item(() -> service.getXml(pool, filters, sorts, search, columns)))
+                .await().indefinitely())
+                .onItem().transform(xml -> Response.ok(xml)
+                        .header("Content-Disposition", "attachment; filename=\"cars.xml\"").build())
+                .onFailure(IllegalArgumentException.class)
+                .recoverWithItem(e -> Response.status(Status.BAD_REQUEST).entity(e.getMessage()).build())
+                .onFailure(RejectedExecutionException.class)
+                .recoverWithItem(e -> Response.status(Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build());
     }
 
-    // @PATCH
-    // @Path("/fill-missing-data")
-    // public GenericResponse<String> fillMissingData() {
-    //     return service.fillMissingData(client);
-    // }
+    /**
+     * Upserts the cars of a CSV or NDJSON upload. The endpoint is blocking so
+     * that the body is handed over as it arrives instead of being buffered.
+     * It answers 403 when ingest.token is not set and 401 when the upload
+     * does not carry that token.
+     */
+    @POST
+    @Path("/ingest")
+    @Blocking
+    @Consumes({ "text/csv", "application/x-ndjson" })
+    public Uni<Response> ingest(@Context HttpHeaders headers, InputStream body) {
+        if (!ingestService.isEnabled()) {
+            return Uni.createFrom().item(Response.status(Status.FORBIDDEN)
+                    .entity(new GenericResponse<>(null, "Ingest is disabled")).build());
+        }
+        if (!ingestService.isAuthorized(headers.getHeaderString(HttpHeaders.AUTHORIZATION))) {
+            return Uni.createFrom().item(Response.status(Status.UNAUTHORIZED)
+                    .entity(new GenericResponse<>(null, "Invalid ingest token")).build());
+        }
+        CarRecordReader.Format format = headers.getMediaType().getSubtype().equals("csv")
+                ? CarRecordReader.Format.CSV
+                : CarRecordReader.Format.NDJSON;
+        return blockingExecutor.submit("ingest", () -> ingestService.ingest(body, format))
+                .onItem().transform(result -> Response.ok(new GenericResponse<>(result, "Cars ingested successfully"))
+                        .build())
+                .onFailure(IllegalArgumentException.class)
+                .recoverWithItem(e -> Response.status(Status.BAD_REQUEST)
+                        .entity(new GenericResponse<>(null, e.getMessage())).build())
+                .onFailure(RejectedExecutionException.class)
+                .recoverWithItem(e -> Response.status(Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build());
+    }
+
+    /**
+     * Starts or resumes the enrichment job. Like the stop and status endpoints,
+     * it answers 403 when enrichment.token is not set and 401 when the request
+     * does not carry that token.
+     */
+    @POST
+    @Path("/enrichment/start")
+    public Uni<Response> startEnrichment(@Context HttpHeaders headers) {
+        return enrichment(headers, () -> enrichmentJobService.start(router.write()));
+    }
+
+    @POST
+    @Path("/enrichment/stop")
+    public Uni<Response> stopEnrichment(@Context HttpHeaders headers) {
+        return enrichment(headers, () -> enrichmentJobService.stop(router.write()));
+    }
+
+    @GET
+    @Path("/enrichment/status")
+    public Uni<Response> getEnrichmentStatus(@Context HttpHeaders headers) {
+        return enrichment(headers, () -> enrichmentJobService.status(router.write()));
+    }
+
+    private Uni<Response> enrichment(HttpHeaders headers, Supplier<Uni<GenericResponse<EnrichmentJob>>> action) {
+        if (!enrichmentJobService.isEnabled()) {
+            return Uni.createFrom().item(Response.status(Status.FORBIDDEN)
+                    .entity(new GenericResponse<>(null, "Enrichment is disabled")).build());
+        }
+        if (!enrichmentJobService.isAuthorized(headers.getHeaderString(HttpHeaders.AUTHORIZATION))) {
+            return Uni.createFrom().item(Response.status(Status.UNAUTHORIZED)
+                    .entity(new GenericResponse<>(null, "Invalid enrichment token")).build());
+        }
+        return Uni.createFrom().deferred(action::get)
+                .onItem().transform(response -> Response.ok(response).build());
+    }
 
     @GET
     @Path("/ui-params")
     public Uni<GenericResponse<Map<String, Object>>> getUiParams() {
-        return service.getUiParams(client);
+        Map<String, Object> facets = catalogCache.getUiParams();
+        if (facets != null) {
+            return Uni.createFrom().item(new GenericResponse<>(facets, "UI parameters fetched successfully"));
+        }
+        return router.read(DatabaseRouter.CATALOG, service::getUiParams);
+    }
+
+    /**
+     * Returns the histograms of length, weight and velocity under the filters
+     * and search of the list, for the range sliders.
+     */
+    @GET
+    @Path("/histograms")
+    public Uni<Response> getHistograms(
+            @Context UriInfo uriInfo,
+            @QueryParam("search") String search,
+            @QueryParam("mode") @DefaultValue("width") String mode,
+            @QueryParam("buckets") @DefaultValue("20") int buckets) {
+        Map<String, String> filters = QueryParameters.bracketed(uriInfo.getRequestUri().getRawQuery(), "filter");
+        return Uni.createFrom().deferred(() -> router.read(DatabaseRouter.CATALOG,
+                pool -> service.getHistograms(pool, filters, search, mode, buckets)))
+                .onItem().transform(response -> Response.ok(response).build())
+                .onFailure(IllegalArgumentException.class)
+                .recoverWithItem(e -> Response.status(Status.BAD_REQUEST)
+                        .entity(new GenericResponse<>(null, e.getMessage())).build());
+    }
+
+    /**
+     * Returns the k cars most similar to a car, for its detail view.
+     */
+    @GET
+    @Path("/{id}/similar")
+    public Uni<Response> getSimilar(@PathParam("id") Long id, @QueryParam("k") @DefaultValue("10") int k) {
+        return Uni.createFrom().deferred(() -> similarCarService.getSimilar(router, id, k))
+                .onItem().transform(response -> Response.ok(response).build())
+                .onFailure(IllegalArgumentException.class)
+                .recoverWithItem(e -> Response.status(Status.BAD_REQUEST)
+                        .entity(new GenericResponse<>(null, e.getMessage())).build())
+                .onFailure(e -> e instanceof IllegalStateException || e instanceof RejectedExecutionException)
+                .recoverWithItem(e -> Response.status(Status.SERVICE_UNAVAILABLE)
+                        .entity(new GenericResponse<>(null, e.getMessage())).build());
     }
 
     @GET
     @Path("/image/{id}")
     public Uni<GenericResponse<Map<String, String>>> getImage(@PathParam("id") Long id) {
-        return service.getImage(client, id);
+        return service.getImage(router, id);
     }
     
 }
@@ -0,0 +1,12 @@
+package com.pstag.entities;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record BlockedThreadSample(
+    String thread,
+    long blockedMillis,
+    LocalDateTime detectedAt,
+    List<String> stackTrace
+) {
+}
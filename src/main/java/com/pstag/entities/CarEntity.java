@@ -53,6 +53,34 @@ public record CarEntity(
 
     }
 
+    /**
+     * Parses the bounds of a BETWEEN filter with the type of the column. The
+     * integer columns accept fractional bounds, such as the years of a range
+     * slider, and round them inwards: between(2015.5,2020) is 2016 to 2020.
+     *
+     * @throws IllegalArgumentException if the column is not numeric or a bound
+     *                                  is not a number
+     */
+    public static Number[] parseRange(String fieldName, String low, String high) {
+        try {
+            switch (fieldName) {
+                case "id":
+                    return new Number[] { (long) Math.ceil(Double.parseDouble(low)),
+                            (long) Math.floor(Double.parseDouble(high)) };
+                case "trim_year":
+                    return new Number[] { (int) Math.ceil(Double.parseDouble(low)),
+                            (int) Math.floor(Double.parseDouble(high)) };
+                case "length", "weight", "velocity":
+                    return new Number[] { Double.parseDouble(low), Double.parseDouble(high) };
+                default:
+                    throw new IllegalArgumentException("Invalid BETWEEN filter field: " + fieldName);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "Invalid BETWEEN filter value for " + fieldName + ": (" + low + "," + high + ")");
+        }
+    }
+
     @Override
     public String toString() {
         return "CarEntity{" +
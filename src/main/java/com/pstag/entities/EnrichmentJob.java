@@ -0,0 +1,33 @@
+package com.pstag.entities;
+
+import java.time.LocalDateTime;
+
+public record EnrichmentJob(
+    Long id,
+    String status,
+    long lastId,
+    int processed,
+    int updated,
+    int failed,
+    String error,
+    boolean stopRequested,
+    LocalDateTime createdAt,
+    LocalDateTime updatedAt,
+    LocalDateTime finishedAt
+) {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String STOPPED = "STOPPED";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    public static final String INTERRUPTED = "INTERRUPTED";
+
+    /**
+     * A job is resumable when it did not reach the end of the table, either
+     * because it was stopped, failed or was interrupted by the death of the
+     * node running it.
+     */
+    public boolean isResumable() {
+        return !COMPLETED.equals(status);
+    }
+}
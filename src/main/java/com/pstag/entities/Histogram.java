@@ -0,0 +1,18 @@
+package com.pstag.entities;
+
+import java.util.List;
+
+public record Histogram(
+    String mode,
+    long count,
+    Double min,
+    Double max,
+    List<Bucket> buckets
+) {
+    public record Bucket(
+        double low,
+        double high,
+        long count
+    ) {
+    }
+}
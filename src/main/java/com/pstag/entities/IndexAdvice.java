@@ -0,0 +1,14 @@
+package com.pstag.entities;
+
+import java.util.List;
+
+public record IndexAdvice(
+    String name,
+    String shape,
+    String definition,
+    String coveredBy,
+    String status,
+    List<QueryLatency> before,
+    List<QueryLatency> after
+) {
+}
@@ -0,0 +1,12 @@
+package com.pstag.entities;
+
+import java.util.List;
+
+public record IngestResult(
+    long read,
+    int inserted,
+    int updated,
+    List<Integer> years,
+    double durationMillis
+) {
+}
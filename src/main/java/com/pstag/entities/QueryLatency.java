@@ -0,0 +1,9 @@
+package com.pstag.entities;
+
+public record QueryLatency(
+    String query,
+    long samples,
+    double meanMillis,
+    double p95Millis
+) {
+}
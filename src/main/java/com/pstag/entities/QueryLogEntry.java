@@ -0,0 +1,14 @@
+package com.pstag.entities;
+
+import java.time.LocalDateTime;
+
+public record QueryLogEntry(
+    String query,
+    String shape,
+    String sql,
+    int parameterCount,
+    double durationMillis,
+    boolean slow,
+    LocalDateTime executedAt
+) {
+}
@@ -0,0 +1,14 @@
+package com.pstag.entities;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record QueryPlan(
+    String query,
+    String shape,
+    String sql,
+    double durationMillis,
+    List<String> plan,
+    LocalDateTime capturedAt
+) {
+}
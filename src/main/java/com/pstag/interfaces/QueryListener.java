@@ -0,0 +1,21 @@
+package com.pstag.interfaces;
+
+import java.util.List;
+
+/**
+ * Receives every statement timed by QueryMetrics once it finished.
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+    /**
+     * @param query      the name of the statement
+     * @param shape      the QueryShape of the statement
+     * @param sql        the SQL with its placeholders, or null when the caller
+     *                   did not provide it
+     * @param parameters the values bound to the placeholders
+     * @param nanos      the execution time in nanoseconds
+     * @param failed     true when the statement failed
+     */
+    void onQuery(String query, String shape, String sql, List<Object> parameters, long nanos, boolean failed);
+}
@@ -1,26 +1,35 @@
 package com.pstag.repositories;
 
-import io.quarkus.logging.Log;
-
 import com.pstag.entities.CarEntity;
 import com.pstag.entities.ExteriorColor;
+import com.pstag.entities.Histogram;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.json.JsonArray;
 import io.vertx.mutiny.pgclient.PgPool;
 import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlClient;
 import io.vertx.mutiny.sqlclient.Tuple;
+import com.pstag.utils.CarFields;
+import com.pstag.utils.Histograms;
+import com.pstag.utils.QueryMetrics;
+import com.pstag.utils.QueryShape;
 import com.pstag.utils.SqlQueryBuilder;
 import com.pstag.utils.SqlQueryBuilder.Query;
 import com.pstag.utils.TotalRowsAndData;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
 
 /**
  * The CarRepository class provides methods to interact with the "cars" table in
@@ -31,7 +40,9 @@ import java.util.Map;
  * Methods:
  * - findAll: Retrieves a paginated list of CarEntity objects based on filters,
  * search criteria, and sorting options.
+ * - listQuery: Creates the query of findAll before pagination.
  * - updateCar: Updates the car entity with the specified ID in the database.
+ * - updateCars: Updates the color and velocity of many cars in one statement.
  * - getMakers: Retrieves a list of unique car makers from the database.
  * - getMakerAndModel: Retrieves a map of car makes and their corresponding
  * models from the database.
@@ -41,10 +52,16 @@ import java.util.Map;
  * - getBodyTypes: Retrieves a list of unique car body types from the database.
  * - getFuelTypes: Retrieves a list of unique fuel types from the cars table.
  * - getById: Retrieves a CarEntity by its ID from the database.
+ * - getByIds: Retrieves the cars with the given IDs, in their order.
+ * - findMissingData: Retrieves the next cars missing velocity or color after a
+ * keyset cursor.
  * - updateCarColorAndImageUrl: Updates the color and image URL of a car in the
  * database.
  * - countTotalRows: Counts the total number of rows in the "cars" table based
  * on filters and search criteria.
+ * - getHistograms: Computes the histograms of length, weight and velocity in
+ * one aggregation.
+ * - from: Converts a Row object to a CarEntity object.
  * 
  * Private Helper Methods:
  * - applyFilters: Applies the given filters to the provided SqlQueryBuilder.
@@ -53,10 +70,11 @@ import java.util.Map;
  * - handleDefaultFilter: Adds a default filter to the SQL query.
  * - applySearch: Applies the search criteria to the provided SqlQueryBuilder.
  * - applySort: Applies the sorting options to the provided SqlQueryBuilder.
- * - from: Converts a Row object to a CarEntity object.
  */
 public class CarRepository {
 
+    private static final String LIST_COLUMNS = String.join(", ", CarFields.COLUMNS);
+
     private CarRepository() {
         // Private constructor to hide the implicit public one
     }
@@ -65,7 +83,8 @@ public class CarRepository {
      * Retrieves a paginated list of CarEntity objects from the database based on
      * the provided filters, search criteria, and sorting options.
      * 
-     * @param client  the PgPool client used to execute the database queries
+     * @param client  the client used to execute the query, a PgPool or a connection
+     *                shared by pipelined statements
      * @param filters a map of column names to filter values for filtering the
      *                results
      * @param search  a search string to filter the results based on a search
@@ -78,28 +97,40 @@ public class CarRepository {
      * @return a Uni containing a TotalRowsAndData object which includes the total
      *         number of rows matching the criteria and a list of CarEntity objects
      */
-    public static Uni<TotalRowsAndData<CarEntity>> findAll(PgPool client, Map<String, String> filters, String search,
+    public static Uni<TotalRowsAndData<CarEntity>> findAll(SqlClient client, Map<String, String> filters, String search,
             Map<String, String> sorts,
             int limit,
             int offset) {
-        SqlQueryBuilder queryBuilder = new SqlQueryBuilder();
-        queryBuilder.select(
-                "id, make, model, trim_year, trim_name, trim_description, fuel_type, transmission, body_type, color, length, weight, velocity, image_url")
-                .from("cars");
+        return findAll(client, filters, search, sorts, limit, offset, null);
+    }
 
-        applyFilters(queryBuilder, filters);
-        applySearch(queryBuilder, search);
-        applySort(queryBuilder, sorts);
+    /**
+     * Retrieves a page of cars like findAll, reading and decoding only some of
+     * their columns. The other fields of the cars are null, or 0 when they are
+     * primitive.
+     *
+     * @param client  the client used to execute the query
+     * @param filters a map of column names to filter values
+     * @param search  a search string, or null
+     * @param sorts   a map of column names to sort directions
+     * @param limit   the maximum number of results to return
+     * @param offset  the number of results to skip
+     * @param columns the columns to read, from CarFields.parse, or null for
+     *                every column
+     * @return a Uni containing the total number of matching rows and the page
+     */
+    public static Uni<TotalRowsAndData<CarEntity>> findAll(SqlClient client, Map<String, String> filters, String search,
+            Map<String, String> sorts, int limit, int offset, Set<String> columns) {
+        String shape = QueryShape.of(filters, search, sorts);
+        SqlQueryBuilder queryBuilder = listQuery(filters, search, sorts, columns);
 
         // copy queryBuilder to avoid modifying the original instance
         Query queryBuilderWithoutPagination = queryBuilder.count();
 
-        // print query
-        Log.info(queryBuilderWithoutPagination.getSql());
-        Log.info(queryBuilderWithoutPagination.getParameters());
-
         Uni<Integer> totalRowsUni = client.preparedQuery(queryBuilderWithoutPagination.getSql())
                 .execute(Tuple.from(queryBuilderWithoutPagination.getParameters()))
+                .plug(statement -> QueryMetrics.time("cars.count", shape, queryBuilderWithoutPagination.getSql(),
+                        queryBuilderWithoutPagination.getParameters(), statement))
                 .onItem().transform(rowSet -> {
                     if (rowSet.iterator().hasNext()) {
                         Row row = rowSet.iterator().next();
@@ -117,15 +148,14 @@ public class CarRepository {
             queryBuilder.offset(offset);
         }
 
-        // print query
         Query query = queryBuilder.build();
-        Log.info(query.getSql());
-        Log.info(query.getParameters());
 
         Uni<List<CarEntity>> dataUni = client.preparedQuery(query.getSql())
                 .execute(Tuple.from(query.getParameters()))
+                .plug(statement -> QueryMetrics.time("cars.list", shape, query.getSql(), query.getParameters(),
+                        statement))
                 .onItem().transformToMulti(set -> Multi.createFrom().iterable(set))
-                .onItem().transform(CarRepository::from)
+                .onItem().transform(row -> from(row, columns))
                 .collect().asList();
 
         return Uni.combine().all().unis(totalRowsUni, dataUni)
@@ -133,6 +163,40 @@ public class CarRepository {
                 .onItem().transform(tuple -> new TotalRowsAndData<>(tuple.getItem1(), tuple.getItem2()));
     }
 
+    /**
+     * Creates the query of findAll, with the filters, search and sorting
+     * applied but without pagination.
+     *
+     * @param filters a map of column names to filter values
+     * @param search  a search string, or null
+     * @param sorts   a map of column names to sort directions
+     * @return the SqlQueryBuilder, from which findAll builds the count and the
+     *         page queries
+     */
+    public static SqlQueryBuilder listQuery(Map<String, String> filters, String search, Map<String, String> sorts) {
+        return listQuery(filters, search, sorts, null);
+    }
+
+    /**
+     * Creates the query of findAll for some of the columns.
+     *
+     * @param filters a map of column names to filter values
+     * @param search  a search string, or null
+     * @param sorts   a map of column names to sort directions
+     * @param columns the columns to select, or null for every column
+     * @return the SqlQueryBuilder, without pagination
+     */
+    public static SqlQueryBuilder listQuery(Map<String, String> filters, String search, Map<String, String> sorts,
+            Set<String> columns) {
+        SqlQueryBuilder queryBuilder = new SqlQueryBuilder();
+        queryBuilder.select(selectList(columns)).from("cars");
+
+        applyFilters(queryBuilder, filters);
+        applySearch(queryBuilder, search);
+        applySort(queryBuilder, sorts);
+        return queryBuilder;
+    }
+
     /**
      * Updates the car entity with the specified ID in the database.
      *
@@ -140,30 +204,72 @@ public class CarRepository {
      * @param id       the ID of the car to be updated
      * @param colors   a list of colors to update the car's color field
      * @param velocity the new velocity to update the car's velocity field
-     * @return a Uni containing the updated CarEntity
+     * @return a Uni containing the updated CarEntity, or null if no car has the
+     *         ID
      */
     public static Uni<CarEntity> updateCar(PgPool client, Long id, List<String> colors, Double velocity) {
-
-        List<CarEntity> result = client
+        return client
                 .preparedQuery("UPDATE cars SET color = $1, velocity = $2 WHERE id = $3 RETURNING *")
                 .execute(Tuple.of(colors.toArray(new String[0]), velocity, id))
-                .onItem().transformToMulti(set -> Multi.createFrom().iterable(set))
-                .onItem().transform(CarRepository::from)
-                .collect().asList()
-                .await().indefinitely();
+                .plug(statement -> QueryMetrics.time("cars.update", statement))
+                .onItem().invoke(set -> QueryMetrics.countRows("cars.update", set.rowCount()))
+                .onItem().transform(set -> set.iterator().hasNext() ? from(set.iterator().next()) : null);
+    }
+
+    /**
+     * Updates the color and velocity of many cars with a single UPDATE statement.
+     * The new values are sent as parallel arrays and joined back to the table
+     * with unnest, so N updates cost one round trip instead of N.
+     * Colors are sent as JSON arrays because unnest flattens multidimensional
+     * arrays.
+     *
+     * @param client the PgPool client used to interact with the database
+     * @param cars   the cars to update, only id, color and velocity are used
+     * @return a Uni containing the IDs of the updated cars
+     */
+    public static Uni<List<Long>> updateCars(PgPool client, List<CarEntity> cars) {
+        if (cars.isEmpty()) {
+            return Uni.createFrom().item(List.of());
+        }
+
+        Long[] ids = new Long[cars.size()];
+        String[] colors = new String[cars.size()];
+        Double[] velocities = new Double[cars.size()];
+        for (int i = 0; i < cars.size(); i++) {
+            CarEntity car = cars.get(i);
+            ids[i] = car.id();
+            colors[i] = new JsonArray(car.color() != null ? car.color() : List.of()).encode();
+            velocities[i] = car.velocity();
+        }
 
-        return Uni.createFrom().item(result.get(0));
+        return client.preparedQuery(
+                "UPDATE cars SET color = ARRAY(SELECT json_array_elements_text(u.color::JSON))::VARCHAR[], "
+                        + "velocity = u.velocity "
+                        + "FROM unnest($1::BIGINT[], $2::TEXT[], $3::FLOAT8[]) AS u(id, color, velocity) "
+                        + "WHERE cars.id = u.id RETURNING cars.id")
+                .execute(Tuple.of(ids, colors, velocities))
+                .plug(statement -> QueryMetrics.time("cars.update-batch", statement))
+                .onItem().invoke(rows -> QueryMetrics.countRows("cars.update-batch", rows.rowCount()))
+                .onItem().transform(rows -> {
+                    List<Long> updatedIds = new ArrayList<>(rows.rowCount());
+                    for (Row row : rows) {
+                        updatedIds.add(row.getLong("id"));
+                    }
+                    return updatedIds;
+                });
     }
 
     /**
      * Retrieves a list of unique car makers from the database.
      *
-     * @param client the PgPool client used to execute the query
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
      * @return a Uni containing a list of car makers as strings
      */
-    public static Uni<List<String>> getMakers(PgPool client) {
+    public static Uni<List<String>> getMakers(SqlClient client) {
         return client.query("SELECT make FROM cars GROUP BY make ORDER BY make")
                 .execute()
+                .plug(statement -> QueryMetrics.time("facets.makers", statement))
                 .onItem().transform(rows -> {
                     List<String> bodyTypes = new ArrayList<>();
                     for (Row row : rows) {
@@ -177,14 +283,16 @@ public class CarRepository {
      * Retrieves a map of car makes and their corresponding models from the
      * database.
      *
-     * @param client the PgPool client used to execute the query
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
      * @return a Uni containing a map where the key is the car make and the value is
      *         a list of models for that make
      */
-    public static Uni<Map<String, List<String>>> getMakerAndModel(PgPool client) {
+    public static Uni<Map<String, List<String>>> getMakerAndModel(SqlClient client) {
         return client
                 .query("SELECT make, model FROM cars GROUP BY make, model ORDER BY make, model") // Execute the query
                 .execute() // Get a RowSet<Row>
+                .plug(statement -> QueryMetrics.time("facets.makers-and-models", statement))
                 .onItem().transform(rows -> {
                     Map<String, List<String>> result = new HashMap<>();
 
@@ -202,12 +310,14 @@ public class CarRepository {
     /**
      * Retrieves a list of unique transmission types from the cars table.
      *
-     * @param client the PgPool client used to execute the query
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
      * @return a Uni containing a list of transmission types, ordered alphabetically
      */
-    public static Uni<List<String>> getTransmission(PgPool client) {
+    public static Uni<List<String>> getTransmission(SqlClient client) {
         return client.query("SELECT transmission FROM cars GROUP BY transmission ORDER BY transmission")
                 .execute()
+                .plug(statement -> QueryMetrics.time("facets.transmissions", statement))
                 .onItem().transform(rows -> {
                     List<String> transmissions = new ArrayList<>();
                     for (Row row : rows) {
@@ -220,12 +330,14 @@ public class CarRepository {
     /**
      * Retrieves a list of distinct car colors from the database.
      *
-     * @param client the PgPool client used to execute the query
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
      * @return a Uni containing a list of distinct car colors
      */
-    public static Uni<List<String>> getColors(PgPool client) {
+    public static Uni<List<String>> getColors(SqlClient client) {
         return client.query("SELECT color FROM cars WHERE color IS NOT NULL GROUP BY color ORDER BY color")
                 .execute()
+                .plug(statement -> QueryMetrics.time("facets.colors", statement))
                 .onItem().transform(rows -> {
                     List<String> colors = new ArrayList<>();
                     for (Row row : rows) {
@@ -238,13 +350,15 @@ public class CarRepository {
     /**
      * Retrieves a list of unique car body types from the database.
      *
-     * @param client the PgPool client used to execute the query
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
      * @return a Uni containing a list of unique car body types, ordered
      *         alphabetically
      */
-    public static Uni<List<String>> getBodyTypes(PgPool client) {
+    public static Uni<List<String>> getBodyTypes(SqlClient client) {
         return client.query("SELECT body_type FROM cars GROUP BY body_type ORDER BY body_type")
                 .execute()
+                .plug(statement -> QueryMetrics.time("facets.body-types", statement))
                 .onItem().transform(rows -> {
                     List<String> bodyTypes = new ArrayList<>();
                     for (Row row : rows) {
@@ -257,12 +371,14 @@ public class CarRepository {
     /**
      * Retrieves a list of unique fuel types from the cars table in the database.
      *
-     * @param client the PgPool client used to execute the query
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
      * @return a Uni containing a list of unique fuel types as strings
      */
-    public static Uni<List<String>> getFuelTypes(PgPool client) {
+    public static Uni<List<String>> getFuelTypes(SqlClient client) {
         return client.query("SELECT fuel_type FROM cars GROUP BY fuel_type ORDER BY fuel_type")
                 .execute()
+                .plug(statement -> QueryMetrics.time("facets.fuel-types", statement))
                 .onItem().transform(rows -> {
                     List<String> fuelTypes = new ArrayList<>();
                     for (Row row : rows) {
@@ -275,18 +391,81 @@ public class CarRepository {
     /**
      * Retrieves a CarEntity by its ID from the database.
      *
-     * @param client the PgPool client used to execute the query
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
      * @param id     the ID of the car to retrieve
      * @return a Uni containing the CarEntity if found, or null if not found
      */
-    public static Uni<CarEntity> getById(PgPool client, Long id) {
+    public static Uni<CarEntity> getById(SqlClient client, Long id) {
         return client.preparedQuery("SELECT * FROM cars WHERE id = $1")
                 .execute(Tuple.of(id))
+                .plug(statement -> QueryMetrics.time("cars.by-id", statement))
                 .onItem()
                 .transformToUni(set -> set.iterator().hasNext() ? Uni.createFrom().item(from(set.iterator().next()))
                         : Uni.createFrom().nullItem());
     }
 
+    /**
+     * Retrieves the cars with the given IDs, for a page whose order was
+     * already decided, such as the in-memory top-K of CarService.
+     *
+     * @param client the client used to execute the query, a PgPool or a connection
+     *               shared by pipelined statements
+     * @param ids    the IDs of the cars, in the order of the page
+     * @return a Uni containing the cars in the order of the IDs, without the
+     *         IDs no car has
+     */
+    public static Uni<List<CarEntity>> getByIds(SqlClient client, List<Long> ids) {
+        return getByIds(client, ids, null);
+    }
+
+    /**
+     * Retrieves the cars with the given IDs like getByIds, reading and decoding
+     * only some of their columns.
+     *
+     * @param client  the client used to execute the query
+     * @param ids     the IDs of the cars, in the order of the page
+     * @param columns the columns to read, from CarFields.parse, or null for
+     *                every column
+     * @return a Uni containing the cars in the order of the IDs
+     */
+    public static Uni<List<CarEntity>> getByIds(SqlClient client, List<Long> ids, Set<String> columns) {
+        return client.preparedQuery("SELECT " + selectList(columns) + " FROM cars WHERE id = ANY($1::BIGINT[])")
+                .execute(Tuple.of(ids.toArray(new Long[0])))
+                .plug(statement -> QueryMetrics.time("cars.by-ids", statement))
+                .onItem().transform(rows -> {
+                    Map<Long, CarEntity> cars = new HashMap<>();
+                    for (Row row : rows) {
+                        CarEntity car = from(row, columns);
+                        cars.put(car.id(), car);
+                    }
+                    return ids.stream().map(cars::get).filter(Objects::nonNull).toList();
+                });
+    }
+
+    /**
+     * Retrieves the next cars that are missing their velocity or color, ordered
+     * by ID and starting after the given keyset cursor.
+     * Unlike OFFSET paging, the cursor does not shift when rows leave the result
+     * set because they have just been updated.
+     *
+     * @param client  the PgPool client used to execute the query
+     * @param afterId the highest car ID already visited (0 to start from the
+     *                beginning)
+     * @param limit   the maximum number of cars to return
+     * @return a Uni containing the list of CarEntity objects, empty when the end
+     *         of the table is reached
+     */
+    public static Uni<List<CarEntity>> findMissingData(PgPool client, long afterId, int limit) {
+        return client.preparedQuery(
+                "SELECT * FROM cars WHERE id > $1 AND (velocity = 0 OR velocity IS NULL OR color IS NULL) ORDER BY id LIMIT $2")
+                .execute(Tuple.of(afterId, limit))
+                .plug(statement -> QueryMetrics.time("cars.missing-data", statement))
+                .onItem().transformToMulti(set -> Multi.createFrom().iterable(set))
+                .onItem().transform(CarRepository::from)
+                .collect().asList();
+    }
+
     /**
      * Updates the color and image URL of a car in the database.
      *
@@ -294,32 +473,30 @@ public class CarRepository {
      * @param id        the ID of the car to be updated
      * @param colors    a list of new colors to be set for the car
      * @param imageUrls a list of new image URLs to be set for the car
-     * @return a Uni containing the updated CarEntity
+     * @return a Uni containing the updated CarEntity, or null if no car has the
+     *         ID
      */
     public static Uni<CarEntity> updateCarColorAndImageUrl(PgPool client, Long id, List<String> colors,
             List<String> imageUrls) {
-        List<CarEntity> result = client
+        return client
                 .preparedQuery("UPDATE cars SET color = $1, image_url = $2 WHERE id = $3 RETURNING *")
                 .execute(Tuple.of(colors.toArray(new String[0]), imageUrls.toArray(new String[0]), id))
-                .onItem().transformToMulti(set -> Multi.createFrom().iterable(set))
-                .onItem().transform(CarRepository::from)
-                .collect().asList()
-                .await().indefinitely();
-
-        return Uni.createFrom().item(result.get(0));
+                .plug(statement -> QueryMetrics.time("cars.update-image-url", statement))
+                .onItem().transform(set -> set.iterator().hasNext() ? from(set.iterator().next()) : null);
     }
 
     /**
      * Counts the total number of rows in the "cars" table based on the provided
      * filters and search criteria.
      *
-     * @param client  the PgPool client used to execute the query
+     * @param client  the client used to execute the query, a PgPool or a connection
+     *                shared by pipelined statements
      * @param filters a map of filters to apply to the query
      * @param search  a search string to apply to the query
      * @return a Uni containing the total number of rows that match the filters and
      *         search criteria
      */
-    public static Uni<Integer> countTotalRows(PgPool client, Map<String, String> filters, String search) {
+    public static Uni<Integer> countTotalRows(SqlClient client, Map<String, String> filters, String search) {
         SqlQueryBuilder queryBuilder = new SqlQueryBuilder();
         queryBuilder.select("COUNT(*) AS total_rows")
                 .from("cars");
@@ -331,6 +508,8 @@ public class CarRepository {
 
         return client.preparedQuery(query.getSql())
                 .execute(Tuple.from(query.getParameters()))
+                .plug(statement -> QueryMetrics.time("cars.count", QueryShape.of(filters, search, null),
+                        query.getSql(), query.getParameters(), statement))
                 .onItem().transform(rowSet -> {
                     if (rowSet.iterator().hasNext()) {
                         Row row = rowSet.iterator().next();
@@ -341,6 +520,81 @@ public class CarRepository {
                 });
     }
 
+    /**
+     * Computes the histograms of length, weight and velocity of the cars
+     * matching the filters and search, in one aggregation: width_bucket over
+     * the range of each column for equi-width buckets, ntile for equi-depth
+     * ones. NULL velocities are left out.
+     *
+     * @param client  the client used to execute the query, a PgPool or a connection
+     *                shared by pipelined statements
+     * @param filters a map of filters to apply to the query
+     * @param search  a search string to apply to the query
+     * @param mode    equi-width or equi-depth
+     * @param buckets the number of buckets
+     * @return a Uni containing the histograms by column, in the order of
+     *         Histograms.COLUMNS
+     */
+    public static Uni<Map<String, Histogram>> getHistograms(SqlClient client, Map<String, String> filters,
+            String search, Histograms.Mode mode, int buckets) {
+        SqlQueryBuilder queryBuilder = new SqlQueryBuilder();
+        queryBuilder.select(Histograms.COLUMNS.toArray(new String[0])).from("cars");
+
+        applyFilters(queryBuilder, filters);
+        applySearch(queryBuilder, search);
+
+        Query filtered = queryBuilder.build();
+        String bucketCount = "$" + (filtered.getParameters().size() + 1);
+        StringJoiner histograms = new StringJoiner(" UNION ALL ");
+        for (String column : Histograms.COLUMNS) {
+            String bucket = mode == Histograms.Mode.WIDTH
+                    ? "CASE WHEN MIN(" + column + ") OVER () = MAX(" + column + ") OVER () THEN 1 ELSE LEAST("
+                            + "width_bucket(" + column + ", MIN(" + column + ") OVER (), MAX(" + column
+                            + ") OVER (), " + bucketCount + "), " + bucketCount + ") END"
+                    : "ntile(" + bucketCount + ") OVER (ORDER BY " + column + ")";
+            histograms.add("SELECT '" + column + "' AS column_name, bucket, MIN(value) AS low, MAX(value) AS high, "
+                    + "COUNT(*) AS cars FROM (SELECT " + column + " AS value, " + bucket + " AS bucket FROM filtered "
+                    + "WHERE " + column + " IS NOT NULL) " + column + "_buckets GROUP BY bucket");
+        }
+        String sql = "WITH filtered AS (" + filtered.getSql() + ") " + histograms + " ORDER BY column_name, bucket";
+        List<Object> parameters = new ArrayList<>(filtered.getParameters());
+        parameters.add(buckets);
+
+        return client.preparedQuery(sql)
+                .execute(Tuple.from(parameters))
+                .plug(statement -> QueryMetrics.time("cars.histograms", QueryShape.of(filters, search, null), sql,
+                        parameters, statement))
+                .onItem().transform(rows -> {
+                    Map<String, List<Row>> byColumn = new HashMap<>();
+                    for (Row row : rows) {
+                        byColumn.computeIfAbsent(row.getString("column_name"), column -> new ArrayList<>()).add(row);
+                    }
+                    Map<String, Histogram> result = new LinkedHashMap<>();
+                    for (String column : Histograms.COLUMNS) {
+                        List<Row> columnRows = byColumn.getOrDefault(column, List.of());
+                        if (columnRows.isEmpty()) {
+                            result.put(column, Histograms.empty(mode));
+                        } else if (mode == Histograms.Mode.WIDTH) {
+                            long[] counts = new long[buckets];
+                            double min = Double.POSITIVE_INFINITY;
+                            double max = Double.NEGATIVE_INFINITY;
+                            for (Row row : columnRows) {
+                                counts[row.getInteger("bucket") - 1] = row.getLong("cars");
+                                min = Math.min(min, row.getDouble("low"));
+                                max = Math.max(max, row.getDouble("high"));
+                            }
+                            result.put(column, Histograms.width(min, max, counts));
+                        } else {
+                            result.put(column, Histograms.depth(columnRows.stream()
+                                    .map(row -> new Histogram.Bucket(row.getDouble("low"), row.getDouble("high"),
+                                            row.getLong("cars")))
+                                    .toList()));
+                        }
+                    }
+                    return result;
+                });
+    }
+
     /**
      * Applies the given filters to the provided SqlQueryBuilder.
      *
@@ -388,13 +642,22 @@ public class CarRepository {
      * @param snakeCaseKey  the key in snake_case format to be used in the SQL query
      * @param originalValue the value containing the range for the BETWEEN filter in
      *                      the format "between (min,max)"
+     * 
+     *                      The bounds are parsed with CarEntity.parseRange, so
+     *                      they are bound with the type of the column. A
+     *                      trim_year range is bound as two integers, rounded
+     *                      inwards, which lets Postgres prune the partitions
+     *                      outside of it, where doubles would cast the column
+     *                      and scan every partition.
+     * @throws IllegalArgumentException if the column is not numeric or a bound
+     *                                  is not a number.
      */
     private static void handleBetweenFilter(SqlQueryBuilder queryBuilder, String snakeCaseKey, String originalValue) {
         String[] values = originalValue.split("between");
         String[] rangeValues = values[1].replaceAll("[()]", "").split(",");
         if (rangeValues.length == 2) {
-            queryBuilder.where(String.format(" %s BETWEEN $ AND $ ", snakeCaseKey),
-                    Double.parseDouble(rangeValues[0].trim()), Double.parseDouble(rangeValues[1].trim()));
+            Object[] bounds = CarEntity.parseRange(snakeCaseKey, rangeValues[0].trim(), rangeValues[1].trim());
+            queryBuilder.where(String.format(" %s BETWEEN $ AND $ ", snakeCaseKey), bounds);
         }
     }
 
@@ -439,7 +702,8 @@ public class CarRepository {
      * 
      *                      If the original value is not null, it parses the value
      *                      using CarEntity.parse method and determines
-     *                      the appropriate SQL operator (ILIKE for strings, = for
+     *                      the appropriate SQL operator (LOWER(key) = for strings
+     *                      without wildcards, ILIKE for the other strings, = for
      *                      other types). If the key is "color" and the value
      *                      is a list, it constructs an SQL condition to check if
      *                      the key's value is within the provided list.
@@ -456,7 +720,12 @@ public class CarRepository {
         if (originalValue != null) {
             Object value = CarEntity.parse(fieldName, originalValue);
             String operator = (value instanceof String) ? "ILIKE" : "=";
-            if (fieldName.equals("color")) {
+            if (value instanceof String string && !string.contains("%") && !string.contains("_")
+                    && !string.contains("\\")) {
+                // Same rows as ILIKE without a wildcard, but an index on LOWER(column), such as the ones
+                // IndexAdvisor proposes, can serve it. Both fold case with the database collation.
+                queryBuilder.where(String.format("LOWER(%s) = $ ", fieldName), string.toLowerCase());
+            } else if (fieldName.equals("color")) {
                 if (value instanceof List<?>) {
                     List<String> stringList = ((List<?>) value).stream()
                             .filter(String.class::isInstance)
@@ -479,7 +748,8 @@ public class CarRepository {
      * search string.
      * If the search string is not null and not empty, it adds a condition to the
      * query
-     * to match the fulltext_search column using a case-insensitive LIKE operation.
+     * to match the fulltext_search column using a case-insensitive LIKE operation,
+     * served by its trigram index.
      *
      * @param queryBuilder the SqlQueryBuilder to which the search filter will be
      *                     applied
@@ -498,6 +768,13 @@ public class CarRepository {
      * Applies sorting to the given SQL query builder based on the provided sort
      * map.
      *
+     * The columns are sorted in the iteration order of the map, which is the
+     * order of the request, and the unique id always comes last as a
+     * tie-breaker, so that the pages of a search neither overlap nor skip
+     * rows. The id takes the direction of the last sorted column, so that an
+     * index ending with the sorted columns and the id can be read in order,
+     * forwards or backwards.
+     *
      * @param queryBuilder the SQL query builder to which sorting will be applied
      * @param sort         a map containing field names as keys and sort order
      *                     values ("asc" or "desc") as values
@@ -505,6 +782,8 @@ public class CarRepository {
      *                                  or "desc")
      */
     private static void applySort(SqlQueryBuilder queryBuilder, Map<String, String> sort) {
+        String lastOrder = "ASC";
+        boolean sortedById = false;
         if (sort != null && !sort.isEmpty()) {
             for (Map.Entry<String, String> entry : sort.entrySet()) {
                 String fieldName = entry.getKey().replaceAll("([a-z])([A-Z]+)", "$1_$2").toLowerCase();
@@ -520,8 +799,13 @@ public class CarRepository {
                 }
 
                 queryBuilder.orderBy(fieldName + " " + orderValue);
+                lastOrder = orderValue.toUpperCase();
+                sortedById |= fieldName.equals("id");
             }
         }
+        if (!sortedById) {
+            queryBuilder.orderBy("id " + lastOrder);
+        }
     }
 
     /**
@@ -530,23 +814,47 @@ public class CarRepository {
      * @param row the database row to convert
      * @return a CarEntity object populated with data from the row
      */
-    private static CarEntity from(Row row) {
+    public static CarEntity from(Row row) {
+        return from(row, null);
+    }
+
+    /**
+     * Converts a database row into a CarEntity object, decoding only some of
+     * its columns. The arrays of color and image_url are the most expensive to
+     * decode, so a list without them is noticeably cheaper.
+     *
+     * @param row     the database row to convert
+     * @param columns the columns to decode, or null for every column
+     * @return a CarEntity object, the fields of the other columns null or 0
+     */
+    public static CarEntity from(Row row, Set<String> columns) {
+        boolean all = columns == null;
+        String[] colors = all || columns.contains("color") ? row.getArrayOfStrings("color") : null;
+        String[] imageUrls = all || columns.contains("image_url") ? row.getArrayOfStrings("image_url") : null;
         return new CarEntity(
                 row.getLong("id"),
-                row.getString("make"),
-                row.getString("model"),
-                row.getInteger("trim_year"),
-                row.getString("trim_name"),
-                row.getString("trim_description"),
-                row.getString("fuel_type"),
-                row.getString("transmission"),
-                row.getString("body_type"),
-                row.getArrayOfStrings("color") != null ? Arrays.asList(row.getArrayOfStrings("color")) : null,
-                row.getDouble("length") != null ? row.getDouble("length") : 0.0,
-                row.getDouble("weight") != null ? row.getDouble("weight") : 0.0,
-                row.getDouble("velocity") != null ? row.getDouble("velocity") : 0.0,
-                row.getArrayOfStrings("image_url") != null ? Arrays.asList(row.getArrayOfStrings("image_url"))
-                        : null,
+                all || columns.contains("make") ? row.getString("make") : null,
+                all || columns.contains("model") ? row.getString("model") : null,
+                all || columns.contains("trim_year") ? row.getInteger("trim_year") : 0,
+                all || columns.contains("trim_name") ? row.getString("trim_name") : null,
+                all || columns.contains("trim_description") ? row.getString("trim_description") : null,
+                all || columns.contains("fuel_type") ? row.getString("fuel_type") : null,
+                all || columns.contains("transmission") ? row.getString("transmission") : null,
+                all || columns.contains("body_type") ? row.getString("body_type") : null,
+                colors != null ? Arrays.asList(colors) : null,
+                all || columns.contains("length") ? doubleOrZero(row, "length") : 0.0,
+                all || columns.contains("weight") ? doubleOrZero(row, "weight") : 0.0,
+                all || columns.contains("velocity") ? doubleOrZero(row, "velocity") : 0.0,
+                imageUrls != null ? Arrays.asList(imageUrls) : null,
                 null);
     }
+
+    private static double doubleOrZero(Row row, String column) {
+        Double value = row.getDouble(column);
+        return value != null ? value : 0.0;
+    }
+
+    private static String selectList(Set<String> columns) {
+        return columns == null ? LIST_COLUMNS : String.join(", ", columns);
+    }
 }
@@ -0,0 +1,98 @@
+package com.pstag.repositories;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.pstag.entities.CarEntity;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.json.JsonArray;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+
+/**
+ * The EnrichmentCacheRepository class stores AI enrichment answers in the
+ * "enrichment_cache" table, keyed by a hash of the car description that was
+ * sent in the prompt.
+ *
+ * Methods:
+ * - findByHashes: Retrieves the cached answers for the given input hashes.
+ * - save: Upserts the answers for the given input hashes in one statement.
+ */
+public class EnrichmentCacheRepository {
+
+    private EnrichmentCacheRepository() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Retrieves the cached answers for the given input hashes.
+     *
+     * @param client the PgPool client used to execute the query
+     * @param hashes the input hashes to look up
+     * @return a Uni containing a map of input hash to a CarEntity holding only
+     *         the cached color and velocity
+     */
+    public static Uni<Map<String, CarEntity>> findByHashes(PgPool client, List<String> hashes) {
+        if (hashes.isEmpty()) {
+            return Uni.createFrom().item(Map.of());
+        }
+        return client.preparedQuery("SELECT input_hash, color, velocity FROM enrichment_cache WHERE input_hash = ANY($1)")
+                .execute(Tuple.of(hashes.toArray(new String[0])))
+                .onItem().transform(rows -> {
+                    Map<String, CarEntity> result = new HashMap<>();
+                    for (Row row : rows) {
+                        result.put(row.getString("input_hash"), from(row));
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Upserts the answers for the given input hashes in one statement.
+     *
+     * @param client  the PgPool client used to execute the query
+     * @param answers a map of input hash to the answered car, only color and
+     *                velocity are stored
+     * @return a Uni that completes when the answers are stored
+     */
+    public static Uni<Void> save(PgPool client, Map<String, CarEntity> answers) {
+        if (answers.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+
+        String[] hashes = new String[answers.size()];
+        String[] colors = new String[answers.size()];
+        Double[] velocities = new Double[answers.size()];
+        int i = 0;
+        for (Map.Entry<String, CarEntity> entry : answers.entrySet()) {
+            hashes[i] = entry.getKey();
+            colors[i] = new JsonArray(entry.getValue().color()).encode();
+            velocities[i] = entry.getValue().velocity();
+            i++;
+        }
+
+        return client.preparedQuery(
+                "INSERT INTO enrichment_cache (input_hash, color, velocity) "
+                        + "SELECT u.input_hash, ARRAY(SELECT json_array_elements_text(u.color::JSON))::VARCHAR[], u.velocity "
+                        + "FROM unnest($1::TEXT[], $2::TEXT[], $3::FLOAT8[]) AS u(input_hash, color, velocity) "
+                        + "ON CONFLICT (input_hash) DO UPDATE SET color = EXCLUDED.color, velocity = EXCLUDED.velocity")
+                .execute(Tuple.of(hashes, colors, velocities))
+                .replaceWithVoid();
+    }
+
+    /**
+     * Converts a database row into a CarEntity holding only the cached color
+     * and velocity.
+     *
+     * @param row the database row to convert
+     * @return a partial CarEntity populated with data from the row
+     */
+    private static CarEntity from(Row row) {
+        return new CarEntity(null, null, null, 0, null, null, null, null, null,
+                Arrays.asList(row.getArrayOfStrings("color")), 0.0, 0.0, row.getDouble("velocity"), null, null);
+    }
+}
@@ -0,0 +1,194 @@
+package com.pstag.repositories;
+
+import com.pstag.entities.EnrichmentJob;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.pgclient.PgException;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
+
+/**
+ * The EnrichmentJobRepository class stores the progress of the AI enrichment
+ * job in the "enrichment_jobs" table so that an interrupted run can be resumed
+ * from its last checkpoint.
+ *
+ * Methods:
+ * - findLatest: Retrieves the most recently created job.
+ * - create: Inserts a new running job starting at the beginning of the table.
+ * - resume: Marks an existing job as running again.
+ * - requestStop: Asks the running job to stop, whichever node runs it.
+ * - checkpoint: Stores the keyset cursor and counters of a running job.
+ * - heartbeat: Records that the node running a job is still alive.
+ * - interruptStale: Marks the running jobs without a recent heartbeat as
+ * interrupted.
+ * - finish: Stores the final status of a job.
+ *
+ * A unique index allows a single RUNNING job, so of two nodes starting a job
+ * at the same time, only one creates or resumes it.
+ */
+public class EnrichmentJobRepository {
+
+    private EnrichmentJobRepository() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Retrieves the most recently created enrichment job.
+     *
+     * @param client the PgPool client used to execute the query
+     * @return a Uni containing the latest EnrichmentJob, or null if no job has
+     *         been started yet
+     */
+    public static Uni<EnrichmentJob> findLatest(PgPool client) {
+        return client.query("SELECT * FROM enrichment_jobs ORDER BY id DESC LIMIT 1")
+                .execute()
+                .onItem().transform(EnrichmentJobRepository::first);
+    }
+
+    /**
+     * Inserts a new running job whose cursor starts before the first car,
+     * unless a job is already running.
+     *
+     * @param client the PgPool client used to execute the query
+     * @return a Uni containing the created EnrichmentJob, or null if a job is
+     *         already running
+     */
+    public static Uni<EnrichmentJob> create(PgPool client) {
+        return client.preparedQuery("INSERT INTO enrichment_jobs (status) VALUES ($1) ON CONFLICT DO NOTHING "
+                + "RETURNING *")
+                .execute(Tuple.of(EnrichmentJob.RUNNING))
+                .onItem().transform(EnrichmentJobRepository::first);
+    }
+
+    /**
+     * Marks an existing job as running again, keeping its cursor and counters
+     * and clearing a previous stop request. A job that is already running, on
+     * this node or another, is left as is.
+     *
+     * @param client the PgPool client used to execute the query
+     * @param id     the ID of the job to resume
+     * @return a Uni containing the resumed EnrichmentJob, or null if a job is
+     *         already running
+     */
+    public static Uni<EnrichmentJob> resume(PgPool client, Long id) {
+        return client.preparedQuery("UPDATE enrichment_jobs SET status = $1, error = NULL, finished_at = NULL, "
+                + "stop_requested = FALSE WHERE id = $2 AND status <> $1 RETURNING *")
+                .execute(Tuple.of(EnrichmentJob.RUNNING, id))
+                .onItem().transform(EnrichmentJobRepository::first)
+                // Another start created or resumed a job in the meantime
+                .onFailure(e -> e instanceof PgException pg && "23505".equals(pg.getSqlState()))
+                .recoverWithNull();
+    }
+
+    /**
+     * Asks the running job to stop. The node running it reads the request at
+     * its next heartbeat or checkpoint.
+     *
+     * @param client the PgPool client used to execute the query
+     * @return a Uni containing the running EnrichmentJob, or null if no job is
+     *         running
+     */
+    public static Uni<EnrichmentJob> requestStop(PgPool client) {
+        return client.preparedQuery("UPDATE enrichment_jobs SET stop_requested = TRUE WHERE status = $1 RETURNING *")
+                .execute(Tuple.of(EnrichmentJob.RUNNING))
+                .onItem().transform(EnrichmentJobRepository::first);
+    }
+
+    /**
+     * Stores the keyset cursor and the counters of a running job.
+     *
+     * @param client    the PgPool client used to execute the query
+     * @param id        the ID of the job
+     * @param lastId    the highest car ID that has been handed to the AI service
+     * @param processed the number of cars sent to the AI service so far
+     * @param updated   the number of cars updated so far
+     * @param failed    the number of cars that could not be enriched so far
+     * @return a Uni containing true when a stop was requested
+     */
+    public static Uni<Boolean> checkpoint(PgPool client, Long id, long lastId, int processed, int updated,
+            int failed) {
+        return client.preparedQuery("UPDATE enrichment_jobs SET last_id = $1, processed = $2, updated = $3, "
+                + "failed = $4 WHERE id = $5 RETURNING stop_requested")
+                .execute(Tuple.of(lastId, processed, updated, failed, id))
+                .onItem().transform(EnrichmentJobRepository::stopRequested);
+    }
+
+    /**
+     * Records that the node running a job is still alive by refreshing its
+     * updated_at, which checkpoints also refresh.
+     *
+     * @param client the PgPool client used to execute the query
+     * @param id     the ID of the running job
+     * @return a Uni containing true when a stop was requested
+     */
+    public static Uni<Boolean> heartbeat(PgPool client, Long id) {
+        return client.preparedQuery("UPDATE enrichment_jobs SET updated_at = NOW() WHERE id = $1 AND status = $2 "
+                + "RETURNING stop_requested")
+                .execute(Tuple.of(id, EnrichmentJob.RUNNING))
+                .onItem().transform(EnrichmentJobRepository::stopRequested);
+    }
+
+    /**
+     * Marks the running jobs whose updated_at is older than staleAfterMillis
+     * as INTERRUPTED. The node running them died before it could store their
+     * final status; they keep their cursor and are resumed by the next start.
+     *
+     * @param client           the PgPool client used to execute the query
+     * @param staleAfterMillis the time without heartbeat after which a running
+     *                         job is considered orphaned
+     * @return a Uni containing the number of interrupted jobs
+     */
+    public static Uni<Integer> interruptStale(PgPool client, long staleAfterMillis) {
+        return client.preparedQuery("UPDATE enrichment_jobs SET status = $1, finished_at = NOW() "
+                + "WHERE status = $2 AND updated_at < LOCALTIMESTAMP - make_interval(secs => $3)")
+                .execute(Tuple.of(EnrichmentJob.INTERRUPTED, EnrichmentJob.RUNNING, staleAfterMillis / 1000.0))
+                .onItem().transform(RowSet::rowCount);
+    }
+
+    /**
+     * Stores the final status of a job.
+     *
+     * @param client the PgPool client used to execute the query
+     * @param id     the ID of the job
+     * @param status the final status (STOPPED, COMPLETED or FAILED)
+     * @param error  the error message when the job failed, otherwise null
+     * @return a Uni containing the finished EnrichmentJob
+     */
+    public static Uni<EnrichmentJob> finish(PgPool client, Long id, String status, String error) {
+        return client.preparedQuery(
+                "UPDATE enrichment_jobs SET status = $1, error = $2, finished_at = NOW() WHERE id = $3 RETURNING *")
+                .execute(Tuple.of(status, error, id))
+                .onItem().transform(EnrichmentJobRepository::first);
+    }
+
+    private static boolean stopRequested(RowSet<Row> rows) {
+        return rows.iterator().hasNext() && rows.iterator().next().getBoolean("stop_requested");
+    }
+
+    private static EnrichmentJob first(RowSet<Row> rows) {
+        return rows.iterator().hasNext() ? from(rows.iterator().next()) : null;
+    }
+
+    /**
+     * Converts a database row into an EnrichmentJob object.
+     *
+     * @param row the database row to convert
+     * @return an EnrichmentJob object populated with data from the row
+     */
+    private static EnrichmentJob from(Row row) {
+        return new EnrichmentJob(
+                row.getLong("id"),
+                row.getString("status"),
+                row.getLong("last_id"),
+                row.getInteger("processed"),
+                row.getInteger("updated"),
+                row.getInteger("failed"),
+                row.getString("error"),
+                row.getBoolean("stop_requested"),
+                row.getLocalDateTime("created_at"),
+                row.getLocalDateTime("updated_at"),
+                row.getLocalDateTime("finished_at"));
+    }
+}
@@ -0,0 +1,260 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.virtual.threads.VirtualThreads;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.mutiny.subscription.UniEmitter;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Runs the code paths that are still imperative, such as the XML export, the
+ * enrichment job loop and the blob uploads, off the event loop.
+ *
+ * With execution.mode=worker they run on the Quarkus worker pool, whose size
+ * caps how many of them can wait on I/O at the same time. With
+ * execution.mode=virtual every task gets its own virtual thread, so waiting is
+ * cheap and the only bound is the per-name limit below. Virtual threads need
+ * JDK 21; on an older runtime Quarkus falls back to the worker pool.
+ *
+ * Each task is submitted under a name that has its own concurrency limit,
+ * execution.limit.&lt;name&gt;, or execution.limit.default when it has none. A
+ * task without a free permit waits in a queue of its name, without holding a
+ * thread, and is handed the permit of the next task that finishes. One that
+ * is still queued after execution.acquire-timeout-ms fails with a
+ * RejectedExecutionException, which the endpoints answer with 503, and one
+ * cancelled while queued is dropped.
+ *
+ * Metrics, tagged by name:
+ * - execution.in.flight: tasks holding a permit.
+ * - execution.queued: tasks waiting for a permit.
+ * - execution.rejected: tasks that timed out waiting for a permit.
+ * - execution.duration: time spent running the task, permit wait excluded.
+ */
+@ApplicationScoped
+public class BlockingExecutor {
+
+    public enum Mode {
+        WORKER, VIRTUAL
+    }
+
+    private final Mode mode;
+
+    private final ExecutorService virtualThreads;
+
+    private final int defaultLimit;
+
+    private final long acquireTimeoutMillis;
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    @Inject
+    public BlockingExecutor(@VirtualThreads ExecutorService virtualThreads, MeterRegistry registry) {
+        this(ConfigProvider.getConfig().getValue("execution.mode", Mode.class), virtualThreads,
+                ConfigProvider.getConfig().getValue("execution.limit.default", Integer.class),
+                ConfigProvider.getConfig().getValue("execution.acquire-timeout-ms", Long.class), registry);
+    }
+
+    /**
+     * @param mode                 where the tasks run
+     * @param virtualThreads       the executor used in VIRTUAL mode
+     * @param defaultLimit         the limit of a name without its own
+     *                             execution.limit.&lt;name&gt;
+     * @param acquireTimeoutMillis how long a task may wait for a permit
+     * @param registry             the registry of the execution metrics
+     */
+    public BlockingExecutor(Mode mode, ExecutorService virtualThreads, int defaultLimit, long acquireTimeoutMillis,
+            MeterRegistry registry) {
+        this.mode = mode;
+        this.virtualThreads = virtualThreads;
+        this.defaultLimit = defaultLimit;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.registry = registry;
+
+        if (mode == Mode.VIRTUAL && Runtime.version().feature() < 21) {
+            Log.warnf("execution.mode=virtual needs JDK 21, running on the worker pool of JDK %d",
+                    Runtime.version().feature());
+        }
+    }
+
+    /**
+     * Returns the mode the tasks run in.
+     *
+     * @return the execution mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the executor of the current mode, for work that is already
+     * bounded elsewhere, such as the AI calls paced by the OutboundScheduler.
+     *
+     * @return the worker pool or the virtual thread executor
+     */
+    public Executor executor() {
+        return mode == Mode.VIRTUAL ? virtualThreads : Infrastructure.getDefaultWorkerPool();
+    }
+
+    /**
+     * Runs a blocking task under the concurrency limit of its name.
+     *
+     * @param name the name of the endpoint or job, used for its limit and tags
+     * @param task the blocking task
+     * @return a Uni containing the result of the task, or failing with a
+     *         RejectedExecutionException when no permit was free in time
+     */
+    public <T> Uni<T> submit(String name, Supplier<T> task) {
+        Limit limit = limits.computeIfAbsent(name, this::createLimit);
+        return Uni.createFrom().emitter(emitter -> limit.submit(new Task<>(task, emitter)));
+    }
+
+    /**
+     * Starts a long-running task, such as a job loop, without a limit. The
+     * caller is expected to guard against starting it twice.
+     *
+     * @param task the blocking task
+     */
+    public void execute(Runnable task) {
+        executor().execute(task);
+    }
+
+    private Limit createLimit(String name) {
+        Config config = ConfigProvider.getConfig();
+        int permits = config.getOptionalValue("execution.limit." + name, Integer.class).orElse(defaultLimit);
+        return new Limit(name, permits);
+    }
+
+    private static final class Task<T> {
+
+        private final Supplier<T> task;
+
+        private final UniEmitter<? super T> emitter;
+
+        private volatile boolean terminated;
+
+        Task(Supplier<T> task, UniEmitter<? super T> emitter) {
+            this.task = task;
+            this.emitter = emitter;
+            emitter.onTermination(() -> terminated = true);
+        }
+    }
+
+    private final class Limit {
+
+        private final String name;
+
+        private final int size;
+
+        private final Deque<Task<?>> queue = new ArrayDeque<>();
+
+        private int available;
+
+        private final Counter rejected;
+
+        private final Timer duration;
+
+        Limit(String name, int size) {
+            this.name = name;
+            this.size = size;
+            available = size;
+
+            registry.gauge("execution.in.flight", Tags.of("name", name), this, Limit::inFlight);
+            registry.gauge("execution.queued", Tags.of("name", name), this, Limit::queued);
+            rejected = registry.counter("execution.rejected", "name", name);
+            duration = registry.timer("execution.duration", "name", name);
+        }
+
+        private synchronized double inFlight() {
+            return size - available;
+        }
+
+        private synchronized double queued() {
+            return queue.size();
+        }
+
+        /**
+         * Runs the task if a permit is free, or queues it until one is
+         * released or the acquire timeout expires.
+         */
+        void submit(Task<?> task) {
+            synchronized (this) {
+                if (available == 0) {
+                    queue.add(task);
+                    Infrastructure.getDefaultWorkerPool().schedule(() -> expire(task), acquireTimeoutMillis,
+                            TimeUnit.MILLISECONDS);
+                    return;
+                }
+                available--;
+            }
+            start(task);
+        }
+
+        private void expire(Task<?> task) {
+            synchronized (this) {
+                if (!queue.remove(task) || task.terminated) {
+                    return;
+                }
+            }
+            rejected.increment();
+            task.emitter.fail(new RejectedExecutionException("Too many concurrent " + name + " tasks"));
+        }
+
+        /**
+         * Hands the permit of a finished task to the next queued task that was
+         * not cancelled, or gives it back.
+         */
+        private void release() {
+            Task<?> next;
+            synchronized (this) {
+                do {
+                    next = queue.poll();
+                } while (next != null && next.terminated);
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            start(next);
+        }
+
+        private <T> void start(Task<T> task) {
+            try {
+                executor().execute(() -> {
+                    try {
+                        task.emitter.complete(duration.record(task.task));
+                    } catch (RuntimeException e) {
+                        task.emitter.fail(e);
+                    } finally {
+                        release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                release();
+                task.emitter.fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.pstag.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pstag.entities.CarEntity;
+import com.pstag.entities.IngestResult;
+import com.pstag.utils.BearerToken;
+import com.pstag.utils.CarRecordReader;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Loads large uploads of cars into the catalog.
+ *
+ * The upload is read one car at a time and streamed with COPY FROM STDIN into
+ * a temporary staging table, through the JDBC datasource since the reactive
+ * client does not support COPY. Once the upload is read, the cars repeated
+ * in it are reduced to their last occurrence, the partitions of their years
+ * are created, and they are upserted into "cars" on their natural key make,
+ * model, trim_year, trim_name and trim_description: known cars are updated,
+ * keeping their stored velocity, color and images when the upload has none,
+ * the others are inserted, and Postgres generates their fulltext_search.
+ * Everything happens in one transaction, so a malformed car leaves the
+ * catalog unchanged, and concurrent ingests are
+ * serialized by an advisory lock. Once committed, the catalog reads are
+ * pinned to the primary, see DatabaseRouter.
+ *
+ * Uploads must carry "Authorization: Bearer" with the token of ingest.token.
+ * Without a configured token, ingesting is disabled.
+ *
+ * Metrics:
+ * - ingest.cars{result=inserted|updated}: cars written by ingests.
+ */
+@ApplicationScoped
+public class CarIngestService {
+
+    private static final String COLUMNS = "make, model, trim_year, trim_name, trim_description, fuel_type, "
+            + "transmission, body_type, color, length, weight, velocity, image_url";
+
+    private static final String CREATE_STAGING = "CREATE TEMPORARY TABLE cars_staging ("
+            + "seq BIGSERIAL, make VARCHAR(256), model VARCHAR(256), trim_year INT, trim_name VARCHAR(256), "
+            + "trim_description TEXT, fuel_type VARCHAR(128), transmission VARCHAR(128), body_type VARCHAR(255), "
+            + "color VARCHAR(32)[], length DOUBLE PRECISION, weight DOUBLE PRECISION, velocity DOUBLE PRECISION, "
+            + "image_url VARCHAR(256)[]) ON COMMIT DROP";
+
+    private static final String NATURAL_KEY = "c.make = s.make AND c.model = s.model AND c.trim_year = s.trim_year "
+            + "AND c.trim_name = s.trim_name AND c.trim_description = s.trim_description";
+
+    private static final String DEDUPLICATE = "DELETE FROM cars_staging c USING cars_staging s WHERE "
+            + NATURAL_KEY + " AND s.seq > c.seq";
+
+    private static final String UPDATE = "UPDATE cars c SET fuel_type = s.fuel_type, transmission = s.transmission, "
+            + "body_type = s.body_type, length = s.length, weight = s.weight, "
+            + "velocity = COALESCE(NULLIF(s.velocity, 0), c.velocity), color = COALESCE(s.color, c.color), "
+            + "image_url = COALESCE(s.image_url, c.image_url) "
+            + "FROM cars_staging s WHERE " + NATURAL_KEY;
+
+    private static final String INSERT = "INSERT INTO cars (" + COLUMNS + ") SELECT " + COLUMNS
+            + " FROM cars_staging s WHERE NOT EXISTS (SELECT 1 FROM cars c WHERE " + NATURAL_KEY + ")";
+
+    private static final int COPY_BUFFER_CHARS = 1 << 16;
+
+    private final DataSource dataSource;
+
+    private final PartitionManager partitionManager;
+
+    private final ObjectMapper objectMapper;
+
+    private final DatabaseRouter router;
+
+    private final Counter inserted;
+
+    private final Counter updated;
+
+    private final BearerToken token;
+
+    @Inject
+    public CarIngestService(DataSource dataSource, PartitionManager partitionManager, ObjectMapper objectMapper,
+            DatabaseRouter router, MeterRegistry registry) {
+        this.dataSource = dataSource;
+        this.partitionManager = partitionManager;
+        this.objectMapper = objectMapper;
+        this.router = router;
+
+        inserted = registry.counter("ingest.cars", "result", "inserted");
+        updated = registry.counter("ingest.cars", "result", "updated");
+        token = BearerToken.fromConfig("ingest.token");
+    }
+
+    /**
+     * Tells whether ingesting is enabled, that is whether ingest.token is set.
+     *
+     * @return true when a token is configured
+     */
+    public boolean isEnabled() {
+        return token.isPresent();
+    }
+
+    /**
+     * Checks the Authorization header of an upload against ingest.token, in
+     * constant time.
+     *
+     * @param authorization the Authorization header, or null
+     * @return true when it is "Bearer " followed by the configured token
+     */
+    public boolean isAuthorized(String authorization) {
+        return token.matches(authorization);
+    }
+
+    /**
+     * Upserts the cars of an upload. Blocking, it must run off the event loop.
+     *
+     * @param body   the upload
+     * @param format the format of the upload
+     * @return the number of cars read, inserted and updated
+     * @throws IllegalArgumentException when a car is malformed, does not fit
+     *                                  its columns or has a year out of the
+     *                                  range of PartitionManager
+     */
+    public IngestResult ingest(InputStream body, CarRecordReader.Format format) {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection();
+                CarRecordReader cars = new CarRecordReader(body, format, objectMapper)) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGING);
+                long read = copy(connection, cars);
+                statement.executeUpdate(DEDUPLICATE);
+
+                List<Integer> years = new ArrayList<>();
+                try (ResultSet rows = statement.executeQuery("SELECT DISTINCT trim_year FROM cars_staging")) {
+                    while (rows.next()) {
+                        years.add(rows.getInt(1));
+                    }
+                }
+                partitionManager.ensurePartitions(years).await().indefinitely();
+
+                statement.execute("SELECT pg_advisory_xact_lock(hashtext('cars-ingest'))");
+                int updatedRows = statement.executeUpdate(UPDATE);
+                int insertedRows = statement.executeUpdate(INSERT);
+                connection.commit();
+                router.pin(DatabaseRouter.CATALOG);
+
+                updated.increment(updatedRows);
+                inserted.increment(insertedRows);
+                double millis = (System.nanoTime() - start) / 1_000_000.0;
+                Log.infof("Ingested %d cars in %.0f ms: %d inserted, %d updated, years %s", read, millis,
+                        insertedRows, updatedRows, years);
+                return new IngestResult(read, insertedRows, updatedRows, years, millis);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            // Class 22 is a value that does not fit its column, such as a make longer than 256 characters
+            if (e.getSQLState() != null && e.getSQLState().startsWith("22")) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+            throw new IllegalStateException("Ingest failed: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Streams the cars into the staging table, flushing the COPY every
+     * COPY_BUFFER_CHARS characters so that only one buffer is held.
+     */
+    private static long copy(Connection connection, CarRecordReader cars) throws SQLException {
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY cars_staging (" + COLUMNS + ") FROM STDIN");
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_CHARS + 1024);
+            while (cars.hasNext()) {
+                appendRow(buffer, cars.next());
+                if (buffer.length() >= COPY_BUFFER_CHARS) {
+                    flush(copy, buffer);
+                }
+            }
+            flush(copy, buffer);
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    private static void flush(CopyIn copy, StringBuilder buffer) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Appends a car as one line of the text format of COPY.
+     */
+    private static void appendRow(StringBuilder buffer, CarEntity car) {
+        appendText(buffer, car.make()).append('\t');
+        appendText(buffer, car.model()).append('\t');
+        buffer.append(car.trimYear()).append('\t');
+        appendText(buffer, car.trimName()).append('\t');
+        appendText(buffer, car.trimDescription()).append('\t');
+        appendText(buffer, car.fuelType()).append('\t');
+        appendText(buffer, car.transmission()).append('\t');
+        appendText(buffer, car.bodyType()).append('\t');
+        appendArray(buffer, car.color()).append('\t');
+        buffer.append(car.length()).append('\t');
+        buffer.append(car.weight()).append('\t');
+        buffer.append(car.velocity()).append('\t');
+        appendArray(buffer, car.imageUrl()).append('\n');
+    }
+
+    private static StringBuilder appendText(StringBuilder buffer, String value) {
+        if (value == null) {
+            return buffer.append("\\N");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Appends an array literal such as {"Red","Dark Blue"}, escaped for COPY.
+     */
+    private static StringBuilder appendArray(StringBuilder buffer, List<String> values) {
+        if (values == null) {
+            return buffer.append("\\N");
+        }
+        StringBuilder literal = new StringBuilder("{");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append('"').append(values.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return appendText(buffer, literal.append('}').toString());
+    }
+}
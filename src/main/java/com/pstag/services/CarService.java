@@ -3,21 +3,41 @@ package com.pstag.services;
 import org.eclipse.microprofile.config.ConfigProvider;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.stream.Collectors;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
 
 // import javax.lang.model.util.Elements;
 
 import com.pstag.entities.CarEntity;
-import com.pstag.entities.CarResponse;
+import com.pstag.entities.Histogram;
 import com.pstag.interfaces.MyAiService;
 import com.pstag.repositories.CarRepository;
 import com.pstag.utils.TotalRowsAndData;
+import com.pstag.utils.CarFields;
+import com.pstag.utils.CatalogFilter;
+import com.pstag.utils.CatalogSnapshot;
+import com.pstag.utils.CatalogTopK;
 import com.pstag.utils.GenericResponse;
+import com.pstag.utils.Histograms;
+import com.pstag.utils.OutboundHttpException;
+import com.pstag.utils.QueryFanOut;
+import com.pstag.utils.Tracing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
 
 import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
@@ -30,14 +50,10 @@ import reactor.core.publisher.Mono;
 import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobServiceAsyncClient;
 import com.azure.storage.blob.models.BlockBlobItem;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.quarkus.logging.Log;
 
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
@@ -46,25 +62,98 @@ import java.io.IOException;
 @ApplicationScoped
 public class CarService {
 
+    private static final AttributeKey<Long> CAR_ID = AttributeKey.longKey("car.id");
+
+    private static final AttributeKey<String> COLOR = AttributeKey.stringKey("car.color");
+
     private final MyAiService aiService;
 
     private final BlobServiceAsyncClient blobServiceAsyncClient;
 
+    private final OutboundScheduler scheduler;
+
+    private final BlockingExecutor blockingExecutor;
+
     private final String useAzureBlob;
 
+    private final String imageSearchUrl;
+
+    private final Duration imageSearchTimeout;
+
+    private final QueryFanOut fanOut;
+
+    private final Counter imageCacheHits;
+
+    private final Counter imageCacheMisses;
+
+    private final CatalogCache catalogCache;
+
+    private final boolean topKEnabled;
+
+    private final int topKMaxRows;
+
+    private final long topKMaxStalenessMillis;
+
+    private final Counter topKHits;
+
+    private final Counter topKStale;
+
+    private final int histogramMaxBuckets;
+
+    private final int histogramCacheSize;
+
+    private final Map<String, Counter> histogramRequests = new HashMap<>();
+
+    private volatile HistogramCache histogramCache;
+
+    private final java.net.http.HttpClient httpClient = java.net.http.HttpClient.newBuilder()
+            .followRedirects(java.net.http.HttpClient.Redirect.ALWAYS)
+            .build();
+
     @Inject
-    public CarService(MyAiService aiService, BlobServiceAsyncClient blobServiceAsyncClient) {
+    public CarService(MyAiService aiService, BlobServiceAsyncClient blobServiceAsyncClient,
+            OutboundScheduler scheduler, BlockingExecutor blockingExecutor, CatalogCache catalogCache,
+            MeterRegistry registry) {
         this.aiService = aiService;
         this.blobServiceAsyncClient = blobServiceAsyncClient;
+        this.scheduler = scheduler;
+        this.blockingExecutor = blockingExecutor;
+        this.catalogCache = catalogCache;
 
         useAzureBlob = ConfigProvider.getConfig().getValue("quarkus.azure.storage.blob.enabled",
                 String.class);
+        imageSearchUrl = ConfigProvider.getConfig().getValue("image-search.url", String.class);
+        imageSearchTimeout = Duration.ofMillis(
+                ConfigProvider.getConfig().getValue("image-search.timeout-ms", Long.class));
+        fanOut = new QueryFanOut(ConfigProvider.getConfig().getValue("database.pipelining.enabled", Boolean.class),
+                registry);
+        imageCacheHits = registry.counter("image.cache.requests", "result", "hit");
+        imageCacheMisses = registry.counter("image.cache.requests", "result", "miss");
+        topKEnabled = ConfigProvider.getConfig().getValue("catalog.top-k.enabled", Boolean.class);
+        topKMaxRows = ConfigProvider.getConfig().getValue("catalog.top-k.max-rows", Integer.class);
+        topKMaxStalenessMillis = ConfigProvider.getConfig().getValue("catalog.top-k.max-staleness-ms", Long.class);
+        topKHits = registry.counter("catalog.top-k", "result", "hit");
+        topKStale = registry.counter("catalog.top-k", "result", "stale");
+        histogramMaxBuckets = ConfigProvider.getConfig().getValue("histograms.max-buckets", Integer.class);
+        histogramCacheSize = ConfigProvider.getConfig().getValue("histograms.cache-size", Integer.class);
+        for (String source : List.of("cache", "catalog", "database")) {
+            histogramRequests.put(source, registry.counter("histograms.requests", "source", source));
+        }
     }
 
     /**
      * Retrieves a paginated list of CarEntity objects based on the provided
      * filters, search criteria, and sorting options.
      *
+     * When catalog.top-k.enabled and CatalogTopK can page the search over the
+     * CatalogCache, only the cars of the page are read, by id. The catalog may
+     * lag behind by a refresh, so the page falls back to Postgres when one of
+     * its cars no longer exists, no longer matches the filters or has other
+     * sort keys than in the catalog. Cars that entered or left the search
+     * since are not seen, so totalRows, and which cars make the page, may be
+     * up to catalog.top-k.max-staleness-ms old; a catalog that was not
+     * refreshed for longer is not used.
+     *
      * @param client  the PgPool client used to interact with the database
      * @param filters a map of filter criteria to apply to the query
      * @param search  a search string to filter the results
@@ -78,7 +167,53 @@ public class CarService {
             Map<String, String> sorts,
             int limit,
             int offset) {
-        return CarRepository.findAll(client, filters, search, sorts, limit, offset);
+        return findAll(client, filters, search, sorts, limit, offset, null);
+    }
+
+    /**
+     * Retrieves a paginated list of cars like findAll, reading only the given
+     * columns from the database.
+     *
+     * @param client  the PgPool client used to interact with the database
+     * @param filters a map of filter criteria to apply to the query
+     * @param search  a search string to filter the results
+     * @param sorts   a map of sorting options to apply to the query
+     * @param limit   the maximum number of results to return
+     * @param offset  the starting point in the list of results
+     * @param columns the columns to read, from CarFields.parse, or null for
+     *                every column
+     * @return a Uni containing a TotalRowsAndData object with the total number of
+     *         rows and the list of cars, the fields of the other columns null
+     *         or 0
+     */
+    public Uni<TotalRowsAndData<CarEntity>> findAll(PgPool client, Map<String, String> filters, String search,
+            Map<String, String> sorts, int limit, int offset, Set<String> columns) {
+        CatalogSnapshot catalog = catalogCache.get(topKMaxStalenessMillis);
+        Optional<CatalogTopK.Page> page = topKEnabled
+                ? CatalogTopK.of(catalog, filters, search, sorts, limit, offset, topKMaxRows)
+                : Optional.empty();
+        if (page.isEmpty()) {
+            return Tracing.trace("car.list", () -> fanOut.run(client, "list", 2,
+                    sql -> CarRepository.findAll(sql, filters, search, sorts, limit, offset, columns)));
+        }
+        List<Long> ids = page.get().ids();
+        if (ids.isEmpty()) {
+            topKHits.increment();
+            return Uni.createFrom().item(new TotalRowsAndData<>(page.get().totalRows(), List.of()));
+        }
+        // The catalog may trail the table: the cars of the page are checked against the filters and sort keys
+        return Tracing.trace("car.list", () -> fanOut.run(client, "list-top-k", 2,
+                sql -> CatalogCache.readCars(sql, ids, columns))
+                .onItem().transformToUni(read -> {
+                    if (read.cars().size() < ids.size()
+                            || !CatalogTopK.isCurrent(catalog, page.get(), read.catalog(), filters, sorts)) {
+                        topKStale.increment();
+                        return fanOut.run(client, "list", 2,
+                                sql -> CarRepository.findAll(sql, filters, search, sorts, limit, offset, columns));
+                    }
+                    topKHits.increment();
+                    return Uni.createFrom().item(new TotalRowsAndData<>(page.get().totalRows(), read.cars()));
+                }));
     }
 
     /**
@@ -90,93 +225,84 @@ public class CarService {
      * @param filters a map of filters to apply to the query
      * @param sorts   a map of sorting options to apply to the query
      * @param search  a search string to filter the results
+     * @param columns the columns to export, from CarFields.parse, or null for
+     *                every column of the export, which has no image URLs, so
+     *                image_url is dropped from them
      * @return an XML string representation of the list of CarEntity objects
      */
-    public String getXml(PgPool client, Map<String, String> filters, Map<String, String> sorts, String search) {
-        Uni<TotalRowsAndData<CarEntity>> result = CarRepository.findAll(client, filters, search, sorts, 0, 0);
+    public String getXml(PgPool client, Map<String, String> filters, Map<String, String> sorts, String search,
+            Set<String> columns) {
+        Set<String> exported = columns == null ? CarFields.XML_COLUMNS
+                : columns.stream().filter(CarFields.XML_COLUMNS::contains)
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+        Uni<TotalRowsAndData<CarEntity>> result = fanOut.run(client, "xml", 2,
+                sql -> CarRepository.findAll(sql, filters, search, sorts, 0, 0, exported));
         return result.onItem().transform(totalRowsAndData -> {
             List<CarEntity> carList = totalRowsAndData.getData();
-            return convertToXml(carList);
+            return convertToXml(carList, exported);
         }).await().indefinitely();
     }
 
     /**
-     * Fills missing data for cars by fetching car information from an external AI
-     * service and updating the database.
-     *
-     * @param client the PgPool client used for database operations
-     * @return a GenericResponse indicating the success of the operation
+     * Computes the histograms of length, weight and velocity of the cars
+     * matching the filters and search, for the range sliders of the UI.
      *
-     *         This method performs the following steps:
-     *         1. Initializes filters and pagination parameters.
-     *         2. Iterates through pages of car data.
-     *         3. Fetches car data from the repository based on filters and
-     *         pagination.
-     *         4. Concatenates car data into a single string.
-     *         5. Sends the concatenated data to an AI service to get additional car
-     *         information.
-     *         6. Parses the response from the AI service.
-     *         7. Updates the car information in the database.
-     *         8. Logs the results of the operations.
+     * When CatalogFilter can evaluate the filters, the histograms are built
+     * from the sorted columns of the CatalogCache, otherwise by one aggregation
+     * in Postgres. Either way they are cached for the current version of the
+     * catalog, at most histograms.cache-size of them; without a catalog they
+     * are computed on every request.
      *
-     *         If any JSON processing errors occur, they are logged.
+     * @param client  the PgPool client used to interact with the database
+     * @param filters a map of filters to apply to the query
+     * @param search  a search string to filter the results
+     * @param mode    "width" for equi-width buckets or "depth" for equi-depth
+     *                buckets
+     * @param buckets the number of buckets, from 1 to histograms.max-buckets
+     * @return a Uni containing a GenericResponse with the histograms by column
+     * @throws IllegalArgumentException if the mode or number of buckets is
+     *                                  invalid
      */
-    public GenericResponse<String> fillMissingData(PgPool client) {
-
-        Map<String, String> filters = new HashMap<>();
-        filters.put("velocity", "0");
-
-        int pageLimit = 3;
-        int totalPage = 15688 / pageLimit;
-
-        for (int i = 1; i <= totalPage; i++) {
-            int offset = (i - 1) * pageLimit;
-
-            Uni<TotalRowsAndData<CarEntity>> result = CarRepository.findAll(client, filters, null, null, pageLimit,
-                    offset);
-
-            String concatenatedData = result.onItem().transform(totalRowsAndData -> {
-                List<CarEntity> carEntities = totalRowsAndData.getData();
-                StringBuilder concatenatedDataBuilder = new StringBuilder();
-                for (CarEntity car : carEntities) {
-                    concatenatedDataBuilder.append(car.toString()).append("\n");
-                }
-                return concatenatedDataBuilder.toString();
-            }).await().indefinitely();
-
-            if (concatenatedData.isEmpty()) {
-                Log.info("No missing data found");
-                continue;
-            }
-
-            String response = aiService.getCarInformation(concatenatedData);
+    public Uni<GenericResponse<Map<String, Histogram>>> getHistograms(PgPool client, Map<String, String> filters,
+            String search, String mode, int buckets) {
+        Histograms.Mode histogramMode = Histograms.Mode.of(mode);
+        if (buckets < 1 || buckets > histogramMaxBuckets) {
+            throw new IllegalArgumentException("The number of buckets must be between 1 and " + histogramMaxBuckets);
+        }
 
-            Log.info(response);
+        CatalogSnapshot catalog = catalogCache.get();
+        HistogramCache cache = histogramCache;
+        if (catalog != null && (cache == null || cache.catalog() != catalog)) {
+            cache = new HistogramCache(catalog, new ConcurrentHashMap<>());
+            histogramCache = cache;
+        }
+        String key = histogramMode.label() + "|" + buckets + "|" + search + "|"
+                + (filters != null ? new TreeMap<>(filters) : Map.of());
+        Map<String, Histogram> cached = cache != null && cache.catalog() == catalog ? cache.entries().get(key) : null;
+        if (cached != null) {
+            histogramRequests.get("cache").increment();
+            return Uni.createFrom().item(new GenericResponse<>(cached, "Histograms fetched successfully"));
+        }
 
-            try {
-                ObjectMapper objectMapper = new ObjectMapper();
-                CarResponse carEntities = objectMapper.readValue(response, new TypeReference<CarResponse>() {
-                });
-                for (CarEntity car : carEntities.getCars()) {
-                    // Log.info(objectMapper.writeValueAsString(car.getExteriorColors()));
-                    // Log.info(car.toString());
-
-                    CarRepository.updateCar(client, car.id(), car.color(), car.velocity())
-                            .onItem().invoke(updateResult -> {
-                                if (updateResult != null) {
-                                    Log.info("Car with id " + updateResult.id() + " updated successfully");
-                                }
-                            }).await().indefinitely();
+        Optional<IntPredicate> filter = CatalogFilter.of(catalog, filters, search);
+        Uni<Map<String, Histogram>> histograms;
+        if (filter.isPresent()) {
+            histogramRequests.get("catalog").increment();
+            histograms = Uni.createFrom().item(Histograms.of(catalog, filter.get(), histogramMode, buckets));
+        } else {
+            histogramRequests.get("database").increment();
+            histograms = CarRepository.getHistograms(client, filters, search, histogramMode, buckets);
+        }
+        HistogramCache current = cache;
+        return histograms.onItem().transform(result -> {
+            if (current != null && current.catalog() == catalog) {
+                if (current.entries().size() >= histogramCacheSize) {
+                    current.entries().clear();
                 }
-            } catch (JsonProcessingException e) {
-                // throw new RuntimeException("Error processing JSON", e);
-                Log.error("Error processing JSON", e);
+                current.entries().put(key, result);
             }
-
-        }
-
-        return new GenericResponse<>("Missing data filled successfully",
-                "Missing data filled successfully");
+            return new GenericResponse<>(result, "Histograms fetched successfully");
+        });
     }
 
     /**
@@ -189,26 +315,28 @@ public class CarService {
      *         success message
      */
     public Uni<GenericResponse<Map<String, Object>>> getUiParams(PgPool client) {
-        Map<String, Uni<?>> uniMap = new HashMap<>();
-
-        // Initialize the Uni instances for each parameter
-        uniMap.put("makers", CarRepository.getMakers(client));
-        uniMap.put("makersAndModels", CarRepository.getMakerAndModel(client));
-        uniMap.put("transmissions", CarRepository.getTransmission(client));
-        uniMap.put("colors", CarRepository.getColors(client));
-        uniMap.put("fuelTypes", CarRepository.getFuelTypes(client));
-        uniMap.put("bodyTypes", CarRepository.getBodyTypes(client));
-
-        // Combine all Uris into a single Uni
-        return Uni.combine().all().unis(uniMap.values()).collectFailures()
-                .with(results -> {
-                    Map<String, Object> response = new HashMap<>();
-                    int i = 0;
-                    for (String key : uniMap.keySet()) {
-                        response.put(key, results.get(i++)); // Map results to corresponding keys
-                    }
-                    return new GenericResponse<>(response, "UI parameters fetched successfully");
-                });
+        return fanOut.run(client, "ui-params", 6, sql -> {
+            Map<String, Uni<?>> uniMap = new HashMap<>();
+
+            // Initialize the Uni instances for each parameter
+            uniMap.put("makers", CarRepository.getMakers(sql));
+            uniMap.put("makersAndModels", CarRepository.getMakerAndModel(sql));
+            uniMap.put("transmissions", CarRepository.getTransmission(sql));
+            uniMap.put("colors", CarRepository.getColors(sql));
+            uniMap.put("fuelTypes", CarRepository.getFuelTypes(sql));
+            uniMap.put("bodyTypes", CarRepository.getBodyTypes(sql));
+
+            // Combine all Uris into a single Uni
+            return Uni.combine().all().unis(uniMap.values()).collectFailures()
+                    .with(results -> {
+                        Map<String, Object> response = new HashMap<>();
+                        int i = 0;
+                        for (String key : uniMap.keySet()) {
+                            response.put(key, results.get(i++)); // Map results to corresponding keys
+                        }
+                        return new GenericResponse<>(response, "UI parameters fetched successfully");
+                    });
+        });
     }
 
     /**
@@ -221,26 +349,39 @@ public class CarService {
      * If no URLs are found, it generates image URLs based on the car's details and
      * updates the database.
      *
-     * @param client the database client used to fetch the car entity
+     * The car is read from the replica unless its URLs were stored recently,
+     * in which case the read goes to the primary so that the stored URLs are
+     * not fetched again.
+     *
+     * The lookup runs in a "car.image" span, with a child span for each
+     * statement and, when the URLs are fetched, an "image.fetch" span per
+     * color around the search, the parsing of its results and the upload.
+     *
+     * @param router the DatabaseRouter choosing between primary and replica
      * @param id     the ID of the car to fetch the image URLs for
      * @return a Uni containing a GenericResponse with a map of color to image URL
      *         and a status message
      */
-    public Uni<GenericResponse<Map<String, String>>> getImage(PgPool client, Long id) {
-        Uni<CarEntity> carUni = CarRepository.getById(client, id);
-        return carUni.onItem().transformToUni(car -> {
-            if (car == null) {
-                return Uni.createFrom().item(new GenericResponse<>(null, "Car not found"));
-            }
-            List<String> colors = getColors(car);
-            List<String> urls = car.imageUrl();
+    public Uni<GenericResponse<Map<String, String>>> getImage(DatabaseRouter router, Long id) {
+        String key = "car:" + id;
+        return Tracing.trace("car.image", Attributes.of(CAR_ID, id), () -> router
+                .read(key, pool -> CarRepository.getById(pool, id))
+                .onItem().transformToUni(car -> {
+                    if (car == null) {
+                        return Uni.createFrom().item(new GenericResponse<>(null, "Car not found"));
+                    }
+                    List<String> colors = getColors(car);
+                    List<String> urls = car.imageUrl();
 
-            if (urls != null && !urls.isEmpty()) {
-                return Uni.createFrom().item(getResponseFromUrls(colors, urls));
-            }
+                    if (urls != null && !urls.isEmpty()) {
+                        imageCacheHits.increment();
+                        return Uni.createFrom().item(getResponseFromUrls(colors, urls));
+                    }
+                    imageCacheMisses.increment();
 
-            return fetchAndStoreImageUrls(client, id, car, colors);
-        });
+                    return fetchAndStoreImageUrls(router.write(), id, car, colors)
+                            .onItem().invoke(() -> router.pin(key));
+                }));
     }
 
     private List<String> getColors(CarEntity car) {
@@ -256,7 +397,7 @@ public class CarService {
         for (int i = 0; i < colors.size(); i++) {
             result.put(colors.get(i), urls.get(i));
         }
-        Log.info("Image fetched from database");
+        Log.debug("Image fetched from database");
         return new GenericResponse<>(result, "Image fetched successfully");
     }
 
@@ -266,8 +407,8 @@ public class CarService {
                 .map(color -> {
                     String keyword = "Car " + car.trimYear() + " " + car.make() + " " + car.model() + " "
                             + car.trimName() + " " + color;
-                    return fetchImageUrl(keyword)
-                            .onItem().transform(url -> Map.entry(color, url));
+                    return Tracing.trace("image.fetch", Attributes.of(COLOR, color), () -> fetchImageUrl(keyword))
+                            .onItem().transform(url -> Map.entry(color, url != null ? url : ""));
                 })
                 .toList();
 
@@ -278,16 +419,27 @@ public class CarService {
                         Map.Entry<String, String> mapEntry = (Map.Entry<String, String>) entry;
                         result.put(mapEntry.getKey(), mapEntry.getValue());
                     }
-
-                    List<String> colorList = new ArrayList<>(result.keySet());
-                    List<String> urlList = new ArrayList<>(result.values());
-                    urlList.removeIf(String::isEmpty);
-
-                    if (!urlList.isEmpty()) {
-                        CarRepository.updateCarColorAndImageUrl(client, id, colorList, urlList);
+                    return result;
+                })
+                .onItem().transformToUni(result -> {
+                    GenericResponse<Map<String, String>> response = new GenericResponse<>(result,
+                            "Image fetched successfully");
+
+                    // keep colors and urls aligned, getResponseFromUrls reads them by index
+                    List<String> colorList = new ArrayList<>();
+                    List<String> urlList = new ArrayList<>();
+                    result.forEach((color, url) -> {
+                        if (!url.isEmpty()) {
+                            colorList.add(color);
+                            urlList.add(url);
+                        }
+                    });
+
+                    if (urlList.isEmpty()) {
+                        return Uni.createFrom().item(response);
                     }
-
-                    return new GenericResponse<>(result, "Image fetched successfully");
+                    return CarRepository.updateCarColorAndImageUrl(client, id, colorList, urlList)
+                            .replaceWith(response);
                 });
     }
 
@@ -297,7 +449,9 @@ public class CarService {
      * This method performs the following steps:
      * 1. Encodes the provided keyword.
      * 2. Fetches the search URL using the encoded keyword.
-     * 3. Fetches the image URL from the search URL.
+     * 3. Extracts the image URL from the search results, uploading the image to
+     * the blob storage when needed, on the BlockingExecutor under the
+     * "blob-upload" limit.
      *
      * @param keyword the keyword to search for an image.
      * @return a Uni containing the image URL as a String.
@@ -305,7 +459,12 @@ public class CarService {
     private Uni<String> fetchImageUrl(String keyword) {
         return Uni.createFrom().item(() -> encodeKeyword(keyword))
                 .onItem().transformToUni(this::fetchSearchUrl)
-                .onItem().transformToUni(this::fetchImageFromUrl);
+                .onItem().transformToUni(responseBody -> responseBody == null ? Uni.createFrom().nullItem()
+                        : blockingExecutor.submit("blob-upload", () -> fetchImageFromUrl(responseBody))
+                                .onFailure().recoverWithItem(e -> {
+                                    Log.error("Error fetching image from search results", e);
+                                    return null;
+                                }));
     }
 
     /**
@@ -319,9 +478,8 @@ public class CarService {
     private String encodeKeyword(String keyword) {
         try {
             String encodedKeyword = java.net.URLEncoder.encode(keyword, "UTF-8");
-            String searchUrl = "https://www.google.com/search?q=" + encodedKeyword
+            String searchUrl = imageSearchUrl + "?q=" + encodedKeyword
                     + "&tbs=isz:l&biw=1528&bih=738&dpr=1.25&tbm=isch&hl=en";
-            Log.info(searchUrl);
             return searchUrl;
         } catch (java.io.UnsupportedEncodingException e) {
             Log.error("Error encoding URL", e);
@@ -330,7 +488,9 @@ public class CarService {
     }
 
     /**
-     * Fetches the content of the given search URL asynchronously.
+     * Fetches the content of the given search URL asynchronously through the
+     * "image-search" lane of the outbound scheduler, which paces the requests
+     * and retries 429 and 5xx answers with backoff.
      *
      * @param searchUrl the URL to fetch content from. If null, a Uni containing a
      *                  null item is returned.
@@ -346,43 +506,40 @@ public class CarService {
                 "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, likeGecko) Chrome/58.0.3029.110 Safari/537.3",
                 // "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/131.0.0.0 Safari/537.36 Edg/131.0.0.0"
         };
-        String userAgent = userAgents[new java.util.Random().nextInt(userAgents.length)];
-
-        return Uni.createFrom().completionStage(() -> {
-            try {
-                return java.net.http.HttpClient.newBuilder()
-                        .followRedirects(java.net.http.HttpClient.Redirect.ALWAYS)
-                        .build()
-                        .sendAsync(java.net.http.HttpRequest.newBuilder()
-                                .uri(new java.net.URI(searchUrl))
-                                .header("User-Agent", userAgent)
-                                .build(), java.net.http.HttpResponse.BodyHandlers.ofString())
-                        .thenApply(java.net.http.HttpResponse::body);
-            } catch (Exception e) {
-                Log.error("Error fetching search URL", e);
-                return java.util.concurrent.CompletableFuture.completedFuture(null);
-            }
-        });
+        String userAgent = userAgents[java.util.concurrent.ThreadLocalRandom.current().nextInt(userAgents.length)];
+
+        return Tracing.trace("image.search", () -> scheduler.submit("image-search", () -> Uni.createFrom().completionStage(() -> httpClient
+                .sendAsync(java.net.http.HttpRequest.newBuilder()
+                        .uri(java.net.URI.create(searchUrl))
+                        .header("User-Agent", userAgent)
+                        .timeout(imageSearchTimeout)
+                        .build(), java.net.http.HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() == 429 || response.statusCode() >= 500) {
+                        throw new OutboundHttpException(response.statusCode(),
+                                "Image search answered " + response.statusCode());
+                    }
+                    return response.body();
+                }))))
+                .onFailure().recoverWithItem(e -> {
+                    Log.error("Error fetching search URL", e);
+                    return null;
+                });
     }
 
     /**
      * Fetches the URL of the first image from the given HTML response body.
+     * This blocks while the image is uploaded to the blob storage and must run
+     * on the BlockingExecutor.
      *
      * @param responseBody the HTML response body as a String
-     * @return a Uni containing the URL of the first image if found, or an empty
-     *         string if no image is found or if the response body is null
+     * @return the URL of the first image if found, or an empty string if no
+     *         image is found
      */
-    private Uni<String> fetchImageFromUrl(String responseBody) {
-        if (responseBody == null) {
-            return Uni.createFrom().nullItem();
-        }
-
-        Document doc = Jsoup.parse(responseBody);
-        Element firstImage = doc.select("img[src^=https]").first();
-        if (firstImage != null) {
-            Log.info(firstImage.attr("src"));
-        }
+    private String fetchImageFromUrl(String responseBody) {
 
+        Element firstImage = Tracing.traceBlocking("image.parse",
+                () -> Jsoup.parse(responseBody).select("img[src^=https]").first());
         String imageUrl = "";
 
         if (firstImage == null && useAzureBlob.equalsIgnoreCase("true")) {
@@ -403,21 +560,22 @@ public class CarService {
                             .flatMap(blobAsyncClient -> blobAsyncClient.upload(BinaryData.fromBytes(bytes), true)
                                     .map(blockBlobItem -> blobAsyncClient.getBlobUrl()));
 
-                    imageUrl = Uni.createFrom().completionStage(blobUrl.toFuture()).await().indefinitely();
+                    imageUrl = Tracing.traceBlocking("image.upload",
+                            () -> Uni.createFrom().completionStage(blobUrl.toFuture()).await().indefinitely());
 
                     // only fetch one image per color to saving cost on storage
                     break;
                 }
             }
 
-            Log.info("Azure Image Url: " + imageUrl);
+            Log.debug("Azure Image Url: " + imageUrl);
         }
 
         if (!imageUrl.isEmpty()) {
-            return Uni.createFrom().item(imageUrl);
+            return imageUrl;
         }
 
-        return Uni.createFrom().item(firstImage != null ? firstImage.attr("src") : "");
+        return firstImage != null ? firstImage.attr("src") : "";
     }
 
     /**
@@ -426,27 +584,64 @@ public class CarService {
      * @param cars the list of CarEntity objects to be converted to XML
      * @return a string containing the XML representation of the list of cars
      */
-    private String convertToXml(List<CarEntity> cars) {
+    public static String convertToXml(List<CarEntity> cars) {
+        return convertToXml(cars, CarFields.XML_COLUMNS);
+    }
+
+    /**
+     * Converts a list of CarEntity objects to an XML string representation,
+     * with an element for each of the given columns only.
+     *
+     * @param cars    the list of CarEntity objects to be converted to XML
+     * @param columns the columns to write, from CarFields.parse; image_url is
+     *                never written
+     * @return a string containing the XML representation of the list of cars
+     */
+    public static String convertToXml(List<CarEntity> cars, Set<String> columns) {
         StringBuilder xmlBuilder = new StringBuilder();
         xmlBuilder.append("<cars>");
         for (CarEntity car : cars) {
             xmlBuilder.append("<car>");
             xmlBuilder.append("<id>").append(car.id()).append("</id>");
-            xmlBuilder.append("<make>").append(car.make()).append("</make>");
-            xmlBuilder.append("<model>").append(car.model()).append("</model>");
-            xmlBuilder.append("<year>").append(car.trimYear()).append("</year>");
-            xmlBuilder.append("<trimName>").append(car.trimName()).append("</trimName>");
-            xmlBuilder.append("<trimDescription>").append(car.trimDescription()).append("</trimDescription>");
-            xmlBuilder.append("<bodyType>").append(car.bodyType()).append("</bodyType>");
-            xmlBuilder.append("<fuelType>").append(car.fuelType()).append("</fuelType>");
-            xmlBuilder.append("<transmission>").append(car.transmission()).append("</transmission>");
-            xmlBuilder.append("<color>").append(car.color()).append("</color>");
-            xmlBuilder.append("<length>").append(car.length()).append("</length>");
-            xmlBuilder.append("<weight>").append(car.weight()).append("</weight>");
-            xmlBuilder.append("<velocity>").append(car.velocity()).append("</velocity>");
+            appendXml(xmlBuilder, columns, "make", "make", car.make());
+            appendXml(xmlBuilder, columns, "model", "model", car.model());
+            appendXml(xmlBuilder, columns, "trim_year", "year", car.trimYear());
+            appendXml(xmlBuilder, columns, "trim_name", "trimName", car.trimName());
+            appendXml(xmlBuilder, columns, "trim_description", "trimDescription", car.trimDescription());
+            appendXml(xmlBuilder, columns, "body_type", "bodyType", car.bodyType());
+            appendXml(xmlBuilder, columns, "fuel_type", "fuelType", car.fuelType());
+            appendXml(xmlBuilder, columns, "transmission", "transmission", car.transmission());
+            appendXml(xmlBuilder, columns, "color", "color", car.color());
+            appendXml(xmlBuilder, columns, "length", "length", car.length());
+            appendXml(xmlBuilder, columns, "weight", "weight", car.weight());
+            appendXml(xmlBuilder, columns, "velocity", "velocity", car.velocity());
             xmlBuilder.append("</car>");
         }
         xmlBuilder.append("</cars>");
         return xmlBuilder.toString();
     }
+
+    private static void appendXml(StringBuilder xmlBuilder, Set<String> columns, String column, String element,
+            Object value) {
+        if (columns.contains(column)) {
+            xmlBuilder.append('<').append(element).append('>').append(value).append("</").append(element).append('>');
+        }
+    }
+
+    private static void appendXml(StringBuilder xmlBuilder, Set<String> columns, String column, String element,
+            int value) {
+        if (columns.contains(column)) {
+            xmlBuilder.append('<').append(element).append('>').append(value).append("</").append(element).append('>');
+        }
+    }
+
+    private static void appendXml(StringBuilder xmlBuilder, Set<String> columns, String column, String element,
+            double value) {
+        if (columns.contains(column)) {
+            xmlBuilder.append('<').append(element).append('>').append(value).append("</").append(element).append('>');
+        }
+    }
+
+    private record HistogramCache(CatalogSnapshot catalog, Map<String, Map<String, Histogram>> entries) {
+    }
 }
@@ -0,0 +1,100 @@
+package com.pstag.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Collects enriched cars as they are parsed and writes them with
+ * CarRepository.updateCars once a batch is full. The collector is shared by
+ * the concurrent AI calls of one window and is thread-safe.
+ *
+ * The writes are exported as db.query.duration and db.query.rows with
+ * query=cars.update-batch, which give their rows per second next to the
+ * single-row cars.update.
+ */
+public class CarWriteBatch {
+
+    private final PgPool client;
+
+    private final int size;
+
+    private List<CarEntity> pending = new ArrayList<>();
+
+    private final List<CompletableFuture<Integer>> writes = new ArrayList<>();
+
+    /**
+     * @param client the PgPool client used to write the cars
+     * @param size   the number of cars written per UPDATE statement
+     */
+    public CarWriteBatch(PgPool client, int size) {
+        this.client = client;
+        this.size = size;
+    }
+
+    /**
+     * Adds a car to the current batch and starts writing the batch when it is
+     * full.
+     *
+     * @param car the car to write, only id, color and velocity are used
+     */
+    public void add(CarEntity car) {
+        List<CarEntity> full = null;
+        synchronized (this) {
+            pending.add(car);
+            if (pending.size() >= size) {
+                full = pending;
+                pending = new ArrayList<>();
+            }
+        }
+        if (full != null) {
+            write(full);
+        }
+    }
+
+    /**
+     * Writes the remaining cars and waits for every write started so far.
+     *
+     * @return a Uni containing the total number of updated cars
+     */
+    public Uni<Integer> flush() {
+        List<CarEntity> rest;
+        synchronized (this) {
+            rest = pending;
+            pending = new ArrayList<>();
+        }
+        if (!rest.isEmpty()) {
+            write(rest);
+        }
+
+        List<CompletableFuture<Integer>> started;
+        synchronized (this) {
+            started = List.copyOf(writes);
+        }
+        return Uni.createFrom().completionStage(CompletableFuture.allOf(started.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> started.stream().mapToInt(CompletableFuture::join).sum()));
+    }
+
+    private void write(List<CarEntity> cars) {
+        long start = System.nanoTime();
+        CompletableFuture<Integer> write = CarRepository.updateCars(client, cars)
+                .onItem().transform(ids -> {
+                    double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+                    Log.debug(String.format("Updated %d cars in %.1f ms (%.0f rows/s)", ids.size(),
+                            seconds * 1000, ids.size() / seconds));
+                    return ids.size();
+                })
+                .subscribeAsCompletionStage();
+        synchronized (this) {
+            writes.add(write);
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.utils.CarFields;
+import com.pstag.utils.CatalogSnapshot;
+import com.pstag.utils.CatalogSnapshot.Dictionary;
+import com.pstag.utils.QueryMetrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import io.vertx.mutiny.sqlclient.Tuple;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Keeps a CatalogSnapshot of the "cars" table in memory, for the facets and
+ * indexes that are computed without Postgres.
+ *
+ * At startup the snapshot file catalog.snapshot.path is memory-mapped when it
+ * exists, and only the cars updated since its maxUpdatedAt are read from the
+ * database; without a file, the whole table is read in pages of
+ * catalog.load-page-size cars, with a keyset cursor on the id. Afterwards the
+ * cars updated since the last load are read every catalog.refresh-interval-ms,
+ * and the snapshot is written back to disk every catalog.snapshot.interval-ms.
+ * The rows are decoded and the snapshots built on the BlockingExecutor, never
+ * on the event loop that ran the query.
+ *
+ * updated_at is the start of the writing transaction, so a long transaction
+ * such as an ingest can commit rows older than a refresh that already ran:
+ * each refresh lists the id and updated_at of the rows from
+ * catalog.refresh-overlap-ms before the newest row it knows, and only reads
+ * the rows whose (id, updated_at) the catalog does not hold yet. When there is
+ * none, the catalog is kept as is, with the facets and indexes computed from
+ * it. Deletes leave no updated_at, so after loading a snapshot and before
+ * writing one, the number of cars is compared with the table, and the whole
+ * table is read again when they differ.
+ *
+ * Metrics:
+ * - catalog.rows: cars in the catalog.
+ * - catalog.load.duration{source=snapshot|database}: time to load the
+ * catalog at startup, delta included.
+ * - catalog.refresh.rows: cars read by the refreshes, new or changed ones
+ * only.
+ */
+@ApplicationScoped
+public class CatalogCache {
+
+    private static final List<String> COLUMN_NAMES = List.of("id", "trim_year", "make", "model", "fuel_type",
+            "transmission", "body_type", "length", "weight", "velocity", "color", "updated_at");
+
+    static final String COLUMNS = String.join(", ", COLUMN_NAMES);
+
+    private final DatabaseRouter router;
+
+    private final BlockingExecutor blockingExecutor;
+
+    private final Vertx vertx;
+
+    private final MeterRegistry registry;
+
+    private final boolean enabled;
+
+    private final Path snapshotPath;
+
+    private final long refreshIntervalMillis;
+
+    private final long refreshOverlapMicros;
+
+    private final long snapshotIntervalMillis;
+
+    private final int loadPageSize;
+
+    private final Counter refreshedRows;
+
+    private volatile CatalogSnapshot catalog;
+
+    private volatile long checkedAt;
+
+    private volatile String source;
+
+    private final CompletableFuture<CatalogSnapshot> loaded = new CompletableFuture<>();
+
+    private volatile Facets facets;
+
+    private boolean refreshing;
+
+    private long refreshTimer = -1;
+
+    private long snapshotTimer = -1;
+
+    @Inject
+    public CatalogCache(DatabaseRouter router, BlockingExecutor blockingExecutor, Vertx vertx,
+            MeterRegistry registry) {
+        this.router = router;
+        this.blockingExecutor = blockingExecutor;
+        this.vertx = vertx;
+        this.registry = registry;
+
+        Config config = ConfigProvider.getConfig();
+        enabled = config.getValue("catalog.enabled", Boolean.class);
+        snapshotPath = Path.of(config.getValue("catalog.snapshot.path", String.class));
+        refreshIntervalMillis = config.getValue("catalog.refresh-interval-ms", Long.class);
+        refreshOverlapMicros = config.getValue("catalog.refresh-overlap-ms", Long.class) * 1000;
+        snapshotIntervalMillis = config.getValue("catalog.snapshot.interval-ms", Long.class);
+        loadPageSize = config.getValue("catalog.load-page-size", Integer.class);
+
+        registry.gauge("catalog.rows", this, cache -> cache.catalog != null ? cache.catalog.size() : 0);
+        refreshedRows = registry.counter("catalog.refresh.rows");
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            loaded.complete(null);
+            return;
+        }
+        load().subscribe().with(snapshot -> {
+            refreshTimer = vertx.setPeriodic(refreshIntervalMillis, id -> refresh().subscribe().with(
+                    rows -> {
+                    }, failure -> Log.warnf("Catalog refresh failed: %s", failure.getMessage())));
+            snapshotTimer = vertx.setPeriodic(snapshotIntervalMillis, id -> writeSnapshot().subscribe().with(
+                    path -> {
+                    }, failure -> Log.warnf("Catalog snapshot failed: %s", failure.getMessage())));
+        }, failure -> Log.errorf(failure, "Catalog load failed"));
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (refreshTimer >= 0) {
+            vertx.cancelTimer(refreshTimer);
+        }
+        if (snapshotTimer >= 0) {
+            vertx.cancelTimer(snapshotTimer);
+        }
+    }
+
+    /**
+     * Returns the catalog, which is replaced as a whole by each refresh.
+     *
+     * @return the current catalog, or null until it is loaded
+     */
+    public CatalogSnapshot get() {
+        return catalog;
+    }
+
+    /**
+     * Returns the catalog if it was last brought up to date with the table,
+     * by the load or a refresh, at most maxAgeMillis ago. A refresh that
+     * fails or is skipped leaves it older.
+     *
+     * @param maxAgeMillis the largest age of the catalog, in milliseconds
+     * @return the current catalog, or null when it is older or not loaded
+     */
+    public CatalogSnapshot get(long maxAgeMillis) {
+        long checked = checkedAt;
+        CatalogSnapshot current = catalog;
+        return current != null && System.nanoTime() - checked <= TimeUnit.MILLISECONDS.toNanos(maxAgeMillis)
+                ? current
+                : null;
+    }
+
+    /**
+     * Waits for the first load of the catalog.
+     *
+     * @return a Uni containing the catalog once loaded, null when the catalog
+     *         is disabled, or failing with the failure of the first load
+     */
+    public Uni<CatalogSnapshot> awaitLoaded() {
+        return Uni.createFrom().completionStage(loaded);
+    }
+
+    /**
+     * Returns the facets of the ui-params endpoint computed from the catalog,
+     * in the shape of CarService.getUiParams. They are computed once per
+     * catalog, values no longer used by any car left out.
+     *
+     * @return the facets, or null until the catalog is loaded
+     */
+    public Map<String, Object> getUiParams() {
+        CatalogSnapshot current = catalog;
+        if (current == null) {
+            return null;
+        }
+        Facets cached = facets;
+        if (cached == null || cached.catalog() != current) {
+            cached = new Facets(current, computeFacets(current));
+            facets = cached;
+        }
+        return cached.values();
+    }
+
+    /**
+     * Returns where the catalog was loaded from at startup.
+     *
+     * @return "snapshot" or "database", or null until it is loaded
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Loads the catalog from the snapshot file and the cars updated since,
+     * or from the whole table when there is no usable file.
+     *
+     * @return a Uni containing the loaded catalog
+     */
+    public Uni<CatalogSnapshot> load() {
+        long start = System.nanoTime();
+        return blockingExecutor.submit("catalog", this::readSnapshot)
+                .onItem().transformToUni(snapshot -> {
+                    source = snapshot == null ? "database" : "snapshot";
+                    return snapshot == null ? loadAll()
+                            : applyDelta(snapshot).onItem().transformToUni(this::reconcile);
+                })
+                .onItem().invoke(snapshot -> {
+                    long nanos = System.nanoTime() - start;
+                    Timer.builder("catalog.load.duration").tag("source", source).register(registry)
+                            .record(nanos, TimeUnit.NANOSECONDS);
+                    Log.infof("Catalog loaded from %s in %.0f ms: %d cars", source, nanos / 1_000_000.0,
+                            snapshot.size());
+                    loaded.complete(snapshot);
+                })
+                .onFailure().invoke(loaded::completeExceptionally);
+    }
+
+    /**
+     * Reads the cars updated since the newest car of the catalog, minus the
+     * overlap, and replaces the catalog with the result.
+     *
+     * @return a Uni containing the number of cars added to the catalog
+     */
+    public Uni<Integer> refresh() {
+        CatalogSnapshot current = catalog;
+        if (current == null || !startRefresh()) {
+            return Uni.createFrom().item(0);
+        }
+        return applyDelta(current).onItem().transform(updated -> updated.size() - current.size())
+                .onTermination().invoke(this::endRefresh);
+    }
+
+    /**
+     * Writes the catalog to catalog.snapshot.path, reading the whole table
+     * again first when its number of cars differs from the catalog.
+     *
+     * @return a Uni containing the path written, or null before the catalog
+     *         is loaded or while a refresh runs
+     */
+    public Uni<Path> writeSnapshot() {
+        if (catalog == null || !startRefresh()) {
+            return Uni.createFrom().nullItem();
+        }
+        return reconcile(catalog)
+                .onItem().transformToUni(snapshot -> blockingExecutor.submit("catalog", () -> {
+                    try {
+                        long start = System.nanoTime();
+                        snapshot.write(snapshotPath);
+                        Log.debugf("Catalog snapshot written to %s in %.0f ms: %d cars", snapshotPath,
+                                (System.nanoTime() - start) / 1_000_000.0, snapshot.size());
+                        return snapshotPath;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }))
+                .onTermination().invoke(this::endRefresh);
+    }
+
+    /**
+     * Reads some cars with one statement, both as CarEntity objects with the
+     * requested columns and into a catalog of their own, to check a page
+     * decided over this one with CatalogTopK.isCurrent.
+     *
+     * @param client  the client used to execute the query
+     * @param ids     the ids of the cars, in the order of the page
+     * @param columns the columns of the cars, from CarFields.parse, or null
+     *                for every column
+     * @return a Uni containing the cars that still exist, in the order of the
+     *         ids, and their catalog
+     */
+    public static Uni<CarsAndCatalog> readCars(SqlClient client, List<Long> ids, Set<String> columns) {
+        Set<String> read = new LinkedHashSet<>(columns != null ? columns : CarFields.COLUMNS);
+        read.addAll(COLUMN_NAMES);
+        return client.preparedQuery("SELECT " + String.join(", ", read) + " FROM cars WHERE id = ANY($1::BIGINT[])")
+                .execute(Tuple.of(ids.toArray(new Long[0])))
+                .plug(statement -> QueryMetrics.time("catalog.by-ids", statement))
+                .onItem().transform(rows -> {
+                    Map<Long, CarEntity> cars = new HashMap<>();
+                    for (Row row : rows) {
+                        CarEntity car = CarRepository.from(row, columns);
+                        cars.put(car.id(), car);
+                    }
+                    return new CarsAndCatalog(ids.stream().map(cars::get).filter(Objects::nonNull).toList(),
+                            addRows(CatalogSnapshot.builder(), rows).build());
+                });
+    }
+
+    private static Map<String, Object> computeFacets(CatalogSnapshot catalog) {
+        Map<String, Set<String>> makersAndModels = new TreeMap<>();
+        Set<String> colors = new TreeSet<>();
+        for (int row = 0; row < catalog.size(); row++) {
+            makersAndModels.computeIfAbsent(catalog.value(Dictionary.MAKE, row), make -> new TreeSet<>())
+                    .add(catalog.value(Dictionary.MODEL, row));
+            colors.addAll(catalog.colors(row));
+        }
+        Map<String, Object> values = new HashMap<>();
+        values.put("makers", List.copyOf(makersAndModels.keySet()));
+        Map<String, List<String>> models = new HashMap<>();
+        makersAndModels.forEach((make, names) -> models.put(make, List.copyOf(names)));
+        values.put("makersAndModels", models);
+        values.put("transmissions", distinct(catalog, Dictionary.TRANSMISSION));
+        values.put("colors", List.copyOf(colors));
+        values.put("fuelTypes", distinct(catalog, Dictionary.FUEL_TYPE));
+        values.put("bodyTypes", distinct(catalog, Dictionary.BODY_TYPE));
+        return values;
+    }
+
+    private static List<String> distinct(CatalogSnapshot catalog, Dictionary dictionary) {
+        BitSet used = new BitSet();
+        for (int row = 0; row < catalog.size(); row++) {
+            used.set(catalog.code(dictionary, row));
+        }
+        return used.stream().mapToObj(code -> catalog.dictionary(dictionary).get(code)).sorted().toList();
+    }
+
+    /**
+     * Reads the whole table again when its number of cars differs from the
+     * catalog, which happens when cars were deleted.
+     */
+    private Uni<CatalogSnapshot> reconcile(CatalogSnapshot current) {
+        return router.read(null, pool -> pool.query("SELECT count(*) AS count FROM cars").execute())
+                .onItem().transformToUni(rows -> {
+                    long count = rows.iterator().next().getLong("count");
+                    return count != current.size() ? loadAll() : Uni.createFrom().item(current);
+                });
+    }
+
+    private CatalogSnapshot readSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        try {
+            return CatalogSnapshot.read(snapshotPath);
+        } catch (IOException e) {
+            Log.warnf("Ignoring the catalog snapshot: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the whole table page by page. Rows written behind the cursor
+     * during the load carry a newer updated_at and are read by the next
+     * refresh.
+     */
+    private Uni<CatalogSnapshot> loadAll() {
+        long start = System.nanoTime();
+        CatalogSnapshot.Builder builder = CatalogSnapshot.builder();
+        return loadPage(builder, 0)
+                .onItem().transformToUni(ignored -> blockingExecutor.submit("catalog", builder::build))
+                .onItem().invoke(loaded -> replace(loaded, start));
+    }
+
+    /**
+     * Adds the cars after a cursor to the builder, then the next page until a
+     * page comes back short.
+     */
+    private Uni<Void> loadPage(CatalogSnapshot.Builder builder, long afterId) {
+        return router.read(null, pool -> pool
+                .preparedQuery("SELECT " + COLUMNS + " FROM cars WHERE id > $1 ORDER BY id LIMIT $2")
+                .execute(Tuple.of(afterId, loadPageSize))
+                .plug(statement -> QueryMetrics.time("catalog.load-page", statement)))
+                .onItem().transformToUni(rows -> blockingExecutor.submit("catalog", () -> {
+                    addRows(builder, rows);
+                    long lastId = -1;
+                    for (Row row : rows) {
+                        lastId = row.getLong("id");
+                    }
+                    return rows.size() < loadPageSize ? -1L : lastId;
+                }))
+                .onItem().transformToUni(lastId -> lastId < 0 ? Uni.createFrom().voidItem()
+                        : loadPage(builder, lastId));
+    }
+
+    private Uni<CatalogSnapshot> applyDelta(CatalogSnapshot base) {
+        if (base.size() == 0) {
+            return loadAll();
+        }
+        long start = System.nanoTime();
+        long since = base.maxUpdatedAt() - refreshOverlapMicros;
+        return router.read(null, pool -> pool.preparedQuery("SELECT id, updated_at FROM cars WHERE updated_at >= $1")
+                .execute(Tuple.of(toLocalDateTime(since)))
+                .onItem().transformToUni(versions -> blockingExecutor.submit("catalog",
+                        () -> changedIds(base, since, versions)))
+                .onItem().transformToUni(changed -> {
+                    if (changed.isEmpty()) {
+                        return Uni.createFrom().item(base);
+                    }
+                    return pool.preparedQuery("SELECT " + COLUMNS + " FROM cars WHERE id = ANY($1)")
+                            .execute(Tuple.of(changed.toArray(new Long[0])))
+                            .onItem().transformToUni(rows -> blockingExecutor.submit("catalog", () -> {
+                                refreshedRows.increment(rows.size());
+                                return addRows(CatalogSnapshot.builder(base), rows).build();
+                            }));
+                }))
+                .onItem().invoke(updated -> replace(updated, start));
+    }
+
+    /**
+     * Replaces the catalog with one holding the table as of the given
+     * System.nanoTime. The catalog is set first, so that get(long) may pair it
+     * with the older time but never an older catalog with the newer time.
+     */
+    private void replace(CatalogSnapshot updated, long readAt) {
+        catalog = updated;
+        checkedAt = readAt;
+    }
+
+    /**
+     * Returns the ids of the rows listed by a refresh that are new to the
+     * catalog or carry another updated_at than the one it holds.
+     */
+    private static List<Long> changedIds(CatalogSnapshot base, long since, RowSet<Row> versions) {
+        Map<Long, Long> known = new HashMap<>();
+        for (int row = 0; row < base.size(); row++) {
+            if (base.updatedAt(row) >= since) {
+                known.put(base.id(row), base.updatedAt(row));
+            }
+        }
+        List<Long> changed = new ArrayList<>();
+        for (Row row : versions) {
+            Long id = row.getLong("id");
+            if (known.getOrDefault(id, Long.MIN_VALUE) != toMicros(row.getLocalDateTime("updated_at"))) {
+                changed.add(id);
+            }
+        }
+        return changed;
+    }
+
+    private static CatalogSnapshot.Builder addRows(CatalogSnapshot.Builder builder, RowSet<Row> rows) {
+        for (Row row : rows) {
+            String[] colors = row.getArrayOfStrings("color");
+            Double velocity = row.getDouble("velocity");
+            builder.add(row.getInteger("id"), row.getInteger("trim_year"), row.getString("make"),
+                    row.getString("model"), row.getString("fuel_type"), row.getString("transmission"),
+                    row.getString("body_type"), row.getDouble("length"), row.getDouble("weight"),
+                    velocity != null ? velocity : Double.NaN, colors != null ? Arrays.asList(colors) : List.of(),
+                    toMicros(row.getLocalDateTime("updated_at")));
+        }
+        return builder;
+    }
+
+    private synchronized boolean startRefresh() {
+        if (refreshing) {
+            return false;
+        }
+        refreshing = true;
+        return true;
+    }
+
+    private synchronized void endRefresh() {
+        refreshing = false;
+    }
+
+    /**
+     * Cars read by readCars, as entities and as a catalog.
+     */
+    public record CarsAndCatalog(List<CarEntity> cars, CatalogSnapshot catalog) {
+    }
+
+    private record Facets(CatalogSnapshot catalog, Map<String, Object> values) {
+    }
+
+    static long toMicros(LocalDateTime dateTime) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, dateTime.toInstant(ZoneOffset.UTC));
+    }
+
+    static LocalDateTime toLocalDateTime(long micros) {
+        return LocalDateTime.ofInstant(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), ZoneOffset.UTC);
+    }
+}
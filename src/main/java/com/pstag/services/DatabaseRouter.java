@@ -0,0 +1,247 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgException;
+import io.vertx.sqlclient.PoolOptions;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Routes database work between the primary, which takes every write, and an
+ * optional read replica configured with database.replica.url.
+ *
+ * Read-your-writes: after a write, the caller pins the key it wrote, for
+ * example "car:42", and reads of that key go to the primary for
+ * database.read-your-writes-ms, which should exceed the usual replication lag.
+ * Writes of many cars, such as ingests and enrichment windows, pin CATALOG,
+ * which the list, facet and export reads check. Pins are kept per node.
+ *
+ * Failover: the replica is checked every database.replica.health-interval-ms
+ * with a query that also measures its replay lag. When it is unreachable or
+ * lags behind by more than database.replica.max-lag-ms, reads go to the
+ * primary until a later check succeeds. A read that fails on the replica with
+ * anything else than an SQL error or an IllegalArgumentException, which the
+ * primary would answer the same, is retried on the primary and marks the
+ * replica unhealthy right away.
+ *
+ * Metrics:
+ * - db.replica.healthy: 1 when reads may go to the replica, 0 otherwise.
+ * - db.reads{pool=primary|replica}: reads by the pool they were sent to.
+ */
+@ApplicationScoped
+public class DatabaseRouter {
+
+    /**
+     * The key of the reads that span the whole catalog.
+     */
+    public static final String CATALOG = "catalog";
+
+    private static final String LAG_QUERY = "SELECT CASE WHEN pg_is_in_recovery() "
+            + "AND pg_last_wal_receive_lsn() IS DISTINCT FROM pg_last_wal_replay_lsn() "
+            + "THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) "
+            + "ELSE 0 END AS lag_ms";
+
+    private final PgPool primary;
+
+    private final Vertx vertx;
+
+    private final Optional<String> replicaUrl;
+
+    private final int replicaMaxSize;
+
+    private final long pinNanos;
+
+    private final long healthIntervalMillis;
+
+    private final double maxLagMillis;
+
+    private final Map<String, Long> pins = new ConcurrentHashMap<>();
+
+    private final Counter primaryReads;
+
+    private final Counter replicaReads;
+
+    private PgPool replica;
+
+    private volatile boolean replicaHealthy;
+
+    private long healthTimer = -1;
+
+    @Inject
+    public DatabaseRouter(PgPool primary, Vertx vertx, MeterRegistry registry) {
+        this.primary = primary;
+        this.vertx = vertx;
+
+        Config config = ConfigProvider.getConfig();
+        replicaUrl = config.getOptionalValue("database.replica.url", String.class);
+        replicaMaxSize = config.getValue("database.replica.max-size", Integer.class);
+        pinNanos = TimeUnit.MILLISECONDS.toNanos(config.getValue("database.read-your-writes-ms", Long.class));
+        healthIntervalMillis = config.getValue("database.replica.health-interval-ms", Long.class);
+        maxLagMillis = config.getValue("database.replica.max-lag-ms", Double.class);
+
+        registry.gauge("db.replica.healthy", this, router -> router.isReplicaHealthy() ? 1 : 0);
+        primaryReads = registry.counter("db.reads", "pool", "primary");
+        replicaReads = registry.counter("db.reads", "pool", "replica");
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (replicaUrl.isEmpty()) {
+            return;
+        }
+        Config config = ConfigProvider.getConfig();
+        PgConnectOptions options = PgConnectOptions.fromUri(replicaUrl.get());
+        if (options.getUser() == null || options.getUser().isEmpty()) {
+            config.getOptionalValue("quarkus.datasource.username", String.class).ifPresent(options::setUser);
+            config.getOptionalValue("quarkus.datasource.password", String.class).ifPresent(options::setPassword);
+        }
+        replica = PgPool.pool(vertx, options, new PoolOptions().setMaxSize(replicaMaxSize).setName("replica"));
+
+        checkReplica();
+        healthTimer = vertx.setPeriodic(healthIntervalMillis, id -> checkReplica());
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (healthTimer >= 0) {
+            vertx.cancelTimer(healthTimer);
+        }
+        if (replica != null) {
+            replica.closeAndForget();
+        }
+    }
+
+    /**
+     * Returns the pool that takes writes and reads that must be current.
+     *
+     * @return the primary PgPool
+     */
+    public PgPool write() {
+        return primary;
+    }
+
+    /**
+     * Returns the pool for a read that has no read-your-writes requirement.
+     *
+     * @return the replica when it is healthy, the primary otherwise
+     */
+    public PgPool read() {
+        return read(null);
+    }
+
+    /**
+     * Returns the pool for a read of the given key.
+     *
+     * @param key the key the read is about, or null
+     * @return the primary when the key was pinned recently or the replica is
+     *         not healthy, the replica otherwise
+     */
+    public PgPool read(String key) {
+        if (!replicaHealthy || isPinned(key)) {
+            primaryReads.increment();
+            return primary;
+        }
+        replicaReads.increment();
+        return replica;
+    }
+
+    /**
+     * Runs a read on the pool chosen by read(key), retrying it on the primary
+     * when the replica fails for another reason than an SQL error or an
+     * invalid argument.
+     *
+     * @param key   the key the read is about, or null
+     * @param query runs the read on the given pool
+     * @return a Uni containing the result of the read
+     */
+    public <T> Uni<T> read(String key, Function<PgPool, Uni<T>> query) {
+        PgPool pool = read(key);
+        if (pool == primary) {
+            return query.apply(pool);
+        }
+        return query.apply(pool)
+                .onFailure(e -> !(e instanceof PgException || e instanceof IllegalArgumentException))
+                .recoverWithUni(e -> {
+                    markReplicaUnhealthy(e);
+                    primaryReads.increment();
+                    return query.apply(primary);
+                });
+    }
+
+    /**
+     * Sends the reads of a key to the primary for database.read-your-writes-ms,
+     * to be called once a write of that key succeeded.
+     *
+     * @param key the key that was written
+     */
+    public void pin(String key) {
+        pins.put(key, System.nanoTime() + pinNanos);
+    }
+
+    /**
+     * Returns whether reads may currently go to the replica.
+     *
+     * @return true when a replica is configured and passed its last check
+     */
+    public boolean isReplicaHealthy() {
+        return replicaHealthy;
+    }
+
+    private boolean isPinned(String key) {
+        if (key == null) {
+            return false;
+        }
+        Long until = pins.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        pins.remove(key, until);
+        return false;
+    }
+
+    private void checkReplica() {
+        // Drop expired pins so the map only holds recent writes
+        long now = System.nanoTime();
+        pins.values().removeIf(until -> now - until >= 0);
+
+        replica.query(LAG_QUERY).execute()
+                .onItem().transform(rows -> rows.iterator().next().getDouble("lag_ms"))
+                .subscribe().with(lagMillis -> {
+                    if (lagMillis > maxLagMillis) {
+                        markReplicaUnhealthy(new IllegalStateException(
+                                String.format("replica lags %.0f ms behind", lagMillis)));
+                    } else if (!replicaHealthy) {
+                        replicaHealthy = true;
+                        Log.info("Read replica is healthy, routing reads to it");
+                    }
+                }, this::markReplicaUnhealthy);
+    }
+
+    private void markReplicaUnhealthy(Throwable cause) {
+        if (replicaHealthy) {
+            replicaHealthy = false;
+            Log.warnf("Read replica is unhealthy, routing reads to the primary: %s", cause.getMessage());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.pstag.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.EnrichmentCacheRepository;
+import com.pstag.utils.TokenEstimator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Memoizes AI enrichment answers per car. The key is a SHA-256 of the
+ * normalized attributes that describe a trim, leaving out the ID and the model
+ * year so that the same trim sold over several years is only asked once.
+ *
+ * Metrics:
+ * - enrichment.cache.requests{result=hit|miss}: cars looked up in the cache.
+ * - enrichment.cache.hit.ratio: hits divided by lookups since startup.
+ * - enrichment.cache.tokens.saved: estimated prompt tokens not sent to the AI
+ * service thanks to cache hits.
+ * - enrichment.cache.store.failures: batches of answers that could not be
+ * stored. The job goes on without them, so a rising count means the cache
+ * stopped filling.
+ */
+@ApplicationScoped
+public class EnrichmentCacheService {
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter tokensSaved;
+
+    private final Counter storeFailures;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong lookupCount = new AtomicLong();
+
+    @Inject
+    public EnrichmentCacheService(MeterRegistry registry) {
+        hits = registry.counter("enrichment.cache.requests", "result", "hit");
+        misses = registry.counter("enrichment.cache.requests", "result", "miss");
+        tokensSaved = registry.counter("enrichment.cache.tokens.saved");
+        storeFailures = registry.counter("enrichment.cache.store.failures");
+        registry.gauge("enrichment.cache.hit.ratio", this,
+                service -> service.lookupCount.get() == 0 ? 0.0
+                        : (double) service.hitCount.get() / service.lookupCount.get());
+    }
+
+    /**
+     * Looks up the cached answers for a batch of cars.
+     *
+     * @param client the PgPool client used for database operations
+     * @param cars   the cars to look up
+     * @return a Uni containing a map of car ID to the cached answer, carrying the
+     *         car ID, color and velocity
+     */
+    public Uni<Map<Long, CarEntity>> lookup(PgPool client, List<CarEntity> cars) {
+        Map<Long, String> hashes = cars.stream()
+                .collect(Collectors.toMap(CarEntity::id, EnrichmentCacheService::inputHash));
+
+        return EnrichmentCacheRepository.findByHashes(client, hashes.values().stream().distinct().toList())
+                .onItem().transform(cached -> {
+                    Map<Long, CarEntity> result = new HashMap<>();
+                    for (CarEntity car : cars) {
+                        CarEntity answer = cached.get(hashes.get(car.id()));
+                        if (answer != null) {
+                            result.put(car.id(), withId(answer, car.id()));
+                            tokensSaved.increment(TokenEstimator.estimate(car.toString()));
+                        }
+                    }
+                    hits.increment(result.size());
+                    misses.increment(cars.size() - result.size());
+                    hitCount.addAndGet(result.size());
+                    lookupCount.addAndGet(cars.size());
+                    return result;
+                });
+    }
+
+    /**
+     * Stores the AI answers for the cars they belong to.
+     *
+     * @param client  the PgPool client used for database operations
+     * @param cars    the cars that were sent to the AI service
+     * @param answers the parsed answers, matched to the cars by ID
+     * @return a Uni that completes when the answers are stored
+     */
+    public Uni<Void> store(PgPool client, List<CarEntity> cars, List<CarEntity> answers) {
+        Map<Long, CarEntity> answersById = answers.stream()
+                .collect(Collectors.toMap(CarEntity::id, answer -> answer, (first, second) -> first));
+        Map<String, CarEntity> byHash = new HashMap<>();
+        for (CarEntity car : cars) {
+            CarEntity answer = answersById.get(car.id());
+            if (answer != null) {
+                byHash.put(inputHash(car), answer);
+            }
+        }
+        return EnrichmentCacheRepository.save(client, byHash)
+                .onFailure().invoke(failure -> {
+                    storeFailures.increment();
+                    Log.warnf("Could not store %d enrichment answers in the cache: %s", byHash.size(),
+                            failure.getMessage());
+                });
+    }
+
+    /**
+     * Computes the cache key of a car: the SHA-256 of its lower-cased,
+     * whitespace-normalized descriptive attributes.
+     *
+     * @param car the car to hash
+     * @return the hex encoded hash
+     */
+    public static String inputHash(CarEntity car) {
+        String normalized = Stream.of(car.make(), car.model(), car.trimName(), car.trimDescription(),
+                car.fuelType(), car.transmission(), car.bodyType())
+                .map(value -> value == null ? "" : value.trim().replaceAll("\\s+", " ").toLowerCase())
+                .collect(Collectors.joining("|"));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static CarEntity withId(CarEntity answer, Long id) {
+        return new CarEntity(id, null, null, 0, null, null, null, null, null, answer.color(), 0.0, 0.0,
+                answer.velocity(), null, null);
+    }
+}
@@ -0,0 +1,402 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.entities.EnrichmentJob;
+import com.pstag.interfaces.MyAiService;
+import com.pstag.repositories.CarRepository;
+import com.pstag.repositories.EnrichmentJobRepository;
+import com.pstag.utils.BearerToken;
+import com.pstag.utils.EnrichmentResponseParser;
+import com.pstag.utils.GenericResponse;
+import com.pstag.utils.PromptBatchPacker;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * Background job that fills the missing velocity and color of cars by asking
+ * the AI service.
+ *
+ * The job walks the "cars" table with a keyset cursor on the ID. Each window of
+ * window-size cars is packed into batches that fill the token budget of one
+ * request, the batches are sent to the AI service concurrently, and the cursor
+ * is checkpointed in the "enrichment_jobs" table once the whole window is done.
+ * A stopped or crashed job resumes from its last checkpoint, so at most one
+ * window is sent twice.
+ *
+ * While a job runs, its row is refreshed every
+ * enrichment.heartbeat-interval-ms. A RUNNING job without a heartbeat for
+ * three intervals belongs to a node that died: it is marked INTERRUPTED at
+ * startup, and again before every start and status read, so that the status
+ * does not report a dead job as running and the next start resumes it.
+ *
+ * A stop may reach any node: it is stored in the row of the running job, and
+ * the node running it reads it back with each heartbeat and checkpoint. Only
+ * one job can be RUNNING, so two nodes starting at once do not both run one.
+ *
+ * Starting, stopping and reading the job requires "Authorization: Bearer"
+ * with the token of enrichment.token. Without a configured token, the job
+ * cannot be reached over HTTP.
+ *
+ * Metrics:
+ * - enrichment.ai.cars.per.call: cars packed into each successful request.
+ * - enrichment.ai.calls{result=success|unparsable|error}: AI requests by
+ * outcome, the unanswered cars of an unparsable answer are retried as two
+ * smaller batches.
+ * - enrichment.ai.cars.rejected: car objects skipped because of an unknown ID
+ * or a missing or mistyped field.
+ */
+@ApplicationScoped
+public class EnrichmentJobService {
+
+    private final MyAiService aiService;
+
+    private final ObjectMapper objectMapper;
+
+    private final EnrichmentCacheService cacheService;
+
+    private final OutboundScheduler scheduler;
+
+    private final BlockingExecutor blockingExecutor;
+
+    private final DatabaseRouter router;
+
+    private final Vertx vertx;
+
+    private final PromptBatchPacker packer;
+
+    private final int windowSize;
+
+    private final int parallelism;
+
+    private final int writeBatchSize;
+
+    private final long heartbeatIntervalMillis;
+
+    private final DistributionSummary carsPerCall;
+
+    private final Counter successfulCalls;
+
+    private final Counter truncatedCalls;
+
+    private final Counter failedCalls;
+
+    private final Counter rejectedCars;
+
+    private final BearerToken token;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile boolean stopRequested;
+
+    @Inject
+    public EnrichmentJobService(MyAiService aiService, ObjectMapper objectMapper,
+            EnrichmentCacheService cacheService, OutboundScheduler scheduler, BlockingExecutor blockingExecutor,
+            DatabaseRouter router, Vertx vertx, MeterRegistry registry) {
+        this.aiService = aiService;
+        this.objectMapper = objectMapper;
+        this.cacheService = cacheService;
+        this.scheduler = scheduler;
+        this.blockingExecutor = blockingExecutor;
+        this.router = router;
+        this.vertx = vertx;
+
+        Config config = ConfigProvider.getConfig();
+        windowSize = config.getValue("enrichment.window-size", Integer.class);
+        parallelism = config.getValue("enrichment.parallelism", Integer.class);
+        writeBatchSize = config.getValue("enrichment.write-batch-size", Integer.class);
+        heartbeatIntervalMillis = config.getValue("enrichment.heartbeat-interval-ms", Long.class);
+        double safetyFactor = config.getValue("enrichment.token-safety-factor", Double.class);
+        packer = new PromptBatchPacker(
+                config.getValue("enrichment.max-input-tokens", Integer.class),
+                (int) (config.getValue("enrichment.max-output-tokens", Integer.class) * safetyFactor),
+                config.getValue("enrichment.max-cars-per-call", Integer.class),
+                config.getValue("enrichment.expected-colors", Integer.class));
+
+        carsPerCall = DistributionSummary.builder("enrichment.ai.cars.per.call").register(registry);
+        successfulCalls = registry.counter("enrichment.ai.calls", "result", "success");
+        truncatedCalls = registry.counter("enrichment.ai.calls", "result", "unparsable");
+        failedCalls = registry.counter("enrichment.ai.calls", "result", "error");
+        rejectedCars = registry.counter("enrichment.ai.cars.rejected");
+        token = BearerToken.fromConfig("enrichment.token");
+    }
+
+    /**
+     * Tells whether the job can be reached over HTTP, that is whether
+     * enrichment.token is set.
+     *
+     * @return true when a token is configured
+     */
+    public boolean isEnabled() {
+        return token.isPresent();
+    }
+
+    /**
+     * Checks the Authorization header of a request against enrichment.token,
+     * in constant time.
+     *
+     * @param authorization the Authorization header, or null
+     * @return true when it is "Bearer " followed by the configured token
+     */
+    public boolean isAuthorized(String authorization) {
+        return token.matches(authorization);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        interruptStale(router.write()).subscribe().with(
+                interrupted -> {
+                }, failure -> Log.warnf("Could not interrupt stale enrichment jobs: %s", failure.getMessage()));
+    }
+
+    /**
+     * Starts the enrichment job in the background. The latest job is resumed
+     * from its checkpoint unless it already completed, in which case a new job
+     * is created. A job still running on another node is left alone.
+     *
+     * @param client the PgPool client used for database operations
+     * @return a Uni containing a GenericResponse with the started job
+     */
+    public Uni<GenericResponse<EnrichmentJob>> start(PgPool client) {
+        if (!running.compareAndSet(false, true)) {
+            return EnrichmentJobRepository.findLatest(client)
+                    .onItem().transform(job -> new GenericResponse<>(job, "Enrichment job is already running"));
+        }
+        stopRequested = false;
+
+        return interruptStale(client)
+                .onItem().transformToUni(interrupted -> EnrichmentJobRepository.findLatest(client))
+                .onItem().transformToUni(job -> (job != null && job.isResumable()
+                        ? EnrichmentJobRepository.resume(client, job.id())
+                        : EnrichmentJobRepository.create(client))
+                        .onItem().transform(started -> {
+                            if (started == null) {
+                                running.set(false);
+                                return new GenericResponse<>(job, "Enrichment job is already running on another node");
+                            }
+                            blockingExecutor.execute(() -> run(client, started));
+                            return new GenericResponse<>(started, "Enrichment job started");
+                        }))
+                .onFailure().invoke(() -> running.set(false));
+    }
+
+    /**
+     * Requests the running job to stop, on whichever node it runs. The job
+     * finishes the window it is working on, stores its checkpoint and then
+     * stops.
+     *
+     * @param client the PgPool client used for database operations
+     * @return a Uni containing a GenericResponse with the current job
+     */
+    public Uni<GenericResponse<EnrichmentJob>> stop(PgPool client) {
+        if (running.get()) {
+            stopRequested = true;
+        }
+        return EnrichmentJobRepository.requestStop(client)
+                .onItem().transformToUni(job -> job != null
+                        ? Uni.createFrom().item(new GenericResponse<>(job, "Enrichment job is stopping"))
+                        : EnrichmentJobRepository.findLatest(client)
+                                .onItem().transform(latest -> new GenericResponse<>(latest,
+                                        "Enrichment job is not running")));
+    }
+
+    /**
+     * Retrieves the status of the latest enrichment job.
+     *
+     * @param client the PgPool client used for database operations
+     * @return a Uni containing a GenericResponse with the latest job, or null if
+     *         no job has been started yet
+     */
+    public Uni<GenericResponse<EnrichmentJob>> status(PgPool client) {
+        return interruptStale(client)
+                .onItem().transformToUni(interrupted -> EnrichmentJobRepository.findLatest(client))
+                .onItem().transform(job -> new GenericResponse<>(job,
+                        job == null ? "Enrichment job has never been started" : "Enrichment job " + job.status()));
+    }
+
+    private Uni<Integer> interruptStale(PgPool client) {
+        return EnrichmentJobRepository.interruptStale(client, 3 * heartbeatIntervalMillis)
+                .onItem().invoke(interrupted -> {
+                    if (interrupted > 0) {
+                        Log.warnf("Marked %d orphaned enrichment job(s) as %s", interrupted,
+                                EnrichmentJob.INTERRUPTED);
+                    }
+                });
+    }
+
+    /**
+     * Runs the job loop on the BlockingExecutor until the end of the table is
+     * reached, a stop is requested or an unrecoverable error occurs.
+     */
+    private void run(PgPool client, EnrichmentJob job) {
+        long lastId = job.lastId();
+        int processed = job.processed();
+        int updated = job.updated();
+        int failed = job.failed();
+        String status = EnrichmentJob.STOPPED;
+        String error = null;
+        long heartbeat = vertx.setPeriodic(heartbeatIntervalMillis,
+                timer -> EnrichmentJobRepository.heartbeat(client, job.id()).subscribe().with(
+                        this::onStopRequested,
+                        failure -> Log.warnf("Enrichment job heartbeat failed: %s", failure.getMessage())));
+
+        try {
+            while (!stopRequested) {
+                List<CarEntity> window = CarRepository.findMissingData(client, lastId, windowSize)
+                        .await().indefinitely();
+                if (window.isEmpty()) {
+                    status = EnrichmentJob.COMPLETED;
+                    break;
+                }
+
+                int windowUpdated = enrichWindow(client, window).await().indefinitely();
+                lastId = window.get(window.size() - 1).id();
+                processed += window.size();
+                updated += windowUpdated;
+                failed += window.size() - windowUpdated;
+
+                onStopRequested(EnrichmentJobRepository
+                        .checkpoint(client, job.id(), lastId, processed, updated, failed).await().indefinitely());
+                Log.infof("Enrichment job %d checkpoint at id %d (%d processed, %d updated)", job.id(), lastId,
+                        processed, updated);
+            }
+        } catch (Exception e) {
+            Log.error("Enrichment job failed", e);
+            status = EnrichmentJob.FAILED;
+            error = e.getMessage();
+        } finally {
+            vertx.cancelTimer(heartbeat);
+            try {
+                EnrichmentJobRepository.finish(client, job.id(), status, error).await().indefinitely();
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    private void onStopRequested(boolean requested) {
+        if (requested) {
+            stopRequested = true;
+        }
+    }
+
+    /**
+     * Enriches a window of cars. Cars whose answer is already memoized are
+     * taken from the cache and left out of the prompts; the others are packed
+     * into token-budgeted batches that are sent to the AI service concurrently.
+     * Every answered car goes into a shared write batch as soon as it is parsed,
+     * and the answers are memoized once their call is done. When cars were
+     * updated, the catalog reads are pinned to the primary.
+     *
+     * @return a Uni containing the number of updated cars
+     */
+    private Uni<Integer> enrichWindow(PgPool client, List<CarEntity> window) {
+        CarWriteBatch writes = new CarWriteBatch(client, writeBatchSize);
+        return cacheService.lookup(client, window)
+                .onItem().transformToUni(cached -> {
+                    cached.values().forEach(writes::add);
+                    List<CarEntity> misses = window.stream().filter(car -> !cached.containsKey(car.id())).toList();
+
+                    return Multi.createFrom().iterable(packer.pack(misses))
+                            .onItem().transformToUni(batch -> askAiService(batch, writes)
+                                    .call(answers -> cacheService.store(client, batch, answers)
+                                            .onFailure().recoverWithNull()))
+                            .merge(parallelism)
+                            .collect().asList()
+                            .onItem().transformToUni(ignored -> writes.flush())
+                            .onItem().invoke(updated -> {
+                                if (updated > 0) {
+                                    router.pin(DatabaseRouter.CATALOG);
+                                }
+                            });
+                });
+    }
+
+    /**
+     * Sends a batch of cars to the AI service and streams the answer into the
+     * write batch. When the answer stops early, which is what a completion
+     * truncated at max-tokens looks like, the cars that were not answered yet
+     * are split in two halves that are retried on their own. A single car that
+     * still fails, or a failed call, is given up so that the rest of the window
+     * can proceed.
+     *
+     * @return a Uni containing every car accepted for this batch
+     */
+    private Uni<List<CarEntity>> askAiService(List<CarEntity> batch, CarWriteBatch writes) {
+        Set<Long> ids = batch.stream().map(CarEntity::id).collect(Collectors.toSet());
+        String listOfData = batch.stream().map(CarEntity::toString).collect(Collectors.joining("\n"));
+
+        return scheduler.submit("ai", () -> Uni.createFrom().item(() -> aiService.getCarInformation(listOfData))
+                .runSubscriptionOn(blockingExecutor.executor()))
+                .onItem().transformToUni(response -> {
+                    EnrichmentResponseParser.Result result = EnrichmentResponseParser.parse(
+                            objectMapper.getFactory(), response, ids, writes::add);
+                    carsPerCall.record(batch.size());
+                    rejectedCars.increment(result.rejected());
+                    if (result.complete()) {
+                        successfulCalls.increment();
+                        return Uni.createFrom().item(result.accepted());
+                    }
+
+                    truncatedCalls.increment();
+                    Set<Long> answered = result.accepted().stream().map(CarEntity::id).collect(Collectors.toSet());
+                    List<CarEntity> remaining = batch.stream().filter(car -> !answered.contains(car.id())).toList();
+                    if (remaining.isEmpty()) {
+                        return Uni.createFrom().item(result.accepted());
+                    }
+                    if (batch.size() == 1) {
+                        Log.errorf("Unparsable answer for car %d", batch.get(0).id());
+                        return Uni.createFrom().item(result.accepted());
+                    }
+                    Log.warnf("Incomplete answer for %d cars, retrying %d of them", batch.size(), remaining.size());
+                    return retry(remaining, writes)
+                            .onItem().transform(retried -> {
+                                List<CarEntity> answers = new ArrayList<>(result.accepted());
+                                answers.addAll(retried);
+                                return answers;
+                            });
+                })
+                .onFailure().recoverWithItem(e -> {
+                    failedCalls.increment();
+                    Log.error("Error calling AI service", e);
+                    return List.of();
+                });
+    }
+
+    private Uni<List<CarEntity>> retry(List<CarEntity> remaining, CarWriteBatch writes) {
+        if (remaining.size() == 1) {
+            return askAiService(remaining, writes);
+        }
+        List<CarEntity> left = remaining.subList(0, remaining.size() / 2);
+        List<CarEntity> right = remaining.subList(remaining.size() / 2, remaining.size());
+        return Uni.combine().all().unis(askAiService(left, writes), askAiService(right, writes))
+                .with((leftAnswers, rightAnswers) -> {
+                    List<CarEntity> answers = new ArrayList<>(leftAnswers);
+                    answers.addAll(rightAnswers);
+                    return answers;
+                });
+    }
+}
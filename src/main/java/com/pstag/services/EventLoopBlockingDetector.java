@@ -0,0 +1,173 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.pstag.entities.BlockedThreadSample;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Watches the Vert.x event-loop threads and records every task that keeps one
+ * of them busy for longer than event-loop-detector.threshold-ms. Blocking an
+ * event loop stalls every request served by that thread, so each occurrence
+ * is counted, logged with the stack of the blocked thread and kept in a small
+ * ring buffer that the admin endpoint exposes.
+ *
+ * A probe verticle is deployed on every event loop, one instance per loop of
+ * quarkus.vertx.event-loops-size, and ticks on a periodic timer of
+ * event-loop-detector.interval-ms. A watchdog thread reads the last tick of
+ * each loop: when a loop has not ticked for the interval plus the threshold,
+ * a task is holding it, and the stack of the thread is taken while it is
+ * still blocked. Only public Vert.x APIs are used.
+ *
+ * Unlike the Vert.x blocked thread checker, which only logs after seconds, the
+ * threshold here is meant to be low enough (tens of milliseconds) to catch
+ * accidental await() calls in development and in production.
+ *
+ * Metrics:
+ * - eventloop.blocked.duration: how long the thread had been busy when the
+ * episode was detected, in milliseconds; its count is the number of episodes.
+ */
+@ApplicationScoped
+public class EventLoopBlockingDetector {
+
+    private final Vertx vertx;
+
+    private final boolean enabled;
+
+    private final long thresholdNanos;
+
+    private final long intervalMillis;
+
+    private final int eventLoopsSize;
+
+    private final int maxSamples;
+
+    private final Map<Thread, Long> lastTicks = new ConcurrentHashMap<>();
+
+    private final Map<Thread, Long> reported = new ConcurrentHashMap<>();
+
+    private final Deque<BlockedThreadSample> samples = new ArrayDeque<>();
+
+    private final DistributionSummary blockedDuration;
+
+    private ScheduledExecutorService watchdog;
+
+    @Inject
+    public EventLoopBlockingDetector(Vertx vertx, MeterRegistry registry) {
+        this.vertx = vertx;
+
+        Config config = ConfigProvider.getConfig();
+        enabled = config.getValue("event-loop-detector.enabled", Boolean.class);
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getValue("event-loop-detector.threshold-ms",
+                Long.class));
+        intervalMillis = config.getValue("event-loop-detector.interval-ms", Long.class);
+        maxSamples = config.getValue("event-loop-detector.max-samples", Integer.class);
+        // Quarkus sizes the event loop group at twice the processors by default
+        eventLoopsSize = config.getOptionalValue("quarkus.vertx.event-loops-size", Integer.class)
+                .orElse(2 * Runtime.getRuntime().availableProcessors());
+
+        blockedDuration = DistributionSummary.builder("eventloop.blocked.duration")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        // Vert.x assigns the event loops of new verticle instances round-robin
+        vertx.deployVerticle(Probe::new, new DeploymentOptions().setInstances(eventLoopsSize));
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-loop-blocking-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog.scheduleAtFixedRate(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the most recent blocking samples, newest first.
+     *
+     * @return a list of BlockedThreadSample objects
+     */
+    public synchronized List<BlockedThreadSample> getSamples() {
+        return List.copyOf(samples);
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        lastTicks.forEach((thread, lastTick) -> {
+            // The next tick was due one interval after the last one
+            long blockedNanos = now - lastTick - intervalNanos;
+            if (blockedNanos < thresholdNanos) {
+                return;
+            }
+            // Report each blocking episode once, identified by the last tick before it
+            if (lastTick.equals(reported.put(thread, lastTick))) {
+                return;
+            }
+            record(thread, TimeUnit.NANOSECONDS.toMillis(blockedNanos));
+        });
+    }
+
+    private void record(Thread thread, long blockedMillis) {
+        List<String> stackTrace = Arrays.stream(thread.getStackTrace()).map(StackTraceElement::toString).toList();
+        BlockedThreadSample sample = new BlockedThreadSample(thread.getName(), blockedMillis, LocalDateTime.now(),
+                stackTrace);
+
+        synchronized (this) {
+            samples.addFirst(sample);
+            while (samples.size() > maxSamples) {
+                samples.removeLast();
+            }
+        }
+        blockedDuration.record(blockedMillis);
+        Log.warnf("Event loop %s blocked for %d ms at %s", thread.getName(), blockedMillis,
+                stackTrace.isEmpty() ? "?" : stackTrace.get(0));
+    }
+
+    /**
+     * Records the time of each tick of the event loop it is deployed on.
+     */
+    private final class Probe extends AbstractVerticle {
+
+        @Override
+        public void start() {
+            Thread thread = Thread.currentThread();
+            lastTicks.put(thread, System.nanoTime());
+            vertx.setPeriodic(intervalMillis, id -> lastTicks.put(thread, System.nanoTime()));
+        }
+    }
+}
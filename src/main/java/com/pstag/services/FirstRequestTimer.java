@@ -0,0 +1,74 @@
+package com.pstag.services;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.resteasy.reactive.server.ServerRequestFilter;
+import org.jboss.resteasy.reactive.server.ServerResponseFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Measures the first served request: the JVM uptime when the first response
+ * of a REST endpoint that is not a server error is sent, and how long that
+ * request took. Both are tagged with where the catalog was loaded from, so
+ * that a start from the snapshot of CatalogCache can be compared with a start
+ * from the database, and with whether the WarmupService had finished.
+ *
+ * Metrics, tagged by catalog=snapshot|database|none and warmed-up=true|false:
+ * - startup.first.request.seconds: JVM uptime at the first response.
+ * - startup.first.request.latency.seconds: duration of the first request.
+ */
+public class FirstRequestTimer {
+
+    private static final String START = FirstRequestTimer.class.getName() + ".start";
+
+    private final AtomicBoolean served = new AtomicBoolean();
+
+    private volatile double seconds;
+
+    private volatile double latencySeconds;
+
+    private final CatalogCache catalogCache;
+
+    private final WarmupService warmupService;
+
+    private final MeterRegistry registry;
+
+    @Inject
+    public FirstRequestTimer(CatalogCache catalogCache, WarmupService warmupService, MeterRegistry registry) {
+        this.catalogCache = catalogCache;
+        this.warmupService = warmupService;
+        this.registry = registry;
+    }
+
+    @ServerRequestFilter
+    public void onRequest(ContainerRequestContext request) {
+        if (!served.get()) {
+            request.setProperty(START, System.nanoTime());
+        }
+    }
+
+    @ServerResponseFilter
+    public void onResponse(ContainerRequestContext request, ContainerResponseContext response) {
+        if (served.get() || response.getStatus() >= 500 || !(request.getProperty(START) instanceof Long start)
+                || !served.compareAndSet(false, true)) {
+            return;
+        }
+        latencySeconds = (System.nanoTime() - start) / 1e9;
+        seconds = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+        String source = catalogCache.getSource() != null ? catalogCache.getSource() : "none";
+        Tags tags = Tags.of("catalog", source, "warmed-up", String.valueOf(warmupService.isWarmedUp()));
+        registry.gauge("startup.first.request.seconds", tags, this, timer -> timer.seconds);
+        registry.gauge("startup.first.request.latency.seconds", tags, this, timer -> timer.latencySeconds);
+        Log.infof("First request served %.3f s after JVM start in %.0f ms, catalog from %s, warmed up: %s",
+                seconds, latencySeconds * 1000, source, warmupService.isWarmedUp());
+    }
+}
@@ -0,0 +1,301 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.pstag.entities.IndexAdvice;
+import com.pstag.entities.QueryLatency;
+import com.pstag.interfaces.QueryListener;
+import com.pstag.utils.IndexProposal;
+import com.pstag.utils.QueryMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Proposes indexes for the searches that actually reach CarRepository.findAll.
+ *
+ * The latencies of the count and list statements are recorded by QueryShape,
+ * over a window of the last index-advisor.window-size statements of each
+ * shape. Once a shape has index-advisor.min-samples statements, it gets the
+ * IndexProposal of its shape, unless an existing index of "cars" already
+ * starts with the same columns. The advice is ordered by the time the shape
+ * spent in the database, the most expensive first.
+ *
+ * An index is only created on the admin command, concurrently on each
+ * partition so that writes are not blocked. The latencies recorded until then
+ * are kept as the "before" of each shape using it, and the window restarts
+ * once the index is valid, so the "after" only covers statements that could
+ * use it.
+ *
+ * Metrics:
+ * - index.advisor.shapes: number of shapes recorded.
+ */
+@ApplicationScoped
+public class IndexAdvisor implements QueryListener {
+
+    private static final Set<String> QUERIES = Set.of("cars.count", "cars.list");
+
+    private static final String INDEXES_QUERY = "SELECT c.relname AS name, "
+            + "ARRAY(SELECT pg_get_indexdef(i.indexrelid, k, true) FROM generate_series(1, i.indnkeyatts) k "
+            + "ORDER BY k) AS columns "
+            + "FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid "
+            + "WHERE i.indrelid = 'cars'::regclass AND i.indisvalid";
+
+    private static final String PARTITIONS_QUERY = "SELECT c.relname AS name "
+            + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+            + "WHERE i.inhparent = 'cars'::regclass ORDER BY c.relname";
+
+    private final PgPool client;
+
+    private final boolean enabled;
+
+    private final boolean createEnabled;
+
+    private final int windowSize;
+
+    private final int minSamples;
+
+    private final Map<String, ShapeLatencies> shapes = new ConcurrentHashMap<>();
+
+    private final Map<String, String> statuses = new ConcurrentHashMap<>();
+
+    @Inject
+    public IndexAdvisor(PgPool client, MeterRegistry registry) {
+        this.client = client;
+
+        Config config = ConfigProvider.getConfig();
+        enabled = config.getValue("index-advisor.enabled", Boolean.class);
+        createEnabled = config.getValue("index-advisor.create.enabled", Boolean.class);
+        windowSize = config.getValue("index-advisor.window-size", Integer.class);
+        minSamples = config.getValue("index-advisor.min-samples", Integer.class);
+
+        registry.gauge("index.advisor.shapes", shapes, Map::size);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (enabled) {
+            QueryMetrics.addListener(this);
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        QueryMetrics.removeListener(this);
+    }
+
+    @Override
+    public void onQuery(String query, String shape, String sql, List<Object> parameters, long nanos,
+            boolean failed) {
+        if (failed || !QUERIES.contains(query) || IndexProposal.of(shape).isEmpty()) {
+            return;
+        }
+        shapes.computeIfAbsent(shape, key -> new ShapeLatencies(windowSize)).record(query, nanos);
+    }
+
+    /**
+     * Returns the proposed indexes of the shapes with enough samples, the
+     * most expensive shape first.
+     *
+     * @return a Uni containing the advice of each shape
+     */
+    public Uni<List<IndexAdvice>> getAdvice() {
+        return loadIndexes().onItem().transform(indexes -> {
+            List<Map.Entry<String, ShapeLatencies>> recorded = new ArrayList<>(shapes.entrySet());
+            recorded.sort(Comparator.comparingDouble(
+                    (Map.Entry<String, ShapeLatencies> entry) -> entry.getValue().totalMillis()).reversed());
+
+            List<IndexAdvice> advice = new ArrayList<>();
+            for (Map.Entry<String, ShapeLatencies> entry : recorded) {
+                ShapeLatencies latencies = entry.getValue();
+                Optional<IndexProposal> proposal = IndexProposal.of(entry.getKey());
+                if (proposal.isEmpty() || (latencies.samples() < minSamples && latencies.before() == null)) {
+                    continue;
+                }
+                advice.add(advise(entry.getKey(), proposal.get(), latencies, indexes));
+            }
+            return advice;
+        });
+    }
+
+    /**
+     * Tells whether createIndex may run. It issues DDL on the primary, so it is
+     * off unless index-advisor.create.enabled is set.
+     *
+     * @return true when proposed indexes can be created through the API
+     */
+    public boolean isCreateEnabled() {
+        return createEnabled;
+    }
+
+    /**
+     * Creates a proposed index in the background, concurrently on each
+     * partition of "cars".
+     *
+     * @param name the name of an index returned by getAdvice
+     * @return a Uni containing the advice of the shapes using the index, with
+     *         the status "creating", or an empty list when no shape proposes
+     *         that index
+     */
+    public Uni<List<IndexAdvice>> createIndex(String name) {
+        return getAdvice().onItem().transformToUni(advice -> {
+            List<IndexAdvice> matching = advice.stream().filter(item -> item.name().equals(name)).toList();
+            if (matching.isEmpty() || !markCreating(name)) {
+                return Uni.createFrom().item(matching);
+            }
+
+            List<String> shapesUsingIndex = matching.stream().map(IndexAdvice::shape).toList();
+            shapesUsingIndex.forEach(shape -> shapes.get(shape).startOver(true));
+            IndexProposal proposal = IndexProposal.of(shapesUsingIndex.get(0)).orElseThrow();
+
+            loadPartitions()
+                    .onItem().transformToMulti(partitions -> Multi.createFrom()
+                            .iterable(proposal.getStatements(partitions)))
+                    .onItem().transformToUniAndConcatenate(statement -> {
+                        Log.infof("Index advisor: %s", statement);
+                        return client.query(statement).execute();
+                    })
+                    .collect().last()
+                    .subscribe().with(rows -> {
+                        statuses.put(name, "created");
+                        shapesUsingIndex.forEach(shape -> shapes.get(shape).startOver(false));
+                        Log.infof("Index advisor: created %s %s", name, proposal.getDefinition());
+                    }, failure -> {
+                        statuses.put(name, "failed: " + failure.getMessage());
+                        Log.warnf("Index advisor: creating %s failed: %s", name, failure.getMessage());
+                    });
+
+            return getAdvice().onItem().transform(updated -> updated.stream()
+                    .filter(item -> item.name().equals(name)).toList());
+        });
+    }
+
+    /**
+     * Marks an index as being created, unless it already is or was created;
+     * a failed creation can be started again.
+     */
+    private synchronized boolean markCreating(String name) {
+        String status = statuses.get(name);
+        if (status != null && !status.startsWith("failed")) {
+            return false;
+        }
+        statuses.put(name, "creating");
+        return true;
+    }
+
+    private IndexAdvice advise(String shape, IndexProposal proposal, ShapeLatencies latencies,
+            Map<String, List<String>> indexes) {
+        String coveredBy = null;
+        for (Map.Entry<String, List<String>> index : indexes.entrySet()) {
+            if (proposal.isCoveredBy(index.getValue())) {
+                coveredBy = index.getKey();
+                break;
+            }
+        }
+        String status = statuses.getOrDefault(proposal.getName(), coveredBy != null ? "exists" : "proposed");
+
+        List<QueryLatency> before = latencies.before();
+        return new IndexAdvice(proposal.getName(), shape,
+                "CREATE INDEX " + proposal.getName() + " ON cars " + proposal.getDefinition(), coveredBy, status,
+                before != null ? before : latencies.summarize(), before != null ? latencies.summarize() : List.of());
+    }
+
+    private Uni<Map<String, List<String>>> loadIndexes() {
+        return client.query(INDEXES_QUERY).execute().onItem().transform(rows -> {
+            Map<String, List<String>> indexes = new LinkedHashMap<>();
+            for (Row row : rows) {
+                indexes.put(row.getString("name"), Arrays.asList(row.getArrayOfStrings("columns")));
+            }
+            return indexes;
+        });
+    }
+
+    private Uni<List<String>> loadPartitions() {
+        return client.query(PARTITIONS_QUERY).execute().onItem().transform(rows -> {
+            List<String> partitions = new ArrayList<>();
+            for (Row row : rows) {
+                partitions.add(row.getString("name"));
+            }
+            return partitions;
+        });
+    }
+
+    /**
+     * The latencies of the statements of one shape, by statement name.
+     */
+    private static class ShapeLatencies {
+
+        private final int windowSize;
+
+        private final Map<String, long[]> windows = new LinkedHashMap<>();
+
+        private final Map<String, Long> counts = new LinkedHashMap<>();
+
+        private List<QueryLatency> before;
+
+        ShapeLatencies(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        synchronized void record(String query, long nanos) {
+            long count = counts.merge(query, 1L, Long::sum);
+            windows.computeIfAbsent(query, key -> new long[windowSize])[(int) ((count - 1) % windowSize)] = nanos;
+        }
+
+        synchronized long samples() {
+            return counts.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        }
+
+        synchronized double totalMillis() {
+            return summarize().stream().mapToDouble(latency -> latency.meanMillis() * latency.samples()).sum();
+        }
+
+        synchronized List<QueryLatency> before() {
+            return before;
+        }
+
+        /**
+         * Clears the window, keeping what it held as "before" the first time.
+         */
+        synchronized void startOver(boolean keepBefore) {
+            if (keepBefore && before == null) {
+                before = summarize();
+            }
+            windows.clear();
+            counts.clear();
+        }
+
+        synchronized List<QueryLatency> summarize() {
+            List<QueryLatency> latencies = new ArrayList<>();
+            windows.forEach((query, window) -> {
+                long count = counts.get(query);
+                long[] values = Arrays.copyOf(window, (int) Math.min(count, windowSize));
+                Arrays.sort(values);
+                double mean = Arrays.stream(values).average().orElse(0) / 1_000_000.0;
+                double p95 = values[(int) Math.ceil(values.length * 0.95) - 1] / 1_000_000.0;
+                latencies.add(new QueryLatency(query, count, mean, p95));
+            });
+            return latencies;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.pstag.services;
+
+import java.time.Duration;
+import java.util.Set;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+
+/**
+ * Shapes the metrics exposed on /q/metrics.
+ *
+ * Latency timers get a percentile histogram, so that p50, p99 and SLO
+ * ratios can be computed in Prometheus: the endpoints (http.server.requests),
+ * each statement (db.query.duration), the pipelined fan-outs, the outbound
+ * calls, the blocking tasks and the wait for a pooled connection
+ * (sql.pool.queue.delay, from the Vert.x pool metrics, next to
+ * sql.pool.active and sql.pool.queue.size).
+ *
+ * The QueryShape of a list or export, built from the names of its filter[...]
+ * and sort[...] parameters, only tags db.query.duration. On
+ * http.server.requests, each of up to metrics.max-query-shapes shapes would
+ * multiply the buckets of the endpoint histograms; the shape of a slow
+ * request is read from the statements it ran instead.
+ */
+@Singleton
+public class MetricsConfiguration {
+
+    private static final Set<String> HISTOGRAMS = Set.of("http.server.requests", "db.query.duration",
+            "db.fanout.duration", "outbound.call.duration", "execution.duration");
+
+    @Produces
+    @Singleton
+    public MeterFilter latencyHistograms() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!HISTOGRAMS.contains(id.getName()) && !id.getName().endsWith(".pool.queue.delay")) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .minimumExpectedValue((double) Duration.ofMillis(1).toNanos())
+                        .maximumExpectedValue((double) Duration.ofSeconds(60).toNanos())
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
@@ -0,0 +1,327 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.pstag.utils.AimdLimiter;
+import com.pstag.utils.OutboundHttpException;
+import com.pstag.utils.TokenBucket;
+import com.pstag.utils.Tracing;
+
+import dev.ai4j.openai4j.OpenAiHttpException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.mutiny.subscription.UniEmitter;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Shared scheduler for outbound calls to third parties (the AI service and the
+ * image search). Every target gets its own lane with:
+ * - a token bucket pacing the call rate,
+ * - an AIMD concurrency limit that shrinks on 429, 5xx, timeouts and slow
+ * calls, and grows back while calls are fast and successful,
+ * - a FIFO queue for calls waiting for a token or a permit,
+ * - retries with exponential backoff and full jitter.
+ *
+ * A permit is held until the call itself finishes. The lanes set no timeout of
+ * their own, since a timed-out Uni would give back its permit while a blocking
+ * AI or HTTP call keeps running on its thread: calls rely on the timeout of
+ * their client, quarkus.langchain4j.openai.timeout for the AI service and
+ * image-search.timeout-ms for the image search. A caller that cancels a queued
+ * call removes it from the queue; a call already running is left to finish,
+ * and its result is dropped.
+ *
+ * Lanes are configured with outbound.[target].* properties, see
+ * application.properties.
+ *
+ * Metrics, tagged by target:
+ * - outbound.queue.depth: calls waiting for a token or a permit.
+ * - outbound.permits.in.use: calls currently running.
+ * - outbound.permits.limit: the current AIMD concurrency limit.
+ * - outbound.calls{result=success|failure}: finished calls, after retries.
+ * - outbound.retries: retried attempts.
+ * - outbound.call.duration{result=success|failure}: latency of each attempt,
+ * from the moment it leaves the queue.
+ *
+ * Each attempt runs in an "outbound.[target]" span, a child of the context
+ * that submitted the call, whichever request or timer starts the attempt.
+ */
+@ApplicationScoped
+public class OutboundScheduler {
+
+    private static final AttributeKey<String> TARGET = AttributeKey.stringKey("outbound.target");
+
+    private static final AttributeKey<Long> ATTEMPT = AttributeKey.longKey("outbound.attempt");
+
+    private final MeterRegistry registry;
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    @Inject
+    public OutboundScheduler(MeterRegistry registry) {
+        this.registry = registry;
+        this.executor = Infrastructure.getDefaultWorkerPool();
+    }
+
+    /**
+     * Schedules an outbound call on the lane of the given target. The call is
+     * subscribed once a token and a permit are available, and resubscribed
+     * after a backoff when it fails with a retryable error. The call must be
+     * bounded by a timeout of its own.
+     *
+     * @param target the name of the lane, e.g. "ai" or "image-search"
+     * @param call   a supplier creating the call, invoked once per attempt
+     * @return a Uni emitting the result of the first successful attempt, or the
+     *         last failure
+     */
+    public <T> Uni<T> submit(String target, Supplier<Uni<T>> call) {
+        Lane lane = lanes.computeIfAbsent(target, Lane::new);
+        return Uni.createFrom().emitter(emitter -> {
+            Task<T> task = new Task<>(call, emitter);
+            emitter.onTermination(() -> task.terminated = true);
+            lane.enqueue(task);
+        });
+    }
+
+    /**
+     * Returns the current concurrency limit of a lane, mostly for tests.
+     *
+     * @param target the name of the lane
+     * @return the current limit
+     */
+    public int getLimit(String target) {
+        return lanes.computeIfAbsent(target, Lane::new).limiter.getLimit();
+    }
+
+    /**
+     * Extracts the HTTP status code of a failed outbound call.
+     *
+     * @param failure the failure to inspect, including its causes
+     * @return the status code, or -1 when the failure is not an HTTP error
+     */
+    static int statusOf(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof OutboundHttpException e) {
+                return e.getStatusCode();
+            }
+            if (t instanceof OpenAiHttpException e) {
+                return e.code();
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isCongestion(Throwable failure) {
+        int status = statusOf(failure);
+        if (status == 429 || status >= 500) {
+            return true;
+        }
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException || t instanceof java.net.http.HttpTimeoutException
+                    || t instanceof java.net.SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRetryable(Throwable failure) {
+        if (isCongestion(failure)) {
+            return true;
+        }
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Task<T> {
+        private final Supplier<Uni<T>> call;
+        private final UniEmitter<? super T> emitter;
+        private final Context context = Context.current();
+        private int attempt;
+        private volatile boolean terminated;
+
+        private Task(Supplier<Uni<T>> call, UniEmitter<? super T> emitter) {
+            this.call = call;
+            this.emitter = emitter;
+        }
+    }
+
+    private final class Lane {
+        private final String target;
+        private final TokenBucket bucket;
+        private final AimdLimiter limiter;
+        private final int maxRetries;
+        private final long baseBackoffMillis;
+        private final long maxBackoffMillis;
+        private final Deque<Task<?>> queue = new ArrayDeque<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Counter successes;
+        private final Counter failures;
+        private final Counter retries;
+        private final Timer successLatency;
+        private final Timer failureLatency;
+        private boolean drainScheduled;
+
+        private Lane(String target) {
+            Config config = ConfigProvider.getConfig();
+            String prefix = "outbound." + target + ".";
+
+            this.target = target;
+            this.bucket = new TokenBucket(
+                    config.getOptionalValue(prefix + "rate", Double.class).orElse(10.0),
+                    config.getOptionalValue(prefix + "burst", Integer.class).orElse(10));
+            this.limiter = new AimdLimiter(
+                    config.getOptionalValue(prefix + "initial-concurrency", Integer.class).orElse(4),
+                    config.getOptionalValue(prefix + "min-concurrency", Integer.class).orElse(1),
+                    config.getOptionalValue(prefix + "max-concurrency", Integer.class).orElse(16),
+                    config.getOptionalValue(prefix + "backoff-ratio", Double.class).orElse(0.5),
+                    config.getOptionalValue(prefix + "latency-threshold-ms", Long.class).orElse(10_000L));
+            this.maxRetries = config.getOptionalValue(prefix + "max-retries", Integer.class).orElse(3);
+            this.baseBackoffMillis = config.getOptionalValue(prefix + "base-backoff-ms", Long.class).orElse(500L);
+            this.maxBackoffMillis = config.getOptionalValue(prefix + "max-backoff-ms", Long.class).orElse(30_000L);
+
+            Tags tags = Tags.of("target", target);
+            registry.gauge("outbound.queue.depth", tags, this, Lane::queueDepth);
+            registry.gauge("outbound.permits.in.use", tags, inFlight);
+            registry.gauge("outbound.permits.limit", tags, limiter, AimdLimiter::getLimit);
+            successes = registry.counter("outbound.calls", tags.and("result", "success"));
+            failures = registry.counter("outbound.calls", tags.and("result", "failure"));
+            retries = registry.counter("outbound.retries", tags);
+            successLatency = registry.timer("outbound.call.duration", tags.and("result", "success"));
+            failureLatency = registry.timer("outbound.call.duration", tags.and("result", "failure"));
+        }
+
+        private synchronized double queueDepth() {
+            return queue.size();
+        }
+
+        private void enqueue(Task<?> task) {
+            synchronized (this) {
+                queue.add(task);
+            }
+            drain();
+        }
+
+        /**
+         * Starts as many queued calls as the concurrency limit and the token
+         * bucket allow. When the bucket is empty, another drain is scheduled
+         * for when the next token is available. Calls cancelled while queued
+         * are dropped without taking a token or a permit.
+         */
+        private void drain() {
+            List<Task<?>> ready = new ArrayList<>();
+            synchronized (this) {
+                while (!queue.isEmpty() && inFlight.get() < limiter.getLimit()) {
+                    if (queue.peek().terminated) {
+                        queue.poll();
+                        continue;
+                    }
+                    long waitNanos = bucket.tryAcquire();
+                    if (waitNanos > 0) {
+                        if (!drainScheduled) {
+                            drainScheduled = true;
+                            executor.schedule(() -> {
+                                synchronized (this) {
+                                    drainScheduled = false;
+                                }
+                                drain();
+                            }, waitNanos, TimeUnit.NANOSECONDS);
+                        }
+                        break;
+                    }
+                    inFlight.incrementAndGet();
+                    ready.add(queue.poll());
+                }
+            }
+            ready.forEach(this::execute);
+        }
+
+        private <T> void execute(Task<T> task) {
+            long start = System.nanoTime();
+
+            // the attempt may start from another request or a timer, so its
+            // span and callbacks are put back in the context of the caller
+            try (Scope ignored = task.context.makeCurrent()) {
+                Tracing.trace("outbound." + target, Attributes.of(TARGET, target, ATTEMPT, (long) task.attempt),
+                        () -> {
+                            try {
+                                return task.call.get();
+                            } catch (RuntimeException e) {
+                                return Uni.createFrom().failure(e);
+                            }
+                        })
+                        .subscribe().with(item -> {
+                            inFlight.decrementAndGet();
+                            long latency = System.nanoTime() - start;
+                            successLatency.record(latency, TimeUnit.NANOSECONDS);
+                            limiter.onSuccess(TimeUnit.NANOSECONDS.toMillis(latency));
+                            successes.increment();
+                            task.emitter.complete(item);
+                            drain();
+                        }, failure -> {
+                            inFlight.decrementAndGet();
+                            failureLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                            if (isCongestion(failure)) {
+                                limiter.onCongestion();
+                            }
+                            if (task.terminated) {
+                                failures.increment();
+                            } else if (isRetryable(failure) && task.attempt < maxRetries) {
+                                task.attempt++;
+                                retries.increment();
+                                long backoff = backoffMillis(task.attempt);
+                                Log.warnf("Outbound %s call failed (%s), retry %d in %d ms", target,
+                                        failure.getMessage(), task.attempt, backoff);
+                                executor.schedule(() -> enqueue(task), backoff, TimeUnit.MILLISECONDS);
+                            } else {
+                                failures.increment();
+                                task.emitter.fail(failure);
+                            }
+                            drain();
+                        });
+            }
+        }
+
+        /**
+         * Exponential backoff with full jitter: a random delay between 0 and
+         * base * 2^attempt, capped at the maximum backoff.
+         */
+        private long backoffMillis(int attempt) {
+            long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 20));
+            return ThreadLocalRandom.current().nextLong(ceiling + 1);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.Year;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.pgclient.PgException;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Creates the yearly partitions of the "cars" table, which is partitioned by
+ * LIST (trim_year) and rejects a car whose year has no partition.
+ *
+ * On startup, the partitions from the oldest existing one up to the current
+ * year plus partitions.years-ahead are created, so that the cars of next
+ * year's models can be inserted before anyone thinks about it. Before
+ * inserting cars, ingest calls ensurePartitions with their years, which
+ * creates the missing ones between partitions.min-year and the same upper
+ * bound, and rejects the others.
+ *
+ * Every partition is named cars_[year] and inherits the indexes and triggers
+ * of "cars". The known years are cached, so ensurePartitions only reaches the
+ * database for a year it has not seen yet.
+ *
+ * Metrics:
+ * - db.partitions: number of yearly partitions of "cars".
+ * - db.partitions.created: partitions created by this instance.
+ */
+@ApplicationScoped
+public class PartitionManager {
+
+    private static final String PARTITIONS_QUERY = "SELECT pg_get_expr(c.relpartbound, c.oid) AS bound "
+            + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+            + "WHERE i.inhparent = 'cars'::regclass";
+
+    private final PgPool client;
+
+    private final int minYear;
+
+    private final int yearsAhead;
+
+    private final Set<Integer> years = ConcurrentHashMap.newKeySet();
+
+    private final Counter created;
+
+    @Inject
+    public PartitionManager(PgPool client, MeterRegistry registry) {
+        this.client = client;
+
+        Config config = ConfigProvider.getConfig();
+        minYear = config.getValue("partitions.min-year", Integer.class);
+        yearsAhead = config.getValue("partitions.years-ahead", Integer.class);
+
+        registry.gauge("db.partitions", years, Set::size);
+        created = registry.counter("db.partitions.created");
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        Set<Integer> missing = new TreeSet<>();
+        int first = loadPartitions().await().indefinitely().stream()
+                .min(Integer::compare)
+                .orElse(Year.now().getValue());
+        for (int year = Math.max(first, minYear); year <= maxYear(); year++) {
+            missing.add(year);
+        }
+        ensurePartitions(missing).await().indefinitely();
+        Log.infof("Partitions of cars cover %s", new TreeSet<>(years));
+    }
+
+    /**
+     * Creates the partitions of the given years that do not exist yet.
+     *
+     * @param trimYears the years of the cars about to be inserted
+     * @return a Uni completing once every year has a partition, failing with an
+     *         IllegalArgumentException when a year is before
+     *         partitions.min-year or after the current year plus
+     *         partitions.years-ahead
+     */
+    public Uni<Void> ensurePartitions(Collection<Integer> trimYears) {
+        Set<Integer> missing = new TreeSet<>();
+        for (Integer year : trimYears) {
+            if (year == null || year < minYear || year > maxYear()) {
+                return Uni.createFrom().failure(new IllegalArgumentException(
+                        "Invalid trim year " + year + ", expected a year between " + minYear + " and " + maxYear()));
+            }
+            if (!years.contains(year)) {
+                missing.add(year);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+
+        return Multi.createFrom().iterable(missing)
+                .onItem().transformToUniAndConcatenate(this::createPartition)
+                .collect().last()
+                .replaceWithVoid();
+    }
+
+    /**
+     * Returns whether a partition of the given year is known to exist.
+     *
+     * @param year the trim year
+     * @return true when the partition was found on startup or created since
+     */
+    public boolean hasPartition(int year) {
+        return years.contains(year);
+    }
+
+    private Uni<Void> createPartition(int year) {
+        // The year is an int checked against the bounds, it is safe to format
+        return client.query(String.format("CREATE TABLE IF NOT EXISTS cars_%d PARTITION OF cars FOR VALUES IN (%d)",
+                year, year))
+                .execute()
+                .onItem().invoke(() -> {
+                    if (years.add(year)) {
+                        created.increment();
+                        Log.infof("Created partition cars_%s", year);
+                    }
+                })
+                // Another instance created it between IF NOT EXISTS and the insert into the catalog
+                .onFailure(e -> e instanceof PgException pg
+                        && ("42P07".equals(pg.getSqlState()) || "23505".equals(pg.getSqlState())))
+                .recoverWithItem(e -> {
+                    years.add(year);
+                    return null;
+                })
+                .replaceWithVoid();
+    }
+
+    private Uni<List<Integer>> loadPartitions() {
+        return client.query(PARTITIONS_QUERY)
+                .execute()
+                .onItem().transform(rows -> {
+                    for (Row row : rows) {
+                        // A bound reads FOR VALUES IN (2014)
+                        String bound = row.getString("bound").replaceAll("[^0-9,]", "");
+                        for (String year : bound.split(",")) {
+                            if (!year.isEmpty()) {
+                                years.add(Integer.parseInt(year));
+                            }
+                        }
+                    }
+                    return List.copyOf(years);
+                });
+    }
+
+    private int maxYear() {
+        return Year.now().getValue() + yearsAhead;
+    }
+}
@@ -0,0 +1,244 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.pstag.entities.QueryLogEntry;
+import com.pstag.entities.QueryPlan;
+import com.pstag.interfaces.QueryListener;
+import com.pstag.utils.QueryMetrics;
+import com.pstag.utils.TokenBucket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Structured log of the statements timed by QueryMetrics, replacing the
+ * logging of every SQL string and parameter list.
+ *
+ * A statement is logged as one key=value line, with its name, shape, duration
+ * and number of parameters but never the parameter values:
+ * - statements slower than query-log.slow-threshold-ms are always logged, at
+ * WARN;
+ * - the others are sampled with probability query-log.sample-rate, at INFO.
+ *
+ * For a slow read, a SELECT or a WITH query that writes nothing, EXPLAIN
+ * (ANALYZE, BUFFERS) is run in the background with the same parameters, on
+ * the pool used for reads. Each statement name and shape is explained at most
+ * once per query-log.explain.shape-interval-ms, and
+ * all explains together are paced by a token bucket of
+ * query-log.explain.rate per second and query-log.explain.burst, so a burst of
+ * slow queries cannot double the load of the database.
+ *
+ * The latest entries and plans are kept in ring buffers exposed by the admin
+ * endpoint.
+ *
+ * Metrics:
+ * - query.log.entries{slow=true|false}: logged statements.
+ * - query.log.explains{result=success|error|skipped}: EXPLAIN runs, skipped
+ * when the rate limit is reached.
+ */
+@ApplicationScoped
+public class QueryLog implements QueryListener {
+
+    private static final Pattern LEADING_COMMENTS = Pattern.compile("^(\\s+|--[^\\n]*|/\\*.*?\\*/)+",
+            Pattern.DOTALL);
+
+    private static final Pattern WITH = Pattern.compile("WITH\\b", Pattern.CASE_INSENSITIVE);
+
+    // A data-modifying statement in a WITH query runs under EXPLAIN ANALYZE too
+    private static final Pattern WRITES = Pattern.compile("\\b(INSERT|UPDATE|DELETE|MERGE)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private final DatabaseRouter router;
+
+    private final boolean enabled;
+
+    private final double sampleRate;
+
+    private final long slowThresholdNanos;
+
+    private final int maxEntries;
+
+    private final boolean explainEnabled;
+
+    private final long explainShapeIntervalNanos;
+
+    private final int maxPlans;
+
+    private final TokenBucket explainBucket;
+
+    private final Map<String, Long> lastExplained = new ConcurrentHashMap<>();
+
+    private final Deque<QueryLogEntry> entries = new ArrayDeque<>();
+
+    private final Deque<QueryPlan> plans = new ArrayDeque<>();
+
+    private final Counter sampledEntries;
+
+    private final Counter slowEntries;
+
+    private final Counter explainSuccesses;
+
+    private final Counter explainFailures;
+
+    private final Counter explainSkips;
+
+    @Inject
+    public QueryLog(DatabaseRouter router, MeterRegistry registry) {
+        this.router = router;
+
+        Config config = ConfigProvider.getConfig();
+        enabled = config.getValue("query-log.enabled", Boolean.class);
+        sampleRate = config.getValue("query-log.sample-rate", Double.class);
+        slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getValue("query-log.slow-threshold-ms", Long.class));
+        maxEntries = config.getValue("query-log.max-entries", Integer.class);
+        explainEnabled = config.getValue("query-log.explain.enabled", Boolean.class);
+        explainShapeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                config.getValue("query-log.explain.shape-interval-ms", Long.class));
+        maxPlans = config.getValue("query-log.explain.max-plans", Integer.class);
+        explainBucket = new TokenBucket(config.getValue("query-log.explain.rate", Double.class),
+                config.getValue("query-log.explain.burst", Integer.class));
+
+        sampledEntries = registry.counter("query.log.entries", "slow", "false");
+        slowEntries = registry.counter("query.log.entries", "slow", "true");
+        explainSuccesses = registry.counter("query.log.explains", "result", "success");
+        explainFailures = registry.counter("query.log.explains", "result", "error");
+        explainSkips = registry.counter("query.log.explains", "result", "skipped");
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (enabled) {
+            QueryMetrics.addListener(this);
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        QueryMetrics.removeListener(this);
+    }
+
+    @Override
+    public void onQuery(String query, String shape, String sql, List<Object> parameters, long nanos,
+            boolean failed) {
+        boolean slow = nanos >= slowThresholdNanos;
+        if (!slow && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+
+        double millis = nanos / 1_000_000.0;
+        QueryLogEntry entry = new QueryLogEntry(query, shape, sql, parameters.size(), millis, slow,
+                LocalDateTime.now());
+        synchronized (this) {
+            entries.addFirst(entry);
+            while (entries.size() > maxEntries) {
+                entries.removeLast();
+            }
+        }
+
+        if (slow) {
+            slowEntries.increment();
+            Log.warnf("query=%s shape=%s duration_ms=%.1f params=%d failed=%b slow=true", query, shape, millis,
+                    parameters.size(), failed);
+            if (explainEnabled && !failed && isExplainable(sql)) {
+                explain(query, shape, sql, parameters, millis);
+            }
+        } else {
+            sampledEntries.increment();
+            Log.infof("query=%s shape=%s duration_ms=%.1f params=%d failed=%b slow=false", query, shape, millis,
+                    parameters.size(), failed);
+        }
+    }
+
+    /**
+     * Returns the most recent logged statements, newest first.
+     *
+     * @return a list of QueryLogEntry objects
+     */
+    public synchronized List<QueryLogEntry> getEntries() {
+        return List.copyOf(entries);
+    }
+
+    /**
+     * Returns the most recent plans of slow statements, newest first.
+     *
+     * @return a list of QueryPlan objects
+     */
+    public synchronized List<QueryPlan> getPlans() {
+        return List.copyOf(plans);
+    }
+
+    /**
+     * EXPLAIN ANALYZE executes the statement, so only reads are explained: a
+     * SELECT, or a WITH query none of whose parts writes, after any leading
+     * whitespace and comments.
+     *
+     * @param sql the statement
+     * @return true when the statement may be explained
+     */
+    public static boolean isExplainable(String sql) {
+        if (sql == null) {
+            return false;
+        }
+        String statement = LEADING_COMMENTS.matcher(sql).replaceFirst("");
+        if (statement.regionMatches(true, 0, "SELECT", 0, 6)) {
+            return true;
+        }
+        return WITH.matcher(statement).lookingAt() && !WRITES.matcher(statement).find();
+    }
+
+    private void explain(String query, String shape, String sql, List<Object> parameters, double millis) {
+        String key = query + "|" + shape;
+        long now = System.nanoTime();
+        Long last = lastExplained.get(key);
+        if (last != null && now - last < explainShapeIntervalNanos) {
+            return;
+        }
+        if (explainBucket.tryAcquire() > 0) {
+            explainSkips.increment();
+            return;
+        }
+        lastExplained.put(key, now);
+
+        router.read().preparedQuery("EXPLAIN (ANALYZE, BUFFERS) " + sql)
+                .execute(Tuple.from(parameters))
+                .subscribe().with(rows -> {
+                    List<String> lines = new ArrayList<>();
+                    for (Row row : rows) {
+                        lines.add(row.getString(0));
+                    }
+                    QueryPlan plan = new QueryPlan(query, shape, sql, millis, lines, LocalDateTime.now());
+                    synchronized (this) {
+                        plans.addFirst(plan);
+                        while (plans.size() > maxPlans) {
+                            plans.removeLast();
+                        }
+                    }
+                    explainSuccesses.increment();
+                    Log.infof("query=%s shape=%s plan=%s", query, shape, String.join(" | ", lines));
+                }, failure -> {
+                    explainFailures.increment();
+                    Log.warnf("query=%s shape=%s explain failed: %s", query, shape, failure.getMessage());
+                });
+    }
+}
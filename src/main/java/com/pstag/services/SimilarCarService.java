@@ -0,0 +1,128 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.utils.CatalogNeighbors;
+import com.pstag.utils.CatalogNeighbors.Neighbor;
+import com.pstag.utils.CatalogSnapshot;
+import com.pstag.utils.GenericResponse;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Finds the cars similar to a car, for the detail view, with a
+ * CatalogNeighbors index of the CatalogCache.
+ *
+ * The index follows the catalog: on the first request after a refresh, it is
+ * updated with the rows that changed, or built again when they are too many,
+ * on the "similar" limit of the BlockingExecutor. A request then costs a few
+ * microseconds in the index and one read of the k cars by id.
+ *
+ * Metrics:
+ * - similar.index.build{kind=full|incremental}: time to build or update the
+ * index.
+ * - similar.query: time to find the neighbours in the index.
+ */
+@ApplicationScoped
+public class SimilarCarService {
+
+    private final CatalogCache catalogCache;
+
+    private final BlockingExecutor blockingExecutor;
+
+    private final MeterRegistry registry;
+
+    private final double bodyTypeWeight;
+
+    private final double fuelTypeWeight;
+
+    private final int maxK;
+
+    private final Timer queries;
+
+    private volatile CatalogNeighbors neighbors;
+
+    @Inject
+    public SimilarCarService(CatalogCache catalogCache, BlockingExecutor blockingExecutor, MeterRegistry registry) {
+        this.catalogCache = catalogCache;
+        this.blockingExecutor = blockingExecutor;
+        this.registry = registry;
+
+        Config config = ConfigProvider.getConfig();
+        bodyTypeWeight = config.getValue("similar.body-type-weight", Double.class);
+        fuelTypeWeight = config.getValue("similar.fuel-type-weight", Double.class);
+        maxK = config.getValue("similar.max-k", Integer.class);
+        queries = registry.timer("similar.query");
+    }
+
+    /**
+     * Retrieves the cars most similar to a car.
+     *
+     * @param router the router of the read of the similar cars
+     * @param id     the id of the car
+     * @param k      the number of similar cars, from 1 to similar.max-k
+     * @return a Uni containing a GenericResponse with the similar cars,
+     *         closest first, or without data when the catalog has no car with
+     *         this id
+     * @throws IllegalArgumentException if k is out of range
+     * @throws IllegalStateException    if the catalog is not loaded yet
+     */
+    public Uni<GenericResponse<List<CarEntity>>> getSimilar(DatabaseRouter router, Long id, int k) {
+        if (k < 1 || k > maxK) {
+            throw new IllegalArgumentException("k must be between 1 and " + maxK);
+        }
+        CatalogSnapshot catalog = catalogCache.get();
+        if (catalog == null) {
+            throw new IllegalStateException("The catalog is not loaded yet");
+        }
+        CatalogNeighbors current = neighbors;
+        Uni<CatalogNeighbors> index = current != null && current.catalog() == catalog
+                ? Uni.createFrom().item(current)
+                : blockingExecutor.submit("similar", () -> index(catalog));
+
+        return index.onItem().transformToUni(neighborsIndex -> {
+            long start = System.nanoTime();
+            Optional<List<Neighbor>> similar = neighborsIndex.nearest(id, k);
+            queries.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (similar.isEmpty()) {
+                return Uni.createFrom().item(new GenericResponse<List<CarEntity>>(null, "Car not found"));
+            }
+            List<Long> ids = similar.get().stream().map(Neighbor::id).toList();
+            return (ids.isEmpty() ? Uni.createFrom().item(List.<CarEntity>of())
+                    : router.read(null, pool -> CarRepository.getByIds(pool, ids)))
+                    .onItem().transform(cars -> new GenericResponse<>(cars, "Similar cars fetched successfully"));
+        });
+    }
+
+    private synchronized CatalogNeighbors index(CatalogSnapshot catalog) {
+        CatalogNeighbors current = neighbors;
+        if (current != null && current.catalog() == catalog) {
+            return current;
+        }
+        long start = System.nanoTime();
+        CatalogNeighbors updated = current == null
+                ? CatalogNeighbors.build(catalog, bodyTypeWeight, fuelTypeWeight)
+                : current.update(catalog);
+        long nanos = System.nanoTime() - start;
+        String kind = updated.isBuilt() ? "full" : "incremental";
+        Timer.builder("similar.index.build").tag("kind", kind).register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Log.debugf("Similar cars index: %s update of %d cars in %.1f ms", kind, catalog.size(), nanos / 1_000_000.0);
+        neighbors = updated;
+        return updated;
+    }
+}
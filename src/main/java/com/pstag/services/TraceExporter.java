@@ -0,0 +1,180 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pstag.utils.Tracing;
+
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.quarkus.arc.Unremovable;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Exports the finished spans, as chosen by tracing.exporter:
+ * - file: appends one JSON object per span to tracing.file.path, to be read
+ * with jq or loaded into a trace viewer;
+ * - memory: keeps the latest tracing.memory.max-spans spans, for the tests;
+ * - none: drops them.
+ *
+ * Quarkus hands the spans over in batches, every quarkus.otel.bsp.schedule.delay,
+ * from its own thread, so writing the file does not slow the requests down.
+ *
+ * Also registers the Tracer of the application with Tracing at startup.
+ */
+@ApplicationScoped
+@Unremovable
+public class TraceExporter implements SpanExporter {
+
+    private final ObjectMapper objectMapper;
+
+    private final String exporter;
+
+    private final Path filePath;
+
+    private final int maxSpans;
+
+    private final Deque<SpanData> spans = new ArrayDeque<>();
+
+    private BufferedWriter writer;
+
+    @Inject
+    public TraceExporter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+
+        Config config = ConfigProvider.getConfig();
+        exporter = config.getValue("tracing.exporter", String.class);
+        filePath = Path.of(config.getValue("tracing.file.path", String.class));
+        maxSpans = config.getValue("tracing.memory.max-spans", Integer.class);
+    }
+
+    void onStart(@Observes StartupEvent event, Tracer tracer) {
+        Tracing.setTracer(tracer);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        Tracing.setTracer(null);
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> batch) {
+        switch (exporter) {
+            case "file":
+                return write(batch);
+            case "memory":
+                for (SpanData span : batch) {
+                    spans.addLast(span);
+                }
+                while (spans.size() > maxSpans) {
+                    spans.removeFirst();
+                }
+                return CompletableResultCode.ofSuccess();
+            default:
+                return CompletableResultCode.ofSuccess();
+        }
+    }
+
+    /**
+     * Returns the spans kept by the memory exporter, oldest first.
+     *
+     * @return a list of SpanData objects
+     */
+    public synchronized List<SpanData> getSpans() {
+        return List.copyOf(spans);
+    }
+
+    /**
+     * Drops the spans kept by the memory exporter.
+     */
+    public synchronized void reset() {
+        spans.clear();
+    }
+
+    @Override
+    public synchronized CompletableResultCode flush() {
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                return CompletableResultCode.ofFailure();
+            }
+        }
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        CompletableResultCode result = flush();
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.warnf("Could not close the trace file %s: %s", filePath, e.getMessage());
+            }
+            writer = null;
+        }
+        return result;
+    }
+
+    private CompletableResultCode write(Collection<SpanData> batch) {
+        try {
+            if (writer == null) {
+                if (filePath.getParent() != null) {
+                    Files.createDirectories(filePath.getParent());
+                }
+                writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            for (SpanData span : batch) {
+                writer.write(toJson(span));
+                writer.newLine();
+            }
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            Log.warnf("Could not write %d spans to %s: %s", batch.size(), filePath, e.getMessage());
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    private String toJson(SpanData span) throws JsonProcessingException {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("traceId", span.getTraceId());
+        json.put("spanId", span.getSpanId());
+        json.put("parentSpanId", span.getParentSpanContext().isValid() ? span.getParentSpanId() : null);
+        json.put("name", span.getName());
+        json.put("kind", span.getKind().name());
+        json.put("startEpochNanos", span.getStartEpochNanos());
+        json.put("durationMicros", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1_000);
+        json.put("status", span.getStatus().getStatusCode().name());
+        json.put("attributes", attributes);
+        return objectMapper.writeValueAsString(json);
+    }
+}
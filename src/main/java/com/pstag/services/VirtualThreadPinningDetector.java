@@ -0,0 +1,126 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import com.pstag.entities.BlockedThreadSample;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread, typically
+ * because they block inside a synchronized block of a dependency. A pinned
+ * virtual thread holds one of the few carrier threads while it waits, so a
+ * handful of them is enough to stall every other virtual thread.
+ *
+ * The JDK emits a jdk.VirtualThreadPinned JFR event for every pinned episode
+ * longer than virtual-threads.pinning-detector.threshold-ms; this class
+ * streams those events in process and keeps the latest ones, with the stack
+ * that pinned the thread, in a ring buffer exposed by the admin endpoint. It
+ * only starts when execution.mode=virtual on JDK 21 or newer.
+ *
+ * Metrics:
+ * - virtualthread.pinned.duration: how long each pinned episode lasted, in
+ * milliseconds; its count is the number of episodes.
+ */
+@ApplicationScoped
+public class VirtualThreadPinningDetector {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final BlockingExecutor blockingExecutor;
+
+    private final boolean enabled;
+
+    private final Duration threshold;
+
+    private final int maxSamples;
+
+    private final Deque<BlockedThreadSample> samples = new ArrayDeque<>();
+
+    private final DistributionSummary pinnedDuration;
+
+    private RecordingStream recording;
+
+    @Inject
+    public VirtualThreadPinningDetector(BlockingExecutor blockingExecutor, MeterRegistry registry) {
+        this.blockingExecutor = blockingExecutor;
+
+        Config config = ConfigProvider.getConfig();
+        enabled = config.getValue("virtual-threads.pinning-detector.enabled", Boolean.class);
+        threshold = Duration.ofMillis(config.getValue("virtual-threads.pinning-detector.threshold-ms", Long.class));
+        maxSamples = config.getValue("virtual-threads.pinning-detector.max-samples", Integer.class);
+
+        pinnedDuration = DistributionSummary.builder("virtualthread.pinned.duration")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled || blockingExecutor.getMode() != BlockingExecutor.Mode.VIRTUAL
+                || Runtime.version().feature() < 21) {
+            return;
+        }
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::record);
+        recording.startAsync();
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    /**
+     * Returns the most recent pinning samples, newest first.
+     *
+     * @return a list of BlockedThreadSample objects
+     */
+    public synchronized List<BlockedThreadSample> getSamples() {
+        return List.copyOf(samples);
+    }
+
+    private void record(RecordedEvent event) {
+        long pinnedMillis = event.getDuration().toMillis();
+        String thread = event.getThread() != null ? event.getThread().getJavaName() : "?";
+        List<String> stackTrace = event.getStackTrace() == null ? List.of()
+                : event.getStackTrace().getFrames().stream().map(VirtualThreadPinningDetector::describe).toList();
+        BlockedThreadSample sample = new BlockedThreadSample(thread, pinnedMillis, LocalDateTime.now(), stackTrace);
+
+        synchronized (this) {
+            samples.addFirst(sample);
+            while (samples.size() > maxSamples) {
+                samples.removeLast();
+            }
+        }
+        pinnedDuration.record(pinnedMillis);
+        Log.warnf("Virtual thread %s pinned for %d ms at %s", thread, pinnedMillis,
+                stackTrace.isEmpty() ? "?" : stackTrace.get(0));
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":"
+                + frame.getLineNumber();
+    }
+}
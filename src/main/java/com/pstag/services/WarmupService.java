@@ -0,0 +1,202 @@
+package com.pstag.services;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Readiness;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.azure.storage.blob.BlobServiceAsyncClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pstag.entities.CarEntity;
+import com.pstag.interfaces.MyAiService;
+import com.pstag.repositories.CarRepository;
+import com.pstag.utils.GenericResponse;
+import com.pstag.utils.TotalRowsAndData;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.arc.ClientProxy;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Warms the application up before it takes traffic, and reports it ready only
+ * once the warm-up finished.
+ *
+ * The warm-up creates the AI service and the Blob client, which are otherwise
+ * created on their first call, waits for the first load of the CatalogCache,
+ * then runs warmup.iterations rounds of the calls the front end starts with:
+ * findAll without filters, by make, by a trim_year range and by a search,
+ * getUiParams and getById of the cars found. Each round prepares the
+ * statements on the connections it gets, serializes the responses with the
+ * ObjectMapper of the REST layer and feeds the JIT.
+ *
+ * The warm-up is an optimization, so a failure or a warm-up longer than
+ * warmup.timeout-ms is logged and the node reports ready anyway; the
+ * readiness of the datasource is checked on its own.
+ *
+ * Metrics:
+ * - warmup.duration{result=success|failure}: time the warm-up took.
+ */
+@ApplicationScoped
+@Readiness
+public class WarmupService implements HealthCheck {
+
+    private final CarService service;
+
+    private final DatabaseRouter router;
+
+    private final CatalogCache catalogCache;
+
+    private final MyAiService aiService;
+
+    private final BlobServiceAsyncClient blobServiceAsyncClient;
+
+    private final ObjectMapper objectMapper;
+
+    private final MeterRegistry registry;
+
+    private final boolean enabled;
+
+    private final int iterations;
+
+    private final long timeoutMillis;
+
+    private volatile String status = "pending";
+
+    private volatile double durationMillis;
+
+    @Inject
+    public WarmupService(CarService service, DatabaseRouter router, CatalogCache catalogCache,
+            MyAiService aiService, BlobServiceAsyncClient blobServiceAsyncClient, ObjectMapper objectMapper,
+            MeterRegistry registry) {
+        this.service = service;
+        this.router = router;
+        this.catalogCache = catalogCache;
+        this.aiService = aiService;
+        this.blobServiceAsyncClient = blobServiceAsyncClient;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+
+        Config config = ConfigProvider.getConfig();
+        enabled = config.getValue("warmup.enabled", Boolean.class);
+        iterations = config.getValue("warmup.iterations", Integer.class);
+        timeoutMillis = config.getValue("warmup.timeout-ms", Long.class);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            status = "disabled";
+            return;
+        }
+        long start = System.nanoTime();
+        warmUp().ifNoItem().after(Duration.ofMillis(timeoutMillis)).fail()
+                .subscribe().with(ignored -> finish(start, "success", null),
+                        failure -> finish(start, "failure", failure));
+    }
+
+    @Override
+    public HealthCheckResponse call() {
+        HealthCheckResponseBuilder response = HealthCheckResponse.named("warm-up")
+                .status(isWarmedUp())
+                .withData("status", status);
+        if (durationMillis > 0) {
+            response.withData("duration-ms", Math.round(durationMillis));
+        }
+        return response.build();
+    }
+
+    /**
+     * Returns whether the node may take traffic.
+     *
+     * @return true once the warm-up finished, failed or timed out, or when it
+     *         is disabled
+     */
+    public boolean isWarmedUp() {
+        return !"pending".equals(status);
+    }
+
+    /**
+     * Runs the rounds of the warm-up.
+     *
+     * @return a Uni completing once every round ran
+     */
+    Uni<Void> warmUp() {
+        // Creates the beans behind the client proxies, without calling out
+        ClientProxy.unwrap(aiService);
+        ClientProxy.unwrap(blobServiceAsyncClient);
+
+        return catalogCache.awaitLoaded()
+                .onFailure().recoverWithNull()
+                .onItem().transformToUni(catalog -> router.read(null, CarRepository::getMakers))
+                .onItem().transformToUni(makers -> Multi.createFrom().range(0, iterations)
+                        .onItem().transformToUniAndConcatenate(round -> warmUpRound(makers, round))
+                        .collect().last())
+                .replaceWithVoid();
+    }
+
+    private Uni<Void> warmUpRound(List<String> makers, int round) {
+        String make = makers.isEmpty() ? "" : makers.get(round % makers.size());
+        return findAll(Map.of(), null, Map.of())
+                .onItem().transformToUni(page -> findAll(Map.of("make", make), null, Map.of("weight", "asc")))
+                .onItem().transformToUni(page -> findAll(Map.of("trimYear", "between(2015,2020)"), null,
+                        Map.of("length", "desc")))
+                .onItem().transformToUni(page -> findAll(Map.of(), make, Map.of()))
+                .onItem().transformToUni(page -> {
+                    List<Uni<CarEntity>> cars = page.getData().stream().limit(3)
+                            .map(car -> router.read("car:" + car.id(), pool -> CarRepository.getById(pool, car.id())))
+                            .toList();
+                    return cars.isEmpty() ? Uni.createFrom().voidItem()
+                            : Uni.join().all(cars).andFailFast().invoke(this::serialize).replaceWithVoid();
+                })
+                .onItem().transformToUni(ignored -> router.read(null, service::getUiParams))
+                .invoke(this::serialize)
+                .invoke(() -> {
+                    Map<String, Object> facets = catalogCache.getUiParams();
+                    if (facets != null) {
+                        serialize(new GenericResponse<>(facets, "UI parameters fetched successfully"));
+                    }
+                })
+                .replaceWithVoid();
+    }
+
+    private Uni<TotalRowsAndData<CarEntity>> findAll(Map<String, String> filters, String search,
+            Map<String, String> sorts) {
+        return router.read(null, pool -> service.findAll(pool, filters, search, sorts, 10, 0)).invoke(this::serialize);
+    }
+
+    private void serialize(Object response) {
+        try {
+            objectMapper.writeValueAsBytes(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void finish(long start, String result, Throwable failure) {
+        long nanos = System.nanoTime() - start;
+        durationMillis = nanos / 1_000_000.0;
+        Timer.builder("warmup.duration").tag("result", result).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+        if (failure != null) {
+            Log.warnf("Warm-up failed after %.0f ms, reporting ready anyway: %s", durationMillis, failure.toString());
+        } else {
+            Log.infof("Warm-up of %d rounds finished in %.0f ms", iterations, durationMillis);
+        }
+        status = result;
+    }
+}
@@ -0,0 +1,73 @@
+package com.pstag.utils;
+
+/**
+ * Additive-increase/multiplicative-decrease concurrency limit.
+ *
+ * Every successful call below the latency threshold grows the limit by
+ * 1/limit, i.e. by about one permit per round of calls. A congestion signal
+ * (429, 5xx, timeout or a call slower than the threshold) multiplies the limit
+ * by the backoff ratio.
+ */
+public class AimdLimiter {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final long latencyThresholdMillis;
+
+    private double limit;
+
+    /**
+     * @param initialLimit           the starting number of concurrent calls
+     * @param minLimit               the lowest limit the decrease can reach
+     * @param maxLimit               the highest limit the increase can reach
+     * @param backoffRatio           the factor applied on congestion, between 0
+     *                               and 1
+     * @param latencyThresholdMillis the latency above which a successful call
+     *                               counts as congestion
+     */
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            long latencyThresholdMillis) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limit range: " + minLimit + ".." + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1: " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Records a successful call.
+     *
+     * @param latencyMillis the duration of the call
+     */
+    public synchronized void onSuccess(long latencyMillis) {
+        if (latencyMillis > latencyThresholdMillis) {
+            onCongestion();
+            return;
+        }
+        limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+
+    /**
+     * Records a congestion signal.
+     */
+    public synchronized void onCongestion() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    /**
+     * @return the current number of calls allowed to run concurrently
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+}
@@ -0,0 +1,53 @@
+package com.pstag.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Optional;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+/**
+ * A shared secret that callers present as "Authorization: Bearer <token>".
+ * The token is read from a configuration property; when the property is not
+ * set, the token is absent and no caller is authorized.
+ */
+public class BearerToken {
+
+    private static final String PREFIX = "Bearer ";
+
+    private final Optional<byte[]> token;
+
+    private BearerToken(Optional<byte[]> token) {
+        this.token = token;
+    }
+
+    /**
+     * @param property the configuration property holding the token
+     * @return the token of the property, absent when it is not set
+     */
+    public static BearerToken fromConfig(String property) {
+        return new BearerToken(ConfigProvider.getConfig().getOptionalValue(property, String.class)
+                .map(value -> value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return true when a token is configured
+     */
+    public boolean isPresent() {
+        return token.isPresent();
+    }
+
+    /**
+     * Checks an Authorization header against the token, in constant time.
+     *
+     * @param authorization the Authorization header, or null
+     * @return true when it is "Bearer " followed by the configured token
+     */
+    public boolean matches(String authorization) {
+        if (token.isEmpty() || authorization == null || !authorization.startsWith(PREFIX)) {
+            return false;
+        }
+        return MessageDigest.isEqual(token.get(),
+                authorization.substring(PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,112 @@
+package com.pstag.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.pstag.entities.CarEntity;
+
+/**
+ * The fields= parameter of the list and export endpoints, a comma-separated
+ * list of the fields of a car such as fields=id,make,model,velocity, which
+ * narrows the columns read from Postgres, decoded and written in the response.
+ */
+public class CarFields {
+
+    /**
+     * The columns of a car as listed, in the order of CarEntity.
+     */
+    public static final List<String> COLUMNS = List.of("id", "make", "model", "trim_year", "trim_name",
+            "trim_description", "fuel_type", "transmission", "body_type", "color", "length", "weight", "velocity",
+            "image_url");
+
+    /**
+     * The columns of the XML export, which has no image URLs.
+     */
+    public static final Set<String> XML_COLUMNS = columns(COLUMNS.subList(0, COLUMNS.indexOf("image_url")));
+
+    private CarFields() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Parses a fields= parameter. Fields are given in camelCase or snake_case;
+     * unknown fields are ignored, like unknown filters and sorts, and the id
+     * is always included.
+     *
+     * @param fields the value of the parameter, or null
+     * @return the columns in the order of COLUMNS, or null for every column
+     *         when the parameter is missing or blank
+     */
+    public static Set<String> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> requested = new LinkedHashSet<>();
+        requested.add("id");
+        for (String field : fields.split(",")) {
+            requested.add(QueryShape.columnName(field.trim()));
+        }
+        return columns(COLUMNS.stream().filter(requested::contains).toList());
+    }
+
+    /**
+     * Returns the requested fields of a car, in the order of the columns and
+     * named like the fields of CarEntity.
+     *
+     * @param car     the car, read with at least these columns
+     * @param columns the columns from parse
+     * @return a map of field name to value
+     */
+    public static Map<String, Object> project(CarEntity car, Set<String> columns) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (String column : columns) {
+            fields.put(fieldName(column), value(car, column));
+        }
+        return fields;
+    }
+
+    /**
+     * @param column a column, such as trim_year
+     * @return the name of its field, such as trimYear
+     */
+    public static String fieldName(String column) {
+        StringBuilder name = new StringBuilder(column.length());
+        boolean upper = false;
+        for (char c : column.toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    private static Object value(CarEntity car, String column) {
+        return switch (column) {
+            case "id" -> car.id();
+            case "make" -> car.make();
+            case "model" -> car.model();
+            case "trim_year" -> car.trimYear();
+            case "trim_name" -> car.trimName();
+            case "trim_description" -> car.trimDescription();
+            case "fuel_type" -> car.fuelType();
+            case "transmission" -> car.transmission();
+            case "body_type" -> car.bodyType();
+            case "color" -> car.color();
+            case "length" -> car.length();
+            case "weight" -> car.weight();
+            case "velocity" -> car.velocity();
+            default -> car.imageUrl();
+        };
+    }
+
+    private static Set<String> columns(List<String> columns) {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(columns));
+    }
+}
@@ -0,0 +1,255 @@
+package com.pstag.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pstag.entities.CarEntity;
+
+/**
+ * Reads cars one at a time from an upload, so that an upload of any size is
+ * never held in memory.
+ *
+ * Both formats name their fields like the columns of "cars", in snake_case or
+ * camelCase:
+ * - CSV: a header line followed by one car per line, quoted as in RFC 4180,
+ * color and image_url separated by commas inside their quoted cell;
+ * - NDJSON: one JSON object per line, color and imageUrl as arrays.
+ *
+ * make, model, trim_year, trim_name, trim_description, fuel_type,
+ * transmission, body_type, length and weight are required; velocity, color
+ * and image_url may be missing. A malformed car fails with an
+ * IllegalArgumentException naming its line.
+ */
+public class CarRecordReader implements Iterator<CarEntity>, Closeable {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final List<String> REQUIRED = List.of("make", "model", "trim_year", "trim_name",
+            "trim_description", "fuel_type", "transmission", "body_type", "length", "weight");
+
+    private final BufferedReader reader;
+
+    private final MappingIterator<JsonNode> json;
+
+    private List<String> header;
+
+    private long line;
+
+    private Map<String, Object> next;
+
+    /**
+     * @param body   the upload, read as UTF-8
+     * @param format the format of the upload
+     * @param mapper the mapper used to read NDJSON
+     */
+    public CarRecordReader(InputStream body, Format format, ObjectMapper mapper) {
+        reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            json = format == Format.NDJSON ? mapper.readerFor(JsonNode.class).readValues(reader) : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the line of the last car read, starting at 1
+     */
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = json != null ? readJson() : readCsv();
+            } catch (JsonProcessingException e) {
+                long errorLine = e.getLocation() != null ? e.getLocation().getLineNr() : line + 1;
+                throw new IllegalArgumentException("Line " + errorLine + ": " + e.getOriginalMessage(), e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public CarEntity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map<String, Object> fields = next;
+        next = null;
+        return toCar(fields);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Map<String, Object> readJson() throws IOException {
+        while (json.hasNextValue()) {
+            JsonNode node = json.nextValue();
+            line = json.getCurrentLocation().getLineNr();
+            if (!node.isObject()) {
+                throw new IllegalArgumentException("Line " + line + ": expected a JSON object");
+            }
+            Map<String, Object> fields = new HashMap<>();
+            node.fields().forEachRemaining(field -> {
+                JsonNode value = field.getValue();
+                if (value.isArray()) {
+                    List<String> values = new ArrayList<>();
+                    value.forEach(item -> values.add(item.asText()));
+                    fields.put(QueryShape.columnName(field.getKey()), values);
+                } else if (!value.isNull()) {
+                    fields.put(QueryShape.columnName(field.getKey()), value.asText());
+                }
+            });
+            return fields;
+        }
+        return null;
+    }
+
+    private Map<String, Object> readCsv() throws IOException {
+        if (header == null) {
+            List<String> names = readCsvLine();
+            if (names == null) {
+                return null;
+            }
+            header = names.stream().map(name -> QueryShape.columnName(name.trim())).toList();
+        }
+
+        List<String> cells;
+        do {
+            cells = readCsvLine();
+            if (cells == null) {
+                return null;
+            }
+        } while (cells.size() == 1 && cells.get(0).isEmpty());
+
+        if (cells.size() != header.size()) {
+            throw new IllegalArgumentException(
+                    "Line " + line + ": expected " + header.size() + " cells but found " + cells.size());
+        }
+        Map<String, Object> fields = new HashMap<>();
+        for (int i = 0; i < cells.size(); i++) {
+            if (!cells.get(i).isEmpty()) {
+                fields.put(header.get(i), cells.get(i));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Reads the cells of the next record, which spans several lines when a
+     * quoted cell contains line breaks.
+     *
+     * @return the cells, or null at the end of the upload
+     */
+    private List<String> readCsvLine() throws IOException {
+        int c = reader.read();
+        if (c < 0) {
+            return null;
+        }
+        line++;
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int following = reader.read();
+                    if (following == '"') {
+                        cell.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    cell.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                cell.append((char) c);
+            }
+            c = reader.read();
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Line " + line + ": unterminated quoted cell");
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    private CarEntity toCar(Map<String, Object> fields) {
+        for (String name : REQUIRED) {
+            if (!(fields.get(name) instanceof String value) || value.isBlank()) {
+                throw new IllegalArgumentException("Line " + line + ": missing " + name);
+            }
+        }
+        try {
+            return new CarEntity(null,
+                    string(fields, "make"),
+                    string(fields, "model"),
+                    (Integer) CarEntity.parse("trim_year", string(fields, "trim_year")),
+                    string(fields, "trim_name"),
+                    string(fields, "trim_description"),
+                    string(fields, "fuel_type"),
+                    string(fields, "transmission"),
+                    string(fields, "body_type"),
+                    list(fields, "color"),
+                    (Double) CarEntity.parse("length", string(fields, "length")),
+                    (Double) CarEntity.parse("weight", string(fields, "weight")),
+                    fields.containsKey("velocity") ? (Double) CarEntity.parse("velocity", string(fields, "velocity"))
+                            : 0.0,
+                    list(fields, "image_url"),
+                    null);
+        } catch (NumberFormatException | ClassCastException e) {
+            throw new IllegalArgumentException("Line " + line + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String string(Map<String, Object> fields, String name) {
+        return fields.get(name).toString().trim();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> list(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        if (value == null) {
+            return null;
+        }
+        List<String> values = value instanceof List<?> list ? (List<String>) list
+                : (List<String>) CarEntity.parse(name, value.toString());
+        List<String> trimmed = values.stream().map(String::trim).filter(item -> !item.isEmpty()).toList();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
@@ -0,0 +1,162 @@
+package com.pstag.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.utils.CatalogSnapshot.Dictionary;
+
+/**
+ * Evaluates the filters of a car search over the rows of a CatalogSnapshot.
+ *
+ * Only the filters whose result is certain to be the same as in Postgres are
+ * evaluated: equality, IN and BETWEEN on the numeric columns id, trim_year,
+ * length, weight and velocity, and equality and IN on make, model, fuel_type,
+ * transmission and body_type, compared in lower case. A search or any other
+ * filter returns empty, and the search goes to Postgres.
+ */
+public class CatalogFilter {
+
+    private static final Map<String, Dictionary> DICTIONARY_COLUMNS = Map.of(
+            "make", Dictionary.MAKE,
+            "model", Dictionary.MODEL,
+            "fuel_type", Dictionary.FUEL_TYPE,
+            "transmission", Dictionary.TRANSMISSION,
+            "body_type", Dictionary.BODY_TYPE);
+
+    static final Set<String> NUMERIC_COLUMNS = Set.of("id", "trim_year", "length", "weight", "velocity");
+
+    private final CatalogSnapshot catalog;
+
+    private final List<IntPredicate> predicates = new ArrayList<>();
+
+    private CatalogFilter(CatalogSnapshot catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Builds the predicate of a car search over the rows of the catalog.
+     *
+     * @param catalog the catalog
+     * @param filters the filters of the search, as given to CarRepository
+     * @param search  the full-text search, or null
+     * @return a predicate on the row numbers of the catalog, or empty when the
+     *         search must go to Postgres
+     */
+    public static Optional<IntPredicate> of(CatalogSnapshot catalog, Map<String, String> filters, String search) {
+        if (catalog == null || (search != null && !search.isEmpty())) {
+            return Optional.empty();
+        }
+        CatalogFilter filter = new CatalogFilter(catalog);
+        try {
+            if (!filter.addFilters(filters)) {
+                return Optional.empty();
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Malformed values fail in CarRepository with its own error
+            return Optional.empty();
+        }
+        IntPredicate[] predicates = filter.predicates.toArray(new IntPredicate[0]);
+        return Optional.of(row -> {
+            for (IntPredicate predicate : predicates) {
+                if (!predicate.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Returns a numeric column of the catalog, NULL velocities as NaN.
+     *
+     * @param catalog the catalog
+     * @param column  one of id, trim_year, length, weight and velocity
+     * @return the value of the column by row number
+     */
+    static IntToDoubleFunction numeric(CatalogSnapshot catalog, String column) {
+        return switch (column) {
+            case "id" -> catalog::id;
+            case "trim_year" -> catalog::trimYear;
+            case "length" -> catalog::length;
+            case "weight" -> catalog::weight;
+            default -> catalog::velocity;
+        };
+    }
+
+    private boolean addFilters(Map<String, String> filters) {
+        if (filters == null) {
+            return true;
+        }
+        for (Map.Entry<String, String> entry : filters.entrySet()) {
+            String column = QueryShape.columnName(entry.getKey());
+            String value = entry.getValue();
+            if (!CarEntity.getFields().contains(column)) {
+                continue;
+            }
+            if (value == null || (!NUMERIC_COLUMNS.contains(column) && !DICTIONARY_COLUMNS.containsKey(column))) {
+                return false;
+            }
+
+            // Same parsing as CarRepository.applyFilters
+            if (value.toLowerCase().contains("between(")) {
+                String[] bounds = value.split("between")[1].replaceAll("[()]", "").split(",");
+                if (bounds.length != 2) {
+                    continue;
+                }
+                Number[] parsed = CarEntity.parseRange(column, bounds[0].trim(), bounds[1].trim());
+                Number low = parsed[0];
+                Number high = parsed[1];
+                IntToDoubleFunction key = numeric(catalog, column);
+                predicates.add(row -> key.applyAsDouble(row) >= low.doubleValue()
+                        && key.applyAsDouble(row) <= high.doubleValue());
+            } else if (value.toLowerCase().contains("in(")) {
+                String[] values = value.split("in")[1].replaceAll("[()]", "").split(",");
+                predicates.add(matching(column, CarEntity.parse(column, values)));
+            } else {
+                Object parsed = CarEntity.parse(column, value);
+                if (parsed instanceof String string
+                        && (string.contains("%") || string.contains("_") || string.contains("\\"))) {
+                    return false;
+                }
+                predicates.add(matching(column, new Object[] { parsed }));
+            }
+        }
+        return true;
+    }
+
+    private IntPredicate matching(String column, Object[] values) {
+        Dictionary dictionary = DICTIONARY_COLUMNS.get(column);
+        if (dictionary != null) {
+            Set<String> lowerCase = new HashSet<>();
+            Arrays.stream(values).forEach(value -> lowerCase.add(value.toString().toLowerCase()));
+            BitSet codes = new BitSet();
+            List<String> entries = catalog.dictionary(dictionary);
+            for (int code = 0; code < entries.size(); code++) {
+                if (lowerCase.contains(entries.get(code).toLowerCase())) {
+                    codes.set(code);
+                }
+            }
+            return row -> codes.get(catalog.code(dictionary, row));
+        }
+        double[] numbers = Arrays.stream(values).mapToDouble(value -> ((Number) value).doubleValue()).toArray();
+        IntToDoubleFunction key = numeric(catalog, column);
+        return row -> {
+            double number = key.applyAsDouble(row);
+            for (double candidate : numbers) {
+                if (number == candidate) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+}
@@ -0,0 +1,512 @@
+package com.pstag.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+
+import com.pstag.utils.CatalogSnapshot.Dictionary;
+
+/**
+ * Finds the cars most similar to a car of a CatalogSnapshot.
+ *
+ * A car is a point of length, weight, velocity and trim_year, each scaled to
+ * its standard deviation around its mean, a NULL velocity at the mean. The
+ * distance between two cars is the euclidean distance of their points, plus
+ * bodyTypeWeight under the square root when their body types differ and
+ * fuelTypeWeight when their fuel types differ.
+ *
+ * The cars are split by body type and fuel type, and each group is a k-d
+ * tree laid out in an array, the median of a range at its middle. A query
+ * searches its own group first, then the others by increasing penalty, and
+ * skips a group or a branch once it cannot hold a closer car than the k found
+ * so far, so it reads a few hundred cars of the catalog at most.
+ *
+ * An index is immutable. When the catalog changes, update keeps the trees of
+ * the catalog they were built from and only marks the rows that changed,
+ * which are then scanned on each query, until they are more than a tenth of
+ * the catalog and the trees are rebuilt. Car ids are SERIAL, so they fit in
+ * 32 bits.
+ */
+public class CatalogNeighbors {
+
+    /**
+     * A similar car and its distance to the car of the query.
+     */
+    public record Neighbor(long id, double distance) {
+    }
+
+    private static final int DIMENSIONS = 4;
+
+    private final CatalogSnapshot catalog;
+
+    private final CatalogSnapshot base;
+
+    private final double bodyTypeWeight;
+
+    private final double fuelTypeWeight;
+
+    private final double[] means;
+
+    private final double[] scales;
+
+    private final double[] coordinates;
+
+    private final int[] tree;
+
+    private final int[] groupStarts;
+
+    private final int[] groupBodyTypes;
+
+    private final int[] groupFuelTypes;
+
+    private final long[] idRows;
+
+    private final BitSet stale;
+
+    private final int[] pending;
+
+    private CatalogNeighbors(CatalogSnapshot catalog, CatalogSnapshot base, double bodyTypeWeight,
+            double fuelTypeWeight, double[] means, double[] scales, double[] coordinates, int[] tree,
+            int[] groupStarts, int[] groupBodyTypes, int[] groupFuelTypes, long[] idRows, BitSet stale,
+            int[] pending) {
+        this.catalog = catalog;
+        this.base = base;
+        this.bodyTypeWeight = bodyTypeWeight;
+        this.fuelTypeWeight = fuelTypeWeight;
+        this.means = means;
+        this.scales = scales;
+        this.coordinates = coordinates;
+        this.tree = tree;
+        this.groupStarts = groupStarts;
+        this.groupBodyTypes = groupBodyTypes;
+        this.groupFuelTypes = groupFuelTypes;
+        this.idRows = idRows;
+        this.stale = stale;
+        this.pending = pending;
+    }
+
+    /**
+     * Builds the index of a catalog.
+     *
+     * @param catalog        the catalog
+     * @param bodyTypeWeight the squared distance added between different body
+     *                       types
+     * @param fuelTypeWeight the squared distance added between different fuel
+     *                       types
+     * @return the index
+     */
+    public static CatalogNeighbors build(CatalogSnapshot catalog, double bodyTypeWeight, double fuelTypeWeight) {
+        int size = catalog.size();
+        double[] means = new double[DIMENSIONS];
+        double[] scales = new double[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double sum = 0;
+            double sumOfSquares = 0;
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                double value = value(catalog, row, d);
+                if (!Double.isNaN(value)) {
+                    sum += value;
+                    sumOfSquares += value * value;
+                    count++;
+                }
+            }
+            means[d] = count > 0 ? sum / count : 0;
+            double variance = count > 0 ? sumOfSquares / count - means[d] * means[d] : 0;
+            scales[d] = variance > 1e-12 ? Math.sqrt(variance) : 1;
+        }
+
+        double[] coordinates = new double[size * DIMENSIONS];
+        long[] idRows = new long[size];
+        for (int row = 0; row < size; row++) {
+            normalize(catalog, row, means, scales, coordinates, row * DIMENSIONS);
+            idRows[row] = catalog.id(row) << 32 | row;
+        }
+        Arrays.sort(idRows);
+
+        // Counting sort of the rows by group, then a k-d tree per group
+        int fuelTypes = Math.max(1, catalog.dictionary(Dictionary.FUEL_TYPE).size());
+        int groupCount = Math.max(1, catalog.dictionary(Dictionary.BODY_TYPE).size()) * fuelTypes;
+        int[] starts = new int[groupCount + 1];
+        for (int row = 0; row < size; row++) {
+            starts[group(catalog, row, fuelTypes) + 1]++;
+        }
+        for (int g = 0; g < groupCount; g++) {
+            starts[g + 1] += starts[g];
+        }
+        int[] tree = new int[size];
+        int[] next = Arrays.copyOf(starts, groupCount);
+        for (int row = 0; row < size; row++) {
+            tree[next[group(catalog, row, fuelTypes)]++] = row;
+        }
+
+        List<Integer> groups = new ArrayList<>();
+        for (int g = 0; g < groupCount; g++) {
+            if (starts[g + 1] > starts[g]) {
+                groups.add(g);
+                buildTree(tree, starts[g], starts[g + 1], 0, coordinates);
+            }
+        }
+        int[] groupStarts = new int[groups.size() + 1];
+        int[] groupBodyTypes = new int[groups.size()];
+        int[] groupFuelTypes = new int[groups.size()];
+        for (int i = 0; i < groups.size(); i++) {
+            groupStarts[i] = starts[groups.get(i)];
+            groupBodyTypes[i] = groups.get(i) / fuelTypes;
+            groupFuelTypes[i] = groups.get(i) % fuelTypes;
+        }
+        groupStarts[groups.size()] = size;
+
+        return new CatalogNeighbors(catalog, catalog, bodyTypeWeight, fuelTypeWeight, means, scales, coordinates,
+                tree, groupStarts, groupBodyTypes, groupFuelTypes, idRows, new BitSet(), new int[0]);
+    }
+
+    /**
+     * Returns the index of a newer version of the catalog. The trees are kept
+     * when the catalog only changed or added rows since they were built, and
+     * the changes are fewer than a tenth of the catalog; otherwise the index
+     * is built again.
+     *
+     * @param next the newer catalog
+     * @return the index of the newer catalog
+     */
+    public CatalogNeighbors update(CatalogSnapshot next) {
+        if (next == catalog) {
+            return this;
+        }
+        if (next.size() < base.size() || !sameCodes(next, Dictionary.BODY_TYPE)
+                || !sameCodes(next, Dictionary.FUEL_TYPE)) {
+            return build(next, bodyTypeWeight, fuelTypeWeight);
+        }
+        int maxPending = 64 + base.size() / 10;
+        BitSet changed = new BitSet();
+        int[] rows = new int[Math.min(maxPending, next.size())];
+        int count = 0;
+        for (int row = 0; row < next.size(); row++) {
+            if (row < base.size()) {
+                if (next.id(row) != base.id(row)) {
+                    return build(next, bodyTypeWeight, fuelTypeWeight);
+                }
+                if (!changed(next, row)) {
+                    continue;
+                }
+                changed.set(row);
+            }
+            if (count == rows.length) {
+                return build(next, bodyTypeWeight, fuelTypeWeight);
+            }
+            rows[count++] = row;
+        }
+        return new CatalogNeighbors(next, base, bodyTypeWeight, fuelTypeWeight, means, scales, coordinates, tree,
+                groupStarts, groupBodyTypes, groupFuelTypes, idRows, changed, Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * @return the catalog of the index
+     */
+    public CatalogSnapshot catalog() {
+        return catalog;
+    }
+
+    /**
+     * @return whether the trees were built from the catalog of the index,
+     *         without rows scanned on each query
+     */
+    public boolean isBuilt() {
+        return catalog == base;
+    }
+
+    /**
+     * Finds the cars most similar to a car with the trees.
+     *
+     * @param id the id of the car
+     * @param k  the number of cars to return
+     * @return the k closest other cars, closest first and by id on a tie, or
+     *         empty when the catalog has no car with this id
+     */
+    public Optional<List<Neighbor>> nearest(long id, int k) {
+        int row = row(id);
+        if (row < 0) {
+            return Optional.empty();
+        }
+        double[] query = new double[DIMENSIONS];
+        normalize(catalog, row, means, scales, query, 0);
+        int bodyType = catalog.code(Dictionary.BODY_TYPE, row);
+        int fuelType = catalog.code(Dictionary.FUEL_TYPE, row);
+        Heap heap = new Heap(k);
+
+        double[] penalties = new double[groupBodyTypes.length];
+        Integer[] groups = new Integer[groupBodyTypes.length];
+        for (int g = 0; g < groups.length; g++) {
+            groups[g] = g;
+            penalties[g] = penalty(bodyType, fuelType, groupBodyTypes[g], groupFuelTypes[g]);
+        }
+        Arrays.sort(groups, (a, b) -> Double.compare(penalties[a], penalties[b]));
+        for (int g : groups) {
+            if (heap.isFull() && penalties[g] > heap.worst()) {
+                break;
+            }
+            search(groupStarts[g], groupStarts[g + 1], 0, query, penalties[g], id, heap);
+        }
+
+        double[] point = new double[DIMENSIONS];
+        for (int other : pending) {
+            if (catalog.id(other) != id) {
+                normalize(catalog, other, means, scales, point, 0);
+                heap.offer(distance(catalog, other, query, point, 0, bodyType, fuelType), catalog.id(other));
+            }
+        }
+        return Optional.of(heap.neighbors());
+    }
+
+    /**
+     * Finds the cars most similar to a car by computing the distance to every
+     * car of the catalog, the reference of nearest.
+     *
+     * @param id the id of the car
+     * @param k  the number of cars to return
+     * @return the k closest other cars, closest first and by id on a tie, or
+     *         empty when the catalog has no car with this id
+     */
+    public Optional<List<Neighbor>> scan(long id, int k) {
+        int row = 0;
+        while (row < catalog.size() && catalog.id(row) != id) {
+            row++;
+        }
+        if (row == catalog.size()) {
+            return Optional.empty();
+        }
+        double[] query = new double[DIMENSIONS];
+        normalize(catalog, row, means, scales, query, 0);
+        int bodyType = catalog.code(Dictionary.BODY_TYPE, row);
+        int fuelType = catalog.code(Dictionary.FUEL_TYPE, row);
+        Heap heap = new Heap(k);
+        double[] point = new double[DIMENSIONS];
+        for (int other = 0; other < catalog.size(); other++) {
+            if (other != row) {
+                normalize(catalog, other, means, scales, point, 0);
+                heap.offer(distance(catalog, other, query, point, 0, bodyType, fuelType), catalog.id(other));
+            }
+        }
+        return Optional.of(heap.neighbors());
+    }
+
+    private void search(int lo, int hi, int depth, double[] query, double penalty, long id, Heap heap) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int node = tree[mid];
+            int offset = node * DIMENSIONS;
+            if (!stale.get(node) && base.id(node) != id) {
+                double distance = penalty;
+                for (int d = 0; d < DIMENSIONS; d++) {
+                    double delta = query[d] - coordinates[offset + d];
+                    distance += delta * delta;
+                }
+                heap.offer(distance, base.id(node));
+            }
+
+            int dimension = depth % DIMENSIONS;
+            double delta = query[dimension] - coordinates[offset + dimension];
+            boolean left = delta < 0;
+            // The near side first, then the far side if it can be closer
+            if (left) {
+                search(lo, mid, depth + 1, query, penalty, id, heap);
+            } else {
+                search(mid + 1, hi, depth + 1, query, penalty, id, heap);
+            }
+            if (heap.isFull() && penalty + delta * delta > heap.worst()) {
+                return;
+            }
+            if (left) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+            depth++;
+        }
+    }
+
+    private int row(long id) {
+        for (int row : pending) {
+            if (catalog.id(row) == id) {
+                return row;
+            }
+        }
+        int index = Arrays.binarySearch(idRows, id << 32);
+        index = index < 0 ? -index - 1 : index;
+        if (index < idRows.length && idRows[index] >>> 32 == id) {
+            return (int) idRows[index];
+        }
+        return -1;
+    }
+
+    private double distance(CatalogSnapshot source, int row, double[] query, double[] point, int offset,
+            int bodyType, int fuelType) {
+        double distance = penalty(bodyType, fuelType, source.code(Dictionary.BODY_TYPE, row),
+                source.code(Dictionary.FUEL_TYPE, row));
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double delta = query[d] - point[offset + d];
+            distance += delta * delta;
+        }
+        return distance;
+    }
+
+    private double penalty(int bodyType, int fuelType, int otherBodyType, int otherFuelType) {
+        return (bodyType != otherBodyType ? bodyTypeWeight : 0) + (fuelType != otherFuelType ? fuelTypeWeight : 0);
+    }
+
+    private boolean sameCodes(CatalogSnapshot next, Dictionary dictionary) {
+        List<String> codes = base.dictionary(dictionary);
+        List<String> nextCodes = next.dictionary(dictionary);
+        return nextCodes.size() >= codes.size() && nextCodes.subList(0, codes.size()).equals(codes);
+    }
+
+    private boolean changed(CatalogSnapshot next, int row) {
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (Double.compare(value(next, row, d), value(base, row, d)) != 0) {
+                return true;
+            }
+        }
+        return next.code(Dictionary.BODY_TYPE, row) != base.code(Dictionary.BODY_TYPE, row)
+                || next.code(Dictionary.FUEL_TYPE, row) != base.code(Dictionary.FUEL_TYPE, row);
+    }
+
+    private static double value(CatalogSnapshot catalog, int row, int dimension) {
+        return switch (dimension) {
+            case 0 -> catalog.length(row);
+            case 1 -> catalog.weight(row);
+            case 2 -> catalog.velocity(row);
+            default -> catalog.trimYear(row);
+        };
+    }
+
+    private static void normalize(CatalogSnapshot catalog, int row, double[] means, double[] scales,
+            double[] target, int offset) {
+        for (int d = 0; d < DIMENSIONS; d++) {
+            double value = value(catalog, row, d);
+            target[offset + d] = Double.isNaN(value) ? 0 : (value - means[d]) / scales[d];
+        }
+    }
+
+    private static int group(CatalogSnapshot catalog, int row, int fuelTypes) {
+        return catalog.code(Dictionary.BODY_TYPE, row) * fuelTypes + catalog.code(Dictionary.FUEL_TYPE, row);
+    }
+
+    /**
+     * Orders rows[lo, hi) as a k-d tree: the median on the dimension of the
+     * depth at the middle, the rows below it before and the rows above it
+     * after, each side a tree of the next dimension.
+     */
+    private static void buildTree(int[] rows, int lo, int hi, int depth, double[] coordinates) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(rows, lo, hi - 1, mid, coordinates, depth % DIMENSIONS);
+            buildTree(rows, lo, mid, depth + 1, coordinates);
+            lo = mid + 1;
+            depth++;
+        }
+    }
+
+    private static void select(int[] rows, int lo, int hi, int k, double[] coordinates, int dimension) {
+        while (lo < hi) {
+            double pivot = coordinates[rows[(lo + hi) >>> 1] * DIMENSIONS + dimension];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coordinates[rows[i] * DIMENSIONS + dimension] < pivot) {
+                    i++;
+                }
+                while (coordinates[rows[j] * DIMENSIONS + dimension] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swapped = rows[i];
+                    rows[i++] = rows[j];
+                    rows[j--] = swapped;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The k closest cars found so far, in a max-heap on the distance and the
+     * id.
+     */
+    private static final class Heap {
+
+        private final double[] distances;
+
+        private final long[] ids;
+
+        private int size;
+
+        Heap(int capacity) {
+            distances = new double[capacity];
+            ids = new long[capacity];
+        }
+
+        boolean isFull() {
+            return size == distances.length;
+        }
+
+        double worst() {
+            return distances[0];
+        }
+
+        void offer(double distance, long id) {
+            if (size < distances.length) {
+                int index = size++;
+                while (index > 0 && after(distance, id, distances[(index - 1) / 2], ids[(index - 1) / 2])) {
+                    move((index - 1) / 2, index);
+                    index = (index - 1) / 2;
+                }
+                distances[index] = distance;
+                ids[index] = id;
+            } else if (size > 0 && after(distances[0], ids[0], distance, id)) {
+                int index = 0;
+                while (2 * index + 1 < size) {
+                    int child = 2 * index + 1;
+                    if (child + 1 < size && after(distances[child + 1], ids[child + 1], distances[child], ids[child])) {
+                        child++;
+                    }
+                    if (!after(distances[child], ids[child], distance, id)) {
+                        break;
+                    }
+                    move(child, index);
+                    index = child;
+                }
+                distances[index] = distance;
+                ids[index] = id;
+            }
+        }
+
+        List<Neighbor> neighbors() {
+            List<Neighbor> neighbors = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                neighbors.add(new Neighbor(ids[i], distances[i]));
+            }
+            neighbors.sort((a, b) -> a.distance() != b.distance() ? Double.compare(a.distance(), b.distance())
+                    : Long.compare(a.id(), b.id()));
+            return neighbors.stream().map(neighbor -> new Neighbor(neighbor.id(), Math.sqrt(neighbor.distance())))
+                    .toList();
+        }
+
+        private static boolean after(double distance, long id, double otherDistance, long otherId) {
+            return distance > otherDistance || (distance == otherDistance && id > otherId);
+        }
+
+        private void move(int from, int to) {
+            distances[to] = distances[from];
+            ids[to] = ids[from];
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package com.pstag.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, columnar copy of the numeric and categorical columns of the
+ * "cars" table, for the in-memory facets and indexes: id, trim_year, make,
+ * model, fuel_type, transmission, body_type, length, weight, velocity, color
+ * and updated_at. The texts are dictionary-encoded, each row holding the int
+ * code of its value, and the colors of all rows are stored back to back with
+ * the offset of each row. A NULL velocity is NaN, which Double.compare
+ * orders after every number, the way Postgres orders NULL.
+ *
+ * The snapshot is written to disk in the same columnar layout, little-endian:
+ * - the magic "CARSNAP1", the row count and the highest updated_at;
+ * - the dictionaries of make, model, fuel_type, transmission, body_type and
+ * color, each as its size and its UTF-8 values prefixed by their length;
+ * - the columns as primitive arrays, each starting on 8 bytes.
+ *
+ * Reading maps the file and copies each column with a single bulk get, so a
+ * node can start from it without reading the table, and then only needs the
+ * rows updated since maxUpdatedAt.
+ */
+public final class CatalogSnapshot {
+
+    private static final byte[] MAGIC = "CARSNAP1".getBytes(StandardCharsets.US_ASCII);
+
+    public enum Dictionary {
+        MAKE, MODEL, FUEL_TYPE, TRANSMISSION, BODY_TYPE, COLOR
+    }
+
+    private final List<List<String>> dictionaries;
+
+    private final long[] ids;
+
+    private final int[] trimYears;
+
+    private final int[][] codes;
+
+    private final double[] lengths;
+
+    private final double[] weights;
+
+    private final double[] velocities;
+
+    private final long[] updatedAts;
+
+    private final int[] colorOffsets;
+
+    private final int[] colors;
+
+    private final long maxUpdatedAt;
+
+    private CatalogSnapshot(List<List<String>> dictionaries, long[] ids, int[] trimYears, int[][] codes,
+            double[] lengths, double[] weights, double[] velocities, long[] updatedAts, int[] colorOffsets,
+            int[] colors) {
+        this.dictionaries = dictionaries;
+        this.ids = ids;
+        this.trimYears = trimYears;
+        this.codes = codes;
+        this.lengths = lengths;
+        this.weights = weights;
+        this.velocities = velocities;
+        this.updatedAts = updatedAts;
+        this.colorOffsets = colorOffsets;
+        this.colors = colors;
+        this.maxUpdatedAt = Arrays.stream(updatedAts).max().orElse(Long.MIN_VALUE);
+    }
+
+    /**
+     * @return an empty builder
+     */
+    public static Builder builder() {
+        return new Builder(null);
+    }
+
+    /**
+     * Returns a builder holding the rows of a snapshot, where adding a row
+     * with a known id replaces it.
+     *
+     * @param base the snapshot to start from
+     * @return the builder
+     */
+    public static Builder builder(CatalogSnapshot base) {
+        return new Builder(base);
+    }
+
+    /**
+     * @return the number of cars
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return the highest updated_at of the rows, in microseconds since the
+     *         epoch, or Long.MIN_VALUE when empty
+     */
+    public long maxUpdatedAt() {
+        return maxUpdatedAt;
+    }
+
+    public long id(int row) {
+        return ids[row];
+    }
+
+    public int trimYear(int row) {
+        return trimYears[row];
+    }
+
+    public double length(int row) {
+        return lengths[row];
+    }
+
+    public double weight(int row) {
+        return weights[row];
+    }
+
+    public double velocity(int row) {
+        return velocities[row];
+    }
+
+    public long updatedAt(int row) {
+        return updatedAts[row];
+    }
+
+    /**
+     * @return the dictionary code of the row's value, an index in
+     *         dictionary(dictionary)
+     */
+    public int code(Dictionary dictionary, int row) {
+        return codes[dictionary.ordinal()][row];
+    }
+
+    /**
+     * @return the row's value of a dictionary-encoded column
+     */
+    public String value(Dictionary dictionary, int row) {
+        return dictionaries.get(dictionary.ordinal()).get(codes[dictionary.ordinal()][row]);
+    }
+
+    /**
+     * @return the distinct values of a dictionary-encoded column, in the order
+     *         of their codes
+     */
+    public List<String> dictionary(Dictionary dictionary) {
+        return dictionaries.get(dictionary.ordinal());
+    }
+
+    /**
+     * @return the colors of the row, empty when it has none
+     */
+    public List<String> colors(int row) {
+        List<String> dictionary = dictionaries.get(Dictionary.COLOR.ordinal());
+        List<String> values = new ArrayList<>(colorOffsets[row + 1] - colorOffsets[row]);
+        for (int i = colorOffsets[row]; i < colorOffsets[row + 1]; i++) {
+            values.add(dictionary.get(colors[i]));
+        }
+        return values;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the path and moves it
+     * in place, so that a reader never maps a partial file.
+     *
+     * @param path the file to write
+     * @throws IOException when the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC).putInt(ids.length).putInt(colors.length).putLong(maxUpdatedAt);
+        for (List<String> dictionary : dictionaries) {
+            buffer.putInt(dictionary.size());
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(bytes.length).put(bytes);
+            }
+        }
+        align(buffer);
+        buffer.asLongBuffer().put(ids);
+        skip(buffer, ids.length * 8);
+        buffer.asLongBuffer().put(updatedAts);
+        skip(buffer, updatedAts.length * 8);
+        for (double[] column : new double[][] { lengths, weights, velocities }) {
+            buffer.asDoubleBuffer().put(column);
+            skip(buffer, column.length * 8);
+        }
+        buffer.asIntBuffer().put(trimYears);
+        skip(buffer, trimYears.length * 4);
+        for (int[] column : codes) {
+            buffer.asIntBuffer().put(column);
+            skip(buffer, column.length * 4);
+        }
+        buffer.asIntBuffer().put(colorOffsets);
+        skip(buffer, colorOffsets.length * 4);
+        buffer.asIntBuffer().put(colors);
+        skip(buffer, colors.length * 4);
+        buffer.flip();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot by memory-mapping its file.
+     *
+     * @param path the file written by write
+     * @return the snapshot
+     * @throws IOException when the file cannot be read or is not a snapshot
+     */
+    public static CatalogSnapshot read(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(path + " is not a catalog snapshot");
+            }
+            int rows = buffer.getInt();
+            int colorCount = buffer.getInt();
+            buffer.getLong();
+
+            List<List<String>> dictionaries = new ArrayList<>();
+            for (int d = 0; d < Dictionary.values().length; d++) {
+                String[] values = new String[buffer.getInt()];
+                for (int i = 0; i < values.length; i++) {
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    values[i] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                dictionaries.add(List.of(values));
+            }
+            align(buffer);
+
+            long[] ids = new long[rows];
+            buffer.asLongBuffer().get(ids);
+            skip(buffer, rows * 8);
+            long[] updatedAts = new long[rows];
+            buffer.asLongBuffer().get(updatedAts);
+            skip(buffer, rows * 8);
+            double[][] doubles = new double[3][rows];
+            for (double[] column : doubles) {
+                buffer.asDoubleBuffer().get(column);
+                skip(buffer, rows * 8);
+            }
+            int[] trimYears = new int[rows];
+            buffer.asIntBuffer().get(trimYears);
+            skip(buffer, rows * 4);
+            int[][] codes = new int[Dictionary.COLOR.ordinal()][rows];
+            for (int[] column : codes) {
+                buffer.asIntBuffer().get(column);
+                skip(buffer, rows * 4);
+            }
+            int[] colorOffsets = new int[rows + 1];
+            buffer.asIntBuffer().get(colorOffsets);
+            skip(buffer, (rows + 1) * 4);
+            int[] colors = new int[colorCount];
+            buffer.asIntBuffer().get(colors);
+
+            return new CatalogSnapshot(dictionaries, ids, trimYears, codes, doubles[0], doubles[1], doubles[2],
+                    updatedAts, colorOffsets, colors);
+        } catch (RuntimeException e) {
+            throw new IOException(path + " is not a valid catalog snapshot: " + e, e);
+        }
+    }
+
+    private int byteSize() {
+        int size = MAGIC.length + 4 + 4 + 8;
+        for (List<String> dictionary : dictionaries) {
+            size += 4;
+            for (String value : dictionary) {
+                size += 4 + value.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        size += 7;
+        size += ids.length * 8 * 5;
+        size += ids.length * 4 * (1 + codes.length);
+        size += colorOffsets.length * 4 + colors.length * 4;
+        return size;
+    }
+
+    private static void align(ByteBuffer buffer) {
+        buffer.position((buffer.position() + 7) & ~7);
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
+
+    /**
+     * Collects rows into a snapshot, assigning the dictionary codes.
+     */
+    public static final class Builder {
+
+        private final List<Map<String, Integer>> codesByValue = new ArrayList<>();
+
+        private final List<List<String>> dictionaries = new ArrayList<>();
+
+        private final Map<Long, Integer> rowsById = new HashMap<>();
+
+        private long[] ids = new long[1024];
+
+        private int[] trimYears = new int[1024];
+
+        private int[][] codes = new int[Dictionary.COLOR.ordinal()][1024];
+
+        private double[] lengths = new double[1024];
+
+        private double[] weights = new double[1024];
+
+        private double[] velocities = new double[1024];
+
+        private long[] updatedAts = new long[1024];
+
+        private final List<int[]> rowColors = new ArrayList<>();
+
+        private int size;
+
+        private Builder(CatalogSnapshot base) {
+            for (int d = 0; d < Dictionary.values().length; d++) {
+                codesByValue.add(new HashMap<>());
+                dictionaries.add(new ArrayList<>());
+            }
+            if (base == null) {
+                return;
+            }
+            for (int d = 0; d < Dictionary.values().length; d++) {
+                for (String value : base.dictionaries.get(d)) {
+                    code(d, value);
+                }
+            }
+            for (int row = 0; row < base.size(); row++) {
+                int[] codesOfRow = new int[codes.length];
+                for (int d = 0; d < codes.length; d++) {
+                    codesOfRow[d] = base.codes[d][row];
+                }
+                add(base.ids[row], base.trimYears[row], codesOfRow, base.lengths[row], base.weights[row],
+                        base.velocities[row], Arrays.copyOfRange(base.colors, base.colorOffsets[row],
+                                base.colorOffsets[row + 1]),
+                        base.updatedAts[row]);
+            }
+        }
+
+        /**
+         * Adds a car, or replaces the car with the same id.
+         *
+         * @param updatedAt updated_at in microseconds since the epoch
+         * @return this builder
+         */
+        public Builder add(long id, int trimYear, String make, String model, String fuelType, String transmission,
+                String bodyType, double length, double weight, double velocity, List<String> colorValues,
+                long updatedAt) {
+            int[] codesOfRow = {
+                    code(Dictionary.MAKE.ordinal(), make),
+                    code(Dictionary.MODEL.ordinal(), model),
+                    code(Dictionary.FUEL_TYPE.ordinal(), fuelType),
+                    code(Dictionary.TRANSMISSION.ordinal(), transmission),
+                    code(Dictionary.BODY_TYPE.ordinal(), bodyType) };
+            int[] colorCodes = colorValues == null ? new int[0]
+                    : colorValues.stream().filter(color -> color != null && !color.isBlank())
+                            .mapToInt(color -> code(Dictionary.COLOR.ordinal(), color)).toArray();
+            return add(id, trimYear, codesOfRow, length, weight, velocity, colorCodes, updatedAt);
+        }
+
+        private Builder add(long id, int trimYear, int[] codesOfRow, double length, double weight, double velocity,
+                int[] colorCodes, long updatedAt) {
+            Integer existing = rowsById.get(id);
+            int row = existing != null ? existing : size++;
+            if (existing == null) {
+                ensureCapacity(size);
+                rowsById.put(id, row);
+                rowColors.add(colorCodes);
+            } else {
+                rowColors.set(row, colorCodes);
+            }
+            ids[row] = id;
+            trimYears[row] = trimYear;
+            for (int d = 0; d < codes.length; d++) {
+                codes[d][row] = codesOfRow[d];
+            }
+            lengths[row] = length;
+            weights[row] = weight;
+            velocities[row] = velocity;
+            updatedAts[row] = updatedAt;
+            return this;
+        }
+
+        /**
+         * @return the snapshot of the rows added so far
+         */
+        public CatalogSnapshot build() {
+            int[] colorOffsets = new int[size + 1];
+            for (int row = 0; row < size; row++) {
+                colorOffsets[row + 1] = colorOffsets[row] + rowColors.get(row).length;
+            }
+            int[] colors = new int[colorOffsets[size]];
+            for (int row = 0; row < size; row++) {
+                System.arraycopy(rowColors.get(row), 0, colors, colorOffsets[row], rowColors.get(row).length);
+            }
+            int[][] trimmedCodes = new int[codes.length][];
+            for (int d = 0; d < codes.length; d++) {
+                trimmedCodes[d] = Arrays.copyOf(codes[d], size);
+            }
+            return new CatalogSnapshot(dictionaries.stream().map(List::copyOf).toList(), Arrays.copyOf(ids, size),
+                    Arrays.copyOf(trimYears, size), trimmedCodes, Arrays.copyOf(lengths, size),
+                    Arrays.copyOf(weights, size), Arrays.copyOf(velocities, size), Arrays.copyOf(updatedAts, size),
+                    colorOffsets, colors);
+        }
+
+        private int code(int dictionary, String value) {
+            String key = value != null ? value : "";
+            return codesByValue.get(dictionary).computeIfAbsent(key, k -> {
+                dictionaries.get(dictionary).add(k);
+                return dictionaries.get(dictionary).size() - 1;
+            });
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= ids.length) {
+                return;
+            }
+            int grown = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, grown);
+            trimYears = Arrays.copyOf(trimYears, grown);
+            for (int d = 0; d < codes.length; d++) {
+                codes[d] = Arrays.copyOf(codes[d], grown);
+            }
+            lengths = Arrays.copyOf(lengths, grown);
+            weights = Arrays.copyOf(weights, grown);
+            velocities = Arrays.copyOf(velocities, grown);
+            updatedAts = Arrays.copyOf(updatedAts, grown);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.pstag.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+import com.pstag.entities.CarEntity;
+
+/**
+ * Pages a car search over a CatalogSnapshot instead of Postgres, for the
+ * common sorts on the numeric columns id, trim_year, length, weight and
+ * velocity.
+ *
+ * The rows matching the filters are counted, and the best offset + limit of
+ * them are kept in a bounded heap of row numbers compared on the primitive
+ * columns, so a page costs one pass over the catalog and O(log k) per match
+ * without sorting the matches. The order is the order of CarRepository: the
+ * sorted columns in request order, then the id in the direction of the last
+ * one, and NULL velocities as NaN after every number.
+ *
+ * The filters are evaluated by CatalogFilter. A search or filter it cannot
+ * evaluate, a sort on another column or a page beyond maxRows returns empty,
+ * and the search goes to Postgres.
+ *
+ * The catalog trails the table by up to a refresh, so isCurrent checks the
+ * cars of a page, as read back from Postgres, against the filters and the
+ * sort keys the page was decided on.
+ */
+public class CatalogTopK {
+
+    /**
+     * A page decided in memory: the number of matching cars, and the ids and
+     * catalog row numbers of the cars of the page, in order.
+     */
+    public record Page(int totalRows, List<Long> ids, int[] rows) {
+    }
+
+    private final CatalogSnapshot catalog;
+
+    private IntPredicate filter;
+
+    private IntToDoubleFunction[] keys;
+
+    private boolean[] descending;
+
+    private CatalogTopK(CatalogSnapshot catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Pages a car search over the catalog.
+     *
+     * @param catalog the catalog
+     * @param filters the filters of the search, as given to CarRepository
+     * @param search  the full-text search, or null
+     * @param sorts   the sort directions, in priority order
+     * @param limit   the size of the page
+     * @param offset  the number of cars before the page
+     * @param maxRows the largest offset + limit served in memory
+     * @return the page, or empty when the search must go to Postgres
+     */
+    public static Optional<Page> of(CatalogSnapshot catalog, Map<String, String> filters, String search,
+            Map<String, String> sorts, int limit, int offset, int maxRows) {
+        if (catalog == null || limit <= 0 || offset < 0 || (long) limit + offset > maxRows) {
+            return Optional.empty();
+        }
+        CatalogTopK topK = new CatalogTopK(catalog);
+        Optional<IntPredicate> filter = CatalogFilter.of(catalog, filters, search);
+        if (filter.isEmpty() || !topK.addSorts(sorts)) {
+            return Optional.empty();
+        }
+        topK.filter = filter.get();
+        return Optional.of(topK.page(limit, offset));
+    }
+
+    /**
+     * Tells whether the current values of the cars of a page still agree
+     * with the catalog it was decided on: every car still matches the filters
+     * and still has the sort keys of the catalog, so it keeps its place.
+     *
+     * @param catalog the catalog the page was decided on
+     * @param page    the page from of
+     * @param current the cars of the page as they are now in Postgres
+     * @param filters the filters of the search
+     * @param sorts   the sort directions of the search
+     * @return false when a car is gone, no longer matches or moved
+     */
+    public static boolean isCurrent(CatalogSnapshot catalog, Page page, CatalogSnapshot current,
+            Map<String, String> filters, Map<String, String> sorts) {
+        CatalogTopK before = new CatalogTopK(catalog);
+        CatalogTopK after = new CatalogTopK(current);
+        Optional<IntPredicate> filter = CatalogFilter.of(current, filters, null);
+        if (filter.isEmpty() || !before.addSorts(sorts) || !after.addSorts(sorts)) {
+            return false;
+        }
+        Map<Long, Integer> rowsById = new HashMap<>();
+        for (int row = 0; row < current.size(); row++) {
+            rowsById.put(current.id(row), row);
+        }
+        for (int i = 0; i < page.ids().size(); i++) {
+            Integer row = rowsById.get(page.ids().get(i));
+            if (row == null || !filter.get().test(row)) {
+                return false;
+            }
+            for (int key = 0; key < before.keys.length; key++) {
+                if (Double.compare(before.keys[key].applyAsDouble(page.rows()[i]),
+                        after.keys[key].applyAsDouble(row)) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean addSorts(Map<String, String> sorts) {
+        if (sorts == null) {
+            return false;
+        }
+        List<IntToDoubleFunction> sortKeys = new ArrayList<>();
+        List<Boolean> sortDescending = new ArrayList<>();
+        boolean sortedById = false;
+        for (Map.Entry<String, String> entry : sorts.entrySet()) {
+            String column = QueryShape.columnName(entry.getKey());
+            if (!CarEntity.getFields().contains(column)) {
+                continue;
+            }
+            String order = entry.getValue().trim();
+            if (!CatalogFilter.NUMERIC_COLUMNS.contains(column)
+                    || (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc"))) {
+                return false;
+            }
+            sortKeys.add(CatalogFilter.numeric(catalog, column));
+            sortDescending.add(order.equalsIgnoreCase("desc"));
+            sortedById |= column.equals("id");
+        }
+        if (sortKeys.isEmpty()) {
+            return false;
+        }
+        if (!sortedById) {
+            sortKeys.add(CatalogFilter.numeric(catalog, "id"));
+            sortDescending.add(sortDescending.get(sortDescending.size() - 1));
+        }
+        keys = sortKeys.toArray(new IntToDoubleFunction[0]);
+        descending = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            descending[i] = sortDescending.get(i);
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the first offset + limit matching rows in a heap whose root is the
+     * row that comes last, replaced whenever a row comes before it.
+     */
+    private Page page(int limit, int offset) {
+        int capacity = limit + offset;
+        int[] heap = new int[capacity];
+        int size = 0;
+        int total = 0;
+        for (int row = 0; row < catalog.size(); row++) {
+            if (!filter.test(row)) {
+                continue;
+            }
+            total++;
+            if (size < capacity) {
+                heap[size] = row;
+                siftUp(heap, size++);
+            } else if (compare(row, heap[0]) < 0) {
+                heap[0] = row;
+                siftDown(heap, size);
+            }
+        }
+
+        Integer[] rows = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = heap[i];
+        }
+        Arrays.sort(rows, this::compare);
+        List<Long> ids = new ArrayList<>(Math.max(0, size - offset));
+        int[] pageRows = new int[Math.max(0, size - offset)];
+        for (int i = offset; i < size; i++) {
+            ids.add(catalog.id(rows[i]));
+            pageRows[i - offset] = rows[i];
+        }
+        return new Page(total, ids, pageRows);
+    }
+
+    private int compare(int a, int b) {
+        for (int i = 0; i < keys.length; i++) {
+            int comparison = Double.compare(keys[i].applyAsDouble(a), keys[i].applyAsDouble(b));
+            if (comparison != 0) {
+                return descending[i] ? -comparison : comparison;
+            }
+        }
+        return 0;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (compare(heap[index], heap[parent]) <= 0) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int index = 0;
+        while (true) {
+            int largest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && compare(heap[left], heap[largest]) > 0) {
+                largest = left;
+            }
+            if (right < size && compare(heap[right], heap[largest]) > 0) {
+                largest = right;
+            }
+            if (largest == index) {
+                return;
+            }
+            swap(heap, index, largest);
+            index = largest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int swapped = heap[i];
+        heap[i] = heap[j];
+        heap[j] = swapped;
+    }
+}
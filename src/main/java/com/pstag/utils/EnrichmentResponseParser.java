@@ -0,0 +1,196 @@
+package com.pstag.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.pstag.entities.CarEntity;
+
+/**
+ * Streams the JSON answer of MyAiService.getCarInformation and reads only the
+ * fields the enrichment writes: id, color and velocity. Everything else, such
+ * as the exteriorColors search keywords, is skipped without being bound.
+ *
+ * Each car is checked against the IDs that were sent and handed to the sink
+ * as soon as its object is closed. A car with a missing or mistyped field is
+ * rejected on its own; a syntax error or a truncated answer stops the parse
+ * but keeps the cars read before it.
+ *
+ * Colors longer than MAX_COLOR_LENGTH are dropped: the color columns of cars
+ * and enrichment_cache are VARCHAR(32)[], and a single longer name would fail
+ * the whole batched write of the window.
+ */
+public class EnrichmentResponseParser {
+
+    public static final int MAX_COLOR_LENGTH = 32;
+
+    /**
+     * The outcome of parsing one answer.
+     *
+     * @param accepted the cars handed to the sink
+     * @param rejected the number of car objects that were skipped
+     * @param complete false when the answer ended early or was not valid JSON
+     */
+    public record Result(List<CarEntity> accepted, int rejected, boolean complete) {
+    }
+
+    private EnrichmentResponseParser() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Parses an answer of the shape {"cars": [{...}, ...]} or [{...}, ...].
+     *
+     * @param factory  the JsonFactory used to create the streaming parser
+     * @param response the raw answer of the AI service
+     * @param ids      the IDs of the cars that were sent in the prompt
+     * @param sink     receives every accepted car as soon as it is parsed
+     * @return the parse result
+     */
+    public static Result parse(JsonFactory factory, String response, Set<Long> ids, Consumer<CarEntity> sink) {
+        List<CarEntity> accepted = new ArrayList<>();
+        int rejected = 0;
+
+        if (response == null || response.isBlank()) {
+            return new Result(accepted, rejected, false);
+        }
+
+        try (JsonParser parser = factory.createParser(response)) {
+            if (!moveToCarsArray(parser)) {
+                return new Result(accepted, rejected, false);
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    return new Result(accepted, rejected, false);
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    rejected++;
+                    parser.skipChildren();
+                    continue;
+                }
+                CarEntity car = readCar(parser);
+                if (car != null && ids.contains(car.id())) {
+                    accepted.add(car);
+                    sink.accept(car);
+                } else {
+                    rejected++;
+                }
+            }
+            return new Result(accepted, rejected, true);
+        } catch (IOException e) {
+            return new Result(accepted, rejected, false);
+        }
+    }
+
+    /**
+     * Positions the parser on the START_ARRAY token of the list of cars.
+     */
+    private static boolean moveToCarsArray(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return true;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("cars".equals(name) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Reads one car object, the parser being on its START_OBJECT token.
+     *
+     * @return the car with only id, color and velocity set, or null when one of
+     *         them is missing or invalid
+     */
+    private static CarEntity readCar(JsonParser parser) throws IOException {
+        Long id = null;
+        List<String> colors = null;
+        Double velocity = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "id":
+                    id = readLong(parser, value);
+                    break;
+                case "velocity":
+                    velocity = readDouble(parser, value);
+                    break;
+                case "color":
+                    colors = readColors(parser, value);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (id == null || velocity == null || velocity <= 0 || colors == null || colors.isEmpty()) {
+            return null;
+        }
+        return new CarEntity(id, null, null, 0, null, null, null, null, null, colors, 0.0, 0.0, velocity, null,
+                null);
+    }
+
+    private static List<String> readColors(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<String> strings = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            String text = token == JsonToken.VALUE_STRING ? parser.getText().trim() : "";
+            if (!text.isEmpty() && text.length() <= MAX_COLOR_LENGTH) {
+                strings.add(text);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return strings;
+    }
+
+    private static Long readLong(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getLongValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Long.valueOf(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static Double readDouble(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Double.valueOf(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,178 @@
+package com.pstag.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+import com.pstag.entities.Histogram;
+import com.pstag.entities.Histogram.Bucket;
+
+/**
+ * Builds the histograms of the numeric columns behind the range sliders:
+ * length, weight and velocity, NULL velocities left out.
+ *
+ * Equi-width buckets split [min, max] of the matching cars in equal ranges,
+ * the value at max falling in the last one, like width_bucket in Postgres.
+ * Equi-depth buckets hold the same number of cars, the first ones one more
+ * when the cars do not divide evenly, like ntile in Postgres, and range from
+ * the smallest to the largest value they hold. The same value may then end
+ * one bucket and start the next.
+ */
+public class Histograms {
+
+    public static final List<String> COLUMNS = List.of("length", "weight", "velocity");
+
+    public enum Mode {
+        WIDTH, DEPTH;
+
+        /**
+         * Parses the mode of a request.
+         *
+         * @param value "width" or "depth", in any case
+         * @return the mode
+         * @throws IllegalArgumentException if the value is neither
+         */
+        public static Mode of(String value) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value)) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Invalid histogram mode: " + value);
+        }
+
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Builds the histograms of the cars of a catalog matching a filter. The
+     * values of each column are copied into a primitive array and sorted, so
+     * that both modes cost one sort and one pass.
+     *
+     * @param catalog the catalog
+     * @param filter  the filter of the rows, from CatalogFilter
+     * @param mode    equi-width or equi-depth
+     * @param buckets the number of buckets
+     * @return the histograms by column, in the order of COLUMNS
+     */
+    public static Map<String, Histogram> of(CatalogSnapshot catalog, IntPredicate filter, Mode mode, int buckets) {
+        int[] rows = new int[catalog.size()];
+        int matching = 0;
+        for (int row = 0; row < catalog.size(); row++) {
+            if (filter.test(row)) {
+                rows[matching++] = row;
+            }
+        }
+
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        double[] values = new double[matching];
+        for (String column : COLUMNS) {
+            IntToDoubleFunction key = CatalogFilter.numeric(catalog, column);
+            int count = 0;
+            for (int i = 0; i < matching; i++) {
+                double value = key.applyAsDouble(rows[i]);
+                if (!Double.isNaN(value)) {
+                    values[count++] = value;
+                }
+            }
+            Arrays.sort(values, 0, count);
+            histograms.put(column, of(values, count, mode, buckets));
+        }
+        return histograms;
+    }
+
+    /**
+     * Builds a histogram from sorted values.
+     *
+     * @param sorted  the values, sorted ascending
+     * @param count   the number of values used from the start of sorted
+     * @param mode    equi-width or equi-depth
+     * @param buckets the number of buckets
+     * @return the histogram
+     */
+    public static Histogram of(double[] sorted, int count, Mode mode, int buckets) {
+        if (count == 0) {
+            return empty(mode);
+        }
+        double min = sorted[0];
+        double max = sorted[count - 1];
+        if (mode == Mode.WIDTH) {
+            long[] counts = new long[buckets];
+            for (int i = 0; i < count; i++) {
+                counts[bucket(sorted[i], min, max, buckets)]++;
+            }
+            return width(min, max, counts);
+        }
+
+        List<Bucket> depth = new ArrayList<>();
+        int size = count / buckets;
+        int larger = count % buckets;
+        int start = 0;
+        for (int i = 0; i < buckets && start < count; i++) {
+            int end = start + size + (i < larger ? 1 : 0);
+            depth.add(new Bucket(sorted[start], sorted[end - 1], end - start));
+            start = end;
+        }
+        return depth(depth);
+    }
+
+    /**
+     * Builds an equi-width histogram from the number of values in each bucket.
+     *
+     * @param min    the smallest value
+     * @param max    the largest value
+     * @param counts the number of values by bucket
+     * @return the histogram, with a single bucket when min equals max
+     */
+    public static Histogram width(double min, double max, long[] counts) {
+        long total = Arrays.stream(counts).sum();
+        if (min == max) {
+            return new Histogram(Mode.WIDTH.label(), total, min, max, List.of(new Bucket(min, max, total)));
+        }
+        List<Bucket> buckets = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            double low = min + (max - min) * i / counts.length;
+            double high = i == counts.length - 1 ? max : min + (max - min) * (i + 1) / counts.length;
+            buckets.add(new Bucket(low, high, counts[i]));
+        }
+        return new Histogram(Mode.WIDTH.label(), total, min, max, List.copyOf(buckets));
+    }
+
+    /**
+     * Builds an equi-depth histogram from its buckets.
+     *
+     * @param buckets the buckets, ascending
+     * @return the histogram
+     */
+    public static Histogram depth(List<Bucket> buckets) {
+        if (buckets.isEmpty()) {
+            return empty(Mode.DEPTH);
+        }
+        long total = buckets.stream().mapToLong(Bucket::count).sum();
+        return new Histogram(Mode.DEPTH.label(), total, buckets.get(0).low(), buckets.get(buckets.size() - 1).high(),
+                List.copyOf(buckets));
+    }
+
+    /**
+     * Returns the histogram of no cars.
+     *
+     * @param mode equi-width or equi-depth
+     * @return a histogram without buckets
+     */
+    public static Histogram empty(Mode mode) {
+        return new Histogram(mode.label(), 0, null, null, List.of());
+    }
+
+    private static int bucket(double value, double min, double max, int buckets) {
+        if (min == max) {
+            return 0;
+        }
+        return Math.min(buckets - 1, (int) ((value - min) / (max - min) * buckets));
+    }
+}
@@ -0,0 +1,225 @@
+package com.pstag.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The index proposed for a QueryShape of a car search, following the
+ * equality, sort, range order of a composite B-tree index:
+ * - the columns compared with "=" or IS NULL come first;
+ * - then the sorted columns and the id, the tie-breaker CarRepository
+ * appends to every sort, so that the rows can be read in order;
+ * - then the columns compared with IN and the first BETWEEN column, after
+ * which the index can no longer keep the order.
+ *
+ * String columns are compared as LOWER(column) by CarRepository, so they are
+ * indexed as the same expression. trim_year is left out, it is the partition
+ * key and has a single value in each partition; so are the arrays and the
+ * full-text search, which a B-tree cannot serve.
+ *
+ * When the shape has no search and no array filter, the other filtered
+ * columns and the id, unless already keys, are added as INCLUDE columns, so
+ * that the count query can be answered from the index alone.
+ */
+public class IndexProposal {
+
+    private static final Set<String> STRING_COLUMNS = Set.of("make", "model", "trim_name", "trim_description",
+            "fuel_type", "transmission", "body_type");
+
+    private static final Set<String> ARRAY_COLUMNS = Set.of("color", "image_url");
+
+    private static final String PARTITION_KEY = "trim_year";
+
+    private static final int MAX_NAME_LENGTH = 55;
+
+    private final String name;
+
+    private final List<String> columns;
+
+    private final List<String> include;
+
+    private IndexProposal(String name, List<String> columns, List<String> include) {
+        this.name = name;
+        this.columns = columns;
+        this.include = include;
+    }
+
+    /**
+     * Returns the index proposed for a shape.
+     *
+     * @param shape a shape built by QueryShape.of
+     * @return the proposal, or empty when no column of the shape can be indexed
+     */
+    public static Optional<IndexProposal> of(String shape) {
+        if (shape == null || shape.equals(QueryShape.NONE) || shape.equals(QueryShape.OTHER)) {
+            return Optional.empty();
+        }
+
+        List<String> equalities = new ArrayList<>();
+        List<String> sorts = new ArrayList<>();
+        List<String> ins = new ArrayList<>();
+        List<String> ranges = new ArrayList<>();
+        List<String> filtered = new ArrayList<>();
+        boolean coverable = true;
+        for (String part : shape.split("\\|")) {
+            if (part.equals("search")) {
+                coverable = false;
+            } else if (part.startsWith("sort=")) {
+                for (String column : part.substring("sort=".length()).split(",")) {
+                    if (!ARRAY_COLUMNS.contains(column) && !column.equals(PARTITION_KEY)) {
+                        sorts.add(column);
+                    }
+                }
+            } else {
+                for (String filter : part.split(",")) {
+                    String[] columnAndKind = filter.split("=", 2);
+                    String column = columnAndKind[0];
+                    String kind = columnAndKind.length == 2 ? columnAndKind[1] : "eq";
+                    if (ARRAY_COLUMNS.contains(column)) {
+                        coverable = false;
+                        continue;
+                    }
+                    filtered.add(column);
+                    if (column.equals(PARTITION_KEY)) {
+                        continue;
+                    }
+                    switch (kind) {
+                        case "eq" -> equalities.add(key(column));
+                        case "null" -> equalities.add(column);
+                        case "in" -> ins.add(key(column));
+                        default -> ranges.add(column);
+                    }
+                }
+            }
+        }
+
+        Set<String> keys = new LinkedHashSet<>(equalities);
+        keys.addAll(sorts);
+        if (!sorts.isEmpty()) {
+            keys.add("id");
+        }
+        keys.addAll(ins);
+        if (!ranges.isEmpty()) {
+            keys.add(ranges.get(0));
+        }
+        if (keys.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Set<String> include = new LinkedHashSet<>();
+        if (coverable) {
+            include.add("id");
+            include.addAll(filtered);
+            for (String key : keys) {
+                include.add(columnOf(key));
+            }
+            include.removeAll(keys);
+        }
+
+        List<String> columns = List.copyOf(keys);
+        return Optional.of(new IndexProposal(name(columns), columns, List.copyOf(include)));
+    }
+
+    /**
+     * Returns the name of the index, idx_cars_ followed by its columns,
+     * shortened with a hash when it would be too long for the names of the
+     * indexes of the partitions.
+     *
+     * @return the name of the index on "cars"
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the key columns and expressions of the index, in order
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the INCLUDE columns of the index, possibly empty
+     */
+    public List<String> getInclude() {
+        return include;
+    }
+
+    /**
+     * @return the key and INCLUDE clauses of the index, for example
+     *         "(lower(make), velocity, id) INCLUDE (make)"
+     */
+    public String getDefinition() {
+        String definition = "(" + String.join(", ", columns) + ")";
+        return include.isEmpty() ? definition : definition + " INCLUDE (" + String.join(", ", include) + ")";
+    }
+
+    /**
+     * Returns the statements creating the index without locking writes.
+     * CREATE INDEX CONCURRENTLY is not supported on a partitioned table, so
+     * the index is created invalid on "cars" only, built concurrently on each
+     * partition and attached; it becomes valid once every partition is
+     * attached. Each statement must run on its own, outside of a transaction.
+     *
+     * @param partitions the names of the partitions of "cars"
+     * @return the statements, in order
+     */
+    public List<String> getStatements(List<String> partitions) {
+        List<String> statements = new ArrayList<>();
+        statements.add(String.format("CREATE INDEX IF NOT EXISTS %s ON ONLY cars %s", name, getDefinition()));
+        for (String partition : partitions) {
+            String partitionIndex = name + "_" + partition.substring(partition.lastIndexOf('_') + 1);
+            statements.add(String.format("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s %s", partitionIndex,
+                    partition, getDefinition()));
+            statements.add(String.format("ALTER INDEX %s ATTACH PARTITION %s", name, partitionIndex));
+        }
+        return statements;
+    }
+
+    /**
+     * Returns whether an index with the given key columns serves the same
+     * searches, that is when they start with the columns of this proposal.
+     *
+     * @param existingColumns the key columns of an index as printed by
+     *                        pg_get_indexdef, such as "lower((make)::text)"
+     * @return true when the proposal is redundant with that index
+     */
+    public boolean isCoveredBy(List<String> existingColumns) {
+        if (existingColumns.size() < columns.size()) {
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (!normalize(columns.get(i)).equals(normalize(existingColumns.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String key(String column) {
+        return STRING_COLUMNS.contains(column) ? "lower(" + column + ")" : column;
+    }
+
+    private static String columnOf(String key) {
+        return key.startsWith("lower(") ? key.substring("lower(".length(), key.length() - 1) : key;
+    }
+
+    private static String normalize(String column) {
+        return column.toLowerCase().replaceAll("::[a-z ]+", "").replaceAll("[()\\s]", "");
+    }
+
+    private static String name(List<String> columns) {
+        String name = "idx_cars_" + String.join("_", columns).replaceAll("[^a-z0-9_]+", "_").replaceAll("_+", "_");
+        if (name.endsWith("_")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        if (name.length() <= MAX_NAME_LENGTH) {
+            return name;
+        }
+        String hash = Integer.toHexString(String.join(",", columns).hashCode());
+        return name.substring(0, MAX_NAME_LENGTH - hash.length() - 1) + "_" + hash;
+    }
+}
@@ -0,0 +1,19 @@
+package com.pstag.utils;
+
+/**
+ * Thrown when an outbound HTTP call answers with a status code that should be
+ * retried, such as 429 or 5xx.
+ */
+public class OutboundHttpException extends RuntimeException {
+
+    private final int statusCode;
+
+    public OutboundHttpException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,113 @@
+package com.pstag.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pstag.entities.CarEntity;
+
+/**
+ * Packs cars into AI enrichment requests so that each request gets as close to
+ * the token budget as is safe.
+ *
+ * The input cost of a car is the estimate of its toString() line in the
+ * prompt. The output cost is the estimate of its JSON answer: the skeleton,
+ * one color name per expected color and one exterior color object whose Google
+ * search keyword repeats the car description.
+ */
+public class PromptBatchPacker {
+
+    // Approximate size of the MyAiService.getCarInformation template
+    static final int PROMPT_OVERHEAD_TOKENS = 450;
+
+    // {"id": 12345, "color": [], "velocity": 250, "exteriorColors": []},
+    static final int ANSWER_SKELETON_TOKENS = 25;
+
+    // "White", plus {"name": "White", "googleImageSearchKeyword": ""},
+    static final int COLOR_OVERHEAD_TOKENS = 18;
+
+    private final int maxInputTokens;
+
+    private final int maxOutputTokens;
+
+    private final int maxCarsPerCall;
+
+    private final int expectedColors;
+
+    /**
+     * @param maxInputTokens  the prompt budget, including the template
+     * @param maxOutputTokens the completion budget, already reduced by a safety
+     *                        margin
+     * @param maxCarsPerCall  the hard cap of cars in one request
+     * @param expectedColors  the number of colors the model is expected to list
+     *                        per car
+     */
+    public PromptBatchPacker(int maxInputTokens, int maxOutputTokens, int maxCarsPerCall, int expectedColors) {
+        if (maxCarsPerCall < 1) {
+            throw new IllegalArgumentException("Max cars per call must be positive: " + maxCarsPerCall);
+        }
+        this.maxInputTokens = maxInputTokens;
+        this.maxOutputTokens = maxOutputTokens;
+        this.maxCarsPerCall = maxCarsPerCall;
+        this.expectedColors = expectedColors;
+    }
+
+    /**
+     * Splits the cars into consecutive batches that fit the token budgets. A car
+     * that exceeds the budget on its own still gets a batch of its own.
+     *
+     * @param cars the cars to pack, in the order they should be sent
+     * @return the list of batches
+     */
+    public List<List<CarEntity>> pack(List<CarEntity> cars) {
+        List<List<CarEntity>> batches = new ArrayList<>();
+        List<CarEntity> current = new ArrayList<>();
+        int inputTokens = PROMPT_OVERHEAD_TOKENS;
+        int outputTokens = 0;
+
+        for (CarEntity car : cars) {
+            int carInput = estimateInputTokens(car);
+            int carOutput = estimateOutputTokens(car);
+            boolean fits = inputTokens + carInput <= maxInputTokens
+                    && outputTokens + carOutput <= maxOutputTokens
+                    && current.size() < maxCarsPerCall;
+
+            if (!fits && !current.isEmpty()) {
+                batches.add(current);
+                current = new ArrayList<>();
+                inputTokens = PROMPT_OVERHEAD_TOKENS;
+                outputTokens = 0;
+            }
+
+            current.add(car);
+            inputTokens += carInput;
+            outputTokens += carOutput;
+        }
+
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    /**
+     * Estimates the prompt tokens of one car line.
+     *
+     * @param car the car to estimate
+     * @return the estimated number of tokens
+     */
+    public int estimateInputTokens(CarEntity car) {
+        return TokenEstimator.estimate(car.toString()) + 1;
+    }
+
+    /**
+     * Estimates the completion tokens of the JSON answer for one car.
+     *
+     * @param car the car to estimate
+     * @return the estimated number of tokens
+     */
+    public int estimateOutputTokens(CarEntity car) {
+        int keywordTokens = TokenEstimator.estimate(car.trimYear() + " " + car.make() + " " + car.model() + " "
+                + car.trimName() + " " + car.trimDescription() + " White");
+        return ANSWER_SKELETON_TOKENS + expectedColors * (COLOR_OVERHEAD_TOKENS + keywordTokens);
+    }
+}
@@ -0,0 +1,83 @@
+package com.pstag.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlClient;
+
+/**
+ * Runs a group of independent read statements, such as a list and its count
+ * or the ui-params facets.
+ *
+ * When pipelining is on, the statements share one connection: the reactive
+ * Postgres client writes them back to back and reads the answers in order, so
+ * the whole group costs one connection and about one round trip. When it is
+ * off, every statement checks out its own pooled connection, which is how the
+ * fan-outs behaved before.
+ *
+ * Metrics, tagged by operation and mode (pipelined or pooled):
+ * - db.fanout.duration: time until every statement of the group answered.
+ * - db.fanout.connections: connections checked out by each group.
+ * - db.fanout.connections.in.use: connections currently held by fan-outs,
+ * which is their share of the pool occupancy.
+ */
+public class QueryFanOut {
+
+    private final boolean pipelining;
+
+    private final MeterRegistry registry;
+
+    private final AtomicInteger connectionsInUse = new AtomicInteger();
+
+    /**
+     * @param pipelining true to send the statements of a group on one connection
+     * @param registry   the registry of the fan-out metrics
+     */
+    public QueryFanOut(boolean pipelining, MeterRegistry registry) {
+        this.pipelining = pipelining;
+        this.registry = registry;
+
+        registry.gauge("db.fanout.connections.in.use", connectionsInUse);
+    }
+
+    /**
+     * Sends the statements of a group.
+     *
+     * @param client     the PgPool client used to interact with the database
+     * @param operation  the name of the group, used as a metric tag
+     * @param statements the number of statements sent by queries
+     * @param queries    sends the statements on the given client and combines
+     *                   their results
+     * @return a Uni containing the combined result
+     */
+    public <T> Uni<T> run(PgPool client, String operation, int statements, Function<SqlClient, Uni<T>> queries) {
+        String mode = pipelining ? "pipelined" : "pooled";
+        int connections = pipelining ? 1 : statements;
+        Timer duration = registry.timer("db.fanout.duration", "operation", operation, "mode", mode);
+
+        return Uni.createFrom().deferred(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            connectionsInUse.addAndGet(connections);
+            registry.summary("db.fanout.connections", "operation", operation, "mode", mode).record(connections);
+
+            Uni<T> result = pipelining ? client.withConnection(queries::apply) : queries.apply(client);
+            return result.onTermination().invoke(() -> {
+                connectionsInUse.addAndGet(-connections);
+                sample.stop(duration);
+            });
+        });
+    }
+
+    /**
+     * Returns the number of connections currently held by fan-outs.
+     *
+     * @return the connections in use
+     */
+    public int getConnectionsInUse() {
+        return connectionsInUse.get();
+    }
+}
@@ -0,0 +1,111 @@
+package com.pstag.utils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.pstag.interfaces.QueryListener;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Times the statements of the repositories, which are static and have no
+ * injected MeterRegistry, on the global registry that Quarkus binds to the
+ * Prometheus endpoint, and hands every finished statement to the registered
+ * QueryListeners, the query log and the index advisor.
+ *
+ * Metrics:
+ * - db.query.duration{query, shape, outcome=success|error}: execution time of
+ * each statement, from the moment it is sent until its rows are read. query is
+ * the name of the statement, such as "cars.list", and shape its QueryShape or
+ * "none".
+ * - db.query.rows{query}: rows written by the update statements, so that
+ * rate(db.query.rows) over rate(db.query.duration_sum) of the same query is
+ * their rows per second, such as cars.update against cars.update-batch.
+ *
+ * Each statement also runs in a span named after it, with its shape as the
+ * db.query.shape attribute.
+ */
+public class QueryMetrics {
+
+    private static final AttributeKey<String> SHAPE = AttributeKey.stringKey("db.query.shape");
+
+    private static final List<QueryListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private QueryMetrics() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Registers a listener notified of every finished statement.
+     *
+     * @param queryListener the listener
+     */
+    public static void addListener(QueryListener queryListener) {
+        LISTENERS.add(queryListener);
+    }
+
+    /**
+     * Removes a listener registered with addListener.
+     *
+     * @param queryListener the listener
+     */
+    public static void removeListener(QueryListener queryListener) {
+        LISTENERS.remove(queryListener);
+    }
+
+    /**
+     * Counts the rows written by a statement.
+     *
+     * @param query the name of the statement
+     * @param rows  the number of rows it wrote
+     */
+    public static void countRows(String query, int rows) {
+        Metrics.counter("db.query.rows", "query", query).increment(rows);
+    }
+
+    /**
+     * Times a statement without a filter shape.
+     *
+     * @param query     the name of the statement
+     * @param statement the statement, which is sent when the Uni is subscribed
+     * @return the timed statement
+     */
+    public static <T> Uni<T> time(String query, Uni<T> statement) {
+        return time(query, QueryShape.NONE, null, List.of(), statement);
+    }
+
+    /**
+     * Times a statement.
+     *
+     * @param query      the name of the statement
+     * @param shape      the QueryShape of the statement
+     * @param sql        the SQL with its placeholders, kept for the query log
+     * @param parameters the values bound to the placeholders
+     * @param statement  the statement, which is sent when the Uni is subscribed
+     * @return the timed statement
+     */
+    public static <T> Uni<T> time(String query, String shape, String sql, List<Object> parameters,
+            Uni<T> statement) {
+        return Tracing.trace(query, Attributes.of(SHAPE, shape), () -> {
+            long start = System.nanoTime();
+            return statement.onItemOrFailure().invoke((item, failure) -> {
+                long nanos = System.nanoTime() - start;
+                Timer.builder("db.query.duration")
+                        .tag("query", query)
+                        .tag("shape", shape)
+                        .tag("outcome", failure == null ? "success" : "error")
+                        .register(Metrics.globalRegistry)
+                        .record(nanos, TimeUnit.NANOSECONDS);
+
+                for (QueryListener current : LISTENERS) {
+                    current.onQuery(query, shape, sql, parameters, nanos, failure != null);
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package com.pstag.utils;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class QueryParameters {
+
+    private QueryParameters() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Collects the query parameters written as name[key]=value, such as
+     * filter[make]=Toyota or sort[velocity]=desc, into a map of key to value.
+     * The map iterates in the order of the query string, which is the priority
+     * of sort[...] parameters. Only the first value of a repeated parameter is
+     * kept.
+     *
+     * @param rawQuery the query string of the request, still URL-encoded, or
+     *                 null
+     * @param name     the name before the brackets, e.g. "filter"
+     * @return a map of the keys between the brackets to their values
+     */
+    public static Map<String, String> bracketed(String rawQuery, String name) {
+        String prefix = name + "[";
+        Map<String, String> values = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return values;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String key = URLDecoder.decode(equals < 0 ? parameter : parameter.substring(0, equals),
+                    StandardCharsets.UTF_8);
+            if (key.startsWith(prefix) && key.endsWith("]")) {
+                String value = equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1),
+                        StandardCharsets.UTF_8);
+                values.putIfAbsent(key.substring(prefix.length(), key.length() - 1), value);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,118 @@
+package com.pstag.utils;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.pstag.entities.CarEntity;
+
+/**
+ * Describes a car search by its shape rather than its values, for use as a
+ * metric tag: which columns are filtered and how, whether there is a full-text
+ * search and which columns are sorted, in their priority order. For example
+ * "make=eq,trim_year=between|search|sort=velocity".
+ *
+ * Unknown columns are left out, the same way CarRepository ignores them, and
+ * the number of distinct shapes is capped by metrics.max-query-shapes; later
+ * shapes are reported as "other" so that the cardinality stays bounded.
+ */
+public class QueryShape {
+
+    public static final String NONE = "none";
+
+    public static final String OTHER = "other";
+
+    private static final Set<String> SHAPES = ConcurrentHashMap.newKeySet();
+
+    private static volatile int maxShapes = -1;
+
+    private QueryShape() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Returns the shape of a car search.
+     *
+     * @param filters the filters of the search, by field name
+     * @param search  the full-text search string, or null
+     * @param sorts   the sort directions, by field name
+     * @return the shape, "none" for an unfiltered and unsorted search, or
+     *         "other" once the cap is reached
+     */
+    public static String of(Map<String, String> filters, String search, Map<String, String> sorts) {
+        StringJoiner shape = new StringJoiner("|");
+
+        Map<String, String> filterKinds = new TreeMap<>();
+        if (filters != null) {
+            filters.forEach((key, value) -> {
+                String column = columnName(key);
+                if (CarEntity.getFields().contains(column)) {
+                    filterKinds.put(column, filterKind(value));
+                }
+            });
+        }
+        if (!filterKinds.isEmpty()) {
+            StringJoiner joiner = new StringJoiner(",");
+            filterKinds.forEach((column, kind) -> joiner.add(column + "=" + kind));
+            shape.add(joiner.toString());
+        }
+
+        if (search != null && !search.isEmpty()) {
+            shape.add("search");
+        }
+
+        Set<String> sortColumns = new LinkedHashSet<>();
+        if (sorts != null) {
+            sorts.keySet().stream().map(QueryShape::columnName).filter(CarEntity.getFields()::contains)
+                    .forEach(sortColumns::add);
+        }
+        if (!sortColumns.isEmpty()) {
+            shape.add("sort=" + String.join(",", sortColumns));
+        }
+
+        return bound(shape.length() == 0 ? NONE : shape.toString());
+    }
+
+    /**
+     * Converts a camelCase field name to its snake_case column name.
+     *
+     * @param key the field name
+     * @return the column name
+     */
+    public static String columnName(String key) {
+        return key.replaceAll("([a-z])([A-Z]+)", "$1_$2").toLowerCase();
+    }
+
+    private static String filterKind(String value) {
+        if (value == null) {
+            return "null";
+        }
+        String lower = value.toLowerCase();
+        if (lower.contains("between(")) {
+            return "between";
+        }
+        if (lower.contains("in(")) {
+            return "in";
+        }
+        return "eq";
+    }
+
+    private static String bound(String shape) {
+        if (SHAPES.contains(shape)) {
+            return shape;
+        }
+        if (maxShapes < 0) {
+            maxShapes = ConfigProvider.getConfig().getOptionalValue("metrics.max-query-shapes", Integer.class)
+                    .orElse(200);
+        }
+        if (SHAPES.size() < maxShapes && SHAPES.add(shape)) {
+            return shape;
+        }
+        return SHAPES.contains(shape) ? shape : OTHER;
+    }
+}
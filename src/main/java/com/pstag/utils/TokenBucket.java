@@ -0,0 +1,52 @@
+package com.pstag.utils;
+
+/**
+ * A token bucket that refills continuously at a fixed rate up to its capacity.
+ * Each outbound request takes one token, which paces requests to the rate
+ * while still allowing bursts of up to capacity requests.
+ */
+public class TokenBucket {
+
+    private final double ratePerNano;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param ratePerSecond the number of tokens added per second
+     * @param capacity      the maximum number of tokens, i.e. the burst size
+     */
+    public TokenBucket(double ratePerSecond, int capacity) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.ratePerNano = ratePerSecond / 1_000_000_000.0;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes one token if available.
+     *
+     * @return 0 if a token was taken, otherwise the number of nanoseconds until
+     *         the next token is available
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / ratePerNano);
+    }
+}
@@ -0,0 +1,24 @@
+package com.pstag.utils;
+
+public class TokenEstimator {
+
+    // GPT tokenizers average roughly four characters of English text per token
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Estimates the number of tokens the given text costs in a prompt.
+     *
+     * @param text the text to estimate
+     * @return the estimated number of tokens, 0 for null or empty text
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,111 @@
+package com.pstag.utils;
+
+import java.util.function.Supplier;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Opens spans around the stages of a request, for the services and for the
+ * repositories, which are static and have no injected Tracer.
+ *
+ * A span is a child of the context that is current when its stage starts.
+ * The stage is assembled with its span current, so TracingCallbackDecorator
+ * restores that span in every Mutiny callback of the stage, whichever thread
+ * or event loop runs it later, and the spans opened by those callbacks become
+ * its children.
+ *
+ * Until TraceExporter registers the Tracer of the application, spans are
+ * no-ops.
+ */
+public class Tracing {
+
+    private static volatile Tracer tracer = OpenTelemetry.noop().getTracer("cars-website");
+
+    private Tracing() {
+        // Private constructor to hide the implicit public one
+    }
+
+    /**
+     * Registers the tracer the spans are created with.
+     *
+     * @param applicationTracer the tracer, or null to go back to no-op spans
+     */
+    public static void setTracer(Tracer applicationTracer) {
+        tracer = applicationTracer != null ? applicationTracer : OpenTelemetry.noop().getTracer("cars-website");
+    }
+
+    /**
+     * Runs an asynchronous stage in a span.
+     *
+     * @param name  the name of the span
+     * @param stage assembles the stage, called when the Uni is subscribed
+     * @return a Uni containing the result of the stage
+     */
+    public static <T> Uni<T> trace(String name, Supplier<Uni<T>> stage) {
+        return trace(name, Attributes.empty(), stage);
+    }
+
+    /**
+     * Runs an asynchronous stage in a span.
+     *
+     * @param name       the name of the span
+     * @param attributes the attributes of the span
+     * @param stage      assembles the stage, called when the Uni is subscribed
+     * @return a Uni containing the result of the stage
+     */
+    public static <T> Uni<T> trace(String name, Attributes attributes, Supplier<Uni<T>> stage) {
+        return Uni.createFrom().deferred(() -> {
+            Span span = start(name, attributes);
+            Uni<T> uni;
+            try (Scope ignored = span.makeCurrent()) {
+                uni = stage.get();
+            } catch (RuntimeException e) {
+                end(span, e);
+                throw e;
+            }
+            return uni.onItemOrFailure().invoke((item, failure) -> end(span, failure))
+                    .onCancellation().invoke(span::end);
+        });
+    }
+
+    /**
+     * Runs a blocking stage in a span, on the calling thread.
+     *
+     * @param name  the name of the span
+     * @param stage the stage
+     * @return the result of the stage
+     */
+    public static <T> T traceBlocking(String name, Supplier<T> stage) {
+        Span span = start(name, Attributes.empty());
+        try (Scope ignored = span.makeCurrent()) {
+            T result = stage.get();
+            end(span, null);
+            return result;
+        } catch (RuntimeException e) {
+            end(span, e);
+            throw e;
+        }
+    }
+
+    private static Span start(String name, Attributes attributes) {
+        return tracer.spanBuilder(name)
+                .setParent(Context.current())
+                .setAllAttributes(attributes)
+                .startSpan();
+    }
+
+    private static void end(Span span, Throwable failure) {
+        if (failure != null) {
+            span.recordException(failure);
+            span.setStatus(StatusCode.ERROR, failure.getMessage());
+        }
+        span.end();
+    }
+}
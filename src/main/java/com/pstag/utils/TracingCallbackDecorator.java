@@ -0,0 +1,160 @@
+package com.pstag.utils;
+
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.smallrye.mutiny.infrastructure.CallbackDecorator;
+
+/**
+ * Carries the trace context across the asynchronous boundaries of Mutiny.
+ *
+ * Mutiny passes every callback given to an operator, such as
+ * onItem().transformToUni(...), through the registered decorators when the
+ * pipeline is assembled. This decorator captures the context current at that
+ * moment and makes it current again while the callback runs, on the event
+ * loop that completes a query, on a worker thread or in a timer. Callbacks
+ * assembled outside of any trace, and callbacks already running in the
+ * context they captured, are left as they are.
+ *
+ * Registered through META-INF/services.
+ */
+public class TracingCallbackDecorator implements CallbackDecorator {
+
+    @Override
+    public <T> Supplier<T> decorate(Supplier<T> supplier) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return supplier;
+        }
+        return () -> {
+            if (Context.current() == context) {
+                return supplier.get();
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                return supplier.get();
+            }
+        };
+    }
+
+    @Override
+    public <T> Consumer<T> decorate(Consumer<T> consumer) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return consumer;
+        }
+        return item -> {
+            if (Context.current() == context) {
+                consumer.accept(item);
+                return;
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                consumer.accept(item);
+            }
+        };
+    }
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return runnable;
+        }
+        return () -> {
+            if (Context.current() == context) {
+                runnable.run();
+                return;
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                runnable.run();
+            }
+        };
+    }
+
+    @Override
+    public <V> Callable<V> decorate(Callable<V> callable) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return callable;
+        }
+        return () -> {
+            if (Context.current() == context) {
+                return callable.call();
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                return callable.call();
+            }
+        };
+    }
+
+    @Override
+    public <T1, T2> BiConsumer<T1, T2> decorate(BiConsumer<T1, T2> consumer) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return consumer;
+        }
+        return (first, second) -> {
+            if (Context.current() == context) {
+                consumer.accept(first, second);
+                return;
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                consumer.accept(first, second);
+            }
+        };
+    }
+
+    @Override
+    public <I, O> Function<I, O> decorate(Function<I, O> function) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return function;
+        }
+        return item -> {
+            if (Context.current() == context) {
+                return function.apply(item);
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                return function.apply(item);
+            }
+        };
+    }
+
+    @Override
+    public <I1, I2, O> BiFunction<I1, I2, O> decorate(BiFunction<I1, I2, O> function) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return function;
+        }
+        return (first, second) -> {
+            if (Context.current() == context) {
+                return function.apply(first, second);
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                return function.apply(first, second);
+            }
+        };
+    }
+
+    @Override
+    public <T> Predicate<T> decorate(Predicate<T> predicate) {
+        Context context = Context.current();
+        if (context == Context.root()) {
+            return predicate;
+        }
+        return item -> {
+            if (Context.current() == context) {
+                return predicate.test(item);
+            }
+            try (Scope ignored = context.makeCurrent()) {
+                return predicate.test(item);
+            }
+        };
+    }
+}
@@ -0,0 +1,25 @@
+-- Progress of the AI enrichment job, checkpointed after every window so an interrupted run can resume
+CREATE TABLE enrichment_jobs (
+    id SERIAL PRIMARY KEY,
+    status VARCHAR(32) NOT NULL,
+    last_id BIGINT NOT NULL DEFAULT 0, -- keyset cursor: highest cars.id already handed to the AI service
+    processed INT NOT NULL DEFAULT 0,
+    updated INT NOT NULL DEFAULT 0,
+    failed INT NOT NULL DEFAULT 0,
+    error TEXT,
+    stop_requested BOOLEAN NOT NULL DEFAULT FALSE, -- set by a stop on any node, read by the node running the job
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    finished_at TIMESTAMP
+);
+
+CREATE TRIGGER update_timestamp
+BEFORE UPDATE ON enrichment_jobs
+FOR EACH ROW
+EXECUTE FUNCTION update_updated_at_column();
+
+-- At most one running job across the nodes: a start that races another one fails to insert or resume
+CREATE UNIQUE INDEX idx_enrichment_jobs_running ON enrichment_jobs ((TRUE)) WHERE status = 'RUNNING';
+
+-- Keyset scan over the rows that still miss velocity or color
+CREATE INDEX idx_missing_data ON cars (id) WHERE velocity = 0 OR velocity IS NULL OR color IS NULL;
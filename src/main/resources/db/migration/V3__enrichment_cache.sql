@@ -0,0 +1,14 @@
+-- Memoized AI enrichment answers keyed by a SHA-256 of the normalized car description,
+-- so retried runs and identical trims across years do not pay for the same prompt again
+CREATE TABLE enrichment_cache (
+    input_hash CHAR(64) PRIMARY KEY,
+    color VARCHAR(32)[] NOT NULL,
+    velocity DOUBLE PRECISION NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+CREATE TRIGGER update_timestamp
+BEFORE UPDATE ON enrichment_cache
+FOR EACH ROW
+EXECUTE FUNCTION update_updated_at_column();
@@ -0,0 +1,17 @@
+-- Keep the search text current on every write instead of filling it once: fulltext_search becomes a stored
+-- generated column, computed by Postgres on INSERT and UPDATE of any partition.
+-- trim_year is cast explicitly because text || integer is only STABLE, and a generation expression must be IMMUTABLE.
+-- Adding the column on "cars" rewrites every existing partition and creates it on the partitions added later.
+ALTER TABLE cars DROP COLUMN fulltext_search; -- also drops idx_fulltext_search
+
+ALTER TABLE cars ADD COLUMN fulltext_search TEXT GENERATED ALWAYS AS (
+    make || ' ' || model || ' ' || trim_year::TEXT || ' ' || trim_name || ' ' || trim_description || ' '
+        || fuel_type || ' ' || transmission || ' ' || body_type
+) STORED;
+
+-- Searches match fulltext_search with ILIKE '%term%', which a B-tree or a tsvector cannot serve: a trigram index
+-- on the column itself can, and it is the only search index every write maintains.
+-- pg_trgm is a trusted extension, which the owner of the database may create.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX idx_fulltext_search_trgm ON cars USING gin (fulltext_search gin_trgm_ops);
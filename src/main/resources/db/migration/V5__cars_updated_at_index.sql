@@ -0,0 +1,2 @@
+-- The in-memory catalog polls the cars updated since its last load
+CREATE INDEX idx_updated_at ON cars (updated_at);
@@ -0,0 +1,18 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class AdminControllerTest {
+
+    @Test
+    void testIndexCreationIsDisabledByDefault() {
+        given().when().post("/api/admin/indexes/idx_cars_lower_make_id").then().statusCode(403)
+                .body("message", equalTo("Index creation is disabled"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.virtual.threads.VirtualThreads;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import com.pstag.services.BlockingExecutor;
+import com.pstag.services.BlockingExecutor.Mode;
+
+/**
+ * Runs the same blocking workload on the worker pool and on virtual threads.
+ * The worker pool is shrunk to 16 threads so that the difference shows with a
+ * small number of tasks. Virtual threads need JDK 21, so the comparison only
+ * runs there; older runtimes would fall back to the worker pool.
+ */
+@QuarkusTest
+@TestProfile(BlockingExecutorLoadTest.SmallPoolProfile.class)
+class BlockingExecutorLoadTest {
+
+    public static class SmallPoolProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("quarkus.thread-pool.max-threads", "16");
+        }
+    }
+
+    private static final int TASKS = 400;
+
+    private static final long TASK_MILLIS = 20;
+
+    @Inject
+    @VirtualThreads
+    ExecutorService virtualThreads;
+
+    private record Report(Mode mode, int completed, double tasksPerSecond, double p50Millis, double p99Millis) {
+    }
+
+    private Report run(Mode mode) {
+        BlockingExecutor executor = new BlockingExecutor(mode, virtualThreads, TASKS, 60_000,
+                new SimpleMeterRegistry());
+        long[] latencies = new long[TASKS];
+        List<Uni<Integer>> tasks = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            int index = i;
+            long submitted = System.nanoTime();
+            tasks.add(executor.submit("load", () -> {
+                sleep(TASK_MILLIS);
+                latencies[index] = System.nanoTime() - submitted;
+                return index;
+            }));
+        }
+        List<?> results = Uni.combine().all().unis(tasks).with(list -> list).await().indefinitely();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Arrays.sort(latencies);
+        Report report = new Report(mode, results.size(), TASKS / seconds, latencies[TASKS / 2] / 1_000_000.0,
+                latencies[(int) (TASKS * 0.99) - 1] / 1_000_000.0);
+        Log.infof("%s: %d tasks, %.0f tasks/s, p50 %.1f ms, p99 %.1f ms", report.mode(), report.completed(),
+                report.tasksPerSecond(), report.p50Millis(), report.p99Millis());
+        return report;
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void testVirtualThreadsVersusWorkerPool() {
+        Report worker = run(Mode.WORKER);
+        Report virtual = run(Mode.VIRTUAL);
+
+        assertEquals(TASKS, worker.completed());
+        assertEquals(TASKS, virtual.completed());
+        assertTrue(virtual.tasksPerSecond() > worker.tasksPerSecond());
+        assertTrue(virtual.p99Millis() < worker.p99Millis());
+    }
+
+    @Test
+    void testQueuedTasksDoNotHoldThreads() {
+        BlockingExecutor executor = new BlockingExecutor(Mode.WORKER, virtualThreads, 1, 60_000,
+                new SimpleMeterRegistry());
+        // More tasks than worker threads wait for the single permit of their name
+        List<CompletableFuture<Integer>> queued = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            queued.add(executor.submit("one-at-a-time", () -> {
+                sleep(10);
+                return 1;
+            }).subscribeAsCompletionStage());
+        }
+
+        long start = System.nanoTime();
+        executor.submit("other", () -> 1).await().indefinitely();
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        Log.infof("A task of another name ran after %.1f ms behind 32 queued tasks", millis);
+
+        assertTrue(millis < 100, "the queued tasks held the worker threads");
+        assertEquals(32, queued.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    @Test
+    void testRejectsTasksOverTheLimit() {
+        BlockingExecutor executor = new BlockingExecutor(Mode.WORKER, virtualThreads, 2, 50,
+                new SimpleMeterRegistry());
+        List<Uni<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(executor.submit("limited", () -> {
+                sleep(300);
+                return "done";
+            }).onFailure(RejectedExecutionException.class).recoverWithItem("rejected"));
+        }
+
+        List<?> results = Uni.combine().all().unis(tasks).with(list -> list).await().indefinitely();
+
+        assertEquals(2, results.stream().filter("done"::equals).count());
+        assertEquals(2, results.stream().filter("rejected"::equals).count());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -37,6 +37,32 @@ class CarControllerTest {
                 .body("data[0].trimYear", is(2020));
     }
 
+    @Test
+    void testGetCarsWithFractionalYearRange() {
+        // The year slider of the UI may send fractional bounds, rounded inwards
+        given()
+                .queryParam("filter[trimYear]", "between(2019.5,2020.9)")
+                .queryParam("sort[trimYear]", "asc")
+                .when().get("/api/cars")
+                .then()
+                .statusCode(200)
+                .body("data[0].trimYear", is(2020));
+    }
+
+    @Test
+    void testGetCarsWithMalformedRangeIsBadRequest() {
+        given()
+                .queryParam("filter[trimYear]", "between(abc,2020)")
+                .when().get("/api/cars")
+                .then()
+                .statusCode(400);
+        given()
+                .queryParam("filter[make]", "between(a,b)")
+                .when().get("/api/cars")
+                .then()
+                .statusCode(400);
+    }
+
     @Test
     void testGetCarsWithSortsEndpoint() {
         given()
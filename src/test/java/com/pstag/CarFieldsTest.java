@@ -0,0 +1,114 @@
+package com.pstag;
+
+import io.quarkus.logging.Log;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.interfaces.QueryListener;
+import com.pstag.utils.CarFields;
+import com.pstag.utils.QueryMetrics;
+
+@QuarkusTest
+class CarFieldsTest {
+
+    private static final String GRID = "make,model,trimYear,velocity";
+
+    @Inject
+    PgPool client;
+
+    @Test
+    void testParse() {
+        assertNull(CarFields.parse(null));
+        assertNull(CarFields.parse(" "));
+        assertEquals(List.of("id", "make", "trim_year", "image_url"),
+                List.copyOf(CarFields.parse("imageUrl, trimYear,make,unknown")));
+        assertEquals(Set.of("id"), CarFields.parse("id"));
+    }
+
+    @Test
+    void testListReturnsOnlyRequestedFields() {
+        given()
+                .queryParam("fields", GRID)
+                .queryParam("filter[make]", "Toyota")
+                .when().get("/api/cars")
+                .then()
+                .statusCode(200)
+                .body("data.size()", is(10))
+                .body("data[0].keySet().toList()", is(List.of("id", "make", "model", "trimYear", "velocity")))
+                .body("data[0].make", is("Toyota"));
+
+        given()
+                .queryParam("fields", "model,velocity")
+                .when().get("/api/cars/xml")
+                .then()
+                .statusCode(200)
+                .body(containsString("<car><id>"))
+                .body(containsString("<model>"))
+                .body(not(containsString("<make>")))
+                .body(not(containsString("<trimName>")));
+    }
+
+    @Test
+    void testXmlDoesNotReadImageUrls() {
+        // The export has no image URLs, so asking for them must not read them
+        List<String> statements = new CopyOnWriteArrayList<>();
+        QueryListener listener = (query, shape, sql, parameters, nanos, failed) -> {
+            if (query.equals("cars.list")) {
+                statements.add(sql);
+            }
+        };
+        QueryMetrics.addListener(listener);
+        try {
+            given()
+                    .queryParam("fields", "imageUrl")
+                    .queryParam("filter[make]", "Toyota")
+                    .when().get("/api/cars/xml")
+                    .then()
+                    .statusCode(200)
+                    .body(containsString("<car><id>"));
+        } finally {
+            QueryMetrics.removeListener(listener);
+        }
+
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).startsWith("SELECT id FROM"), statements.get(0));
+    }
+
+    @Test
+    void testFieldsReduceBytes() {
+        int limit = 100;
+        int fullJson = given().queryParam("limit", limit).when().get("/api/cars")
+                .then().statusCode(200).extract().asByteArray().length;
+        int gridJson = given().queryParam("limit", limit).queryParam("fields", GRID).when().get("/api/cars")
+                .then().statusCode(200).extract().asByteArray().length;
+        long fullRows = rowBytes(String.join(", ", CarFields.COLUMNS), limit);
+        long gridRows = rowBytes(String.join(", ", CarFields.parse(GRID)), limit);
+        Log.infof("Page of %d cars: %d bytes of rows from the database and %d bytes of JSON with every field, "
+                + "%d and %d with fields=%s", limit, fullRows, fullJson, gridRows, gridJson, GRID);
+
+        assertTrue(gridRows < fullRows);
+        assertTrue(gridJson < fullJson);
+    }
+
+    private long rowBytes(String columns, int limit) {
+        return client.preparedQuery("SELECT COALESCE(SUM(pg_column_size(page.*)), 0) AS bytes FROM (SELECT "
+                + columns + " FROM cars ORDER BY id LIMIT $1) page")
+                .execute(Tuple.of(limit)).await().indefinitely().iterator().next().getLong("bytes");
+    }
+}
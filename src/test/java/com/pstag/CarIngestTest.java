@@ -0,0 +1,122 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Year;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+class CarIngestTest {
+
+    private static final String CSV_HEADER = "make,model,trim_year,trim_name,trim_description,fuel_type,"
+            + "transmission,body_type,length,weight,velocity,color\n";
+
+    private static final String TOKEN = "test-ingest-token";
+
+    @Inject
+    PgPool client;
+
+    @AfterEach
+    void deleteIngestedCars() {
+        client.query("DELETE FROM cars WHERE make = 'Ingest Test'").execute().await().indefinitely();
+    }
+
+    @Test
+    void testCsvIsInsertedThenUpdated() {
+        int nextYear = Year.now().getValue() + 1;
+        String csv = CSV_HEADER
+                + "Ingest Test,Alpha," + nextYear + ",Base,\"4dr Sedan, \"\"quoted\"\"\",electric,1-speed automatic,"
+                + "Sedan,190.5,4100,220,\"Red,Blue\"\n"
+                + "Ingest Test,Beta,2013,Sport,\"2dr Coupe\n(2.0L 4cyl)\",gas,6-speed manual,Coupe,170,3000,,\n";
+
+        given().auth().oauth2(TOKEN).contentType("text/csv").body(csv)
+                .when().post("/api/cars/ingest")
+                .then().statusCode(200)
+                .body("data.read", equalTo(2))
+                .body("data.inserted", equalTo(2))
+                .body("data.updated", equalTo(0));
+
+        Row alpha = row("Alpha");
+        assertEquals("Ingest Test Alpha " + nextYear + " Base 4dr Sedan, \"quoted\" electric 1-speed automatic Sedan",
+                alpha.getString("fulltext_search"));
+        assertEquals("Red", alpha.getArrayOfStrings("color")[0]);
+
+        // The second upload changes the weight and keeps the stored velocity and colors
+        given().auth().oauth2(TOKEN).contentType("text/csv")
+                .body(CSV_HEADER + "Ingest Test,Alpha," + nextYear + ",Base,\"4dr Sedan, \"\"quoted\"\"\",electric,"
+                        + "1-speed automatic,Sedan,190.5,4200,,\n")
+                .when().post("/api/cars/ingest")
+                .then().statusCode(200)
+                .body("data.inserted", equalTo(0))
+                .body("data.updated", equalTo(1));
+
+        alpha = row("Alpha");
+        assertEquals(4200.0, alpha.getDouble("weight"));
+        assertEquals(220.0, alpha.getDouble("velocity"));
+        assertEquals(2, alpha.getArrayOfStrings("color").length);
+    }
+
+    @Test
+    void testNdjsonKeepsLastOccurrence() {
+        String ndjson = """
+                {"make":"Ingest Test","model":"Gamma","trimYear":2016,"trimName":"LX","trimDescription":"4dr SUV","fuelType":"gas","transmission":"automatic","bodyType":"SUV","length":180,"weight":3500,"imageUrl":["https://example.com/a.jpg"]}
+                {"make":"Ingest Test","model":"Gamma","trimYear":2016,"trimName":"LX","trimDescription":"4dr SUV","fuelType":"hybrid","transmission":"automatic","bodyType":"SUV","length":180,"weight":3600}
+                """;
+
+        given().auth().oauth2(TOKEN).contentType("application/x-ndjson").body(ndjson)
+                .when().post("/api/cars/ingest")
+                .then().statusCode(200)
+                .body("data.read", equalTo(2))
+                .body("data.inserted", equalTo(1));
+
+        assertEquals("hybrid", row("Gamma").getString("fuel_type"));
+    }
+
+    @Test
+    void testMalformedCarRejectsWholeUpload() {
+        String csv = CSV_HEADER
+                + "Ingest Test,Delta,2017,Base,2dr,gas,manual,Coupe,170,3000,,\n"
+                + "Ingest Test,Delta,2017,Base,4dr,gas,manual,Sedan,170,heavy,,\n";
+
+        given().auth().oauth2(TOKEN).contentType("text/csv").body(csv)
+                .when().post("/api/cars/ingest")
+                .then().statusCode(400)
+                .body("message", containsString("Line 3"));
+
+        assertEquals(0, client.query("SELECT 1 FROM cars WHERE make = 'Ingest Test'").execute()
+                .await().indefinitely().rowCount());
+    }
+
+    @Test
+    void testUploadWithoutTheTokenIsRejected() {
+        String csv = CSV_HEADER + "Ingest Test,Epsilon,2017,Base,2dr,gas,manual,Coupe,170,3000,,\n";
+
+        given().contentType("text/csv").body(csv)
+                .when().post("/api/cars/ingest")
+                .then().statusCode(401);
+        given().auth().oauth2("wrong").contentType("text/csv").body(csv)
+                .when().post("/api/cars/ingest")
+                .then().statusCode(401);
+
+        assertEquals(0, client.query("SELECT 1 FROM cars WHERE make = 'Ingest Test'").execute()
+                .await().indefinitely().rowCount());
+    }
+
+    private Row row(String model) {
+        return client.preparedQuery("SELECT * FROM cars WHERE make = 'Ingest Test' AND model = $1")
+                .execute(Tuple.of(model))
+                .await().indefinitely()
+                .iterator().next();
+    }
+}
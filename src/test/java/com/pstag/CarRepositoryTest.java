@@ -0,0 +1,140 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.Metrics;
+import io.quarkus.logging.Log;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.utils.SqlQueryBuilder;
+
+@QuarkusTest
+class CarRepositoryTest {
+
+    @Inject
+    PgPool client;
+
+    @Test
+    void testBatchUpdateThroughput() {
+        // Write back the current values so the data set stays unchanged
+        List<CarEntity> cars = CarRepository.findAll(client, Map.of("make", "Toyota"), null, Map.of("id", "asc"), 200, 0)
+                .await().indefinitely()
+                .getData().stream()
+                .filter(car -> car.color() != null)
+                .toList();
+
+        double batchRowsBefore = Metrics.counter("db.query.rows", "query", "cars.update-batch").count();
+        long start = System.nanoTime();
+        for (CarEntity car : cars) {
+            CarRepository.updateCar(client, car.id(), car.color(), car.velocity()).await().indefinitely();
+        }
+        double perRowSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        start = System.nanoTime();
+        List<Long> ids = CarRepository.updateCars(client, cars).await().indefinitely();
+        double batchSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Log.infof("Per-row update: %.0f rows/s, batch update: %.0f rows/s", cars.size() / perRowSeconds,
+                cars.size() / batchSeconds);
+
+        assertEquals(cars.size(), ids.size());
+        assertEquals(batchRowsBefore + cars.size(),
+                Metrics.counter("db.query.rows", "query", "cars.update-batch").count());
+        CarEntity first = CarRepository.getById(client, cars.get(0).id()).await().indefinitely();
+        assertEquals(cars.get(0).color(), first.color());
+        assertEquals(cars.get(0).velocity(), first.velocity());
+    }
+
+    @Test
+    void testSortKeepsRequestOrderAndBreaksTiesById() {
+        Map<String, String> sorts = new LinkedHashMap<>();
+        sorts.put("weight", "desc");
+        sorts.put("trimYear", "asc");
+        assertTrue(CarRepository.listQuery(Map.of(), null, sorts).build().getSql()
+                .endsWith("ORDER BY weight desc, trim_year asc, id ASC"));
+        assertTrue(CarRepository.listQuery(Map.of(), null, Map.of("id", "desc")).build().getSql()
+                .endsWith("ORDER BY id desc"));
+
+        // Consecutive pages on a column with many ties neither overlap nor skip cars
+        List<Long> pages = new ArrayList<>();
+        for (int offset = 0; offset < 60; offset += 20) {
+            CarRepository.findAll(client, Map.of("make", "Toyota"), null, Map.of("bodyType", "asc"), 20, offset)
+                    .await().indefinitely().getData().forEach(car -> pages.add(car.id()));
+        }
+        List<Long> all = CarRepository
+                .findAll(client, Map.of("make", "Toyota"), null, Map.of("bodyType", "asc"), 60, 0)
+                .await().indefinitely().getData().stream().map(CarEntity::id).toList();
+        assertEquals(all, pages);
+    }
+
+    @Test
+    void testStringEqualityMatchesTheRowsOfIlike() {
+        // Without a wildcard the filter is LOWER(column) = $, which an index on LOWER(column) can serve
+        SqlQueryBuilder.Query query = CarRepository.listQuery(Map.of("make", "TOYOTA"), null, Map.of()).build();
+        assertTrue(query.getSql().contains("LOWER(make) = "), query.getSql());
+        assertTrue(query.getParameters().contains("toyota"), query.getParameters().toString());
+        // With one it stays ILIKE
+        assertTrue(CarRepository.listQuery(Map.of("make", "Toy%"), null, Map.of()).build().getSql()
+                .contains("make ILIKE "));
+
+        int ilike = client.query("SELECT COUNT(*) FROM cars WHERE make ILIKE 'tOyOtA'").execute()
+                .await().indefinitely().iterator().next().getInteger(0);
+        assertTrue(ilike > 0);
+        assertEquals(ilike, CarRepository.findAll(client, Map.of("make", "tOyOtA"), null, Map.of(), 1, 0)
+                .await().indefinitely().getTotalRows());
+    }
+
+    @Test
+    void testSearchIsServedByTheTrigramIndex() {
+        SqlQueryBuilder.Query query = CarRepository.listQuery(Map.of(), "camry hybrid", Map.of()).count();
+        String plan = client.withTransaction(connection -> connection.query("SET LOCAL enable_seqscan = off")
+                .execute()
+                .chain(() -> connection.preparedQuery("EXPLAIN " + query.getSql())
+                        .execute(Tuple.from(query.getParameters())))
+                .map(rows -> {
+                    StringBuilder lines = new StringBuilder();
+                    rows.forEach(row -> lines.append(row.getString(0)).append('\n'));
+                    return lines.toString();
+                }))
+                .await().indefinitely();
+
+        // Postgres names the index of each partition after it and the column, such as cars_2019_fulltext_search_idx
+        assertTrue(plan.contains("Bitmap Index Scan on") && plan.contains("_fulltext_search_idx"), plan);
+    }
+
+    @Test
+    void testSearchTextFollowsWrites() {
+        Long id = client.query("INSERT INTO cars (make, model, trim_year, trim_name, trim_description, fuel_type, "
+                + "transmission, body_type, length, weight) VALUES ('Searchtest', 'Before', 2019, 'Base', "
+                + "'2dr Coupe', 'gas', 'manual', 'Coupe', 170, 3000) RETURNING id")
+                .execute().await().indefinitely()
+                .iterator().next().getLong("id");
+        try {
+            client.preparedQuery("UPDATE cars SET model = 'Renamed' WHERE id = $1")
+                    .execute(Tuple.of(id)).await().indefinitely();
+
+            Row row = client.preparedQuery("SELECT fulltext_search FROM cars WHERE id = $1")
+                    .execute(Tuple.of(id)).await().indefinitely()
+                    .iterator().next();
+            assertEquals("Searchtest Renamed 2019 Base 2dr Coupe gas manual Coupe", row.getString("fulltext_search"));
+            assertEquals(1, CarRepository.findAll(client, Map.of(), "searchtest renamed", Map.of(), 10, 0)
+                    .await().indefinitely().getTotalRows());
+        } finally {
+            client.preparedQuery("DELETE FROM cars WHERE id = $1").execute(Tuple.of(id)).await().indefinitely();
+        }
+    }
+}
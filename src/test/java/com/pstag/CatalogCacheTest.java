@@ -0,0 +1,158 @@
+package com.pstag;
+
+import io.quarkus.logging.Log;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.interfaces.QueryListener;
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.CatalogCache;
+import com.pstag.utils.CatalogSnapshot;
+import com.pstag.utils.CatalogSnapshot.Dictionary;
+import com.pstag.utils.QueryMetrics;
+
+@QuarkusTest
+@TestProfile(CatalogCacheTest.ManualRefreshProfile.class)
+class CatalogCacheTest {
+
+    private static final Path SNAPSHOT = Path.of("target/catalog-test.snapshot");
+
+    public static class ManualRefreshProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("catalog.snapshot.path", SNAPSHOT.toString(),
+                    "catalog.refresh-interval-ms", "3600000",
+                    "catalog.snapshot.interval-ms", "3600000",
+                    "catalog.load-page-size", "7");
+        }
+    }
+
+    @Inject
+    CatalogCache catalogCache;
+
+    @Inject
+    PgPool client;
+
+    @Test
+    void testSnapshotRoundTripMatchesDatabase() throws Exception {
+        Files.deleteIfExists(SNAPSHOT);
+        long start = System.nanoTime();
+        CatalogSnapshot fromDatabase = catalogCache.load().await().indefinitely();
+        double databaseMillis = (System.nanoTime() - start) / 1_000_000.0;
+        assertEquals("database", catalogCache.getSource());
+
+        catalogCache.writeSnapshot().await().indefinitely();
+        start = System.nanoTime();
+        CatalogSnapshot fromSnapshot = catalogCache.load().await().indefinitely();
+        double snapshotMillis = (System.nanoTime() - start) / 1_000_000.0;
+        assertEquals("snapshot", catalogCache.getSource());
+        Log.infof("Catalog of %d cars loaded in %.0f ms from the database, %.0f ms from the snapshot (%d bytes)",
+                fromDatabase.size(), databaseMillis, snapshotMillis, Files.size(SNAPSHOT));
+
+        assertEquals(fromDatabase.size(), fromSnapshot.size());
+        assertEquals(fromDatabase.maxUpdatedAt(), fromSnapshot.maxUpdatedAt());
+        for (int row = 0; row < fromDatabase.size(); row++) {
+            assertEquals(fromDatabase.id(row), fromSnapshot.id(row));
+            assertEquals(fromDatabase.value(Dictionary.MODEL, row), fromSnapshot.value(Dictionary.MODEL, row));
+            assertEquals(fromDatabase.weight(row), fromSnapshot.weight(row));
+            assertEquals(fromDatabase.colors(row), fromSnapshot.colors(row));
+        }
+    }
+
+    @Test
+    void testLoadReadsTheTableInPages() throws Exception {
+        catalogCache.awaitLoaded().await().indefinitely();
+        Files.deleteIfExists(SNAPSHOT);
+        AtomicInteger pages = new AtomicInteger();
+        QueryListener listener = (query, shape, sql, parameters, nanos, failed) -> {
+            if (query.equals("catalog.load-page")) {
+                pages.incrementAndGet();
+            }
+        };
+        QueryMetrics.addListener(listener);
+        CatalogSnapshot loaded;
+        try {
+            loaded = catalogCache.load().await().indefinitely();
+        } finally {
+            QueryMetrics.removeListener(listener);
+        }
+
+        long count = client.query("SELECT count(*) AS count FROM cars").execute()
+                .await().indefinitely().iterator().next().getLong("count");
+        assertEquals(count, loaded.size());
+        assertEquals(count, IntStream.range(0, loaded.size()).mapToLong(loaded::id).distinct().count());
+        // Every page is full but the last one, which may be empty
+        assertEquals(count / 7 + 1, pages.get());
+    }
+
+    @Test
+    void testRefreshAppliesDeltaAndSnapshotDropsDeletedCars() {
+        catalogCache.load().await().indefinitely();
+        long id = client.query("INSERT INTO cars (make, model, trim_year, trim_name, trim_description, fuel_type, "
+                + "transmission, body_type, color, length, weight) VALUES ('Catalogtest', 'Before', 2019, 'Base', "
+                + "'2dr Coupe', 'gas', 'manual', 'Coupe', '{Red}', 170, 3000) RETURNING id")
+                .execute().await().indefinitely().iterator().next().getLong("id");
+        try {
+            catalogCache.refresh().await().indefinitely();
+            assertEquals("Before", catalogCache.get().value(Dictionary.MODEL, row(id)));
+            assertEquals(List.of("Red"), catalogCache.get().colors(row(id)));
+
+            // Nothing was written since, so the catalog and what is computed from it are kept
+            CatalogSnapshot unchanged = catalogCache.get();
+            assertEquals(0, catalogCache.refresh().await().indefinitely());
+            assertSame(unchanged, catalogCache.get());
+
+            client.preparedQuery("UPDATE cars SET model = 'After' WHERE id = $1").execute(Tuple.of(id))
+                    .await().indefinitely();
+            int size = catalogCache.get().size();
+            catalogCache.refresh().await().indefinitely();
+            assertEquals("After", catalogCache.get().value(Dictionary.MODEL, row(id)));
+            assertEquals(size, catalogCache.get().size());
+        } finally {
+            client.preparedQuery("DELETE FROM cars WHERE id = $1").execute(Tuple.of(id)).await().indefinitely();
+        }
+
+        catalogCache.writeSnapshot().await().indefinitely();
+        assertEquals(-1, row(id));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testUiParamsMatchDatabase() {
+        catalogCache.load().await().indefinitely();
+        Map<String, Object> facets = catalogCache.getUiParams();
+
+        // Postgres orders by its collation, so only the values are compared
+        assertEquals(Set.copyOf(CarRepository.getMakers(client).await().indefinitely()),
+                Set.copyOf((List<String>) facets.get("makers")));
+        assertEquals(Set.copyOf(CarRepository.getFuelTypes(client).await().indefinitely()),
+                Set.copyOf((List<String>) facets.get("fuelTypes")));
+        assertEquals(Set.copyOf(CarRepository.getColors(client).await().indefinitely()),
+                Set.copyOf((List<String>) facets.get("colors")));
+        Map<String, List<String>> models = (Map<String, List<String>>) facets.get("makersAndModels");
+        CarRepository.getMakerAndModel(client).await().indefinitely()
+                .forEach((make, names) -> assertEquals(Set.copyOf(names), Set.copyOf(models.get(make))));
+    }
+
+    private int row(long id) {
+        CatalogSnapshot catalog = catalogCache.get();
+        return IntStream.range(0, catalog.size()).filter(row -> catalog.id(row) == id).findFirst().orElse(-1);
+    }
+}
@@ -0,0 +1,146 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.CatalogCache;
+
+/**
+ * Lists cars through /api/cars with the in-memory top-K paging on, the
+ * catalog being refreshed only by hand, so that it trails the writes of the
+ * tests.
+ */
+@QuarkusTest
+@TestProfile(CatalogTopKControllerTest.TopKProfile.class)
+class CatalogTopKControllerTest {
+
+    private static final Map<String, String> FILTERS = Map.of("make", "Toyota");
+
+    private static final Map<String, String> SORTS = Map.of("weight", "desc");
+
+    private static final long MAX_STALENESS_MILLIS = 2000;
+
+    public static class TopKProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("catalog.top-k.enabled", "true",
+                    "catalog.top-k.max-staleness-ms", String.valueOf(MAX_STALENESS_MILLIS),
+                    "catalog.refresh-interval-ms", "3600000",
+                    "catalog.snapshot.interval-ms", "3600000");
+        }
+    }
+
+    @Inject
+    CatalogCache catalogCache;
+
+    @Inject
+    PgPool client;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Test
+    void testPageFromTheCatalogMatchesPostgres() {
+        catalogCache.load().await().indefinitely();
+        double hits = topK("hit");
+        long reads = statements("catalog.by-ids");
+        long carReads = statements("cars.by-ids");
+
+        assertEquals(postgresPage(), page());
+        assertEquals(hits + 1, topK("hit"));
+        // The cars of the page and their catalog come from one statement
+        assertEquals(reads + 1, statements("catalog.by-ids"));
+        assertEquals(carReads, statements("cars.by-ids"));
+    }
+
+    @Test
+    void testStaleCatalogIsNotUsed() throws InterruptedException {
+        catalogCache.load().await().indefinitely();
+        Thread.sleep(MAX_STALENESS_MILLIS + 500);
+        double hits = topK("hit");
+        double stale = topK("stale");
+        long reads = statements("catalog.by-ids");
+
+        assertEquals(postgresPage(), page());
+        assertEquals(hits, topK("hit"));
+        assertEquals(stale, topK("stale"));
+        assertEquals(reads, statements("catalog.by-ids"));
+    }
+
+    @Test
+    void testCarNoLongerMatchingFallsBackToPostgres() {
+        catalogCache.load().await().indefinitely();
+        long id = postgresPage().get(0);
+        client.preparedQuery("UPDATE cars SET make = 'Toyotatest' WHERE id = $1").execute(Tuple.of(id))
+                .await().indefinitely();
+        try {
+            double stale = topK("stale");
+            List<Long> page = page();
+
+            assertFalse(page.contains(id));
+            assertEquals(postgresPage(), page);
+            assertEquals(stale + 1, topK("stale"));
+        } finally {
+            client.preparedQuery("UPDATE cars SET make = 'Toyota' WHERE id = $1").execute(Tuple.of(id))
+                    .await().indefinitely();
+        }
+    }
+
+    @Test
+    void testCarWithAnotherSortKeyFallsBackToPostgres() {
+        catalogCache.load().await().indefinitely();
+        long id = postgresPage().get(0);
+        double weight = client.preparedQuery("SELECT weight FROM cars WHERE id = $1").execute(Tuple.of(id))
+                .await().indefinitely().iterator().next().getDouble("weight");
+        client.preparedQuery("UPDATE cars SET weight = 0 WHERE id = $1").execute(Tuple.of(id))
+                .await().indefinitely();
+        try {
+            double stale = topK("stale");
+            List<Long> page = page();
+
+            assertFalse(page.contains(id));
+            assertEquals(postgresPage(), page);
+            assertEquals(stale + 1, topK("stale"));
+        } finally {
+            client.preparedQuery("UPDATE cars SET weight = $1 WHERE id = $2").execute(Tuple.of(weight, id))
+                    .await().indefinitely();
+        }
+    }
+
+    private List<Long> page() {
+        return given().when().get("/api/cars?filter[make]=Toyota&sort[weight]=desc&limit=5")
+                .then().statusCode(200)
+                .extract().jsonPath().getList("data.id", Long.class);
+    }
+
+    private List<Long> postgresPage() {
+        return CarRepository.findAll(client, FILTERS, null, SORTS, 5, 0).await().indefinitely()
+                .getData().stream().map(CarEntity::id).toList();
+    }
+
+    private double topK(String result) {
+        return registry.counter("catalog.top-k", "result", result).count();
+    }
+
+    private long statements(String query) {
+        return registry.find("db.query.duration").tag("query", query).timers().stream()
+                .mapToLong(Timer::count).sum();
+    }
+}
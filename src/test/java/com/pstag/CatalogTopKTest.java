@@ -0,0 +1,69 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.CatalogCache;
+import com.pstag.utils.CatalogSnapshot;
+import com.pstag.utils.CatalogTopK;
+import com.pstag.utils.TotalRowsAndData;
+
+@QuarkusTest
+class CatalogTopKTest {
+
+    @Inject
+    CatalogCache catalogCache;
+
+    @Inject
+    PgPool client;
+
+    @Test
+    void testPagesMatchPostgres() {
+        CatalogSnapshot catalog = catalogCache.load().await().indefinitely();
+
+        Map<String, String> weightThenYear = new LinkedHashMap<>();
+        weightThenYear.put("weight", "desc");
+        weightThenYear.put("trimYear", "asc");
+        assertSamePage(catalog, Map.of(), weightThenYear, 10, 0);
+        assertSamePage(catalog, Map.of("make", "toyota"), Map.of("velocity", "desc"), 10, 0);
+        assertSamePage(catalog, Map.of("make", "Toyota"), Map.of("velocity", "asc"), 10, 30);
+        assertSamePage(catalog, Map.of("trimYear", "between(2015,2018)", "fuelType", "in(Gas,Electric)"),
+                Map.of("length", "asc"), 25, 5);
+    }
+
+    @Test
+    void testUnsupportedSearchesGoToPostgres() {
+        CatalogSnapshot catalog = catalogCache.load().await().indefinitely();
+
+        assertFalse(CatalogTopK.of(catalog, Map.of(), "corolla", Map.of("weight", "asc"), 10, 0, 1000).isPresent());
+        assertFalse(CatalogTopK.of(catalog, Map.of("trimName", "Base"), null, Map.of("weight", "asc"), 10, 0, 1000)
+                .isPresent());
+        assertFalse(CatalogTopK.of(catalog, Map.of("make", "Toy%"), null, Map.of("weight", "asc"), 10, 0, 1000)
+                .isPresent());
+        assertFalse(CatalogTopK.of(catalog, Map.of(), null, Map.of("make", "asc"), 10, 0, 1000).isPresent());
+        assertFalse(CatalogTopK.of(catalog, Map.of(), null, Map.of("weight", "asc"), 10, 995, 1000).isPresent());
+    }
+
+    private void assertSamePage(CatalogSnapshot catalog, Map<String, String> filters, Map<String, String> sorts,
+            int limit, int offset) {
+        CatalogTopK.Page page = CatalogTopK.of(catalog, filters, null, sorts, limit, offset, 1000).orElseThrow();
+        TotalRowsAndData<CarEntity> expected = CarRepository.findAll(client, filters, null, sorts, limit, offset)
+                .await().indefinitely();
+
+        assertEquals(expected.getTotalRows(), page.totalRows());
+        List<Long> ids = expected.getData().stream().map(CarEntity::id).toList();
+        assertEquals(ids, page.ids());
+    }
+}
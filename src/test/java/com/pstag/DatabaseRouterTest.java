@@ -0,0 +1,114 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ConnectException;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.DatabaseRouter;
+
+/**
+ * Uses the primary database as its own replica, so that routing can be tested
+ * with a single instance. With two local instances, point
+ * QUARKUS_DB_REPLICA_URL at the second one instead.
+ */
+@QuarkusTest
+@TestProfile(DatabaseRouterTest.ReplicaProfile.class)
+class DatabaseRouterTest {
+
+    public static class ReplicaProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "database.replica.url", "${QUARKUS_DB_REPLICA_URL:${quarkus.datasource.reactive.url}}",
+                    "database.replica.health-interval-ms", "100",
+                    "database.read-your-writes-ms", "500");
+        }
+    }
+
+    @Inject
+    DatabaseRouter router;
+
+    @Inject
+    PgPool client;
+
+    @BeforeEach
+    void waitForReplica() throws InterruptedException {
+        for (int i = 0; i < 50 && !router.isReplicaHealthy(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(router.isReplicaHealthy());
+    }
+
+    @Test
+    void testPinnedKeysReadFromPrimary() throws InterruptedException {
+        assertNotSame(router.write(), router.read("car:1"));
+
+        router.pin("car:1");
+        assertSame(router.write(), router.read("car:1"));
+        assertNotSame(router.write(), router.read("car:2"));
+
+        Thread.sleep(600);
+        assertNotSame(router.write(), router.read("car:1"));
+    }
+
+    @Test
+    void testFailsOverToPrimary() {
+        int expected = CarRepository.countTotalRows(router.write(), Map.of(), null).await().indefinitely();
+
+        // The replica answers with a connection error, the read is retried on the primary
+        int total = router.read(null, pool -> pool == router.write()
+                ? CarRepository.countTotalRows(pool, Map.of(), null)
+                : Uni.createFrom().<Integer>failure(new ConnectException("replica is down")))
+                .await().indefinitely();
+
+        assertEquals(expected, total);
+        assertFalse(router.isReplicaHealthy());
+        assertSame(router.write(), router.read());
+    }
+
+    @Test
+    void testInvalidArgumentIsNotFailedOver() {
+        assertThrows(IllegalArgumentException.class, () -> router.read(null,
+                pool -> Uni.createFrom().failure(new IllegalArgumentException("Invalid filter")))
+                .await().indefinitely());
+        assertTrue(router.isReplicaHealthy());
+    }
+
+    @Test
+    void testIngestPinsTheCatalog() throws InterruptedException {
+        assertNotSame(router.write(), router.read(DatabaseRouter.CATALOG));
+        try {
+            given().auth().oauth2("test-ingest-token").contentType("text/csv")
+                    .body("make,model,trim_year,trim_name,trim_description,fuel_type,transmission,body_type,"
+                            + "length,weight\nRouter Test,Alpha,2019,Base,2dr Coupe,gas,manual,Coupe,170,3000\n")
+                    .when().post("/api/cars/ingest")
+                    .then().statusCode(200);
+
+            // The list, facets and export of the catalog read the ingested car from the primary
+            assertSame(router.write(), router.read(DatabaseRouter.CATALOG));
+            assertNotSame(router.write(), router.read("car:1"));
+            Thread.sleep(600);
+            assertNotSame(router.write(), router.read(DatabaseRouter.CATALOG));
+        } finally {
+            client.query("DELETE FROM cars WHERE make = 'Router Test'").execute().await().indefinitely();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.services.EnrichmentCacheService;
+
+@QuarkusTest
+class EnrichmentCacheServiceTest {
+
+    @Inject
+    EnrichmentCacheService cacheService;
+
+    @Inject
+    PgPool client;
+
+    @Inject
+    MeterRegistry registry;
+
+    private String make;
+
+    @BeforeEach
+    void uniqueMake() {
+        // A new make per test keeps the answers of earlier runs out of the cache
+        make = "Cachetest" + System.nanoTime();
+    }
+
+    @AfterEach
+    void deleteAnswers() {
+        List<String> hashes = List.of(EnrichmentCacheService.inputHash(car(0, make, "Civic", 2015)),
+                EnrichmentCacheService.inputHash(car(0, make, "Accord", 2015)));
+        client.preparedQuery("DELETE FROM enrichment_cache WHERE input_hash = ANY($1)")
+                .execute(Tuple.of(hashes.toArray(new String[0]))).await().indefinitely();
+    }
+
+    @Test
+    void testInputHashIgnoresCaseWhitespaceIdAndYear() {
+        CarEntity car = new CarEntity(1L, "Honda", "Civic", 2015, "EX", "EX 4dr Sedan", "gas", "manual", "Sedan",
+                null, 182.3, 2800, 0, null, null);
+        CarEntity sameTrim = new CarEntity(2L, " honda ", "CIVIC", 2020, "ex", "EX  4dr\tSedan", "Gas", "Manual",
+                "sedan", List.of("Red"), 190.0, 3000, 200, null, null);
+        CarEntity otherTrim = new CarEntity(1L, "Honda", "Civic", 2015, "LX", "LX 4dr Sedan", "gas", "manual",
+                "Sedan", null, 182.3, 2800, 0, null, null);
+
+        assertEquals(EnrichmentCacheService.inputHash(car), EnrichmentCacheService.inputHash(sameTrim));
+        assertNotEquals(EnrichmentCacheService.inputHash(car), EnrichmentCacheService.inputHash(otherTrim));
+    }
+
+    @Test
+    void testStoredAnswersAreLookedUpUnderTheCallersId() {
+        CarEntity asked = car(101, make, "Civic", 2015);
+        cacheService.store(client, List.of(asked), List.of(answer(101, List.of("Red", "Blue"), 210)))
+                .await().indefinitely();
+
+        double hits = registry.counter("enrichment.cache.requests", "result", "hit").count();
+        double misses = registry.counter("enrichment.cache.requests", "result", "miss").count();
+        // The same trim a year later, under another id, and a trim that was never asked
+        Map<Long, CarEntity> cached = cacheService.lookup(client,
+                List.of(car(202, make, "Civic", 2016), car(303, make, "Accord", 2015))).await().indefinitely();
+
+        assertEquals(1, cached.size());
+        CarEntity answer = cached.get(202L);
+        assertEquals(202L, answer.id());
+        assertEquals(List.of("Red", "Blue"), answer.color());
+        assertEquals(210.0, answer.velocity());
+        assertEquals(hits + 1, registry.counter("enrichment.cache.requests", "result", "hit").count());
+        assertEquals(misses + 1, registry.counter("enrichment.cache.requests", "result", "miss").count());
+    }
+
+    @Test
+    void testFailedStoreIsCounted() {
+        double failures = registry.counter("enrichment.cache.store.failures").count();
+        // Longer than the VARCHAR(32) of enrichment_cache.color
+        CarEntity tooLong = answer(101, List.of("Red".repeat(20)), 210);
+
+        assertThrows(RuntimeException.class, () -> cacheService.store(client, List.of(car(101, make, "Civic", 2015)),
+                List.of(tooLong)).await().indefinitely());
+        assertEquals(failures + 1, registry.counter("enrichment.cache.store.failures").count());
+        assertEquals(Map.of(), cacheService.lookup(client, List.of(car(101, make, "Civic", 2015)))
+                .await().indefinitely());
+    }
+
+    private static CarEntity car(long id, String make, String model, int year) {
+        return new CarEntity(id, make, model, year, "Base", "Base 4dr Sedan", "gas", "manual", "Sedan", null, 180.0,
+                3000, 0, null, null);
+    }
+
+    private static CarEntity answer(long id, List<String> color, double velocity) {
+        return new CarEntity(id, null, null, 0, null, null, null, null, null, color, 0, 0, velocity, null, null);
+    }
+}
@@ -0,0 +1,295 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.EnrichmentJob;
+import com.pstag.interfaces.MyAiService;
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.EnrichmentCacheService;
+
+/**
+ * Runs the enrichment job against a stubbed AI service, one car per window so
+ * that every car is checkpointed on its own.
+ */
+@QuarkusTest
+@TestProfile(EnrichmentJobTest.OneCarWindowProfile.class)
+class EnrichmentJobTest {
+
+    private static final String TOKEN = "test-enrichment-token";
+
+    public static class OneCarWindowProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("enrichment.window-size", "1");
+        }
+    }
+
+    /**
+     * Answers every car of a prompt with a red color and a velocity of 200,
+     * recording the IDs it was asked about. Each call first waits for the
+     * release latch.
+     */
+    static class StubAiService implements MyAiService {
+
+        private static final Pattern ID = Pattern.compile("CarEntity\\{id=(\\d+)");
+
+        final List<Long> asked = new CopyOnWriteArrayList<>();
+
+        final CountDownLatch called = new CountDownLatch(1);
+
+        final CountDownLatch release;
+
+        StubAiService(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public String writeAPoem(String topic, int lines) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getCarInformation(String listOfData) {
+            called.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StringBuilder answer = new StringBuilder("{\"cars\": [");
+            Matcher matcher = ID.matcher(listOfData);
+            while (matcher.find()) {
+                long id = Long.parseLong(matcher.group(1));
+                asked.add(id);
+                answer.append(answer.charAt(answer.length() - 1) == '[' ? "" : ",")
+                        .append("{\"id\": ").append(id).append(", \"color\": [\"Red\"], \"velocity\": 200}");
+            }
+            return answer.append("]}").toString();
+        }
+    }
+
+    @Inject
+    PgPool client;
+
+    @Inject
+    MeterRegistry registry;
+
+    private String make;
+
+    @BeforeEach
+    void uniqueMake() {
+        // The cache is keyed by the description, a new make keeps answers of earlier runs out
+        make = "Enrichtest" + System.nanoTime();
+    }
+
+    @Test
+    void testOrphanedRunningJobIsReportedInterrupted() {
+        // A job left RUNNING by a node that died an hour ago, without a heartbeat since
+        Long id = client.preparedQuery("INSERT INTO enrichment_jobs (status, last_id, processed, updated_at) "
+                + "VALUES ($1, 42, 42, LOCALTIMESTAMP - INTERVAL '1 hour') RETURNING id")
+                .execute(Tuple.of(EnrichmentJob.RUNNING))
+                .await().indefinitely().iterator().next().getLong("id");
+        try {
+            given().auth().oauth2(TOKEN).when().get("/api/cars/enrichment/status").then().statusCode(200)
+                    .body("data.id", equalTo(id.intValue()))
+                    .body("data.status", equalTo(EnrichmentJob.INTERRUPTED))
+                    .body("data.lastId", equalTo(42));
+        } finally {
+            deleteJob(id);
+        }
+    }
+
+    @Test
+    void testRunningJobWithHeartbeatIsLeftRunning() {
+        Long id = client.preparedQuery("INSERT INTO enrichment_jobs (status) VALUES ($1) RETURNING id")
+                .execute(Tuple.of(EnrichmentJob.RUNNING))
+                .await().indefinitely().iterator().next().getLong("id");
+        try {
+            given().auth().oauth2(TOKEN).when().get("/api/cars/enrichment/status").then().statusCode(200)
+                    .body("data.id", equalTo(id.intValue()))
+                    .body("data.status", equalTo(EnrichmentJob.RUNNING));
+        } finally {
+            deleteJob(id);
+        }
+    }
+
+    @Test
+    void testEnrichmentRequiresTheToken() {
+        given().when().get("/api/cars/enrichment/status").then().statusCode(401);
+        given().when().post("/api/cars/enrichment/start").then().statusCode(401);
+        given().auth().oauth2("wrong-token").when().post("/api/cars/enrichment/stop").then().statusCode(401);
+    }
+
+    @Test
+    void testResumeSkipsCheckpointedAndEnrichedCars() {
+        StubAiService ai = new StubAiService(new CountDownLatch(0));
+        QuarkusMock.installMockForType(ai, MyAiService.class);
+
+        long before = insertCar("Before", null);
+        Long jobId = insertJob(before, 7);
+        long missing = insertCar("Missing", null);
+        long enriched = insertCar("Enriched", 150.0);
+        long last = insertCar("Last", null);
+        try {
+            given().auth().oauth2(TOKEN).when().post("/api/cars/enrichment/start").then().statusCode(200)
+                    .body("data.id", equalTo(jobId.intValue()));
+
+            Row job = awaitFinished(jobId);
+            assertEquals(EnrichmentJob.COMPLETED, job.getString("status"));
+            assertEquals(9, job.getInteger("processed"));
+            assertEquals(last, job.getLong("last_id"));
+            // The car before the checkpoint and the car that has its data are not asked again
+            assertEquals(List.of(missing, last), ai.asked);
+            assertNull(velocity(before));
+            assertEquals(150.0, velocity(enriched));
+            assertEquals(200.0, velocity(missing));
+            assertEquals(200.0, velocity(last));
+        } finally {
+            deleteJob(jobId);
+            deleteCars(List.of(before, missing, enriched, last));
+        }
+    }
+
+    @Test
+    void testStopRequestHaltsTheJob() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        StubAiService ai = new StubAiService(release);
+        QuarkusMock.installMockForType(ai, MyAiService.class);
+
+        Long jobId = insertJob(maxCarId(), 0);
+        long first = insertCar("First", null);
+        long second = insertCar("Second", null);
+        try {
+            given().auth().oauth2(TOKEN).when().post("/api/cars/enrichment/start").then().statusCode(200);
+            assertTrue(ai.called.await(30, TimeUnit.SECONDS));
+
+            // Stored in the row as a stop sent to another node would be, then read back at the checkpoint
+            client.preparedQuery("UPDATE enrichment_jobs SET stop_requested = TRUE WHERE id = $1")
+                    .execute(Tuple.of(jobId)).await().indefinitely();
+            release.countDown();
+
+            Row job = awaitFinished(jobId);
+            assertEquals(EnrichmentJob.STOPPED, job.getString("status"));
+            assertEquals(1, job.getInteger("processed"));
+            assertEquals(first, job.getLong("last_id"));
+            assertEquals(List.of(first), ai.asked);
+            assertNull(velocity(second));
+            given().auth().oauth2(TOKEN).when().get("/api/cars/enrichment/status").then().statusCode(200)
+                    .body("data.status", equalTo(EnrichmentJob.STOPPED));
+        } finally {
+            release.countDown();
+            deleteJob(jobId);
+            deleteCars(List.of(first, second));
+        }
+    }
+
+    @Test
+    void testFailedCacheStoreDoesNotFailTheJob() {
+        StubAiService ai = new StubAiService(new CountDownLatch(0));
+        QuarkusMock.installMockForType(ai, MyAiService.class);
+        double failures = registry.counter("enrichment.cache.store.failures").count();
+
+        Long jobId = insertJob(maxCarId(), 0);
+        long car = insertCar("Uncached", null);
+        // Every answer of the stub has a velocity of 200, which this constraint refuses
+        client.query("ALTER TABLE enrichment_cache ADD CONSTRAINT enrichment_cache_test_refused "
+                + "CHECK (velocity < 0) NOT VALID").execute().await().indefinitely();
+        try {
+            given().auth().oauth2(TOKEN).when().post("/api/cars/enrichment/start").then().statusCode(200);
+
+            Row job = awaitFinished(jobId);
+            assertEquals(EnrichmentJob.COMPLETED, job.getString("status"));
+            assertEquals(1, job.getInteger("updated"));
+            assertEquals(200.0, velocity(car));
+            assertEquals(failures + 1, registry.counter("enrichment.cache.store.failures").count());
+        } finally {
+            client.query("ALTER TABLE enrichment_cache DROP CONSTRAINT enrichment_cache_test_refused").execute()
+                    .await().indefinitely();
+            deleteJob(jobId);
+            deleteCars(List.of(car));
+        }
+    }
+
+    private long insertCar(String model, Double velocity) {
+        return client.preparedQuery("INSERT INTO cars (make, model, trim_year, trim_name, trim_description, "
+                + "fuel_type, transmission, body_type, color, length, weight, velocity) VALUES ($1, $2, 2020, "
+                + "'Base', 'Test trim', 'Gas', 'Manual', 'Sedan', $3, 4.5, 1200, $4) RETURNING id")
+                .execute(Tuple.of(make, model, velocity == null ? null : new String[] { "Blue" }, velocity))
+                .await().indefinitely().iterator().next().getLong("id");
+    }
+
+    private Long insertJob(long lastId, int processed) {
+        return client.preparedQuery("INSERT INTO enrichment_jobs (status, last_id, processed) "
+                + "VALUES ($1, $2, $3) RETURNING id")
+                .execute(Tuple.of(EnrichmentJob.STOPPED, lastId, processed))
+                .await().indefinitely().iterator().next().getLong("id");
+    }
+
+    private long maxCarId() {
+        return client.query("SELECT MAX(id) AS id FROM cars").execute()
+                .await().indefinitely().iterator().next().getLong("id");
+    }
+
+    private Double velocity(long id) {
+        return client.preparedQuery("SELECT velocity FROM cars WHERE id = $1").execute(Tuple.of(id))
+                .await().indefinitely().iterator().next().getDouble("velocity");
+    }
+
+    private Row awaitFinished(Long jobId) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            Row job = client.preparedQuery("SELECT * FROM enrichment_jobs WHERE id = $1").execute(Tuple.of(jobId))
+                    .await().indefinitely().iterator().next();
+            if (!EnrichmentJob.RUNNING.equals(job.getString("status"))) {
+                return job;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new AssertionError("Enrichment job " + jobId + " did not finish");
+    }
+
+    private void deleteJob(Long id) {
+        client.preparedQuery("DELETE FROM enrichment_jobs WHERE id = $1").execute(Tuple.of(id))
+                .await().indefinitely();
+    }
+
+    private void deleteCars(List<Long> ids) {
+        List<String> hashes = CarRepository.getByIds(client, ids).await().indefinitely().stream()
+                .map(EnrichmentCacheService::inputHash).collect(Collectors.toList());
+        client.preparedQuery("DELETE FROM enrichment_cache WHERE input_hash = ANY($1)")
+                .execute(Tuple.of(hashes.toArray(new String[0]))).await().indefinitely();
+        client.preparedQuery("DELETE FROM cars WHERE id = ANY($1)").execute(Tuple.of(ids.toArray(new Long[0])))
+                .await().indefinitely();
+    }
+}
@@ -0,0 +1,94 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.pstag.entities.CarEntity;
+import com.pstag.utils.EnrichmentResponseParser;
+import com.pstag.utils.EnrichmentResponseParser.Result;
+
+@QuarkusTest
+class EnrichmentResponseParserTest {
+
+    private final JsonFactory factory = new JsonFactory();
+
+    @Test
+    void testParseReadsRequestedFieldsOnly() {
+        String response = """
+                {"cars": [
+                  {"id": 1, "make": "Acura", "color": ["White", "Black"], "velocity": 210,
+                   "exteriorColors": [{"name": "White", "googleImageSearchKeyword": "2015 Acura ILX White"}]},
+                  {"id": 2, "color": ["Red"], "velocity": "195.5"}
+                ]}
+                """;
+        List<CarEntity> sink = new ArrayList<>();
+
+        Result result = EnrichmentResponseParser.parse(factory, response, Set.of(1L, 2L), sink::add);
+
+        assertTrue(result.complete());
+        assertEquals(0, result.rejected());
+        assertEquals(2, sink.size());
+        assertEquals(List.of("White", "Black"), sink.get(0).color());
+        assertEquals(210.0, sink.get(0).velocity());
+        assertEquals(195.5, sink.get(1).velocity());
+    }
+
+    @Test
+    void testParseRejectsMalformedAndUnknownCars() {
+        String response = """
+                [
+                  {"id": 1, "color": "White", "velocity": 210},
+                  {"id": 99, "color": ["Red"], "velocity": 180},
+                  {"id": 2, "color": ["Blue"], "velocity": 230}
+                ]
+                """;
+        List<CarEntity> sink = new ArrayList<>();
+
+        Result result = EnrichmentResponseParser.parse(factory, response, Set.of(1L, 2L), sink::add);
+
+        assertTrue(result.complete());
+        assertEquals(2, result.rejected());
+        assertEquals(1, sink.size());
+        assertEquals(2L, sink.get(0).id());
+    }
+
+    @Test
+    void testParseDropsColorsTooLongForTheColorColumns() {
+        String response = """
+                [
+                  {"id": 1, "color": ["White", "Brilliant Silver Metallic With Black Roof"], "velocity": 210},
+                  {"id": 2, "color": ["Deep Crystal Blue Mica Two-Tone Package"], "velocity": 230}
+                ]
+                """;
+        List<CarEntity> sink = new ArrayList<>();
+
+        Result result = EnrichmentResponseParser.parse(factory, response, Set.of(1L, 2L), sink::add);
+
+        assertTrue(result.complete());
+        assertEquals(1, result.rejected());
+        assertEquals(1, sink.size());
+        assertEquals(List.of("White"), sink.get(0).color());
+    }
+
+    @Test
+    void testParseKeepsCarsBeforeTruncation() {
+        String response = "{\"cars\": [{\"id\": 1, \"color\": [\"White\"], \"velocity\": 210}, {\"id\": 2, \"color\": [\"Re";
+        List<CarEntity> sink = new ArrayList<>();
+
+        Result result = EnrichmentResponseParser.parse(factory, response, Set.of(1L, 2L), sink::add);
+
+        assertFalse(result.complete());
+        assertEquals(1, result.accepted().size());
+        assertEquals(1L, sink.get(0).id());
+    }
+}
@@ -0,0 +1,109 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.BlockedThreadSample;
+import com.pstag.entities.CarEntity;
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.EventLoopBlockingDetector;
+
+@QuarkusTest
+class EventLoopBlockingDetectorTest {
+
+    @Inject
+    EventLoopBlockingDetector detector;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    PgPool client;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Test
+    void testBlockedEventLoopIsSampled() throws Exception {
+        long episodes = blockedEpisodes();
+        // Called from the test thread, this creates a context on one of the event loops
+        Context context = vertx.getOrCreateContext();
+        CompletableFuture<String> blocked = new CompletableFuture<>();
+        context.runOnContext(ignored -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            blocked.complete(Thread.currentThread().getName());
+        });
+        String thread = blocked.get(5, TimeUnit.SECONDS);
+
+        BlockedThreadSample sample = awaitSample(candidate -> candidate.thread().equals(thread)
+                && candidate.stackTrace().stream().anyMatch(frame -> frame.contains("EventLoopBlockingDetectorTest")));
+        assertTrue(sample.blockedMillis() >= 50, sample.blockedMillis() + " ms");
+        assertTrue(blockedEpisodes() > episodes);
+    }
+
+    @Test
+    void testCarWritesDoNotBlockTheEventLoop() throws Exception {
+        long id = client.query("INSERT INTO cars (make, model, trim_year, trim_name, trim_description, fuel_type, "
+                + "transmission, body_type, length, weight) VALUES ('Eventlooptest', 'Write', 2019, 'Base', "
+                + "'2dr Coupe', 'gas', 'manual', 'Coupe', 170, 3000) RETURNING id")
+                .execute().await().indefinitely().iterator().next().getLong("id");
+        try {
+            Context context = vertx.getOrCreateContext();
+            CompletableFuture<String> subscribedOn = new CompletableFuture<>();
+            CompletableFuture<CarEntity> written = new CompletableFuture<>();
+            // Awaiting on an event loop fails with "The current thread cannot be blocked"
+            context.runOnContext(ignored -> {
+                subscribedOn.complete(Thread.currentThread().getName());
+                CarRepository.updateCar(client, id, List.of("Red"), 180.0)
+                        .call(car -> CarRepository.updateCarColorAndImageUrl(client, id, List.of("Blue"),
+                                List.of("https://example.com/blue.png")))
+                        .subscribe().with(written::complete, written::completeExceptionally);
+            });
+
+            assertTrue(subscribedOn.get(5, TimeUnit.SECONDS).startsWith("vert.x-eventloop"));
+            assertEquals(180.0, written.get(5, TimeUnit.SECONDS).velocity());
+            assertEquals(List.of("Blue"), CarRepository.getById(client, id).await().indefinitely().color());
+            assertTrue(detector.getSamples().stream().noneMatch(sample -> sample.stackTrace().stream()
+                    .anyMatch(frame -> frame.contains("CarRepository"))));
+        } finally {
+            client.preparedQuery("DELETE FROM cars WHERE id = $1").execute(Tuple.of(id)).await().indefinitely();
+        }
+    }
+
+    private long blockedEpisodes() {
+        return registry.find("eventloop.blocked.duration").summary().count();
+    }
+
+    private BlockedThreadSample awaitSample(Predicate<BlockedThreadSample> matching)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (BlockedThreadSample sample : detector.getSamples()) {
+                if (matching.test(sample)) {
+                    return sample;
+                }
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("No sample recorded for the blocked event loop: " + detector.getSamples());
+    }
+}
@@ -0,0 +1,85 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.Histogram;
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.CatalogCache;
+import com.pstag.utils.CatalogFilter;
+import com.pstag.utils.CatalogSnapshot;
+import com.pstag.utils.Histograms;
+
+@QuarkusTest
+class HistogramsTest {
+
+    @Inject
+    CatalogCache catalogCache;
+
+    @Inject
+    PgPool client;
+
+    @Test
+    void testCatalogHistogramsMatchPostgres() {
+        CatalogSnapshot catalog = catalogCache.load().await().indefinitely();
+
+        for (Histograms.Mode mode : Histograms.Mode.values()) {
+            assertSameHistograms(catalog, Map.of(), mode, 20);
+            assertSameHistograms(catalog, Map.of("make", "toyota"), mode, 10);
+            assertSameHistograms(catalog, Map.of("trimYear", "between(2015,2018)", "fuelType", "in(Gas,Electric)"),
+                    mode, 7);
+            assertSameHistograms(catalog, Map.of("make", "No such make"), mode, 5);
+        }
+    }
+
+    @Test
+    void testHistogramsEndpoint() {
+        given()
+                .queryParam("filter[make]", "Toyota")
+                .queryParam("buckets", 5)
+                .when().get("/api/cars/histograms")
+                .then()
+                .statusCode(200)
+                .body("data.weight.mode", is("width"))
+                .body("data.weight.buckets.size()", is(5))
+                .body("data.length.count", is(countToyotas()));
+
+        given()
+                .queryParam("mode", "median")
+                .when().get("/api/cars/histograms")
+                .then()
+                .statusCode(400);
+
+        given()
+                .queryParam("buckets", 0)
+                .when().get("/api/cars/histograms")
+                .then()
+                .statusCode(400);
+    }
+
+    private int countToyotas() {
+        return CarRepository.countTotalRows(client, Map.of("make", "Toyota"), null).await().indefinitely();
+    }
+
+    private void assertSameHistograms(CatalogSnapshot catalog, Map<String, String> filters, Histograms.Mode mode,
+            int buckets) {
+        IntPredicate filter = CatalogFilter.of(catalog, filters, null).orElseThrow();
+        Map<String, Histogram> fromCatalog = Histograms.of(catalog, filter, mode, buckets);
+        Map<String, Histogram> fromDatabase = CarRepository.getHistograms(client, filters, null, mode, buckets)
+                .await().indefinitely();
+
+        assertEquals(fromDatabase, fromCatalog);
+        assertFalse(fromCatalog.get("weight").buckets().size() > buckets);
+    }
+}
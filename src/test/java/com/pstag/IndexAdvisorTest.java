@@ -0,0 +1,93 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.vertx.mutiny.pgclient.PgPool;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.IndexAdvice;
+import com.pstag.services.IndexAdvisor;
+
+@QuarkusTest
+@TestProfile(IndexAdvisorTest.FewSamplesProfile.class)
+class IndexAdvisorTest {
+
+    private static final String SHAPE = "fuel_type=eq,transmission=eq|sort=weight";
+
+    private static final String INDEX = "idx_cars_lower_fuel_type_lower_transmission_weight_id";
+
+    public static class FewSamplesProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("index-advisor.min-samples", "3", "index-advisor.create.enabled", "true");
+        }
+    }
+
+    @Inject
+    IndexAdvisor indexAdvisor;
+
+    @Inject
+    PgPool client;
+
+    @AfterEach
+    void dropIndex() {
+        client.query("DROP INDEX IF EXISTS " + INDEX).execute().await().indefinitely();
+    }
+
+    @Test
+    void testProposesAndCreatesIndexForObservedShape() throws InterruptedException {
+        search(3);
+
+        IndexAdvice advice = find(indexAdvisor.getAdvice().await().indefinitely());
+        assertEquals("proposed", advice.status());
+        assertEquals("CREATE INDEX " + INDEX + " ON cars (lower(fuel_type), lower(transmission), weight, id) "
+                + "INCLUDE (fuel_type, transmission)", advice.definition());
+        assertTrue(advice.before().stream().allMatch(latency -> latency.samples() == 3));
+        assertTrue(advice.after().isEmpty());
+
+        given().when().post("/api/admin/indexes/" + INDEX).then().statusCode(200);
+        for (int i = 0; i < 100 && !find(indexAdvisor.getAdvice().await().indefinitely()).status().equals("created");
+                i++) {
+            Thread.sleep(100);
+        }
+        search(2);
+
+        advice = find(indexAdvisor.getAdvice().await().indefinitely());
+        assertEquals("created", advice.status());
+        assertEquals(INDEX, advice.coveredBy());
+        assertEquals(3, advice.before().get(0).samples());
+        assertEquals(2, advice.after().get(0).samples());
+    }
+
+    @Test
+    void testUnknownIndexIsNotCreated() {
+        List<IndexAdvice> advice = indexAdvisor.createIndex("idx_cars_unknown").await().indefinitely();
+
+        assertTrue(advice.isEmpty());
+        assertFalse(client.query("SELECT 1 FROM pg_class WHERE relname = 'idx_cars_unknown'").execute()
+                .await().indefinitely().iterator().hasNext());
+    }
+
+    private static void search(int times) {
+        for (int i = 0; i < times; i++) {
+            given().when().get("/api/cars?filter[fuelType]=Gas&filter[transmission]=Automatic&sort[weight]=desc")
+                    .then().statusCode(200);
+        }
+    }
+
+    private static IndexAdvice find(List<IndexAdvice> advice) {
+        return advice.stream().filter(item -> item.shape().equals(SHAPE)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,60 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.utils.IndexProposal;
+
+@QuarkusTest
+class IndexProposalTest {
+
+    @Test
+    void testEqualitiesThenSortThenRange() {
+        IndexProposal proposal = IndexProposal.of("length=between,make=eq,model=eq,trim_year=between|sort=velocity")
+                .orElseThrow();
+
+        assertEquals(List.of("lower(make)", "lower(model)", "velocity", "id", "length"), proposal.getColumns());
+        assertEquals(List.of("make", "model", "trim_year"), proposal.getInclude());
+        assertEquals("idx_cars_lower_make_lower_model_velocity_id_length", proposal.getName());
+    }
+
+    @Test
+    void testSearchAndArraysAreNotCovered() {
+        IndexProposal proposal = IndexProposal.of("color=eq,make=eq|search").orElseThrow();
+
+        assertEquals(List.of("lower(make)"), proposal.getColumns());
+        assertTrue(proposal.getInclude().isEmpty());
+        assertFalse(IndexProposal.of("trim_year=eq|search").isPresent());
+        assertFalse(IndexProposal.of("none").isPresent());
+    }
+
+    @Test
+    void testExistingIndexesAreRecognized() {
+        IndexProposal proposal = IndexProposal.of("make=eq|sort=velocity").orElseThrow();
+
+        assertTrue(proposal.isCoveredBy(List.of("lower(make::text)", "velocity", "id", "weight")));
+        assertFalse(proposal.isCoveredBy(List.of("lower(make::text)", "velocity", "weight")));
+        assertFalse(proposal.isCoveredBy(List.of("make")));
+        assertFalse(proposal.isCoveredBy(List.of("velocity", "lower(make::text)")));
+    }
+
+    @Test
+    void testStatementsBuildEachPartitionConcurrently() {
+        IndexProposal proposal = IndexProposal.of("body_type=eq").orElseThrow();
+
+        assertEquals(List.of(
+                "CREATE INDEX IF NOT EXISTS idx_cars_lower_body_type ON ONLY cars (lower(body_type)) "
+                        + "INCLUDE (id, body_type)",
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_cars_lower_body_type_2014 ON cars_2014 "
+                        + "(lower(body_type)) INCLUDE (id, body_type)",
+                "ALTER INDEX idx_cars_lower_body_type ATTACH PARTITION idx_cars_lower_body_type_2014"),
+                proposal.getStatements(List.of("cars_2014")));
+    }
+}
@@ -0,0 +1,183 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.pstag.services.OutboundScheduler;
+import com.pstag.utils.OutboundHttpException;
+import com.sun.net.httpserver.HttpServer;
+
+@QuarkusTest
+@TestProfile(OutboundSchedulerTest.StubProfile.class)
+class OutboundSchedulerTest {
+
+    public static class StubProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.ofEntries(
+                    Map.entry("outbound.stub-retry.base-backoff-ms", "10"),
+                    Map.entry("outbound.stub-fail.base-backoff-ms", "10"),
+                    Map.entry("outbound.stub-fail.max-retries", "2"),
+                    Map.entry("outbound.stub-concurrency.initial-concurrency", "2"),
+                    Map.entry("outbound.stub-concurrency.max-concurrency", "2"),
+                    Map.entry("outbound.stub-concurrency.rate", "1000"),
+                    Map.entry("outbound.stub-concurrency.burst", "1000"),
+                    Map.entry("outbound.stub-cancel.initial-concurrency", "1"),
+                    Map.entry("outbound.stub-cancel.max-concurrency", "1"),
+                    Map.entry("outbound.stub-cancel.rate", "1000"),
+                    Map.entry("outbound.stub-cancel.burst", "1000"));
+        }
+    }
+
+    @Inject
+    OutboundScheduler scheduler;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    private HttpServer server;
+
+    private String startStub(StubHandler handler) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            int status = handler.status();
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterEach
+    void stopStub() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private Uni<String> get(String url) {
+        return Uni.createFrom().completionStage(() -> httpClient
+                .sendAsync(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() == 429 || response.statusCode() >= 500) {
+                        throw new OutboundHttpException(response.statusCode(), "Stub answered " + response.statusCode());
+                    }
+                    return response.body();
+                }));
+    }
+
+    @Test
+    void testRetriesTooManyRequestsAndDecreasesLimit() throws IOException {
+        AtomicInteger hits = new AtomicInteger();
+        String url = startStub(() -> hits.incrementAndGet() <= 2 ? 429 : 200);
+        int initialLimit = scheduler.getLimit("stub-retry");
+
+        String body = scheduler.submit("stub-retry", () -> get(url)).await().indefinitely();
+
+        assertEquals("ok", body);
+        assertEquals(3, hits.get());
+        assertTrue(scheduler.getLimit("stub-retry") < initialLimit);
+    }
+
+    @Test
+    void testGivesUpAfterMaxRetries() throws IOException {
+        AtomicInteger hits = new AtomicInteger();
+        String url = startStub(() -> {
+            hits.incrementAndGet();
+            return 503;
+        });
+
+        OutboundHttpException exception = assertThrows(OutboundHttpException.class,
+                () -> scheduler.submit("stub-fail", () -> get(url)).await().indefinitely());
+
+        assertEquals(503, exception.getStatusCode());
+        assertEquals(3, hits.get());
+    }
+
+    @Test
+    void testBoundsConcurrency() throws IOException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        String url = startStub(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return 200;
+        });
+
+        List<Uni<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            calls.add(scheduler.submit("stub-concurrency", () -> get(url)));
+        }
+        List<?> results = Uni.combine().all().unis(calls).with(list -> list).await().indefinitely();
+
+        assertEquals(10, results.size());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    void testCancelledCallsKeepTheirPermitUntilDone() throws IOException, InterruptedException {
+        AtomicInteger hits = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        String url = startStub(() -> {
+            hits.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return 200;
+        });
+
+        Cancellable started = scheduler.submit("stub-cancel", () -> get(url)).subscribe().with(item -> {
+        });
+        Cancellable queued = scheduler.submit("stub-cancel", () -> get(url)).subscribe().with(item -> {
+        });
+        Thread.sleep(50);
+        started.cancel();
+        queued.cancel();
+
+        assertEquals("ok", scheduler.submit("stub-cancel", () -> get(url)).await().indefinitely());
+        // the queued call never ran, and the last one waited for the cancelled call to finish
+        assertEquals(2, hits.get());
+        assertEquals(1, maxRunning.get());
+    }
+
+    @FunctionalInterface
+    private interface StubHandler {
+        int status();
+    }
+}
@@ -0,0 +1,123 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.repositories.CarRepository;
+import com.pstag.services.PartitionManager;
+import com.pstag.utils.SqlQueryBuilder;
+
+@QuarkusTest
+class PartitionManagerTest {
+
+    private static final Pattern PARTITION_SCAN = Pattern.compile("\\bon (cars_\\d{4})\\b");
+
+    @Inject
+    PartitionManager partitionManager;
+
+    @Inject
+    PgPool client;
+
+    @Test
+    void testPartitionsCreatedAheadOnStartup() {
+        int nextYear = Year.now().getValue() + 1;
+        assertTrue(partitionManager.hasPartition(2014));
+        assertTrue(partitionManager.hasPartition(Year.now().getValue()));
+        assertTrue(partitionManager.hasPartition(nextYear));
+
+        // A car of next year's models can be inserted right away
+        insertAndDelete(nextYear);
+    }
+
+    @Test
+    void testEnsurePartitionsCreatesMissingYears() {
+        partitionManager.ensurePartitions(List.of(2013, 2014)).await().indefinitely();
+
+        assertTrue(partitionManager.hasPartition(2013));
+        insertAndDelete(2013);
+    }
+
+    @Test
+    void testEnsurePartitionsRejectsYearsOutOfRange() {
+        int tooFar = Year.now().getValue() + 50;
+        assertThrows(IllegalArgumentException.class,
+                () -> partitionManager.ensurePartitions(List.of(tooFar)).await().indefinitely());
+        assertThrows(IllegalArgumentException.class,
+                () -> partitionManager.ensurePartitions(List.of(1800)).await().indefinitely());
+        assertFalse(partitionManager.hasPartition(tooFar));
+    }
+
+    @Test
+    void testBetweenPrunesPartitions() {
+        List<String> scanned = scannedPartitions(Map.of("trimYear", "between(2015,2016)"));
+
+        assertEquals(List.of("cars_2015", "cars_2016"), scanned);
+        assertEquals(List.of("cars_2016", "cars_2017"), scannedPartitions(Map.of("trimYear", "between(2015.5,2017)")));
+    }
+
+    @Test
+    void testEqualsAndInPrunePartitions() {
+        assertEquals(List.of("cars_2018"), scannedPartitions(Map.of("trimYear", "2018", "make", "Toyota")));
+        assertEquals(List.of("cars_2014", "cars_2020"), scannedPartitions(Map.of("trimYear", "in(2014,2020)")));
+    }
+
+    @Test
+    void testFiltersWithoutYearScanEveryPartition() {
+        List<String> scanned = scannedPartitions(Map.of("make", "Toyota"));
+
+        assertTrue(scanned.containsAll(List.of("cars_2014", "cars_2021")), scanned.toString());
+    }
+
+    /**
+     * Runs EXPLAIN on the count and page queries of the given filters, with
+     * their parameters, and returns the partitions the plans read.
+     */
+    private List<String> scannedPartitions(Map<String, String> filters) {
+        SqlQueryBuilder builder = CarRepository.listQuery(filters, null, Map.of());
+        List<String> partitions = new ArrayList<>();
+        for (SqlQueryBuilder.Query query : List.of(builder.count(), builder.build())) {
+            for (Row row : client.preparedQuery("EXPLAIN " + query.getSql())
+                    .execute(Tuple.from(query.getParameters()))
+                    .await().indefinitely()) {
+                Matcher matcher = PARTITION_SCAN.matcher(row.getString(0));
+                while (matcher.find()) {
+                    if (!partitions.contains(matcher.group(1))) {
+                        partitions.add(matcher.group(1));
+                    }
+                }
+            }
+        }
+        partitions.sort(null);
+        return partitions;
+    }
+
+    private void insertAndDelete(int year) {
+        Long id = client.preparedQuery("INSERT INTO cars (make, model, trim_year, trim_name, trim_description, "
+                + "fuel_type, transmission, body_type, length, weight) "
+                + "VALUES ('Test', 'Partition', $1, 'Base', 'Partition test', 'Electric', 'Automatic', 'Sedan', "
+                + "4.5, 1500) RETURNING id")
+                .execute(Tuple.of(year))
+                .await().indefinitely()
+                .iterator().next().getLong("id");
+        client.preparedQuery("DELETE FROM cars WHERE id = $1 AND trim_year = $2")
+                .execute(Tuple.of(id, year))
+                .await().indefinitely();
+    }
+}
@@ -0,0 +1,72 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.CarEntity;
+import com.pstag.utils.PromptBatchPacker;
+
+@QuarkusTest
+class PromptBatchPackerTest {
+
+    private static List<CarEntity> cars(int count) {
+        List<CarEntity> cars = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            cars.add(new CarEntity(id, "Acura", "ILX", 2015, "Premium Package", "4dr Sedan (2.4L 4cyl 6M)", "gas",
+                    "6-speed manual", "Sedan", null, 182.5, 3137, 0, null, null));
+        }
+        return cars;
+    }
+
+    @Test
+    void testPackFillsOutputBudget() {
+        PromptBatchPacker packer = new PromptBatchPacker(100_000, 3276, 100, 8);
+        List<CarEntity> cars = cars(50);
+        int perCar = packer.estimateOutputTokens(cars.get(0));
+
+        List<List<CarEntity>> batches = packer.pack(cars);
+
+        int expectedPerBatch = 3276 / perCar;
+        assertEquals(expectedPerBatch, batches.get(0).size());
+        assertEquals(50, batches.stream().mapToInt(List::size).sum());
+        for (List<CarEntity> batch : batches) {
+            assertTrue(batch.size() * perCar <= 3276);
+        }
+    }
+
+    @Test
+    void testPackRespectsMaxCarsPerCall() {
+        PromptBatchPacker packer = new PromptBatchPacker(100_000, 100_000, 3, 8);
+
+        List<List<CarEntity>> batches = packer.pack(cars(7));
+
+        assertEquals(3, batches.size());
+        assertEquals(List.of(3, 3, 1), batches.stream().map(List::size).toList());
+    }
+
+    @Test
+    void testPackKeepsOversizedCarAlone() {
+        PromptBatchPacker packer = new PromptBatchPacker(100_000, 10, 10, 8);
+
+        List<List<CarEntity>> batches = packer.pack(cars(2));
+
+        assertEquals(2, batches.size());
+        assertEquals(1, batches.get(0).size());
+    }
+
+    @Test
+    void testInvalidMaxCarsPerCall() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            new PromptBatchPacker(100, 100, 0, 8);
+        });
+        assertEquals("Max cars per call must be positive: 0", exception.getMessage());
+    }
+}
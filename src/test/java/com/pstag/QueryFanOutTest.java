@@ -0,0 +1,106 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.test.junit.QuarkusTest;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import jakarta.inject.Inject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.mutiny.sqlclient.SqlClient;
+
+import com.pstag.repositories.CarRepository;
+import com.pstag.utils.QueryFanOut;
+
+/**
+ * Compares the occupancy of the reactive pool during concurrent ui-params
+ * fan-outs with and without pipelining, as reported by the Vert.x pool
+ * metrics: sql.pool.active, the connections in use, sampled whenever a
+ * statement answers, and sql.pool.completed, the connections checked out.
+ */
+@QuarkusTest
+class QueryFanOutTest {
+
+    private static final int CONCURRENT_GROUPS = 10;
+
+    @Inject
+    PgPool client;
+
+    @Inject
+    MeterRegistry registry;
+
+    private record Report(List<Object> results, int peakConnections, double checkouts, double millis) {
+    }
+
+    private double poolActive() {
+        return registry.find("sql.pool.active").gauges().stream().mapToDouble(Gauge::value).sum();
+    }
+
+    private double poolCheckouts() {
+        return registry.find("sql.pool.completed").counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private Report run(boolean pipelining) {
+        QueryFanOut fanOut = new QueryFanOut(pipelining, new SimpleMeterRegistry());
+        AtomicInteger peak = new AtomicInteger();
+        List<Uni<List<Object>>> groups = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_GROUPS; i++) {
+            groups.add(fanOut.run(client, "ui-params", 6, sql -> facets(sql, peak)));
+        }
+
+        double checkoutsBefore = poolCheckouts();
+        long start = System.nanoTime();
+        List<?> all = Uni.combine().all().unis(groups).with(list -> list).await().indefinitely();
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        double checkouts = poolCheckouts() - checkoutsBefore;
+
+        Log.infof("%s: %d groups of 6 statements in %.1f ms, peak %d connections in use, %.0f checkouts",
+                pipelining ? "pipelined" : "pooled", all.size(), millis, peak.get(), checkouts);
+        return new Report(new ArrayList<>(all), peak.get(), checkouts, millis);
+    }
+
+    private Uni<List<Object>> facets(SqlClient sql, AtomicInteger peak) {
+        return Uni.combine().all().unis(
+                sampled(CarRepository.getMakers(sql), peak), sampled(CarRepository.getMakerAndModel(sql), peak),
+                sampled(CarRepository.getTransmission(sql), peak), sampled(CarRepository.getColors(sql), peak),
+                sampled(CarRepository.getFuelTypes(sql), peak), sampled(CarRepository.getBodyTypes(sql), peak))
+                .with(results -> new ArrayList<Object>(results));
+    }
+
+    /**
+     * Samples the connections in use when the statement answers, while its
+     * connection is still held.
+     */
+    private <T> Uni<T> sampled(Uni<T> statement, AtomicInteger peak) {
+        return statement.onItem().invoke(() -> peak.accumulateAndGet((int) poolActive(), Math::max));
+    }
+
+    @Test
+    void testPipelinedFanOutUsesOneConnectionPerGroup() {
+        // Warm up the pool and the statement caches
+        run(false);
+        run(true);
+
+        Report pooled = run(false);
+        Report pipelined = run(true);
+
+        assertEquals(pooled.results(), pipelined.results());
+        // Background work such as the catalog refresh may check out a connection too
+        assertTrue(pooled.checkouts() >= CONCURRENT_GROUPS * 6);
+        assertTrue(pipelined.checkouts() < pooled.checkouts());
+        assertTrue(pipelined.peakConnections() <= CONCURRENT_GROUPS);
+        assertTrue(pipelined.peakConnections() < pooled.peakConnections());
+    }
+}
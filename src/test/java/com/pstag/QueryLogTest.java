@@ -0,0 +1,84 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.entities.QueryLogEntry;
+import com.pstag.entities.QueryPlan;
+import com.pstag.services.QueryLog;
+
+@QuarkusTest
+@TestProfile(QueryLogTest.SlowQueriesProfile.class)
+class QueryLogTest {
+
+    /**
+     * Treats every statement as slow so that each shape gets explained.
+     */
+    public static class SlowQueriesProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "query-log.slow-threshold-ms", "0",
+                    "query-log.explain.rate", "100",
+                    "query-log.explain.burst", "10");
+        }
+    }
+
+    @Inject
+    QueryLog queryLog;
+
+    @Test
+    void testSlowQueriesAreExplained() throws InterruptedException {
+        given().when().get("/api/cars?filter[make]=Toyota&sort[velocity]=desc&limit=5").then().statusCode(200);
+
+        List<QueryPlan> plans = queryLog.getPlans();
+        for (int i = 0; i < 50 && plans.size() < 2; i++) {
+            Thread.sleep(100);
+            plans = queryLog.getPlans();
+        }
+
+        assertFalse(queryLog.getEntries().isEmpty());
+        assertTrue(queryLog.getEntries().stream().allMatch(QueryLogEntry::slow));
+        QueryPlan list = plans.stream().filter(plan -> plan.query().equals("cars.list")).findFirst().orElseThrow();
+        assertEquals("make=eq|sort=velocity", list.shape());
+        assertTrue(list.plan().stream().anyMatch(line -> line.contains("actual time")));
+
+        given().when().get("/api/admin/queries/plans").then().statusCode(200);
+    }
+
+    @Test
+    void testWithQueriesAreExplained() throws InterruptedException {
+        // A search keeps the histograms in Postgres, in one WITH query
+        given().when().get("/api/cars/histograms?search=toyota").then().statusCode(200);
+
+        QueryPlan histograms = null;
+        for (int i = 0; i < 50 && histograms == null; i++) {
+            histograms = queryLog.getPlans().stream().filter(plan -> plan.query().equals("cars.histograms"))
+                    .findFirst().orElse(null);
+            Thread.sleep(100);
+        }
+
+        assertTrue(histograms != null && histograms.plan().stream().anyMatch(line -> line.contains("actual time")));
+    }
+
+    @Test
+    void testOnlyReadsAreExplainable() {
+        assertTrue(QueryLog.isExplainable("  SELECT id FROM cars"));
+        assertTrue(QueryLog.isExplainable("-- histograms\n/* of\nthe list */ with f AS (SELECT 1) SELECT * FROM f"));
+        assertFalse(QueryLog.isExplainable("WITH f AS (DELETE FROM cars RETURNING id) SELECT * FROM f"));
+        assertFalse(QueryLog.isExplainable("/* SELECT */ UPDATE cars SET velocity = 0"));
+        assertFalse(QueryLog.isExplainable(null));
+    }
+}
@@ -0,0 +1,47 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.utils.QueryShape;
+
+@QuarkusTest
+class QueryShapeTest {
+
+    @Test
+    void testShapeIgnoresValuesAndUnknownFields() {
+        String shape = QueryShape.of(
+                Map.of("make", "Toyota", "trimYear", "between(2010,2015)", "unknown", "x"),
+                "corolla",
+                Map.of("velocity", "desc"));
+        String sameShape = QueryShape.of(
+                Map.of("trimYear", "between(1990,1995)", "make", "Honda"),
+                "civic",
+                Map.of("velocity", "asc"));
+
+        assertEquals("make=eq,trim_year=between|search|sort=velocity", shape);
+        assertEquals(shape, sameShape);
+        assertEquals(QueryShape.NONE, QueryShape.of(Map.of(), null, Map.of()));
+    }
+
+    @Test
+    void testStatementsAreTaggedByShape() {
+        given().when().get("/api/cars?filter[make]=Toyota&limit=1").then().statusCode(200);
+
+        // The endpoint histogram stays one series per uri, the shapes are on the statements
+        given().when().get("/q/metrics")
+                .then()
+                .statusCode(200)
+                .body(containsString("db_query_duration_seconds_bucket{outcome=\"success\",query=\"cars.list\",shape=\"make=eq\""))
+                .body(containsString("outcome=\"SUCCESS\",status=\"200\",uri=\"/api/cars\""))
+                .body(not(containsString("shape=\"make=eq\",status=\"200\",uri=\"/api/cars\"")));
+    }
+}
@@ -0,0 +1,85 @@
+package com.pstag;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.everyItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.services.CatalogCache;
+import com.pstag.utils.CatalogNeighbors;
+import com.pstag.utils.CatalogSnapshot;
+import com.pstag.utils.CatalogSnapshot.Dictionary;
+
+@QuarkusTest
+class SimilarCarsTest {
+
+    @Inject
+    CatalogCache catalogCache;
+
+    @Test
+    void testTreesMatchScan() {
+        CatalogSnapshot catalog = catalogCache.load().await().indefinitely();
+        CatalogNeighbors neighbors = CatalogNeighbors.build(catalog, 4, 1);
+        for (int row = 0; row < catalog.size(); row += Math.max(1, catalog.size() / 50)) {
+            long id = catalog.id(row);
+            assertEquals(neighbors.scan(id, 10), neighbors.nearest(id, 10));
+        }
+        assertFalse(neighbors.nearest(-1, 10).isPresent());
+
+        // A changed and a new car are found without rebuilding the trees
+        int row = catalog.size() / 2;
+        CatalogSnapshot updated = CatalogSnapshot.builder(catalog)
+                .add(catalog.id(row), catalog.trimYear(row) + 1, catalog.value(Dictionary.MAKE, row),
+                        catalog.value(Dictionary.MODEL, row), catalog.value(Dictionary.FUEL_TYPE, row),
+                        catalog.value(Dictionary.TRANSMISSION, row), catalog.value(Dictionary.BODY_TYPE, row),
+                        catalog.length(row) + 10, catalog.weight(row), catalog.velocity(row), List.of(),
+                        catalog.updatedAt(row) + 1)
+                .add(Integer.MAX_VALUE, catalog.trimYear(0), catalog.value(Dictionary.MAKE, 0),
+                        catalog.value(Dictionary.MODEL, 0), catalog.value(Dictionary.FUEL_TYPE, 0),
+                        catalog.value(Dictionary.TRANSMISSION, 0), catalog.value(Dictionary.BODY_TYPE, 0),
+                        catalog.length(0), catalog.weight(0), catalog.velocity(0), List.of(), catalog.updatedAt(0))
+                .build();
+        CatalogNeighbors incremental = neighbors.update(updated);
+        assertFalse(incremental.isBuilt());
+        for (long id : List.of(catalog.id(0), catalog.id(row), (long) Integer.MAX_VALUE)) {
+            assertEquals(incremental.scan(id, 10), incremental.nearest(id, 10));
+        }
+    }
+
+    @Test
+    void testSimilarEndpoint() {
+        CatalogSnapshot catalog = catalogCache.load().await().indefinitely();
+        long id = catalog.id(0);
+
+        given()
+                .queryParam("k", 5)
+                .when().get("/api/cars/" + id + "/similar")
+                .then()
+                .statusCode(200)
+                .body("data.size()", is(5))
+                .body("data.id", everyItem(not(is((int) id))));
+
+        given()
+                .when().get("/api/cars/-1/similar")
+                .then()
+                .statusCode(200)
+                .body("data", nullValue())
+                .body("message", is("Car not found"));
+
+        given()
+                .queryParam("k", 0)
+                .when().get("/api/cars/" + id + "/similar")
+                .then()
+                .statusCode(400);
+    }
+}
@@ -0,0 +1,85 @@
+package com.pstag;
+
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.pstag.services.TraceExporter;
+
+@QuarkusTest
+@TestProfile(TracingTest.MemoryExporterProfile.class)
+class TracingTest {
+
+    public static class MemoryExporterProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "tracing.exporter", "memory",
+                    "quarkus.otel.bsp.schedule.delay", "50ms");
+        }
+    }
+
+    @Inject
+    TraceExporter exporter;
+
+    @BeforeEach
+    void reset() {
+        exporter.reset();
+    }
+
+    @Test
+    void testListQueriesAreChildrenOfTheRequest() throws InterruptedException {
+        given().when().get("/api/cars?filter[make]=Toyota&limit=1").then().statusCode(200);
+
+        SpanData server = await(span -> span.getKind() == SpanKind.SERVER);
+        SpanData list = await(span -> span.getName().equals("car.list"));
+        SpanData count = await(span -> span.getName().equals("cars.count"));
+        SpanData data = await(span -> span.getName().equals("cars.list"));
+
+        assertEquals(server.getSpanId(), list.getParentSpanId());
+        assertEquals(list.getSpanId(), count.getParentSpanId());
+        assertEquals(list.getSpanId(), data.getParentSpanId());
+        assertEquals("make=eq", data.getAttributes().asMap().entrySet().stream()
+                .filter(entry -> entry.getKey().getKey().equals("db.query.shape"))
+                .findFirst().orElseThrow().getValue());
+    }
+
+    @Test
+    void testImageLookupIsChildOfTheImageSpan() throws InterruptedException {
+        given().when().get("/api/cars/image/{id}", 9999999L).then().statusCode(200);
+
+        SpanData server = await(span -> span.getKind() == SpanKind.SERVER);
+        SpanData image = await(span -> span.getName().equals("car.image"));
+        SpanData byId = await(span -> span.getName().equals("cars.by-id"));
+
+        assertEquals(server.getSpanId(), image.getParentSpanId());
+        assertEquals(image.getSpanId(), byId.getParentSpanId());
+        assertEquals(server.getTraceId(), byId.getTraceId());
+    }
+
+    private SpanData await(Predicate<SpanData> condition) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            List<SpanData> spans = exporter.getSpans();
+            for (SpanData span : spans) {
+                if (condition.test(span)) {
+                    return span;
+                }
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("No matching span in " + exporter.getSpans());
+    }
+}
@@ -0,0 +1,97 @@
+package com.pstag;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.Vertx;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+import jakarta.inject.Inject;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import com.pstag.services.BlockingExecutor;
+import com.pstag.services.CatalogCache;
+import com.pstag.services.DatabaseRouter;
+import com.pstag.services.WarmupService;
+import com.pstag.utils.CatalogSnapshot;
+
+@QuarkusTest
+@TestProfile(WarmupServiceTest.WarmupProfile.class)
+class WarmupServiceTest {
+
+    public static class WarmupProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("warmup.enabled", "true", "warmup.iterations", "2");
+        }
+
+        @Override
+        public Set<Class<?>> getEnabledAlternatives() {
+            return Set.of(HeldCatalogCache.class);
+        }
+    }
+
+    /**
+     * Holds the warm-up at its first step, the wait for the catalog, until the
+     * test releases it. The catalog is then reported as not loaded, so the
+     * warm-up and the requests read from the database.
+     */
+    @Alternative
+    @ApplicationScoped
+    public static class HeldCatalogCache extends CatalogCache {
+
+        static final CompletableFuture<Void> RELEASE = new CompletableFuture<>();
+
+        @Inject
+        public HeldCatalogCache(DatabaseRouter router, BlockingExecutor blockingExecutor, Vertx vertx,
+                MeterRegistry registry) {
+            super(router, blockingExecutor, vertx, registry);
+        }
+
+        @Override
+        public Uni<CatalogSnapshot> awaitLoaded() {
+            return Uni.createFrom().completionStage(RELEASE).map(ignored -> null);
+        }
+    }
+
+    @Inject
+    WarmupService warmupService;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Test
+    void testReadyOnlyAfterWarmup() throws InterruptedException {
+        given().when().get("/q/health/ready").then().statusCode(503)
+                .body("checks.find { it.name == 'warm-up' }.status", equalTo("DOWN"));
+        assertFalse(warmupService.isWarmedUp());
+
+        HeldCatalogCache.RELEASE.complete(null);
+        for (int i = 0; i < 300 && !warmupService.isWarmedUp(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(warmupService.isWarmedUp());
+        assertEquals("success", warmupService.call().getData().orElseThrow().get("status"));
+
+        given().when().get("/q/health/ready").then().statusCode(200)
+                .body("checks.find { it.name == 'warm-up' }.status", equalTo("UP"));
+        assertNotNull(registry.find("warmup.duration").tag("result", "success").timer());
+
+        given().when().get("/api/cars/ui-params").then().statusCode(200);
+        assertNotNull(registry.find("startup.first.request.latency.seconds").tag("warmed-up", "true").gauge());
+    }
+}